@@ -0,0 +1,314 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Hash table from packed device address(see {@link #packAddress(String)}) to a stable entry id.
+ * It is the one open addressing table of the library, every per-device structure of the scanner is keyed by it.
+ * <p>
+ * Entry ids are in [0, {@link #capacity()}) and do not change until the entry is removed,
+ * so callers keep per-device state in their own primitive arrays indexed by entry id.
+ * The capacity only grows in {@link #add(long)}, callers check it afterwards to grow their arrays.
+ *
+ * @author jackie
+ */
+final class AddressTable {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    /**
+     * Address key that means "no address".A packed 48-bit address is never negative.
+     */
+    static final long NO_ADDRESS = -1L;
+
+    /**
+     * Entry id that means "no entry"
+     */
+    static final int NO_ENTRY = -1;
+
+    /**
+     * default capacity(must be power of two)
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Multiplier used to spread the address bits across the hash table
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * hash table keys(packed device address)
+     */
+    private long[] keys;
+    /**
+     * hash table values(entry id)
+     */
+    private int[] slotEntries;
+    /**
+     * capacity - 1
+     */
+    private int mask;
+    /**
+     * key of the entry
+     */
+    private long[] entryKeys;
+    /**
+     * next free entry of a free entry
+     */
+    private int[] nextFree;
+    /**
+     * first free entry
+     */
+    private int freeHead;
+    /**
+     * entry count
+     */
+    private int size;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     */
+    AddressTable() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /*-----------------------------------package private static method-----------------------------------*/
+
+    /**
+     * Pack a device address like "AA:BB:CC:DD:EE:FF" into the low 48 bits of a long.
+     *
+     * @param address device address
+     * @return packed address, or {@link #NO_ADDRESS} if the address is not well formed
+     */
+    static long packAddress(@Nullable String address) {
+        if (address == null || address.length() != 17) {
+            return NO_ADDRESS;
+        }
+        long key = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = address.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':') {
+                    return NO_ADDRESS;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return NO_ADDRESS;
+            }
+            key = (key << 4) | digit;
+        }
+        return key;
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * Get the entry of a key
+     *
+     * @param key packed device address
+     * @return entry id, or {@link #NO_ENTRY} if the key is not in the table
+     */
+    int indexOf(long key) {
+        int slot = find(key);
+        return slot < 0 ? NO_ENTRY : slotEntries[slot];
+    }
+
+    /**
+     * Add a key that is not in the table yet
+     *
+     * @param key packed device address
+     * @return entry id
+     */
+    int add(long key) {
+        // keep the load factor below 0.5
+        if ((size + 1) * 2 > keys.length) {
+            grow(keys.length * 2);
+        }
+        int entry = freeHead;
+        freeHead = nextFree[entry];
+        entryKeys[entry] = key;
+        place(key, entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Remove an entry
+     *
+     * @param entry entry id
+     */
+    void remove(int entry) {
+        delete(find(entryKeys[entry]));
+        nextFree[entry] = freeHead;
+        freeHead = entry;
+        size--;
+    }
+
+    /**
+     * Get the key of an entry
+     *
+     * @param entry entry id
+     * @return packed device address
+     */
+    long keyOf(int entry) {
+        return entryKeys[entry];
+    }
+
+    /**
+     * get entry count
+     *
+     * @return entry count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * get capacity.Entry ids are less than it.
+     *
+     * @return capacity
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * remove all entries.The capacity is kept.
+     */
+    void clear() {
+        Arrays.fill(keys, NO_ADDRESS);
+        resetFreeList(0);
+        size = 0;
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Get the home slot of a key
+     *
+     * @param key packed device address
+     * @return slot index
+     */
+    private int slot(long key) {
+        long hash = key * HASH_MULTIPLIER;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Find the slot of a key
+     *
+     * @param key packed device address
+     * @return slot, or -1 if the key is not in the hash table
+     */
+    private int find(long key) {
+        int slot = slot(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == NO_ADDRESS) {
+                return -1;
+            }
+            if (current == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Put a key into the hash table without checking the load factor
+     *
+     * @param key   packed device address
+     * @param entry entry id
+     */
+    private void place(long key, int entry) {
+        int slot = slot(key);
+        while (keys[slot] != NO_ADDRESS) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        slotEntries[slot] = entry;
+    }
+
+    /**
+     * Delete a slot of the hash table.The following keys of the probe sequence are shifted back,
+     * so no tombstone is left.
+     *
+     * @param slot slot index
+     */
+    private void delete(int slot) {
+        int hole = slot;
+        int current = (hole + 1) & mask;
+        while (keys[current] != NO_ADDRESS) {
+            int home = slot(keys[current]);
+            if (((current - home) & mask) >= ((current - hole) & mask)) {
+                keys[hole] = keys[current];
+                slotEntries[hole] = slotEntries[current];
+                hole = current;
+            }
+            current = (current + 1) & mask;
+        }
+        keys[hole] = NO_ADDRESS;
+    }
+
+    /**
+     * Grow the hash table and the entries.Entry ids are kept.
+     *
+     * @param capacity new capacity
+     */
+    private void grow(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldSlotEntries = slotEntries;
+        int oldCapacity = oldKeys.length;
+        keys = new long[capacity];
+        slotEntries = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, NO_ADDRESS);
+        for (int i = 0; i < oldCapacity; i++) {
+            if (oldKeys[i] != NO_ADDRESS) {
+                place(oldKeys[i], oldSlotEntries[i]);
+            }
+        }
+        entryKeys = Arrays.copyOf(entryKeys, capacity);
+        int oldFreeHead = freeHead;
+        nextFree = Arrays.copyOf(nextFree, capacity);
+        resetFreeList(oldCapacity);
+        nextFree[capacity - 1] = oldFreeHead;
+    }
+
+    /**
+     * Link the entries from {@code from} to the end of the table into the free list
+     *
+     * @param from first entry id
+     */
+    private void resetFreeList(int from) {
+        int capacity = nextFree.length;
+        for (int entry = from; entry < capacity - 1; entry++) {
+            nextFree[entry] = entry + 1;
+        }
+        nextFree[capacity - 1] = NO_ENTRY;
+        freeHead = from;
+    }
+
+    /**
+     * Allocate an empty table
+     *
+     * @param capacity capacity(must be power of two)
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        slotEntries = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, NO_ADDRESS);
+        entryKeys = new long[capacity];
+        nextFree = new int[capacity];
+        resetFreeList(0);
+    }
+}
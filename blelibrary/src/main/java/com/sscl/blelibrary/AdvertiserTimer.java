@@ -7,8 +7,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 
 import java.lang.ref.WeakReference;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * BLE Advertiser timer
@@ -21,9 +19,9 @@ final class AdvertiserTimer {
     /*-----------------------------------field variables-----------------------------------*/
 
     /**
-     * can schedule commands to run after a given after the given delay, or to execute periodically.
+     * pending timeout on the library timer wheel
      */
-    private ScheduledExecutorService scheduledExecutorService;
+    private TimerWheel.Timeout timeout;
     /**
      * Task to perform
      */
@@ -61,18 +59,20 @@ final class AdvertiserTimer {
      *
      * @param delayTime Delayed time
      */
-    void startTimer(@IntRange(from = 0) long delayTime) {
-        scheduledExecutorService = BleManager.newScheduledExecutorService();
-        scheduledExecutorService.schedule(runnable, delayTime, TimeUnit.MILLISECONDS);
+    synchronized void startTimer(@IntRange(from = 0) long delayTime) {
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        timeout = TimerWheel.getInstance().newTimeout(runnable, delayTime);
     }
 
     /**
      * stop timer
      */
-    void stopTimer() {
-        if (scheduledExecutorService != null) {
-            scheduledExecutorService.shutdownNow();
-            scheduledExecutorService = null;
+    synchronized void stopTimer() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
         }
     }
 }
\ No newline at end of file
@@ -32,6 +32,17 @@ public abstract class BaseBleConnectCallback {
      */
     private boolean isServiceDiscovered;
 
+    /**
+     * negotiated ATT MTU of the connection
+     */
+    private volatile int mtu = BleConstants.DEFAULT_ATT_MTU;
+
+    /**
+     * pending connect timeout of the connection, cancelled when the services are discovered
+     */
+    @Nullable
+    private volatile TimerWheel.Timeout connectTimeout;
+
     /*-----------------------------------package private methods-----------------------------------*/
 
     /**
@@ -50,6 +61,40 @@ public abstract class BaseBleConnectCallback {
      */
     final void setServiceDiscovered(boolean serviceDiscovered) {
         isServiceDiscovered = serviceDiscovered;
+        if (serviceDiscovered) {
+            setConnectTimeout(null);
+        }
+    }
+
+    /**
+     * set the pending connect timeout of the connection.The previous one is cancelled.
+     *
+     * @param connectTimeout connect timeout, null means none
+     */
+    final void setConnectTimeout(@Nullable TimerWheel.Timeout connectTimeout) {
+        TimerWheel.Timeout previous = this.connectTimeout;
+        this.connectTimeout = connectTimeout;
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * set negotiated ATT MTU of the connection
+     *
+     * @param mtu ATT MTU
+     */
+    final void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    /**
+     * get negotiated ATT MTU of the connection
+     *
+     * @return ATT MTU
+     */
+    final int getMtu() {
+        return mtu;
     }
 
     /*-----------------------------------public methods-----------------------------------*/
@@ -7,6 +7,8 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
+import android.os.Handler;
+import android.os.Message;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -15,10 +17,11 @@ import com.sscl.blelibrary.interfaces.OnBleCharacteristicWriteListener;
 import com.sscl.blelibrary.interfaces.OnBleConnectStateChangedListener;
 import com.sscl.blelibrary.interfaces.OnBleDescriptorWriteListener;
 import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * BLE Gatt callback
@@ -35,20 +38,43 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
      */
     private static final String TAG = BleBluetoothGattCallback.class.getSimpleName();
 
+    /*
+     * event codes of the messages sent to the main thread
+     */
+    private static final int EVENT_DISCONNECTED = 1;
+    private static final int EVENT_GATT_STATUS_ERROR = 2;
+    private static final int EVENT_CONNECTING = 3;
+    private static final int EVENT_CONNECTED = 4;
+    private static final int EVENT_AUTO_DISCOVER_SERVICES_FAILED = 5;
+    private static final int EVENT_DISCONNECTING = 6;
+    private static final int EVENT_UNKNOWN_STATUS = 7;
+    private static final int EVENT_PERFORM_TASK_FAILED = 8;
+    private static final int EVENT_SERVICES_DISCOVERED = 9;
+    private static final int EVENT_READ_CHARACTERISTIC = 10;
+    private static final int EVENT_WRITE_CHARACTERISTIC = 11;
+    private static final int EVENT_NOTIFICATION = 12;
+    private static final int EVENT_READ_DESCRIPTOR = 13;
+    private static final int EVENT_WRITE_DESCRIPTOR = 14;
+    private static final int EVENT_RELIABLE_WRITE_COMPLETED = 15;
+    private static final int EVENT_READ_REMOTE_RSSI = 16;
+    private static final int EVENT_MTU_CHANGED = 17;
+    private static final int EVENT_PHY_UPDATE = 18;
+    private static final int EVENT_READ_PHY = 19;
+
     /*-----------------------------------field variables-----------------------------------*/
 
     /**
      * callback list triggered when gatt descriptor write successful
      */
-    private ArrayList<OnBleDescriptorWriteListener> onBleDescriptorWriteListeners = new ArrayList<>();
+    private final CopyOnWriteArrayList<OnBleDescriptorWriteListener> onBleDescriptorWriteListeners = new CopyOnWriteArrayList<>();
     /**
-     * callback list triggered when gatt received notification data
+     * callbacks triggered when gatt received notification data, routed by characteristic
      */
-    private ArrayList<OnBleReceiveNotificationListener> onBleReceiveNotificationListeners = new ArrayList<>();
+    private final NotificationRouter notificationRouter = new NotificationRouter();
     /**
      * callback list triggered when gatt characteristic write data successful
      */
-    private ArrayList<OnBleCharacteristicWriteListener> onBleCharacteristicWriteListeners = new ArrayList<>();
+    private final CopyOnWriteArrayList<OnBleCharacteristicWriteListener> onBleCharacteristicWriteListeners = new CopyOnWriteArrayList<>();
     /**
      * BluetoothGatt client
      */
@@ -62,12 +88,63 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
      * BLE device uuid discover status
      */
     private boolean serviceDiscovered;
+    /**
+     * negotiated ATT MTU of the connection
+     */
+    private volatile int mtu = BleConstants.DEFAULT_ATT_MTU;
+    /**
+     * the platform GATT cache was refreshed once on this connection because it was stale
+     */
+    private boolean gattCacheRefreshed;
+    /**
+     * services are discovered again after a stale platform cache was refreshed, the result is not reported a second time
+     */
+    private volatile boolean rediscoveringServices;
+    /**
+     * pending connect timeout of the connection, cancelled when the services are discovered
+     */
+    @Nullable
+    private volatile TimerWheel.Timeout connectTimeout;
 
     /**
      * connect status changed listener
      */
     @Nullable
-    private OnBleConnectStateChangedListener onBleConnectStateChangedListener;
+    private volatile OnBleConnectStateChangedListener onBleConnectStateChangedListener;
+    /**
+     * GATT operation queue of the connection
+     */
+    @NonNull
+    private final GattOperationQueue gattOperationQueue;
+    /**
+     * resolved characteristics of the connection
+     */
+    @NonNull
+    private final GattHandleTable gattHandleTable;
+    /**
+     * handler dispatching the GATT events on the main thread, the looper is shared with {@link BleManager#getHandler()}
+     * so the events keep their order with the other posted callbacks
+     */
+    private final Handler eventHandler = new Handler(BleManager.getHandler().getLooper(), new Handler.Callback() {
+        @Override
+        public boolean handleMessage(@NonNull Message msg) {
+            handleEvent(msg);
+            return true;
+        }
+    });
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param gattOperationQueue GATT operation queue of the connection
+     * @param gattHandleTable    resolved characteristics of the connection
+     */
+    BleBluetoothGattCallback(@NonNull GattOperationQueue gattOperationQueue, @NonNull GattHandleTable gattHandleTable) {
+        this.gattOperationQueue = gattOperationQueue;
+        this.gattHandleTable = gattHandleTable;
+    }
 
 
     /*-----------------------------------override method-----------------------------------*/
@@ -85,12 +162,15 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
     @Override
     public void onConnectionStateChange(final BluetoothGatt gatt, int status, int newState) {
         this.gatt = gatt;
+        gattHandleTable.invalidate();
         //Judge the current state
         switch (newState) {
             //disconnected
             case BluetoothGatt.STATE_DISCONNECTED:
                 connected = false;
                 serviceDiscovered = false;
+                mtu = BleConstants.DEFAULT_ATT_MTU;
+                gattOperationQueue.cancelAll();
                 DebugUtil.warnOut(TAG, "status = " + status);
                 if (status == BluetoothGatt.STATE_CONNECTED || status == BluetoothGatt.STATE_CONNECTING || status == BluetoothGatt.STATE_DISCONNECTED || status == BluetoothGatt.STATE_DISCONNECTING) {
                     DebugUtil.warnOut(TAG, "STATE_DISCONNECTED");
@@ -107,6 +187,9 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
             //connected
             case BluetoothGatt.STATE_CONNECTED:
                 connected = true;
+                mtu = BleConstants.DEFAULT_ATT_MTU;
+                gattCacheRefreshed = false;
+                rediscoveringServices = false;
                 DebugUtil.warnOut(TAG, "STATE_CONNECTED");
                 performDeviceConnectedListener();
                 if (!gatt.discoverServices()) {
@@ -142,13 +225,20 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
     @Override
     public void onServicesDiscovered(BluetoothGatt gatt, int status) {
         DebugUtil.warnOut(TAG, "onServicesDiscovered");
+        gattHandleTable.invalidate();
+        boolean rediscovered = rediscoveringServices;
+        rediscoveringServices = false;
         if (BluetoothGatt.GATT_SUCCESS != status) {
             connected = false;
             serviceDiscovered = false;
             performGattPerformTaskFailedListener(status, "onServicesDiscovered");
         } else {
             serviceDiscovered = true;
-            performDeviceServicesDiscoveredListener();
+            setConnectTimeout(null);
+            if (!rediscovered) {
+                performDeviceServicesDiscoveredListener();
+            }
+            validateGattDatabase(gatt);
         }
     }
 
@@ -171,6 +261,7 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
             byte[] value = characteristic.getValue();
             performGattReadCharacteristicDataListener(characteristic, value);
         }
+        gattOperationQueue.onOperationComplete(GattOperationQueue.TYPE_READ_CHARACTERISTIC, characteristic, status, characteristic.getValue(), 0);
     }
 
     /**
@@ -198,6 +289,7 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
             byte[] value = characteristic.getValue();
             performGattWriteCharacteristicDataListener(characteristic, value);
         }
+        gattOperationQueue.onOperationComplete(GattOperationQueue.TYPE_WRITE_CHARACTERISTIC, characteristic, status, characteristic.getValue(), 0);
     }
 
     /**
@@ -210,6 +302,9 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
     @Override
     public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
         DebugUtil.warnOut(TAG, "onReceivedNotification");
+        if (GattDatabaseCache.isServiceChanged(characteristic)) {
+            onServiceChanged(gatt);
+        }
         byte[] value = characteristic.getValue();
         performReceivedNotificationListener(characteristic, value);
     }
@@ -254,6 +349,7 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
             byte[] value = descriptor.getValue();
             performGattWriteDescriptorListener(descriptor, value);
         }
+        gattOperationQueue.onOperationComplete(GattOperationQueue.TYPE_WRITE_DESCRIPTOR, descriptor, status, descriptor.getValue(), 0);
 
     }
 
@@ -296,6 +392,7 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
         } else {
             performGattReadRemoteRssiListener(rssi);
         }
+        gattOperationQueue.onOperationComplete(GattOperationQueue.TYPE_READ_RSSI, null, status, null, rssi);
     }
 
     /**
@@ -317,8 +414,10 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
             serviceDiscovered = false;
             performGattPerformTaskFailedListener(status, "onMtuChanged");
         } else {
+            this.mtu = mtu;
             performGattMtuChangedListener(mtu);
         }
+        gattOperationQueue.onOperationComplete(GattOperationQueue.TYPE_REQUEST_MTU, null, status, null, mtu);
     }
 
     /**
@@ -373,7 +472,7 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
      *
      * @param onBleConnectStateChangedListener BLE device connect status changed listener
      */
-    synchronized void setOnBleConnectStateChangedListener(@Nullable OnBleConnectStateChangedListener onBleConnectStateChangedListener) {
+    void setOnBleConnectStateChangedListener(@Nullable OnBleConnectStateChangedListener onBleConnectStateChangedListener) {
         this.onBleConnectStateChangedListener = onBleConnectStateChangedListener;
     }
 
@@ -425,16 +524,35 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
         return serviceDiscovered;
     }
 
+    /**
+     * set the pending connect timeout of the connection.The previous one is cancelled.
+     *
+     * @param connectTimeout connect timeout, null means none
+     */
+    void setConnectTimeout(@Nullable TimerWheel.Timeout connectTimeout) {
+        TimerWheel.Timeout previous = this.connectTimeout;
+        this.connectTimeout = connectTimeout;
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * get negotiated ATT MTU of the connection
+     *
+     * @return ATT MTU
+     */
+    int getMtu() {
+        return mtu;
+    }
+
     /**
      * add a callback triggered when descriptor write successful
      *
      * @param onDescriptorWriteListener callback triggered when descriptor write successful
      * @return true means successful
      */
-    synchronized boolean addOnBleDescriptorWriteListener(@NonNull OnBleDescriptorWriteListener onDescriptorWriteListener) {
-        if (onBleDescriptorWriteListeners == null) {
-            return false;
-        }
+    boolean addOnBleDescriptorWriteListener(@NonNull OnBleDescriptorWriteListener onDescriptorWriteListener) {
         onBleDescriptorWriteListeners.add(onDescriptorWriteListener);
         return true;
     }
@@ -445,10 +563,7 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
      * @param onBleDescriptorWriteListener callback triggered when descriptor write successful
      * @return true means successful
      */
-    synchronized boolean removeOnBleDescriptorWriteListener(@NonNull OnBleDescriptorWriteListener onBleDescriptorWriteListener) {
-        if (onBleDescriptorWriteListeners == null) {
-            return false;
-        }
+    boolean removeOnBleDescriptorWriteListener(@NonNull OnBleDescriptorWriteListener onBleDescriptorWriteListener) {
         return onBleDescriptorWriteListeners.remove(onBleDescriptorWriteListener);
     }
 
@@ -458,11 +573,8 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
      * @param onBleReceiveNotificationListener callback triggered when descriptor write successful
      * @return true means successful
      */
-    synchronized boolean addOnBleReceiveNotificationListener(@NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
-        if (onBleReceiveNotificationListeners == null) {
-            return false;
-        }
-        onBleReceiveNotificationListeners.add(onBleReceiveNotificationListener);
+    boolean addOnBleReceiveNotificationListener(@NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        notificationRouter.addListener(onBleReceiveNotificationListener);
         return true;
     }
 
@@ -472,11 +584,30 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
      * @param onBleReceiveNotificationListener callback triggered when received notification data
      * @return true means successful
      */
-    synchronized boolean removeOnBleReceiveNotificationListener(@NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
-        if (onBleReceiveNotificationListeners == null) {
-            return false;
-        }
-        return onBleReceiveNotificationListeners.remove(onBleReceiveNotificationListener);
+    boolean removeOnBleReceiveNotificationListener(@NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        return notificationRouter.removeListener(onBleReceiveNotificationListener);
+    }
+
+    /**
+     * add a callback triggered when received notification data of one characteristic
+     *
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     * @return true means successful
+     */
+    boolean addOnBleReceiveNotificationListener(@NonNull String characteristicUuid, @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        return notificationRouter.addListener(characteristicUuid, onBleReceiveNotificationListener);
+    }
+
+    /**
+     * remove a callback triggered when received notification data of one characteristic
+     *
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     * @return true means successful
+     */
+    boolean removeOnBleReceiveNotificationListener(@NonNull String characteristicUuid, @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        return notificationRouter.removeListener(characteristicUuid, onBleReceiveNotificationListener);
     }
 
     /**
@@ -485,10 +616,7 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
      * @param onBleCharacteristicWriteListener callback triggered when gatt characteristic write data successful
      * @return true means successful
      */
-    synchronized boolean addOnBleCharacteristicWriteListener(@NonNull OnBleCharacteristicWriteListener onBleCharacteristicWriteListener) {
-        if (onBleCharacteristicWriteListeners == null) {
-            return false;
-        }
+    boolean addOnBleCharacteristicWriteListener(@NonNull OnBleCharacteristicWriteListener onBleCharacteristicWriteListener) {
         onBleCharacteristicWriteListeners.add(onBleCharacteristicWriteListener);
         return true;
     }
@@ -499,284 +627,314 @@ final class BleBluetoothGattCallback extends BluetoothGattCallback {
      * @param onBleCharacteristicWriteListener callback triggered when gatt characteristic write data successful
      * @return true means successful
      */
-    synchronized boolean removeOnBleCharacteristicWriteListener(@NonNull OnBleCharacteristicWriteListener onBleCharacteristicWriteListener) {
-        if (onBleCharacteristicWriteListeners == null) {
-            return false;
-        }
+    boolean removeOnBleCharacteristicWriteListener(@NonNull OnBleCharacteristicWriteListener onBleCharacteristicWriteListener) {
         return onBleCharacteristicWriteListeners.remove(onBleCharacteristicWriteListener);
     }
 
-    /*-----------------------------------private method-----------------------------------*/
+    /**
+     * Create the result listener of a request made without one.The result of such a request is reported by
+     * {@link OnBleConnectStateChangedListener}, but a request that fails in the GATT operation queue never reaches
+     * this callback, so that failure is reported by {@link OnBleConnectStateChangedListener#gattPerformTaskFailed(int, String)}.
+     *
+     * @param methodName name of the request
+     * @return result listener
+     */
+    @NonNull
+    OnGattOperationResultListener<byte[]> newTaskFailedListener(@NonNull final String methodName) {
+        return new OnGattOperationResultListener<byte[]>() {
+            @Override
+            public void onGattOperationSucceed(@Nullable byte[] result) {
+            }
 
-    private void performDeviceDisconnectedListener() {
-        BleManager.getHandler().post(new Runnable() {
             @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.disconnected();
-                    }
+            public void onGattOperationFailed(int status) {
+                //A failure with a GATT status was reported by this callback already
+                if (status < 0) {
+                    performGattPerformTaskFailedListener(status, methodName);
                 }
             }
-        });
+        };
     }
 
-    private void performGattStatusErrorListener(final int status) {
-        BleManager.getHandler().post(new Runnable() {
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Check the reported services against the stored GATT database of the device in the background.
+     * A stale platform cache is refreshed and the services are discovered again, once per connection,
+     * without reporting servicesDiscovered a second time.
+     *
+     * @param gatt GATT client
+     */
+    private void validateGattDatabase(@NonNull final BluetoothGatt gatt) {
+        GattDatabaseCache.validate(gatt, gattOperationQueue, new GattDatabaseCache.OnValidatedListener() {
             @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.gattStatusError(status);
-                    }
+            public void onValidated(boolean valid, boolean changed) {
+                if (changed) {
+                    gattHandleTable.reset();
+                }
+                if (valid || gattCacheRefreshed || !connected || BleBluetoothGattCallback.this.gatt != gatt) {
+                    return;
+                }
+                gattCacheRefreshed = true;
+                DebugUtil.warnOut(TAG, "cached services are stale, discover services again");
+                rediscoveringServices = true;
+                if (GattDatabaseCache.refreshPlatformCache(gatt) && gatt.discoverServices()) {
+                    gattHandleTable.invalidate();
+                    serviceDiscovered = false;
+                } else {
+                    rediscoveringServices = false;
                 }
             }
         });
     }
 
+    /**
+     * The remote device indicated that its services changed, drop the stored database and discover the services again
+     *
+     * @param gatt GATT client
+     */
+    private void onServiceChanged(@NonNull BluetoothGatt gatt) {
+        DebugUtil.warnOut(TAG, "service changed");
+        GattDatabaseCache.invalidate(gatt.getDevice().getAddress());
+        gattHandleTable.reset();
+        serviceDiscovered = false;
+        rediscoveringServices = false;
+        GattDatabaseCache.refreshPlatformCache(gatt);
+        if (!gatt.discoverServices()) {
+            DebugUtil.warnOut(TAG, "gatt.discoverServices() return false");
+        }
+    }
+
+    private void performDeviceDisconnectedListener() {
+        eventHandler.sendEmptyMessage(EVENT_DISCONNECTED);
+    }
+
+    private void performGattStatusErrorListener(int status) {
+        eventHandler.obtainMessage(EVENT_GATT_STATUS_ERROR, status, 0).sendToTarget();
+    }
+
     private void performDeviceConnectingListener() {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.connecting();
-                    }
-                }
-            }
-        });
+        eventHandler.sendEmptyMessage(EVENT_CONNECTING);
     }
 
     private void performDeviceConnectedListener() {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.connected();
-                    }
-                }
-            }
-        });
+        eventHandler.sendEmptyMessage(EVENT_CONNECTED);
     }
 
     private void performAutoDiscoverServicesFailedListener() {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.autoDiscoverServicesFailed();
-                    }
-                }
-            }
-        });
+        eventHandler.sendEmptyMessage(EVENT_AUTO_DISCOVER_SERVICES_FAILED);
     }
 
     private void performDeviceDisconnectingListener() {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.disconnecting();
-                    }
-                }
-            }
-        });
+        eventHandler.sendEmptyMessage(EVENT_DISCONNECTING);
     }
 
-    private void performGattUnknownStatusListener(final int newState) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.unknownStatus(newState);
-                    }
-                }
-            }
-        });
+    private void performGattUnknownStatusListener(int newState) {
+        eventHandler.obtainMessage(EVENT_UNKNOWN_STATUS, newState, 0).sendToTarget();
     }
 
-    private void performGattPerformTaskFailedListener(final int status, final String methodName) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.gattPerformTaskFailed(status, methodName);
-                    }
-                }
-            }
-        });
+    private void performGattPerformTaskFailedListener(int status, String methodName) {
+        GattEvent gattEvent = GattEvent.obtain();
+        gattEvent.status = status;
+        gattEvent.methodName = methodName;
+        gattEvent.send(eventHandler, EVENT_PERFORM_TASK_FAILED);
     }
 
     private void performDeviceServicesDiscoveredListener() {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.servicesDiscovered();
-                    }
-                }
-            }
-        });
+        eventHandler.sendEmptyMessage(EVENT_SERVICES_DISCOVERED);
     }
 
-    private void performGattReadCharacteristicDataListener(final BluetoothGattCharacteristic characteristic, final byte[] value) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.readCharacteristicData(characteristic, value);
-                    }
-                }
-            }
-        });
+    private void performGattReadCharacteristicDataListener(BluetoothGattCharacteristic characteristic, byte[] value) {
+        sendCharacteristicEvent(EVENT_READ_CHARACTERISTIC, characteristic, value);
     }
 
-    private void performGattWriteCharacteristicDataListener(final BluetoothGattCharacteristic characteristic, final byte[] value) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.writeCharacteristicData(characteristic, value);
-                    }
-                }
-
-                for (int i = 0; i < onBleCharacteristicWriteListeners.size(); i++) {
-                    OnBleCharacteristicWriteListener onBleCharacteristicWriteListener = onBleCharacteristicWriteListeners.get(i);
-                    synchronized (BleBluetoothGattCallback.class) {
-                        if (onBleCharacteristicWriteListener != null) {
-                            onBleCharacteristicWriteListener.onBleCharacteristicWrite(characteristic, value);
-                        }
-                    }
-                }
-            }
-        });
+    private void performGattWriteCharacteristicDataListener(BluetoothGattCharacteristic characteristic, byte[] value) {
+        sendCharacteristicEvent(EVENT_WRITE_CHARACTERISTIC, characteristic, value);
     }
 
-    private void performReceivedNotificationListener(final BluetoothGattCharacteristic characteristic, final byte[] value) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.receivedNotification(characteristic, value);
-                    }
-                }
-                for (int i = 0; i < onBleReceiveNotificationListeners.size(); i++) {
-                    OnBleReceiveNotificationListener onBleReceiveNotificationListener = onBleReceiveNotificationListeners.get(i);
-                    synchronized (BleBluetoothGattCallback.class) {
-                        if (onBleReceiveNotificationListener != null) {
-                            onBleReceiveNotificationListener.onBleReceiveNotification(characteristic, value);
-                        }
-                    }
-                }
-            }
-        });
+    private void performReceivedNotificationListener(BluetoothGattCharacteristic characteristic, byte[] value) {
+        sendCharacteristicEvent(EVENT_NOTIFICATION, characteristic, value);
     }
 
-    private void performGattReadDescriptorListener(final BluetoothGattDescriptor descriptor, final byte[] value) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.readDescriptor(descriptor, value);
-                    }
-                }
-            }
-        });
+    private void performGattReadDescriptorListener(BluetoothGattDescriptor descriptor, byte[] value) {
+        sendDescriptorEvent(EVENT_READ_DESCRIPTOR, descriptor, value);
     }
 
-    private void performGattWriteDescriptorListener(final BluetoothGattDescriptor descriptor, final byte[] value) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.writeDescriptor(descriptor, value);
-                    }
-                }
-                for (int i = 0; i < onBleDescriptorWriteListeners.size(); i++) {
-                    OnBleDescriptorWriteListener onBleDescriptorWriteListener = onBleDescriptorWriteListeners.get(i);
-                    synchronized (BleBluetoothGattCallback.class) {
-                        if (onBleDescriptorWriteListener != null) {
-                            onBleDescriptorWriteListener.onBleDescriptorWrite(descriptor, value);
-                        }
-                    }
-                }
-            }
-        });
+    private void performGattWriteDescriptorListener(BluetoothGattDescriptor descriptor, byte[] value) {
+        sendDescriptorEvent(EVENT_WRITE_DESCRIPTOR, descriptor, value);
     }
 
     private void performGattReliableWriteCompletedListener() {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.reliableWriteCompleted();
-                    }
-                }
-            }
-        });
+        eventHandler.sendEmptyMessage(EVENT_RELIABLE_WRITE_COMPLETED);
     }
 
-    private void performGattReadRemoteRssiListener(final int rssi) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.readRemoteRssi(rssi);
-                    }
-                }
-            }
-        });
+    private void performGattReadRemoteRssiListener(int rssi) {
+        eventHandler.obtainMessage(EVENT_READ_REMOTE_RSSI, rssi, 0).sendToTarget();
     }
 
-    private void performGattMtuChangedListener(final int mtu) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.mtuChanged(mtu);
-                    }
-                }
-            }
-        });
+    private void performGattMtuChangedListener(int mtu) {
+        eventHandler.obtainMessage(EVENT_MTU_CHANGED, mtu, 0).sendToTarget();
     }
 
-    private void performGattPhyUpdateListener(final int txPhy, final int rxPhy) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
+    private void performGattPhyUpdateListener(int txPhy, int rxPhy) {
+        eventHandler.obtainMessage(EVENT_PHY_UPDATE, txPhy, rxPhy).sendToTarget();
+    }
+
+    private void performGattReadPhyListener(int txPhy, int rxPhy) {
+        eventHandler.obtainMessage(EVENT_READ_PHY, txPhy, rxPhy).sendToTarget();
+    }
+
+    /**
+     * Send a characteristic event to the main thread
+     *
+     * @param what           event code
+     * @param characteristic BluetoothGattCharacteristic
+     * @param value          characteristic value
+     */
+    private void sendCharacteristicEvent(int what, BluetoothGattCharacteristic characteristic, byte[] value) {
+        GattEvent gattEvent = GattEvent.obtain();
+        gattEvent.characteristic = characteristic;
+        gattEvent.value = value;
+        gattEvent.send(eventHandler, what);
+    }
+
+    /**
+     * Send a descriptor event to the main thread
+     *
+     * @param what       event code
+     * @param descriptor BluetoothGattDescriptor
+     * @param value      descriptor value
+     */
+    private void sendDescriptorEvent(int what, BluetoothGattDescriptor descriptor, byte[] value) {
+        GattEvent gattEvent = GattEvent.obtain();
+        gattEvent.descriptor = descriptor;
+        gattEvent.value = value;
+        gattEvent.send(eventHandler, what);
+    }
+
+    /**
+     * Dispatch an event to the listeners on the main thread, the pooled event of the message is recycled afterwards
+     *
+     * @param msg event message
+     */
+    private void handleEvent(@NonNull Message msg) {
+        GattEvent gattEvent = msg.obj instanceof GattEvent ? (GattEvent) msg.obj : null;
+        try {
+            OnBleConnectStateChangedListener onBleConnectStateChangedListener = this.onBleConnectStateChangedListener;
+            switch (msg.what) {
+                case EVENT_NOTIFICATION:
+                    if (gattEvent == null) {
+                        return;
+                    }
                     if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.phyUpdate(txPhy, rxPhy);
+                        onBleConnectStateChangedListener.receivedNotification(gattEvent.characteristic, gattEvent.value);
                     }
-                }
+                    if (gattEvent.characteristic != null) {
+                        notificationRouter.dispatch(gattEvent.characteristic, gattEvent.value);
+                    }
+                    break;
+                case EVENT_WRITE_CHARACTERISTIC:
+                    if (gattEvent == null) {
+                        return;
+                    }
+                    if (onBleConnectStateChangedListener != null) {
+                        onBleConnectStateChangedListener.writeCharacteristicData(gattEvent.characteristic, gattEvent.value);
+                    }
+                    for (OnBleCharacteristicWriteListener onBleCharacteristicWriteListener : onBleCharacteristicWriteListeners) {
+                        onBleCharacteristicWriteListener.onBleCharacteristicWrite(gattEvent.characteristic, gattEvent.value);
+                    }
+                    break;
+                case EVENT_WRITE_DESCRIPTOR:
+                    if (gattEvent == null) {
+                        return;
+                    }
+                    if (onBleConnectStateChangedListener != null) {
+                        onBleConnectStateChangedListener.writeDescriptor(gattEvent.descriptor, gattEvent.value);
+                    }
+                    for (OnBleDescriptorWriteListener onBleDescriptorWriteListener : onBleDescriptorWriteListeners) {
+                        onBleDescriptorWriteListener.onBleDescriptorWrite(gattEvent.descriptor, gattEvent.value);
+                    }
+                    break;
+                default:
+                    if (onBleConnectStateChangedListener != null) {
+                        dispatchConnectStateEvent(onBleConnectStateChangedListener, msg, gattEvent);
+                    }
+                    break;
             }
-        });
+        } finally {
+            if (gattEvent != null) {
+                gattEvent.recycle();
+            }
+        }
     }
 
-    private void performGattReadPhyListener(final int txPhy, final int rxPhy) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (BleBluetoothGattCallback.class) {
-                    if (onBleConnectStateChangedListener != null) {
-                        onBleConnectStateChangedListener.readPhy(txPhy, rxPhy);
-                    }
+    /**
+     * Dispatch an event that only the connect status changed listener receives
+     *
+     * @param onBleConnectStateChangedListener connect status changed listener
+     * @param msg                              event message
+     * @param gattEvent                        pooled event of the message
+     */
+    private static void dispatchConnectStateEvent(@NonNull OnBleConnectStateChangedListener onBleConnectStateChangedListener,
+                                                  @NonNull Message msg, @Nullable GattEvent gattEvent) {
+        switch (msg.what) {
+            case EVENT_DISCONNECTED:
+                onBleConnectStateChangedListener.disconnected();
+                break;
+            case EVENT_GATT_STATUS_ERROR:
+                onBleConnectStateChangedListener.gattStatusError(msg.arg1);
+                break;
+            case EVENT_CONNECTING:
+                onBleConnectStateChangedListener.connecting();
+                break;
+            case EVENT_CONNECTED:
+                onBleConnectStateChangedListener.connected();
+                break;
+            case EVENT_AUTO_DISCOVER_SERVICES_FAILED:
+                onBleConnectStateChangedListener.autoDiscoverServicesFailed();
+                break;
+            case EVENT_DISCONNECTING:
+                onBleConnectStateChangedListener.disconnecting();
+                break;
+            case EVENT_UNKNOWN_STATUS:
+                onBleConnectStateChangedListener.unknownStatus(msg.arg1);
+                break;
+            case EVENT_PERFORM_TASK_FAILED:
+                if (gattEvent != null) {
+                    onBleConnectStateChangedListener.gattPerformTaskFailed(gattEvent.status, gattEvent.methodName);
                 }
-            }
-        });
+                break;
+            case EVENT_SERVICES_DISCOVERED:
+                onBleConnectStateChangedListener.servicesDiscovered();
+                break;
+            case EVENT_READ_CHARACTERISTIC:
+                if (gattEvent != null) {
+                    onBleConnectStateChangedListener.readCharacteristicData(gattEvent.characteristic, gattEvent.value);
+                }
+                break;
+            case EVENT_READ_DESCRIPTOR:
+                if (gattEvent != null) {
+                    onBleConnectStateChangedListener.readDescriptor(gattEvent.descriptor, gattEvent.value);
+                }
+                break;
+            case EVENT_RELIABLE_WRITE_COMPLETED:
+                onBleConnectStateChangedListener.reliableWriteCompleted();
+                break;
+            case EVENT_READ_REMOTE_RSSI:
+                onBleConnectStateChangedListener.readRemoteRssi(msg.arg1);
+                break;
+            case EVENT_MTU_CHANGED:
+                onBleConnectStateChangedListener.mtuChanged(msg.arg1);
+                break;
+            case EVENT_PHY_UPDATE:
+                onBleConnectStateChangedListener.phyUpdate(msg.arg1, msg.arg2);
+                break;
+            case EVENT_READ_PHY:
+                onBleConnectStateChangedListener.readPhy(msg.arg1, msg.arg2);
+                break;
+            default:
+                DebugUtil.warnOut(TAG, "unknown event : " + msg.what);
+                break;
+        }
     }
 }
@@ -6,8 +6,17 @@ import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothProfile;
+import android.os.Handler;
+import android.os.Message;
 
-import java.util.HashMap;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * BLE Gatt callback for multiple connections
@@ -21,9 +30,71 @@ public final class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
 
     private static final String TAG = BleBluetoothMultiGattCallback.class.getSimpleName();
 
+    /*
+     * event codes of the messages sent to the main thread
+     */
+    private static final int EVENT_PHY_UPDATE = 1;
+    private static final int EVENT_PHY_READ = 2;
+    private static final int EVENT_DISCONNECTED = 3;
+    private static final int EVENT_CONNECTING = 4;
+    private static final int EVENT_CONNECTED = 5;
+    private static final int EVENT_AUTO_DISCOVER_SERVICES_FAILED = 6;
+    private static final int EVENT_DISCONNECTING = 7;
+    private static final int EVENT_UNKNOWN_STATE = 8;
+    private static final int EVENT_SERVICES_DISCOVERED = 9;
+    private static final int EVENT_CHARACTERISTIC_READ = 10;
+    private static final int EVENT_CHARACTERISTIC_WRITE = 11;
+    private static final int EVENT_CHARACTERISTIC_CHANGED = 12;
+    private static final int EVENT_DESCRIPTOR_READ = 13;
+    private static final int EVENT_DESCRIPTOR_WRITE = 14;
+    private static final int EVENT_RELIABLE_WRITE_COMPLETED = 15;
+    private static final int EVENT_READ_REMOTE_RSSI = 16;
+    private static final int EVENT_MTU_CHANGED = 17;
+
     /*-----------------------------------field variables-----------------------------------*/
 
-    HashMap<String, BaseBleConnectCallback> callbackHashMap = new HashMap<>();
+    /**
+     * connect callback of every connection, read by the GATT callbacks without locking
+     */
+    final ConcurrentHashMap<String, BaseBleConnectCallback> callbackHashMap = new ConcurrentHashMap<>();
+
+    /**
+     * GATT operation queue of every connection
+     */
+    private final ConcurrentHashMap<String, GattOperationQueue> gattOperationQueueHashMap = new ConcurrentHashMap<>();
+
+    /**
+     * library internal notification listeners of every connection, routed by characteristic
+     */
+    private final ConcurrentHashMap<String, NotificationRouter> notificationRouterHashMap = new ConcurrentHashMap<>();
+
+    /**
+     * resolved characteristics of every connection
+     */
+    private final ConcurrentHashMap<String, GattHandleTable> gattHandleTableHashMap = new ConcurrentHashMap<>();
+
+    /**
+     * addresses of the connections whose stale platform GATT cache was refreshed once
+     */
+    private final Set<String> gattCacheRefreshedAddresses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * addresses of the connections that discover services again after a stale platform cache was refreshed,
+     * the result is not reported a second time
+     */
+    private final Set<String> rediscoveringAddresses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * handler dispatching the GATT events of all connections on the main thread, the looper is shared with
+     * {@link BleManager#getHandler()} so the events keep their order with the other posted callbacks
+     */
+    private final Handler eventHandler = new Handler(BleManager.getHandler().getLooper(), new Handler.Callback() {
+        @Override
+        public boolean handleMessage(@NonNull Message msg) {
+            handleEvent(msg);
+            return true;
+        }
+    });
 
     /*-----------------------------------override method-----------------------------------*/
 
@@ -81,14 +152,21 @@ public final class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
 
         String gattAddress = gatt.getDevice().getAddress();
         BaseBleConnectCallback baseBleConnectCallback = callbackHashMap.get(gattAddress);
+        invalidateGattHandles(gattAddress);
         switch (newState) {
             case BluetoothGatt.STATE_DISCONNECTED:
+                GattOperationQueue gattOperationQueue = getGattOperationQueue(gattAddress);
+                if (gattOperationQueue != null) {
+                    gattOperationQueue.cancelAll();
+                }
                 triggerDeviceDisconnectedCallback(gatt, baseBleConnectCallback);
                 break;
             case BluetoothGatt.STATE_CONNECTING:
                 triggerDeviceConnectingCallback(gatt, baseBleConnectCallback);
                 break;
             case BluetoothGatt.STATE_CONNECTED:
+                gattCacheRefreshedAddresses.remove(gattAddress);
+                rediscoveringAddresses.remove(gattAddress);
                 triggerDeviceConnectedCallback(gatt, baseBleConnectCallback);
                 if (!gatt.discoverServices()) {
                     triggerDeviceAutoDiscoverServiceFailedCallback(gatt, baseBleConnectCallback);
@@ -115,7 +193,18 @@ public final class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
     public void onServicesDiscovered(final BluetoothGatt gatt, final int status) {
         String gattAddress = gatt.getDevice().getAddress();
         BaseBleConnectCallback baseBleConnectCallback = callbackHashMap.get(gattAddress);
-        triggerDeviceServiceDiscoveredCallback(gatt, status, baseBleConnectCallback);
+        invalidateGattHandles(gattAddress);
+        boolean rediscovered = rediscoveringAddresses.remove(gattAddress);
+        if (rediscovered && BluetoothGatt.GATT_SUCCESS == status) {
+            if (baseBleConnectCallback != null) {
+                baseBleConnectCallback.setServiceDiscovered(true);
+            }
+        } else {
+            triggerDeviceServiceDiscoveredCallback(gatt, status, baseBleConnectCallback);
+        }
+        if (BluetoothGatt.GATT_SUCCESS == status) {
+            validateGattDatabase(gatt);
+        }
     }
 
     /**
@@ -131,6 +220,7 @@ public final class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
         String gattAddress = gatt.getDevice().getAddress();
         BaseBleConnectCallback baseBleConnectCallback = callbackHashMap.get(gattAddress);
         byte[] values = characteristic.getValue();
+        completeGattOperation(gattAddress, GattOperationQueue.TYPE_READ_CHARACTERISTIC, characteristic, status, values, 0);
         triggerDeviceCharacteristicReadCallback(gatt, characteristic, status, baseBleConnectCallback, values);
     }
 
@@ -154,6 +244,7 @@ public final class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
         String gattAddress = gatt.getDevice().getAddress();
         byte[] values = characteristic.getValue();
         BaseBleConnectCallback baseBleConnectCallback = callbackHashMap.get(gattAddress);
+        completeGattOperation(gattAddress, GattOperationQueue.TYPE_WRITE_CHARACTERISTIC, characteristic, status, values, 0);
         triggerDeviceCharacteristicWriteCallback(gatt, characteristic, status, values, baseBleConnectCallback);
     }
 
@@ -167,8 +258,11 @@ public final class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
     public void onCharacteristicChanged(final BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
         String gattAddress = gatt.getDevice().getAddress();
         BaseBleConnectCallback baseBleConnectCallback = callbackHashMap.get(gattAddress);
+        if (GattDatabaseCache.isServiceChanged(characteristic)) {
+            onServiceChanged(gatt, baseBleConnectCallback);
+        }
         byte[] values = characteristic.getValue();
-        triggerDeviceCharacteristicChangedCallback(gatt, characteristic, values, baseBleConnectCallback);
+        triggerDeviceCharacteristicChangedCallback(gatt, characteristic, values, baseBleConnectCallback, notificationRouterHashMap.get(gattAddress));
     }
 
     /**
@@ -201,6 +295,7 @@ public final class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
         String gattAddress = gatt.getDevice().getAddress();
         byte[] values = descriptor.getValue();
         BaseBleConnectCallback baseBleConnectCallback = callbackHashMap.get(gattAddress);
+        completeGattOperation(gattAddress, GattOperationQueue.TYPE_WRITE_DESCRIPTOR, descriptor, status, values, 0);
         triggerDeviceDescriptorWriteCallback(gatt, descriptor, status, values, baseBleConnectCallback);
     }
 
@@ -231,6 +326,7 @@ public final class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
     public void onReadRemoteRssi(final BluetoothGatt gatt, final int rssi, final int status) {
         String gattAddress = gatt.getDevice().getAddress();
         BaseBleConnectCallback baseBleConnectCallback = callbackHashMap.get(gattAddress);
+        completeGattOperation(gattAddress, GattOperationQueue.TYPE_READ_RSSI, null, status, null, rssi);
         triggerDeviceReadRemoteRssiCallback(gatt, rssi, status, baseBleConnectCallback);
     }
 
@@ -248,6 +344,7 @@ public final class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
     @Override
     public void onMtuChanged(final BluetoothGatt gatt, final int mtu, final int status) {
         String gattAddress = gatt.getDevice().getAddress();
+        completeGattOperation(gattAddress, GattOperationQueue.TYPE_REQUEST_MTU, null, status, null, mtu);
         if (callbackHashMap.containsKey(gattAddress)) {
             final BaseBleConnectCallback baseBleConnectCallback = callbackHashMap.get(gattAddress);
             triggerDeviceMtuChangedCallback(gatt, mtu, status, baseBleConnectCallback);
@@ -256,239 +353,444 @@ public final class BleBluetoothMultiGattCallback extends BluetoothGattCallback {
 
     public void close() {
         callbackHashMap.clear();
-        callbackHashMap = null;
+        for (GattOperationQueue gattOperationQueue : gattOperationQueueHashMap.values()) {
+            gattOperationQueue.setBluetoothGatt(null);
+        }
+        gattOperationQueueHashMap.clear();
+        notificationRouterHashMap.clear();
+        for (GattHandleTable gattHandleTable : gattHandleTableHashMap.values()) {
+            gattHandleTable.invalidate();
+        }
+        gattHandleTableHashMap.clear();
     }
 
-    /*-----------------------------------private method-----------------------------------*/
+    /*-----------------------------------package private method-----------------------------------*/
 
-    private void triggerDevicePhyUpdateCallback(final BluetoothGatt gatt, final int txPhy, final int rxPhy, final int status, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onPhyUpdate", status);
-                    } else {
-                        baseBleConnectCallback.onPhyUpdate(gatt, txPhy, rxPhy);
-                    }
-                }
-            }
-        });
+    /**
+     * get GATT operation queue of a connection
+     *
+     * @param address device address
+     * @return GATT operation queue, null means not connected
+     */
+    @Nullable
+    GattOperationQueue getGattOperationQueue(@NonNull String address) {
+        return gattOperationQueueHashMap.get(address);
     }
 
-    private void triggerDevicePhyReadCallback(final BluetoothGatt gatt, final int txPhy, final int rxPhy, final int status, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onPhyRead", status);
-                    } else {
-                        baseBleConnectCallback.onPhyRead(gatt, txPhy, rxPhy);
-                    }
-                }
+    /**
+     * Bind the GATT of a connection to its operation queue, the queue is created on first use
+     *
+     * @param address       device address
+     * @param bluetoothGatt GATT of the connection
+     */
+    void setBluetoothGatt(@NonNull String address, @Nullable BluetoothGatt bluetoothGatt) {
+        GattOperationQueue gattOperationQueue = gattOperationQueueHashMap.get(address);
+        if (gattOperationQueue == null) {
+            GattOperationQueue newGattOperationQueue = new GattOperationQueue();
+            gattOperationQueue = gattOperationQueueHashMap.putIfAbsent(address, newGattOperationQueue);
+            if (gattOperationQueue == null) {
+                gattOperationQueue = newGattOperationQueue;
             }
-        });
+        }
+        gattOperationQueue.setBluetoothGatt(bluetoothGatt);
+        invalidateGattHandles(address);
     }
 
-    private void triggerDeviceDisconnectedCallback(final BluetoothGatt gatt, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    baseBleConnectCallback.setConnected(false);
-                    baseBleConnectCallback.setServiceDiscovered(false);
-                    baseBleConnectCallback.onDisConnected(gatt);
-                }
+    /**
+     * get the resolved characteristics of a connection, the table is created on first use
+     *
+     * @param address device address
+     * @return handle table
+     */
+    @NonNull
+    GattHandleTable getGattHandleTable(@NonNull String address) {
+        GattHandleTable gattHandleTable = gattHandleTableHashMap.get(address);
+        if (gattHandleTable == null) {
+            GattHandleTable newGattHandleTable = new GattHandleTable();
+            newGattHandleTable.setAddress(address);
+            gattHandleTable = gattHandleTableHashMap.putIfAbsent(address, newGattHandleTable);
+            if (gattHandleTable == null) {
+                gattHandleTable = newGattHandleTable;
             }
-        });
+        }
+        return gattHandleTable;
     }
 
-    private void triggerDeviceConnectingCallback(final BluetoothGatt gatt, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    baseBleConnectCallback.onConnecting(gatt);
-                }
-            }
-        });
+    /**
+     * Remove the operation queue and the internal notification listeners of a connection and invalidate its resolved
+     * characteristics, pending operations are cancelled.The handle table is kept, so static values survive a reconnect.
+     *
+     * @param address device address
+     */
+    void removeGattOperationQueue(@NonNull String address) {
+        GattOperationQueue gattOperationQueue = gattOperationQueueHashMap.remove(address);
+        if (gattOperationQueue != null) {
+            gattOperationQueue.setBluetoothGatt(null);
+        }
+        notificationRouterHashMap.remove(address);
+        invalidateGattHandles(address);
     }
 
-    private void triggerDeviceConnectedCallback(final BluetoothGatt gatt, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    baseBleConnectCallback.setConnected(true);
-                    baseBleConnectCallback.onConnected(gatt);
-                }
-            }
-        });
+    /**
+     * add a library internal notification listener of one characteristic of a connection
+     *
+     * @param address                          device address
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener listener, called on the main thread
+     * @return true means successful
+     */
+    boolean addOnBleReceiveNotificationListener(@NonNull String address, @NonNull String characteristicUuid,
+                                                @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        return getNotificationRouter(address).addListener(characteristicUuid, onBleReceiveNotificationListener);
     }
 
-    private void triggerDeviceAutoDiscoverServiceFailedCallback(final BluetoothGatt gatt, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    baseBleConnectCallback.onServicesAutoDiscoverFailed(gatt);
-                }
-            }
-        });
+    /**
+     * remove a library internal notification listener of one characteristic of a connection
+     *
+     * @param address                          device address
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener listener
+     */
+    void removeOnBleReceiveNotificationListener(@NonNull String address, @NonNull String characteristicUuid,
+                                                @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        NotificationRouter notificationRouter = notificationRouterHashMap.get(address);
+        if (notificationRouter != null) {
+            notificationRouter.removeListener(characteristicUuid, onBleReceiveNotificationListener);
+        }
     }
 
-    private void triggerDeviceDisconnectingCallback(final BluetoothGatt gatt, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    baseBleConnectCallback.onDisconnecting(gatt);
-                }
-            }
-        });
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Report the result of a GATT operation to the queue of the connection
+     *
+     * @param address   device address
+     * @param type      operation type
+     * @param target    characteristic or descriptor of the callback, null for mtu requests and rssi reads
+     * @param status    status
+     * @param value     value of characteristic and descriptor operations
+     * @param intResult mtu or rssi
+     */
+    private void completeGattOperation(@NonNull String address, int type, @Nullable Object target, int status,
+                                       @Nullable byte[] value, int intResult) {
+        GattOperationQueue gattOperationQueue = getGattOperationQueue(address);
+        if (gattOperationQueue != null) {
+            gattOperationQueue.onOperationComplete(type, target, status, value, intResult);
+        }
     }
 
-    private void triggerDeviceUnknownStateCallback(final int state, final BluetoothGatt gatt, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    baseBleConnectCallback.onUnknownState(gatt, state);
-                }
-            }
-        });
+    /**
+     * Invalidate the resolved characteristics of a connection
+     *
+     * @param address device address
+     */
+    private void invalidateGattHandles(@NonNull String address) {
+        GattHandleTable gattHandleTable = gattHandleTableHashMap.get(address);
+        if (gattHandleTable != null) {
+            gattHandleTable.invalidate();
+        }
     }
 
-    private void triggerDeviceServiceDiscoveredCallback(final BluetoothGatt gatt, final int status, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onServicesDiscovered", status);
-                    } else {
-                        baseBleConnectCallback.setServiceDiscovered(true);
-                        baseBleConnectCallback.onServicesDiscovered(gatt);
-                    }
-                }
-            }
-        });
+    /**
+     * Invalidate the resolved characteristics of a connection and drop its static values, the GATT database changed
+     *
+     * @param address device address
+     */
+    private void resetGattHandles(@NonNull String address) {
+        GattHandleTable gattHandleTable = gattHandleTableHashMap.get(address);
+        if (gattHandleTable != null) {
+            gattHandleTable.reset();
+        }
     }
 
-    private void triggerDeviceCharacteristicReadCallback(final BluetoothGatt gatt, final BluetoothGattCharacteristic gattCharacteristic, final int status, final BaseBleConnectCallback baseBleConnectCallback, final byte[] values) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onCharacteristicRead", status);
-                    } else {
-                        baseBleConnectCallback.onCharacteristicRead(gatt, gattCharacteristic, values);
-                    }
-                }
+    /**
+     * get the notification router of a connection, the router is created on first use
+     *
+     * @param address device address
+     * @return notification router
+     */
+    @NonNull
+    private NotificationRouter getNotificationRouter(@NonNull String address) {
+        NotificationRouter notificationRouter = notificationRouterHashMap.get(address);
+        if (notificationRouter == null) {
+            NotificationRouter newNotificationRouter = new NotificationRouter();
+            notificationRouter = notificationRouterHashMap.putIfAbsent(address, newNotificationRouter);
+            if (notificationRouter == null) {
+                notificationRouter = newNotificationRouter;
             }
-        });
+        }
+        return notificationRouter;
     }
 
-    private void triggerDeviceCharacteristicWriteCallback(final BluetoothGatt gatt, final BluetoothGattCharacteristic gattCharacteristic, final int status, final byte[] values, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
+    /**
+     * Check the reported services against the stored GATT database of the device in the background.
+     * A stale platform cache is refreshed and the services are discovered again, once per connection,
+     * without reporting servicesDiscovered a second time.
+     *
+     * @param gatt GATT client
+     */
+    private void validateGattDatabase(@NonNull final BluetoothGatt gatt) {
+        final String address = gatt.getDevice().getAddress();
+        GattDatabaseCache.validate(gatt, getGattOperationQueue(address), new GattDatabaseCache.OnValidatedListener() {
             @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onCharacteristicWrite", status);
-                    } else {
-                        baseBleConnectCallback.onCharacteristicWrite(gatt, gattCharacteristic, values);
-                    }
+            public void onValidated(boolean valid, boolean changed) {
+                if (changed) {
+                    resetGattHandles(address);
+                }
+                if (valid) {
+                    return;
+                }
+                BaseBleConnectCallback baseBleConnectCallback = callbackHashMap.get(address);
+                if (baseBleConnectCallback == null || !baseBleConnectCallback.isConnected() || !gattCacheRefreshedAddresses.add(address)) {
+                    return;
+                }
+                DebugUtil.warnOut(TAG, address + " cached services are stale, discover services again");
+                rediscoveringAddresses.add(address);
+                if (GattDatabaseCache.refreshPlatformCache(gatt) && gatt.discoverServices()) {
+                    invalidateGattHandles(address);
+                    baseBleConnectCallback.setServiceDiscovered(false);
+                } else {
+                    rediscoveringAddresses.remove(address);
                 }
             }
         });
     }
 
-    private void triggerDeviceCharacteristicChangedCallback(final BluetoothGatt gatt, final BluetoothGattCharacteristic gattCharacteristic, final byte[] values, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    baseBleConnectCallback.onReceivedNotification(gatt, gattCharacteristic, values);
-                }
-            }
-        });
+    /**
+     * The remote device indicated that its services changed, drop the stored database and discover the services again
+     *
+     * @param gatt                   GATT client
+     * @param baseBleConnectCallback connect callback of the connection
+     */
+    private void onServiceChanged(@NonNull BluetoothGatt gatt, @Nullable BaseBleConnectCallback baseBleConnectCallback) {
+        String address = gatt.getDevice().getAddress();
+        DebugUtil.warnOut(TAG, address + " service changed");
+        GattDatabaseCache.invalidate(address);
+        resetGattHandles(address);
+        rediscoveringAddresses.remove(address);
+        if (baseBleConnectCallback != null) {
+            baseBleConnectCallback.setServiceDiscovered(false);
+        }
+        GattDatabaseCache.refreshPlatformCache(gatt);
+        if (!gatt.discoverServices()) {
+            DebugUtil.warnOut(TAG, address + " gatt.discoverServices() return false");
+        }
     }
 
-    private void triggerDeviceDescriptorReadCallback(final BluetoothGatt gatt, final BluetoothGattDescriptor gattDescriptor, final int status, final byte[] values, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onDescriptorRead", status);
-                    } else {
-                        baseBleConnectCallback.onDescriptorRead(gatt, gattDescriptor, values);
-                    }
-                }
-            }
-        });
+    private void triggerDevicePhyUpdateCallback(BluetoothGatt gatt, int txPhy, int rxPhy, int status, BaseBleConnectCallback baseBleConnectCallback) {
+        GattEvent gattEvent = obtainEvent(gatt, baseBleConnectCallback, status, "onPhyUpdate");
+        gattEvent.arg1 = txPhy;
+        gattEvent.arg2 = rxPhy;
+        gattEvent.send(eventHandler, EVENT_PHY_UPDATE);
     }
 
-    private void triggerDeviceDescriptorWriteCallback(final BluetoothGatt gatt, final BluetoothGattDescriptor gattDescriptor, final int status, final byte[] values, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onDescriptorWrite", status);
-                    } else {
-                        baseBleConnectCallback.onDescriptorWrite(gatt, gattDescriptor, values);
-                    }
-                }
-            }
-        });
+    private void triggerDevicePhyReadCallback(BluetoothGatt gatt, int txPhy, int rxPhy, int status, BaseBleConnectCallback baseBleConnectCallback) {
+        GattEvent gattEvent = obtainEvent(gatt, baseBleConnectCallback, status, "onPhyRead");
+        gattEvent.arg1 = txPhy;
+        gattEvent.arg2 = rxPhy;
+        gattEvent.send(eventHandler, EVENT_PHY_READ);
     }
 
-    private void triggerDeviceReliableWriteCompletedCallback(final BluetoothGatt gatt, final int status, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onReliableWriteCompleted", status);
-                    } else {
-                        baseBleConnectCallback.onReliableWriteCompleted(gatt);
-                    }
-                }
-            }
-        });
+    private void triggerDeviceDisconnectedCallback(BluetoothGatt gatt, BaseBleConnectCallback baseBleConnectCallback) {
+        obtainEvent(gatt, baseBleConnectCallback, BluetoothGatt.GATT_SUCCESS, null).send(eventHandler, EVENT_DISCONNECTED);
     }
 
-    private void triggerDeviceReadRemoteRssiCallback(final BluetoothGatt gatt, final int rssi, final int status, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onReliableWriteCompleted", status);
-                    } else {
-                        baseBleConnectCallback.onReadRemoteRssi(gatt, rssi);
-                    }
-                }
-            }
-        });
+    private void triggerDeviceConnectingCallback(BluetoothGatt gatt, BaseBleConnectCallback baseBleConnectCallback) {
+        obtainEvent(gatt, baseBleConnectCallback, BluetoothGatt.GATT_SUCCESS, null).send(eventHandler, EVENT_CONNECTING);
     }
 
-    private void triggerDeviceMtuChangedCallback(final BluetoothGatt gatt, final int mtu, final int status, final BaseBleConnectCallback baseBleConnectCallback) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (baseBleConnectCallback != null) {
-                    if (BluetoothGatt.GATT_SUCCESS != status) {
-                        baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gatt, "onReliableWriteCompleted", status);
-                    } else {
-                        baseBleConnectCallback.onMtuChanged(gatt, mtu);
-                    }
+    private void triggerDeviceConnectedCallback(BluetoothGatt gatt, BaseBleConnectCallback baseBleConnectCallback) {
+        obtainEvent(gatt, baseBleConnectCallback, BluetoothGatt.GATT_SUCCESS, null).send(eventHandler, EVENT_CONNECTED);
+    }
+
+    private void triggerDeviceAutoDiscoverServiceFailedCallback(BluetoothGatt gatt, BaseBleConnectCallback baseBleConnectCallback) {
+        obtainEvent(gatt, baseBleConnectCallback, BluetoothGatt.GATT_SUCCESS, null).send(eventHandler, EVENT_AUTO_DISCOVER_SERVICES_FAILED);
+    }
+
+    private void triggerDeviceDisconnectingCallback(BluetoothGatt gatt, BaseBleConnectCallback baseBleConnectCallback) {
+        obtainEvent(gatt, baseBleConnectCallback, BluetoothGatt.GATT_SUCCESS, null).send(eventHandler, EVENT_DISCONNECTING);
+    }
+
+    private void triggerDeviceUnknownStateCallback(int state, BluetoothGatt gatt, BaseBleConnectCallback baseBleConnectCallback) {
+        GattEvent gattEvent = obtainEvent(gatt, baseBleConnectCallback, BluetoothGatt.GATT_SUCCESS, null);
+        gattEvent.arg1 = state;
+        gattEvent.send(eventHandler, EVENT_UNKNOWN_STATE);
+    }
+
+    private void triggerDeviceServiceDiscoveredCallback(BluetoothGatt gatt, int status, BaseBleConnectCallback baseBleConnectCallback) {
+        obtainEvent(gatt, baseBleConnectCallback, status, "onServicesDiscovered").send(eventHandler, EVENT_SERVICES_DISCOVERED);
+    }
+
+    private void triggerDeviceCharacteristicReadCallback(BluetoothGatt gatt, BluetoothGattCharacteristic gattCharacteristic, int status, BaseBleConnectCallback baseBleConnectCallback, byte[] values) {
+        GattEvent gattEvent = obtainEvent(gatt, baseBleConnectCallback, status, "onCharacteristicRead");
+        gattEvent.characteristic = gattCharacteristic;
+        gattEvent.value = values;
+        gattEvent.send(eventHandler, EVENT_CHARACTERISTIC_READ);
+    }
+
+    private void triggerDeviceCharacteristicWriteCallback(BluetoothGatt gatt, BluetoothGattCharacteristic gattCharacteristic, int status, byte[] values, BaseBleConnectCallback baseBleConnectCallback) {
+        GattEvent gattEvent = obtainEvent(gatt, baseBleConnectCallback, status, "onCharacteristicWrite");
+        gattEvent.characteristic = gattCharacteristic;
+        gattEvent.value = values;
+        gattEvent.send(eventHandler, EVENT_CHARACTERISTIC_WRITE);
+    }
+
+    private void triggerDeviceCharacteristicChangedCallback(BluetoothGatt gatt, BluetoothGattCharacteristic gattCharacteristic, byte[] values, BaseBleConnectCallback baseBleConnectCallback,
+                                                            @Nullable NotificationRouter notificationRouter) {
+        GattEvent gattEvent = obtainEvent(gatt, baseBleConnectCallback, BluetoothGatt.GATT_SUCCESS, null);
+        gattEvent.characteristic = gattCharacteristic;
+        gattEvent.value = values;
+        gattEvent.notificationRouter = notificationRouter;
+        gattEvent.send(eventHandler, EVENT_CHARACTERISTIC_CHANGED);
+    }
+
+    private void triggerDeviceDescriptorReadCallback(BluetoothGatt gatt, BluetoothGattDescriptor gattDescriptor, int status, byte[] values, BaseBleConnectCallback baseBleConnectCallback) {
+        GattEvent gattEvent = obtainEvent(gatt, baseBleConnectCallback, status, "onDescriptorRead");
+        gattEvent.descriptor = gattDescriptor;
+        gattEvent.value = values;
+        gattEvent.send(eventHandler, EVENT_DESCRIPTOR_READ);
+    }
+
+    private void triggerDeviceDescriptorWriteCallback(BluetoothGatt gatt, BluetoothGattDescriptor gattDescriptor, int status, byte[] values, BaseBleConnectCallback baseBleConnectCallback) {
+        GattEvent gattEvent = obtainEvent(gatt, baseBleConnectCallback, status, "onDescriptorWrite");
+        gattEvent.descriptor = gattDescriptor;
+        gattEvent.value = values;
+        gattEvent.send(eventHandler, EVENT_DESCRIPTOR_WRITE);
+    }
+
+    private void triggerDeviceReliableWriteCompletedCallback(BluetoothGatt gatt, int status, BaseBleConnectCallback baseBleConnectCallback) {
+        obtainEvent(gatt, baseBleConnectCallback, status, "onReliableWriteCompleted").send(eventHandler, EVENT_RELIABLE_WRITE_COMPLETED);
+    }
+
+    private void triggerDeviceReadRemoteRssiCallback(BluetoothGatt gatt, int rssi, int status, BaseBleConnectCallback baseBleConnectCallback) {
+        GattEvent gattEvent = obtainEvent(gatt, baseBleConnectCallback, status, "onReliableWriteCompleted");
+        gattEvent.arg1 = rssi;
+        gattEvent.send(eventHandler, EVENT_READ_REMOTE_RSSI);
+    }
+
+    private void triggerDeviceMtuChangedCallback(BluetoothGatt gatt, int mtu, int status, BaseBleConnectCallback baseBleConnectCallback) {
+        GattEvent gattEvent = obtainEvent(gatt, baseBleConnectCallback, status, "onReliableWriteCompleted");
+        gattEvent.arg1 = mtu;
+        gattEvent.send(eventHandler, EVENT_MTU_CHANGED);
+    }
+
+    /**
+     * Get a pooled event filled with the arguments every GATT callback has
+     *
+     * @param gatt                   GATT client
+     * @param baseBleConnectCallback connect callback of the connection
+     * @param status                 GATT status
+     * @param methodName             method name reported when the status is not successful
+     * @return event
+     */
+    @NonNull
+    private static GattEvent obtainEvent(BluetoothGatt gatt, @Nullable BaseBleConnectCallback baseBleConnectCallback, int status, @Nullable String methodName) {
+        GattEvent gattEvent = GattEvent.obtain();
+        gattEvent.gatt = gatt;
+        gattEvent.baseBleConnectCallback = baseBleConnectCallback;
+        gattEvent.status = status;
+        gattEvent.methodName = methodName;
+        return gattEvent;
+    }
+
+    /**
+     * Dispatch an event to the connect callback on the main thread, the event is recycled afterwards
+     *
+     * @param msg event message
+     */
+    private static void handleEvent(@NonNull Message msg) {
+        if (!(msg.obj instanceof GattEvent)) {
+            return;
+        }
+        GattEvent gattEvent = (GattEvent) msg.obj;
+        try {
+            if (msg.what == EVENT_CHARACTERISTIC_CHANGED && gattEvent.notificationRouter != null && gattEvent.characteristic != null) {
+                gattEvent.notificationRouter.dispatch(gattEvent.characteristic, gattEvent.value);
+            }
+            BaseBleConnectCallback baseBleConnectCallback = gattEvent.baseBleConnectCallback;
+            if (baseBleConnectCallback != null) {
+                if (BluetoothGatt.GATT_SUCCESS != gattEvent.status && gattEvent.methodName != null) {
+                    baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(gattEvent.gatt, gattEvent.methodName, gattEvent.status);
+                } else {
+                    dispatchEvent(baseBleConnectCallback, msg.what, gattEvent);
                 }
             }
-        });
+        } finally {
+            gattEvent.recycle();
+        }
+    }
+
+    /**
+     * Dispatch a successful event to the connect callback
+     *
+     * @param baseBleConnectCallback connect callback of the connection
+     * @param what                   event code
+     * @param gattEvent              event
+     */
+    private static void dispatchEvent(@NonNull BaseBleConnectCallback baseBleConnectCallback, int what, @NonNull GattEvent gattEvent) {
+        BluetoothGatt gatt = gattEvent.gatt;
+        switch (what) {
+            case EVENT_PHY_UPDATE:
+                baseBleConnectCallback.onPhyUpdate(gatt, gattEvent.arg1, gattEvent.arg2);
+                break;
+            case EVENT_PHY_READ:
+                baseBleConnectCallback.onPhyRead(gatt, gattEvent.arg1, gattEvent.arg2);
+                break;
+            case EVENT_DISCONNECTED:
+                baseBleConnectCallback.setConnected(false);
+                baseBleConnectCallback.setServiceDiscovered(false);
+                baseBleConnectCallback.setMtu(BleConstants.DEFAULT_ATT_MTU);
+                baseBleConnectCallback.onDisConnected(gatt);
+                break;
+            case EVENT_CONNECTING:
+                baseBleConnectCallback.onConnecting(gatt);
+                break;
+            case EVENT_CONNECTED:
+                baseBleConnectCallback.setConnected(true);
+                baseBleConnectCallback.setMtu(BleConstants.DEFAULT_ATT_MTU);
+                baseBleConnectCallback.onConnected(gatt);
+                break;
+            case EVENT_AUTO_DISCOVER_SERVICES_FAILED:
+                baseBleConnectCallback.onServicesAutoDiscoverFailed(gatt);
+                break;
+            case EVENT_DISCONNECTING:
+                baseBleConnectCallback.onDisconnecting(gatt);
+                break;
+            case EVENT_UNKNOWN_STATE:
+                baseBleConnectCallback.onUnknownState(gatt, gattEvent.arg1);
+                break;
+            case EVENT_SERVICES_DISCOVERED:
+                baseBleConnectCallback.setServiceDiscovered(true);
+                baseBleConnectCallback.onServicesDiscovered(gatt);
+                break;
+            case EVENT_CHARACTERISTIC_READ:
+                baseBleConnectCallback.onCharacteristicRead(gatt, gattEvent.characteristic, gattEvent.value);
+                break;
+            case EVENT_CHARACTERISTIC_WRITE:
+                baseBleConnectCallback.onCharacteristicWrite(gatt, gattEvent.characteristic, gattEvent.value);
+                break;
+            case EVENT_CHARACTERISTIC_CHANGED:
+                baseBleConnectCallback.onReceivedNotification(gatt, gattEvent.characteristic, gattEvent.value);
+                break;
+            case EVENT_DESCRIPTOR_READ:
+                baseBleConnectCallback.onDescriptorRead(gatt, gattEvent.descriptor, gattEvent.value);
+                break;
+            case EVENT_DESCRIPTOR_WRITE:
+                baseBleConnectCallback.onDescriptorWrite(gatt, gattEvent.descriptor, gattEvent.value);
+                break;
+            case EVENT_RELIABLE_WRITE_COMPLETED:
+                baseBleConnectCallback.onReliableWriteCompleted(gatt);
+                break;
+            case EVENT_READ_REMOTE_RSSI:
+                baseBleConnectCallback.onReadRemoteRssi(gatt, gattEvent.arg1);
+                break;
+            case EVENT_MTU_CHANGED:
+                baseBleConnectCallback.setMtu(gattEvent.arg1);
+                baseBleConnectCallback.onMtuChanged(gatt, gattEvent.arg1);
+                break;
+            default:
+                DebugUtil.warnOut(TAG, "unknown event : " + what);
+                break;
+        }
     }
 }
@@ -6,7 +6,6 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
 import android.content.Context;
@@ -18,16 +17,21 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import com.sscl.blelibrary.enums.CharacteristicCachePolicy;
 import com.sscl.blelibrary.enums.PhyMask;
 import com.sscl.blelibrary.enums.Transport;
 import com.sscl.blelibrary.interfaces.Connector;
+import com.sscl.blelibrary.interfaces.LargeDataResumeCallback;
 import com.sscl.blelibrary.interfaces.OnBleCharacteristicWriteListener;
 import com.sscl.blelibrary.interfaces.OnBleConnectStateChangedListener;
 import com.sscl.blelibrary.interfaces.OnBleDescriptorWriteListener;
 import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
 import com.sscl.blelibrary.interfaces.OnDeviceBondStateChangedListener;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
 import com.sscl.blelibrary.interfaces.OnLargeDataSendStateChangedListener;
+import com.sscl.blelibrary.interfaces.OnLargeDataStreamStateChangedListener;
 import com.sscl.blelibrary.interfaces.OnLargeDataWriteWithNotificationSendStateChangedListener;
+import com.sscl.blelibrary.interfaces.OnResumableLargeDataStreamStateChangedListener;
 
 import java.util.List;
 import java.util.UUID;
@@ -45,22 +49,18 @@ public final class BleConnector implements Connector {
      * TAG
      */
     private static final String TAG = BleConnector.class.getSimpleName();
-    /**
-     * default value of maximum length of data packets sent while Bluetooth connection
-     */
-    private static final int PACKAGE_MAX_LENGTH = 20;
-    /**
-     * default value of maximum length of valid data transmitted per packet when large packet transmission
-     */
-    private static final int LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH = 17;
     /**
      * default value of try count
      */
     private static final int DEFAULT_MAX_TRY_COUNT = 10;
     /**
-     * default value of resend delay when data transmission fails
+     * default count of stream packets written but not yet confirmed
      */
-    private static final int RETRY_DELAY_TIME = 100;
+    private static final int DEFAULT_STREAM_WINDOW_SIZE = 8;
+    /**
+     * default priority of a stream
+     */
+    private static final int DEFAULT_STREAM_PRIORITY = 1;
 
     /*-----------------------------------field variables-----------------------------------*/
 
@@ -88,14 +88,75 @@ public final class BleConnector implements Connector {
     @Nullable
     private String bondAddress;
     /**
-     * Whether to continue writing large amounts of data.
-     * requires receive remote device notification data and return true in callback {@link OnLargeDataWriteWithNotificationSendStateChangedListener}
+     * running large data transfer that requires remote device notification
+     */
+    @Nullable
+    private volatile LargeDataTransfer largeDataWithNotificationTransfer;
+    /**
+     * running large data transfer
+     */
+    @Nullable
+    private volatile LargeDataTransfer largeDataTransfer;
+    /**
+     * running large data stream started by writeLargeDataStream
      */
-    private boolean writeLargeDataWithNotificationContinueFlag;
+    @Nullable
+    private volatile LargeDataStreamSession largeDataStreamSession;
+    /**
+     * connection of the large data streams
+     */
+    private final LargeDataLink largeDataLink = new LargeDataLink() {
+        @Override
+        public int getMtu() {
+            return BleConnector.this.getMtu();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return BleConnector.this.isConnected();
+        }
+
+        @Override
+        public boolean canWriteNoResponse(@NonNull String serviceUuid, @NonNull String characteristicUuid) {
+            return BleConnector.this.canWriteNoResponse(serviceUuid, characteristicUuid);
+        }
+
+        @Override
+        public boolean writeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull byte[] data, int writeType,
+                                 @NonNull OnGattOperationResultListener<byte[]> listener) {
+            return bluetoothLeService != null && bluetoothLeService.writeData(serviceUuid, characteristicUuid, data, writeType, listener);
+        }
+
+        @Override
+        public boolean enableNotification(@NonNull String serviceUuid, @NonNull String characteristicUuid,
+                                          @Nullable OnGattOperationResultListener<byte[]> listener) {
+            return BleConnector.this.enableNotification(serviceUuid, characteristicUuid, true, listener);
+        }
+
+        @Override
+        public boolean addOnBleReceiveNotificationListener(@NonNull String characteristicUuid,
+                                                           @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+            return BleConnector.this.addOnBleReceiveNotificationListener(characteristicUuid, onBleReceiveNotificationListener);
+        }
+
+        @Override
+        public void removeOnBleReceiveNotificationListener(@NonNull String characteristicUuid,
+                                                           @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+            BleConnector.this.removeOnBleReceiveNotificationListener(characteristicUuid, onBleReceiveNotificationListener);
+        }
+
+        @Override
+        public void dropPendingWrites() {
+        }
+
+        @Override
+        public void onTransferFinished() {
+        }
+    };
     /**
-     * Whether to keep writing large amounts of data
+     * scheduler interleaving the packets of the large data streams
      */
-    private boolean writeLargeDataContinueFlag;
+    private final LargeDataTransferScheduler largeDataTransferScheduler = new LargeDataTransferScheduler(largeDataLink);
 
     /**
      * Callback triggered when connect state changed
@@ -108,7 +169,13 @@ public final class BleConnector implements Connector {
     @Nullable
     private BluetoothLeService bluetoothLeService;
 
-    private boolean closed;
+    private volatile boolean closed;
+
+    /**
+     * pending connect timeout on the library timer wheel
+     */
+    @Nullable
+    private TimerWheel.Timeout connectTimeout;
 
     /*-----------------------------------Constructor-----------------------------------*/
 
@@ -157,6 +224,20 @@ public final class BleConnector implements Connector {
         this.connectTimeOut = connectTimeOut;
     }
 
+    /**
+     * set timeout of queued GATT operations(read, write, notification, mtu and rssi requests)
+     *
+     * @param gattOperationTimeOut timeout(unit:ms), 0 means no timeout
+     * @return true means successful
+     */
+    public synchronized boolean setGattOperationTimeOut(@IntRange(from = 0) long gattOperationTimeOut) {
+        if (bluetoothLeService == null) {
+            return false;
+        }
+        bluetoothLeService.setGattOperationTimeout(gattOperationTimeOut);
+        return true;
+    }
+
     /**
      * get timeout for sending large data pack
      *
@@ -210,7 +291,33 @@ public final class BleConnector implements Connector {
     @Override
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
     public synchronized boolean requestMtu(int mtu) {
-        return bluetoothLeService != null && bluetoothLeService.requestMtu(mtu);
+        return requestMtu(mtu, null);
+    }
+
+    /**
+     * request change mtu value.The request is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param mtu      mtu value
+     * @param listener result listener of this request, the result is the new mtu
+     * @return true means request queued successful.
+     */
+    @Override
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    public synchronized boolean requestMtu(int mtu, @Nullable OnGattOperationResultListener<Integer> listener) {
+        return bluetoothLeService != null && bluetoothLeService.requestMtu(mtu, listener);
+    }
+
+    /**
+     * get negotiated ATT MTU of the connection.Large data transfers size their packets by it.
+     *
+     * @return ATT MTU, 23 before any mtu exchange
+     */
+    @Override
+    public int getMtu() {
+        if (bluetoothLeService == null) {
+            return BleConstants.DEFAULT_ATT_MTU;
+        }
+        return bluetoothLeService.getMtu();
     }
 
     /**
@@ -591,8 +698,7 @@ public final class BleConnector implements Connector {
         if (BleManager.getContext() == null) {
             return false;
         }
-        writeLargeDataWithNotificationContinueFlag = false;
-        writeLargeDataContinueFlag = false;
+        cancelLargeDataTransfers();
         bondAddress = null;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             boundBleBroadcastReceiver.setOnDeviceBondStateChangedListener(null);
@@ -616,6 +722,10 @@ public final class BleConnector implements Connector {
         }
         bluetoothLeService = null;
         closed = true;
+        if (connectTimeout != null) {
+            connectTimeout.cancel();
+            connectTimeout = null;
+        }
         return true;
     }
 
@@ -715,7 +825,33 @@ public final class BleConnector implements Connector {
      */
     @Override
     public void writeLargeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull byte[] largeData, @IntRange(from = 0) int packageDelayTime, @IntRange(from = 0) int maxTryCount, @Nullable OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener, boolean autoFormat) {
-        startThreadToWriteLargeData(serviceUuid, characteristicUuid, largeData, largeData.length, packageDelayTime, maxTryCount, onLargeDataSendStateChangedListener, autoFormat);
+        writeLargeData(serviceUuid, characteristicUuid, LargeDataSource.fromBytes(largeData), packageDelayTime, maxTryCount, onLargeDataSendStateChangedListener, autoFormat);
+    }
+
+    /**
+     * Send large amounts of data to remote devices.Packets are read from the source as they are sent.
+     *
+     * @param serviceUuid                         Service UUID
+     * @param characteristicUuid                  characteristic UUID
+     * @param largeDataSource                     source of the large data, closed when the transfer ends
+     * @param packageDelayTime                    Time interval between each packet of data
+     * @param maxTryCount                         Maximum number of retransmissions per packet of data
+     * @param onLargeDataSendStateChangedListener Callback during large data transmission
+     * @param autoFormat                          whether to format the packet
+     */
+    @Override
+    public void writeLargeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull LargeDataSource largeDataSource, @IntRange(from = 0) int packageDelayTime, @IntRange(from = 0) int maxTryCount, @Nullable OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener, boolean autoFormat) {
+        if (!isInitialized()) {
+            largeDataSource.closeQuietly();
+            performLargeDataSendStartFailedListener(onLargeDataSendStateChangedListener);
+            return;
+        }
+        if (largeDataTransfer != null) {
+            largeDataTransfer.cancel();
+        }
+        largeDataTransfer = new LargeDataTransfer(this, serviceUuid, characteristicUuid, null, largeDataSource, autoFormat,
+                packageDelayTime, maxTryCount, sendLargeDataTimeOut, onLargeDataSendStateChangedListener, null);
+        largeDataTransfer.start();
     }
 
     /**
@@ -734,12 +870,26 @@ public final class BleConnector implements Connector {
      * @param serviceUUID        service UUID
      * @param characteristicUUID characteristic UUID
      * @param data               data
-     * @return true means request successful
+     * @return true means request queued successful, a later failure is reported by {@link OnBleConnectStateChangedListener#gattPerformTaskFailed(int, String)}
      */
     @Override
     public boolean writeData(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] data) {
+        return writeData(serviceUUID, characteristicUUID, data, null);
+    }
+
+    /**
+     * write data to remote device.The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param data               data
+     * @param listener           result listener of this write, the result is the written value
+     * @return true means request queued successful
+     */
+    @Override
+    public boolean writeData(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] data, @Nullable OnGattOperationResultListener<byte[]> listener) {
         DebugUtil.warnOut(TAG, "bluetoothLeService == " + bluetoothLeService);
-        return bluetoothLeService != null && bluetoothLeService.writeData(serviceUUID, characteristicUUID, data);
+        return bluetoothLeService != null && bluetoothLeService.writeData(serviceUUID, characteristicUUID, data, listener);
     }
 
     /**
@@ -747,11 +897,24 @@ public final class BleConnector implements Connector {
      *
      * @param serviceUUID        service UUID
      * @param characteristicUUID characteristic UUID
-     * @return true means request successful
+     * @return true means request queued successful, a later failure is reported by {@link OnBleConnectStateChangedListener#gattPerformTaskFailed(int, String)}
      */
     @Override
     public boolean readData(@NonNull String serviceUUID, @NonNull String characteristicUUID) {
-        return bluetoothLeService != null && bluetoothLeService.readData(serviceUUID, characteristicUUID);
+        return readData(serviceUUID, characteristicUUID, null);
+    }
+
+    /**
+     * read data from remote device.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param listener           result listener of this read, the result is the read value
+     * @return true means request queued successful
+     */
+    @Override
+    public boolean readData(@NonNull String serviceUUID, @NonNull String characteristicUUID, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bluetoothLeService != null && bluetoothLeService.readData(serviceUUID, characteristicUUID, listener);
     }
 
     /**
@@ -764,7 +927,100 @@ public final class BleConnector implements Connector {
      */
     @Override
     public boolean enableNotification(@NonNull String serviceUUID, @NonNull String characteristicUUID, boolean enable) {
-        return bluetoothLeService != null && bluetoothLeService.enableNotification(serviceUUID, characteristicUUID, enable);
+        return enableNotification(serviceUUID, characteristicUUID, enable, null);
+    }
+
+    /**
+     * enable or disable notification.The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param enable             true means enable notification,false means disable notification
+     * @param listener           result listener of the descriptor write
+     * @return true means successful
+     */
+    @Override
+    public boolean enableNotification(@NonNull String serviceUUID, @NonNull String characteristicUUID, boolean enable, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bluetoothLeService != null && bluetoothLeService.enableNotification(serviceUUID, characteristicUUID, enable, listener);
+    }
+
+    /**
+     * Resolve a characteristic once, requests through the returned handle skip looking it up again.
+     * The handle becomes invalid when the connection is lost or the services are discovered again.
+     *
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @return resolved characteristic, null means the characteristic is not found
+     */
+    @Override
+    @Nullable
+    public GattCharacteristicHandle resolveCharacteristic(@NonNull String serviceUUID, @NonNull String characteristicUUID) {
+        return bluetoothLeService == null ? null : bluetoothLeService.resolveCharacteristic(serviceUUID, characteristicUUID);
+    }
+
+    /**
+     * write data to remote device through a resolved characteristic.The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param data                     data
+     * @param listener                 result listener of this write, the result is the written value
+     * @return true means request queued successful, false means the handle is invalid
+     */
+    @Override
+    public boolean writeData(@NonNull GattCharacteristicHandle gattCharacteristicHandle, @NonNull byte[] data, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bluetoothLeService != null && bluetoothLeService.writeData(gattCharacteristicHandle, data, 0, listener);
+    }
+
+    /**
+     * read data from remote device through a resolved characteristic.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param listener                 result listener of this read, the result is the read value
+     * @return true means request queued successful, false means the handle is invalid
+     */
+    @Override
+    public boolean readData(@NonNull GattCharacteristicHandle gattCharacteristicHandle, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bluetoothLeService != null && bluetoothLeService.readData(gattCharacteristicHandle, listener);
+    }
+
+    /**
+     * enable or disable notification of a resolved characteristic.The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param enable                   true means enable notification,false means disable notification
+     * @param listener                 result listener of the descriptor write
+     * @return true means successful, false means the handle is invalid
+     */
+    @Override
+    public boolean enableNotification(@NonNull GattCharacteristicHandle gattCharacteristicHandle, boolean enable, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bluetoothLeService != null && bluetoothLeService.enableNotification(gattCharacteristicHandle, enable, listener);
+    }
+
+    /**
+     * set how values read from a characteristic are cached.Reads of a characteristic made while a read of it is
+     * outstanding always share its result. Cached values are dropped when the characteristic is written, when the
+     * connection is lost and when the services are discovered again.
+     * Reads answered from the cache or by an outstanding read trigger only their own result listener.
+     *
+     * @param characteristicUUID characteristic UUID
+     * @param policy             cache policy
+     * @param ttl                time to live of a value for {@link CharacteristicCachePolicy#TTL}(unit:ms), ignored by the other policies
+     * @return true means successful
+     */
+    @Override
+    public boolean setCharacteristicCachePolicy(@NonNull String characteristicUUID, @NonNull CharacteristicCachePolicy policy, @IntRange(from = 0) long ttl) {
+        if (bluetoothLeService == null) {
+            return false;
+        }
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(characteristicUUID);
+        } catch (IllegalArgumentException e) {
+            DebugUtil.warnOut(TAG, "invalid characteristic UUID : " + characteristicUUID);
+            return false;
+        }
+        bluetoothLeService.setCharacteristicCachePolicy(uuid, policy, ttl);
+        return true;
     }
 
     /**
@@ -774,7 +1030,18 @@ public final class BleConnector implements Connector {
      */
     @Override
     public boolean getRssi() {
-        return bluetoothLeService != null && bluetoothLeService.getRssi();
+        return getRssi(null);
+    }
+
+    /**
+     * get remote device RSSI.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param listener result listener of this read, the result is the rssi
+     * @return true means request queued successful
+     */
+    @Override
+    public boolean getRssi(@Nullable OnGattOperationResultListener<Integer> listener) {
+        return bluetoothLeService != null && bluetoothLeService.getRssi(listener);
     }
 
     /**
@@ -968,36 +1235,243 @@ public final class BleConnector implements Connector {
                                                   @IntRange(from = 0) final int maxTryCount,
                                                   @Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener,
                                                   final boolean autoFormat) {
-        final int length = largeData.length;
-        if (!canWrite(writeDataServiceUUID, writeDataCharacteristicUUID)) {
+        return writeLargeDataWithNotification(writeDataServiceUUID, writeDataCharacteristicUUID, notificationServiceUUID, notificationCharacteristicUUID,
+                LargeDataSource.fromBytes(largeData), packageDelayTime, maxTryCount, onLargeDataWriteWithNotificationSendStateChangedListener, autoFormat);
+    }
+
+    /**
+     * write large data and require remote devices to notify collaboration.Packets are read from the source as they are sent.
+     *
+     * @param writeDataServiceUUID                                     service UUID for writing data
+     * @param writeDataCharacteristicUUID                              characteristic UUID for writing data
+     * @param notificationServiceUUID                                  service UUID for receiving notification data
+     * @param notificationCharacteristicUUID                           characteristic UUID for receiving notification data
+     * @param largeDataSource                                          source of the large data, closed when the transfer ends or can not start
+     * @param packageDelayTime                                         Time interval between each packet of data
+     * @param maxTryCount                                              Maximum number of retries
+     * @param onLargeDataWriteWithNotificationSendStateChangedListener Callback that write large data and require remote devices to notify collaboration
+     * @param autoFormat                                               whether to format the packet
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataWithNotification(@NonNull final String writeDataServiceUUID, @NonNull final String writeDataCharacteristicUUID,
+                                                  @NonNull final String notificationServiceUUID, @NonNull final String notificationCharacteristicUUID,
+                                                  @NonNull final LargeDataSource largeDataSource, @IntRange(from = 0) final int packageDelayTime,
+                                                  @IntRange(from = 0) final int maxTryCount,
+                                                  @Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener,
+                                                  final boolean autoFormat) {
+        if (!canWrite(writeDataServiceUUID, writeDataCharacteristicUUID)
+                || !canNotify(notificationServiceUUID, notificationCharacteristicUUID)) {
+            largeDataSource.closeQuietly();
             return false;
         }
-        if (!canNotify(notificationServiceUUID, notificationCharacteristicUUID)) {
-            return false;
+        final LargeDataTransfer transfer = new LargeDataTransfer(this, writeDataServiceUUID, writeDataCharacteristicUUID,
+                notificationCharacteristicUUID, largeDataSource, autoFormat, packageDelayTime, maxTryCount, sendLargeDataTimeOut,
+                null, onLargeDataWriteWithNotificationSendStateChangedListener);
+        if (largeDataWithNotificationTransfer != null) {
+            largeDataWithNotificationTransfer.cancel();
         }
-        OnBleDescriptorWriteListener onBleDescriptorWriteListener = new OnBleDescriptorWriteListener() {
-            /**
-             * descriptor write successful
-             *
-             * @param bluetoothGattDescriptor BluetoothGattDescriptor
-             * @param data                    descriptor
-             */
+        largeDataWithNotificationTransfer = transfer;
+        boolean result = enableNotification(notificationServiceUUID, notificationCharacteristicUUID, true, new OnGattOperationResultListener<byte[]>() {
             @Override
-            public void onBleDescriptorWrite(BluetoothGattDescriptor bluetoothGattDescriptor, byte[] data) {
+            public void onGattOperationSucceed(@Nullable byte[] result) {
                 DebugUtil.warnOut(TAG, "open notification success");
-                if (!removeOnBleDescriptorWriteListener(this)) {
-                    performLargeDataSendWithNotificationStartFailedListener(onLargeDataWriteWithNotificationSendStateChangedListener);
+                if (largeDataWithNotificationTransfer != transfer) {
                     return;
                 }
-                startThreadToWriteLargeDataWithNotification(largeData, length, maxTryCount, writeDataServiceUUID, writeDataCharacteristicUUID, notificationCharacteristicUUID, packageDelayTime, onLargeDataWriteWithNotificationSendStateChangedListener, autoFormat);
+                transfer.start();
             }
-        };
-        if (!addOnBleDescriptorWriteListener(onBleDescriptorWriteListener)) {
-            performLargeDataSendWithNotificationStartFailedListener(onLargeDataWriteWithNotificationSendStateChangedListener);
+
+            @Override
+            public void onGattOperationFailed(int status) {
+                DebugUtil.warnOut(TAG, "open notification failed : " + status);
+                if (largeDataWithNotificationTransfer != transfer) {
+                    return;
+                }
+                largeDataWithNotificationTransfer = null;
+                transfer.cancel();
+                performLargeDataSendWithNotificationStartFailedListener(onLargeDataWriteWithNotificationSendStateChangedListener);
+            }
+        });
+        if (!result) {
+            largeDataWithNotificationTransfer = null;
+            transfer.cancel();
             return false;
         }
+        return true;
+    }
 
-        return enableNotification(notificationServiceUUID, notificationCharacteristicUUID, true);
+    /**
+     * Stream large data to remote device with writes without response.
+     * A window of 8 packets is kept in flight and the packets are formatted automatically.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeData                             large data
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] largeData,
+                                        @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        return writeLargeDataStream(serviceUUID, characteristicUUID, largeData, DEFAULT_STREAM_WINDOW_SIZE, true, onLargeDataStreamStateChangedListener);
+    }
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * A packet is confirmed when its write completed locally.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeData                             large data
+     * @param windowSize                            maximum count of packets queued at once
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] largeData,
+                                        @IntRange(from = 1) int windowSize, boolean autoFormat,
+                                        @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        return writeLargeDataStream(serviceUUID, characteristicUUID, LargeDataSource.fromBytes(largeData), windowSize, autoFormat, onLargeDataStreamStateChangedListener);
+    }
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * A packet is confirmed when its write completed locally.Packets are read from the source as they are sent.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets queued at once
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull LargeDataSource largeDataSource,
+                                        @IntRange(from = 1) int windowSize, boolean autoFormat,
+                                        @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        return startLargeDataStream(serviceUUID, characteristicUUID, null, null, largeDataSource, windowSize, DEFAULT_MAX_TRY_COUNT,
+                autoFormat, onLargeDataStreamStateChangedListener, null);
+    }
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * The remote device notifies the count of packets it received on the acknowledge characteristic,
+     * see {@link OnLargeDataStreamStateChangedListener#onReceiveAcknowledge(byte[])}.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges
+     * @param largeData                             large data
+     * @param windowSize                            maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                        @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                        @NonNull byte[] largeData, @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount,
+                                        boolean autoFormat, @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        return writeLargeDataStream(writeDataServiceUUID, writeDataCharacteristicUUID, ackServiceUUID, ackCharacteristicUUID,
+                LargeDataSource.fromBytes(largeData), windowSize, maxTryCount, autoFormat, onLargeDataStreamStateChangedListener);
+    }
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * The remote device notifies the count of packets it received on the acknowledge characteristic,
+     * see {@link OnLargeDataStreamStateChangedListener#onReceiveAcknowledge(byte[])}.Packets are read from the source as they are sent.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                        @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                        @NonNull LargeDataSource largeDataSource, @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount,
+                                        boolean autoFormat, @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        if (!canNotify(ackServiceUUID, ackCharacteristicUUID)) {
+            largeDataSource.closeQuietly();
+            return false;
+        }
+        return startLargeDataStream(writeDataServiceUUID, writeDataCharacteristicUUID, ackServiceUUID, ackCharacteristicUUID, largeDataSource,
+                windowSize, maxTryCount, autoFormat, onLargeDataStreamStateChangedListener, null);
+    }
+
+    /**
+     * Stream large data to remote device with writes without response and resume it after an interruption.
+     * The offset the remote device acknowledged is saved under the transfer ID while the stream runs and when it stops.
+     * A later stream with the same transfer ID and data length asks the listener to confirm the offset with the remote device,
+     * see {@link OnResumableLargeDataStreamStateChangedListener#onResumeRequested(int, int, LargeDataResumeCallback)}.
+     *
+     * @param writeDataServiceUUID                           service UUID for writing data
+     * @param writeDataCharacteristicUUID                    characteristic UUID for writing data
+     * @param ackServiceUUID                                 service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                          characteristic UUID for receiving acknowledges
+     * @param transferId                                     transfer ID, identifies the data across connections and app restarts
+     * @param largeDataSource                                source of the large data, closed when the stream ends or can not start
+     * @param windowSize                                     maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                                    Maximum number of retries without progress
+     * @param autoFormat                                     whether to format the packet
+     * @param onResumableLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeResumableLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                                 @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                                 @NonNull String transferId, @NonNull LargeDataSource largeDataSource,
+                                                 @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount, boolean autoFormat,
+                                                 @NonNull OnResumableLargeDataStreamStateChangedListener onResumableLargeDataStreamStateChangedListener) {
+        if (!canNotify(ackServiceUUID, ackCharacteristicUUID)) {
+            largeDataSource.closeQuietly();
+            return false;
+        }
+        return startLargeDataStream(writeDataServiceUUID, writeDataCharacteristicUUID, ackServiceUUID, ackCharacteristicUUID, largeDataSource,
+                windowSize, maxTryCount, autoFormat, onResumableLargeDataStreamStateChangedListener, transferId);
+    }
+
+    /**
+     * Open a large data stream that runs side by side with the other streams of the connection.
+     * Unlike writeLargeDataStream no running stream is cancelled, the packets of all open streams are interleaved
+     * and each stream gets a share of the written bytes proportional to its priority.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges, null means packets are confirmed by their write result
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges, null means packets are confirmed by their write result
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets written but not yet confirmed
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param priority                              share of the connection relative to the other streams
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return session to follow, re-prioritize or cancel the stream, null means request failed
+     */
+    @Nullable
+    @Override
+    public LargeDataStreamSession openLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                                      @Nullable String ackServiceUUID, @Nullable String ackCharacteristicUUID,
+                                                      @NonNull LargeDataSource largeDataSource, @IntRange(from = 1) int windowSize,
+                                                      @IntRange(from = 0) int maxTryCount, boolean autoFormat, @IntRange(from = 1) int priority,
+                                                      @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        if (ackServiceUUID != null && ackCharacteristicUUID != null && !canNotify(ackServiceUUID, ackCharacteristicUUID)) {
+            largeDataSource.closeQuietly();
+            return null;
+        }
+        return openStream(writeDataServiceUUID, writeDataCharacteristicUUID, ackServiceUUID, ackCharacteristicUUID, largeDataSource,
+                windowSize, maxTryCount, autoFormat, priority, onLargeDataStreamStateChangedListener, null);
     }
 
     /**
@@ -1358,6 +1832,35 @@ public final class BleConnector implements Connector {
         return bluetoothLeService.removeOnBleReceiveNotificationListener(onBleReceiveNotificationListener);
     }
 
+    /**
+     * add a callback triggered when received notification data of one characteristic.
+     * Notifications of other characteristics are not handed to it.
+     *
+     * @param characteristicUUID               characteristic UUID
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     * @return true means successful
+     */
+    public boolean addOnBleReceiveNotificationListener(@NonNull String characteristicUUID, @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        if (bluetoothLeService == null) {
+            return false;
+        }
+        return bluetoothLeService.addOnBleReceiveNotificationListener(characteristicUUID, onBleReceiveNotificationListener);
+    }
+
+    /**
+     * remove a callback triggered when received notification data of one characteristic
+     *
+     * @param characteristicUUID               characteristic UUID
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     * @return true means successful
+     */
+    public boolean removeOnBleReceiveNotificationListener(@NonNull String characteristicUUID, @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        if (bluetoothLeService == null) {
+            return false;
+        }
+        return bluetoothLeService.removeOnBleReceiveNotificationListener(characteristicUUID, onBleReceiveNotificationListener);
+    }
+
     /**
      * add a callback triggered when gatt characteristic write data successful
      *
@@ -1396,217 +1899,38 @@ public final class BleConnector implements Connector {
      * check connect time out
      */
     private void checkConnectTimeOut() {
+        if (connectTimeout != null) {
+            connectTimeout.cancel();
+        }
         Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                DebugUtil.warnOut(TAG, "time out thread start");
-                long startTime = System.currentTimeMillis();
-                while (!closed) {
-                    if (isConnected() && isServiceDiscovered()) {
-                        DebugUtil.warnOut(TAG, "connected and serviceDiscovered,cancel time out thread");
-                        break;
-                    }
-                    if (System.currentTimeMillis() - startTime >= connectTimeOut) {
-                        BleManager.getHandler().post(new Runnable() {
-                            @Override
-                            public void run() {
-                                DebugUtil.warnOut(TAG, "connect time out");
-                                if (onBleConnectStateChangedListener != null) {
-                                    onBleConnectStateChangedListener.onConnectTimeOut();
-                                }
-                            }
-                        });
-                        break;
-                    }
-                }
-                DebugUtil.warnOut(TAG, "time out thread end");
-            }
-        };
-        BleManager.getThreadFactory().newThread(runnable).start();
-    }
-
-    /**
-     * create a thread to write large data
-     *
-     * @param largeData                                                large data
-     * @param dataLength                                               large data length
-     * @param maxTryCount                                              if a packet write failed,will retry to write,It is max try count to set.
-     * @param writeDataServiceUUID                                     service uuid to write data
-     * @param writeDataCharacteristicUUID                              characteristic uuid to write data
-     * @param notificationCharacteristicUUID                           characteristic uuid to receive notification data
-     * @param packageDelayTime                                         Time interval between each packet of data
-     * @param onLargeDataWriteWithNotificationSendStateChangedListener Callback that write large data and require remote devices to notify collaboration
-     * @param autoFormat                                               whether to format the packet
-     */
-    private void startThreadToWriteLargeDataWithNotification(@NonNull final byte[] largeData,
-                                                             final int dataLength,
-                                                             final int maxTryCount,
-                                                             @NonNull final String writeDataServiceUUID,
-                                                             @NonNull final String writeDataCharacteristicUUID,
-                                                             @NonNull final String notificationCharacteristicUUID,
-                                                             final int packageDelayTime,
-                                                             @Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener,
-                                                             final boolean autoFormat) {
-        Runnable runnable = new Runnable() {
-            @Override
-            public void run() {
-                final byte[][] packetData = {new byte[0]};
-                final int writeLargeDataWithNotificationPackageCount = getPageCount(dataLength, autoFormat);
-                final int[] writeLargeDataWithNotificationCurrentPackageCount = {0};
-                //Record the number of data retransmissions
-                final int[] writeLargeDataWithNotificationTryCount = {0};
-                writeLargeDataWithNotificationContinueFlag = true;
-                final int[] wrongNotificationResultCount = {0};
-                final boolean[] receivedNotification = {true};
-                final boolean[] characteristicWriteSuccess = {true};
-
-                OnBleReceiveNotificationListener onBleReceiveNotificationListener = new OnBleReceiveNotificationListener() {
-                    /**
-                     * received remote device data
-                     *
-                     * @param gattCharacteristic BluetoothGattCharacteristic
-                     * @param data                        received data
-                     */
-                    @Override
-                    public void onBleReceiveNotification(BluetoothGattCharacteristic gattCharacteristic, byte[] data) {
-                        String uuidString = gattCharacteristic.getUuid().toString();
-
-                        if (!uuidString.equalsIgnoreCase(notificationCharacteristicUUID)) {
-                            return;
-                        }
-                        performLargeDataWriteWithNotificationSendStateChangedListener(data, onLargeDataWriteWithNotificationSendStateChangedListener, writeLargeDataWithNotificationCurrentPackageCount, writeLargeDataWithNotificationPackageCount, largeData, autoFormat, wrongNotificationResultCount, maxTryCount, receivedNotification);
-                    }
-                };
-
-                OnBleCharacteristicWriteListener onBleCharacteristicWriteListener = new OnBleCharacteristicWriteListener() {
-                    @Override
-                    public void onBleCharacteristicWrite(BluetoothGattCharacteristic gattCharacteristic, byte[] data) {
-                        String uuidString = gattCharacteristic.getUuid().toString();
-                        if (!uuidString.equalsIgnoreCase(writeDataCharacteristicUUID)) {
-                            return;
-                        }
-                        writeLargeDataWithNotificationTryCount[0] = 0;
-                        characteristicWriteSuccess[0] = true;
-                        performLargeDataWriteWithNotificationSendProgressChangedListener(writeLargeDataWithNotificationPackageCount, packetData[0], writeLargeDataWithNotificationCurrentPackageCount[0], onLargeDataWriteWithNotificationSendStateChangedListener);
-                        writeLargeDataWithNotificationCurrentPackageCount[0]++;
-                    }
-                };
-                if (!addOnBleReceiveNotificationListener(onBleReceiveNotificationListener)) {
-                    performLargeDataSendWithNotificationStartFailedListener(onLargeDataWriteWithNotificationSendStateChangedListener);
+                if (closed) {
                     return;
                 }
-                if (!addOnBleCharacteristicWriteListener(onBleCharacteristicWriteListener)) {
-                    performLargeDataSendWithNotificationStartFailedListener(onLargeDataWriteWithNotificationSendStateChangedListener);
+                if (isConnected() && isServiceDiscovered()) {
+                    DebugUtil.warnOut(TAG, "connected and serviceDiscovered,no time out");
                     return;
                 }
-                performLargeDataWriteWithNotificationSendStartListener(onLargeDataWriteWithNotificationSendStateChangedListener);
-                long lastSystemTime = System.currentTimeMillis();
-                doTransmission(packetData, writeLargeDataWithNotificationPackageCount, writeLargeDataWithNotificationCurrentPackageCount, writeLargeDataWithNotificationTryCount, receivedNotification, characteristicWriteSuccess, lastSystemTime, maxTryCount, onLargeDataWriteWithNotificationSendStateChangedListener, writeDataServiceUUID, writeDataCharacteristicUUID, packageDelayTime, largeData, autoFormat);
-                removeOnBleReceiveNotificationListener(onBleReceiveNotificationListener);
-                removeOnBleCharacteristicWriteListener(onBleCharacteristicWriteListener);
-            }
-        };
-        BleManager.getThreadFactory().newThread(runnable).start();
-    }
-
-    /**
-     * send large data to remote device
-     *
-     * @param data                                                     data
-     * @param writeLargeDataWithNotificationPackageCount               total package count
-     * @param writeLargeDataWithNotificationCurrentPackageCount        current package number
-     * @param writeLargeDataWithNotificationTryCount                   try count
-     * @param receivedNotification                                     received notification data
-     * @param characteristicWriteSuccess                               Whether the write is successful
-     * @param lastSystemTime                                           System time when the last write was performed
-     * @param maxTryCount                                              max try count
-     * @param onLargeDataWriteWithNotificationSendStateChangedListener Callback that write large data and require remote devices to notify collaboration
-     * @param writeDataServiceUUID                                     service uuid to write data
-     * @param writeDataCharacteristicUUID                              characteristic uuid to write data
-     * @param packageDelayTime                                         Time interval between each packet of data
-     * @param largeData                                                large data
-     * @param autoFormat                                               whether to format the packet
-     */
-    private void doTransmission(@NonNull byte[][] data, int writeLargeDataWithNotificationPackageCount,
-                                @NonNull int[] writeLargeDataWithNotificationCurrentPackageCount,
-                                @NonNull int[] writeLargeDataWithNotificationTryCount,
-                                @NonNull boolean[] receivedNotification,
-                                @NonNull boolean[] characteristicWriteSuccess,
-                                long lastSystemTime, int maxTryCount,
-                                @Nullable OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener,
-                                @NonNull String writeDataServiceUUID, String writeDataCharacteristicUUID,
-                                int packageDelayTime,
-                                @NonNull byte[] largeData, boolean autoFormat) {
-
-        while (writeLargeDataWithNotificationContinueFlag) {
-            if (!characteristicWriteSuccess[0]) {
-                if (System.currentTimeMillis() - lastSystemTime >= sendLargeDataTimeOut) {
-                    if (writeLargeDataWithNotificationTryCount[0] >= maxTryCount) {
-                        performLargeDataWriteWithNotificationSendTimeOut(onLargeDataWriteWithNotificationSendStateChangedListener, writeLargeDataWithNotificationCurrentPackageCount[0] + 1, writeLargeDataWithNotificationPackageCount, data[0]);
-                        break;
-                    }
-                    lastSystemTime = System.currentTimeMillis();
-                    writeLargeDataWithNotificationTryCount[0]++;
-                    if (data[0] != null) {
-                        if (writeData(writeDataServiceUUID, writeDataCharacteristicUUID, data[0])) {
-                            performLargeDataWriteWithNotificationSendTimeOutAndRetry(writeLargeDataWithNotificationPackageCount, data[0], writeLargeDataWithNotificationTryCount[0], writeLargeDataWithNotificationCurrentPackageCount[0] + 1, onLargeDataWriteWithNotificationSendStateChangedListener);
-                            continue;
-                        }
-                        sleepTime(RETRY_DELAY_TIME);
-                    }
-                }
-                continue;
-            }
-            DebugUtil.warnOut(TAG, "send state characteristicWriteSuccess");
-            if (!receivedNotification[0]) {
-                if (System.currentTimeMillis() - lastSystemTime >= sendLargeDataTimeOut) {
-                    if (writeLargeDataWithNotificationTryCount[0] >= maxTryCount) {
-                        performLargeDataWriteWithNotificationSendTimeOut(onLargeDataWriteWithNotificationSendStateChangedListener, writeLargeDataWithNotificationCurrentPackageCount[0] + 1, writeLargeDataWithNotificationPackageCount, data[0]);
-                        break;
-                    }
-                    writeLargeDataWithNotificationTryCount[0]++;
-                    lastSystemTime = System.currentTimeMillis();
-                    if (data[0] != null) {
-                        if (writeData(writeDataServiceUUID, writeDataCharacteristicUUID, data[0])) {
-                            performLargeDataWriteWithNotificationSendTimeOutAndRetry(writeLargeDataWithNotificationPackageCount, data[0], writeLargeDataWithNotificationTryCount[0], writeLargeDataWithNotificationCurrentPackageCount[0] + 1, onLargeDataWriteWithNotificationSendStateChangedListener);
-                            sleepTime(RETRY_DELAY_TIME);
-                            continue;
+                BleManager.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        DebugUtil.warnOut(TAG, "connect time out");
+                        if (onBleConnectStateChangedListener != null) {
+                            onBleConnectStateChangedListener.onConnectTimeOut();
                         }
                     }
-                }
-                continue;
-            }
-            DebugUtil.warnOut(TAG, "send state receivedNotification");
-            sleepTime(packageDelayTime);
-            data[0] = getCurrentPackageData(writeLargeDataWithNotificationCurrentPackageCount[0], largeData, writeLargeDataWithNotificationPackageCount, autoFormat);
-            if (data[0] == null) {
-                performLargeDataWriteWithNotificationSendFinishedListener(onLargeDataWriteWithNotificationSendStateChangedListener);
-                break;
-            }
-            if (writeLargeDataWithNotificationTryCount[0] >= maxTryCount) {
-                performLargeDataWriteWithNotificationSendFailedListener(writeLargeDataWithNotificationPackageCount, data[0], writeLargeDataWithNotificationCurrentPackageCount[0] + 1, onLargeDataWriteWithNotificationSendStateChangedListener);
-                break;
+                });
             }
-            if (!writeData(writeDataServiceUUID, writeDataCharacteristicUUID, data[0])) {
-                performLargeDataWriteWithNotificationSendFailedAndRetryListener(writeLargeDataWithNotificationPackageCount, data[0], writeLargeDataWithNotificationTryCount[0], writeLargeDataWithNotificationCurrentPackageCount[0] + 1, onLargeDataWriteWithNotificationSendStateChangedListener);
-                writeLargeDataWithNotificationTryCount[0]++;
-                DebugUtil.warnOut(TAG, "writeData failed");
-                sleepTime(RETRY_DELAY_TIME);
-                continue;
-            }
-            DebugUtil.warnOut(TAG, "sendLargeDataPackageDelayTime = " + packageDelayTime);
+        };
+        connectTimeout = TimerWheel.getInstance().newTimeout(runnable, connectTimeOut);
+        BluetoothLeService bluetoothLeService = this.bluetoothLeService;
+        if (bluetoothLeService != null) {
+            // cancelled by the GATT callback as soon as the services are discovered
+            bluetoothLeService.setConnectTimeout(connectTimeout);
         }
     }
 
-    /**
-     * Let the current thread delay for a while before continuing
-     *
-     * @param packageDelayTime delay time (unit:ms)
-     */
-    private void sleepTime(int packageDelayTime) {
-        ThreadUtil.sleep(packageDelayTime);
-    }
-
     /**
      * check close state to trigger call back
      */
@@ -1637,296 +1961,84 @@ public final class BleConnector implements Connector {
     }
 
     /**
-     * get total package count
-     *
-     * @param dataLength data length
-     * @param autoFormat whether to format the packet
-     * @return total package count
+     * cancel the running large data transfers
      */
-    private int getPageCount(int dataLength, boolean autoFormat) {
-
-        if (autoFormat) {
-            if (dataLength % LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH == 0) {
-                return dataLength / LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH;
-            } else {
-                return (dataLength / LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH) + 1;
-            }
-        } else {
-            if (dataLength % PACKAGE_MAX_LENGTH == 0) {
-                return dataLength / PACKAGE_MAX_LENGTH;
-            } else {
-                return (dataLength / PACKAGE_MAX_LENGTH) + 1;
-            }
+    private void cancelLargeDataTransfers() {
+        if (largeDataWithNotificationTransfer != null) {
+            largeDataWithNotificationTransfer.cancel();
+            largeDataWithNotificationTransfer = null;
+        }
+        if (largeDataTransfer != null) {
+            largeDataTransfer.cancel();
+            largeDataTransfer = null;
         }
+        largeDataStreamSession = null;
+        largeDataTransferScheduler.cancelAll();
     }
 
     /**
-     * get package data by specified index
+     * start a large data stream, the stream started last by this method is cancelled
      *
-     * @param packageIndex index
-     * @param largeData    large data
-     * @param pageCount    total count
-     * @param autoFormat   whether to format the packet
-     * @return packet data
+     * @param serviceUuid                           service UUID for writing data
+     * @param characteristicUuid                    characteristic UUID for writing data
+     * @param ackServiceUuid                        service UUID for receiving acknowledges, null means no acknowledge
+     * @param ackCharacteristicUuid                 characteristic UUID for receiving acknowledges, null means no acknowledge
+     * @param largeDataSource                       source of the large data
+     * @param windowSize                            maximum count of packets written but not yet confirmed
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @param transferId                            transfer ID of a resumable stream, null means the stream is not resumable
+     * @return true means request successful
      */
-    @Nullable
-    private byte[] getCurrentPackageData(int packageIndex, @NonNull byte[] largeData, int pageCount, boolean autoFormat) {
-        if (packageIndex >= pageCount) {
-            return null;
-        }
-        int largeDataLength = largeData.length;
-        if (autoFormat) {
-            if (packageIndex == pageCount - 1) {
-                int remainder = largeDataLength % LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH;
-                if (remainder == 0) {
-                    byte[] data = new byte[20];
-                    data[0] = (byte) pageCount;
-                    data[1] = (byte) (packageIndex + 1);
-                    data[2] = LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH;
-                    System.arraycopy(largeData, packageIndex * LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data, PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data.length - (PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH));
-                    return data;
-                } else {
-                    byte[] data = new byte[remainder + PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH];
-                    data[0] = (byte) pageCount;
-                    data[1] = (byte) (packageIndex + 1);
-                    data[2] = (byte) remainder;
-                    System.arraycopy(largeData, packageIndex * LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data, PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data.length - (PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH));
-                    return data;
-                }
-            } else {
-                byte[] data = new byte[20];
-                data[0] = (byte) pageCount;
-                data[1] = (byte) (packageIndex + 1);
-                data[2] = (byte) LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH;
-                System.arraycopy(largeData, packageIndex * LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data, PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data.length - (PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH));
-                return data;
-            }
-        } else {
-            if (packageIndex == pageCount - 1) {
-                int remainder = largeDataLength % PACKAGE_MAX_LENGTH;
-                if (remainder == 0) {
-                    byte[] data = new byte[20];
-                    System.arraycopy(largeData, packageIndex * PACKAGE_MAX_LENGTH, data, 0, data.length);
-                    return data;
-                } else {
-                    byte[] data = new byte[remainder];
-                    System.arraycopy(largeData, packageIndex * PACKAGE_MAX_LENGTH, data, 0, data.length);
-                    return data;
-                }
-            } else {
-                byte[] data = new byte[20];
-                System.arraycopy(largeData, packageIndex * PACKAGE_MAX_LENGTH, data, 0, data.length);
-                return data;
-            }
+    private boolean startLargeDataStream(@NonNull String serviceUuid, @NonNull String characteristicUuid,
+                                         @Nullable String ackServiceUuid, @Nullable String ackCharacteristicUuid,
+                                         @NonNull LargeDataSource largeDataSource, int windowSize, int maxTryCount, boolean autoFormat,
+                                         @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener,
+                                         @Nullable String transferId) {
+        LargeDataStreamSession previousSession = largeDataStreamSession;
+        if (previousSession != null) {
+            previousSession.cancel();
         }
+        largeDataStreamSession = openStream(serviceUuid, characteristicUuid, ackServiceUuid, ackCharacteristicUuid, largeDataSource,
+                windowSize, maxTryCount, autoFormat, DEFAULT_STREAM_PRIORITY, onLargeDataStreamStateChangedListener, transferId);
+        return largeDataStreamSession != null;
     }
 
     /**
-     * create a thread to send large data
+     * open a large data stream in the scheduler of the connection, running streams are not affected
      *
-     * @param serviceUuid                         service uuid to write data
-     * @param characteristicUuid                  characteristic uuid to write data
-     * @param largeData                           large data
-     * @param dataLength                          large data length
-     * @param packageDelayTime                    Time interval between each packet of data
-     * @param maxTryCount                         max try count
-     * @param onLargeDataSendStateChangedListener Callback during large data transmission
-     * @param autoFormat                          whether to format the packet data
-     */
-    private void startThreadToWriteLargeData(@NonNull final String serviceUuid,
-                                             @NonNull final String characteristicUuid,
-                                             @NonNull final byte[] largeData, final int dataLength,
-                                             final int packageDelayTime, final int maxTryCount,
-                                             @Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener,
-                                             final boolean autoFormat) {
-        Runnable runnable = new Runnable() {
-            @Override
-            public void run() {
-                int pageCount = getPageCount(dataLength, autoFormat);
-                final int[] currentPackageCount = {0};
-                final int[] tryCount = {0};
-                byte[] data = null;
-                writeLargeDataContinueFlag = true;
-                final boolean[] characteristicWriteSuccess = {true};
-
-                OnBleCharacteristicWriteListener onBleCharacteristicWriteListener = new OnBleCharacteristicWriteListener() {
-                    @Override
-                    public void onBleCharacteristicWrite(BluetoothGattCharacteristic gattCharacteristic, byte[] data) {
-                        String uuidString = gattCharacteristic.getUuid().toString();
-                        if (!uuidString.equalsIgnoreCase(characteristicUuid)) {
-                            return;
-                        }
-                        tryCount[0] = 0;
-                        currentPackageCount[0]++;
-                        characteristicWriteSuccess[0] = true;
-                    }
-                };
-
-                if (!addOnBleCharacteristicWriteListener(onBleCharacteristicWriteListener)) {
-                    performLargeDataSendStartFailedListener(onLargeDataSendStateChangedListener);
-                    return;
-                }
-                performLargeDataSendStartedListener(onLargeDataSendStateChangedListener);
-                long lastSystemTime = System.currentTimeMillis();
-                while (writeLargeDataContinueFlag) {
-                    if (!characteristicWriteSuccess[0]) {
-                        if (System.currentTimeMillis() - lastSystemTime >= sendLargeDataTimeOut) {
-                            if (tryCount[0] >= maxTryCount) {
-                                if (data != null) {
-                                    performLargeDataWriteSendTimeOut(onLargeDataSendStateChangedListener, pageCount, currentPackageCount[0], data);
-                                }
-                                break;
-                            }
-                            lastSystemTime = System.currentTimeMillis();
-                            tryCount[0]++;
-                            if (data != null) {
-                                if (writeData(serviceUuid, characteristicUuid, data)) {
-                                    performLargeDataWriteSendTimeOutAndRetry(pageCount, data, tryCount[0], currentPackageCount[0] + 1, onLargeDataSendStateChangedListener);
-                                    continue;
-                                }
-                                sleepTime(RETRY_DELAY_TIME);
-                                continue;
-                            }
-                        }
-                        continue;
-                    }
-                    sleepTime(packageDelayTime);
-                    data = getCurrentPackageData(currentPackageCount[0], largeData, pageCount, autoFormat);
-                    if (data == null) {
-                        performLargeDataSendFinishedListener(onLargeDataSendStateChangedListener);
-                        break;
-                    }
-                    performLargeDataSendProgressChangedListener(pageCount, data, currentPackageCount[0], onLargeDataSendStateChangedListener);
-                    if (tryCount[0] >= maxTryCount) {
-                        performLargeDataSendFailedListener(pageCount, data, currentPackageCount[0], onLargeDataSendStateChangedListener);
-                        break;
-                    }
-                    if (!writeData(serviceUuid, characteristicUuid, data)) {
-                        performLargeDataSendFailedAndRetryListener(pageCount, data, tryCount[0], currentPackageCount[0], onLargeDataSendStateChangedListener);
-                        tryCount[0]++;
-                        characteristicWriteSuccess[0] = true;
-                        DebugUtil.warnOut(TAG, "writeData failed");
-                        sleepTime(RETRY_DELAY_TIME);
-                        continue;
-                    }
-                    characteristicWriteSuccess[0] = false;
-                }
-                removeOnBleCharacteristicWriteListener(onBleCharacteristicWriteListener);
-            }
-        };
-        BleManager.getThreadFactory().newThread(runnable).start();
-    }
-
-    private void performLargeDataWriteWithNotificationSendStateChangedListener(@Nullable final byte[] values,
-                                                                               @Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener,
-                                                                               @NonNull final int[] writeLargeDataWithNotificationCurrentPackageCount,
-                                                                               final int writeLargeDataWithNotificationPackageCount,
-                                                                               @NonNull final byte[] largeData,
-                                                                               final boolean autoFormat,
-                                                                               @NonNull final int[] wrongNotificationResultCount,
-                                                                               final int maxTryCount,
-                                                                               @NonNull final boolean[] receivedNotification) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
-                    boolean result;
-                    result = onLargeDataWriteWithNotificationSendStateChangedListener.onReceiveNotification(values, writeLargeDataWithNotificationCurrentPackageCount[0] + 1, writeLargeDataWithNotificationPackageCount, getCurrentPackageData(writeLargeDataWithNotificationCurrentPackageCount[0], largeData, writeLargeDataWithNotificationPackageCount, autoFormat));
-                    DebugUtil.warnOut(TAG, "onLargeDataWriteWithNotificationSendStateChangedListener onReceiveNotification result = " + result);
-                    if (!result) {
-                        if (wrongNotificationResultCount[0] >= maxTryCount) {
-                            performLargeDataWriteWithNotificationSendFailedWithWrongNotifyDataListener(onLargeDataWriteWithNotificationSendStateChangedListener);
-                            writeLargeDataWithNotificationContinueFlag = false;
-                        } else {
-                            wrongNotificationResultCount[0]++;
-                            performLargeDataWriteWithNotificationSendFailedWithWrongNotifyDataAndRetryListener(onLargeDataWriteWithNotificationSendStateChangedListener, wrongNotificationResultCount[0], writeLargeDataWithNotificationCurrentPackageCount[0] + 1, writeLargeDataWithNotificationPackageCount, getCurrentPackageData(writeLargeDataWithNotificationCurrentPackageCount[0], largeData, writeLargeDataWithNotificationPackageCount, autoFormat));
-                        }
-                    } else {
-                        wrongNotificationResultCount[0] = 0;
-                    }
-                }
-                receivedNotification[0] = true;
-            }
-        });
-    }
-
-    private void performLargeDataWriteWithNotificationSendStartListener(@Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
-                    onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendStart();
-                }
-            }
-        });
-    }
-
-    private void performLargeDataWriteWithNotificationSendTimeOutAndRetry(final int packageCount,
-                                                                          @NonNull final byte[] data,
-                                                                          final int tryCount,
-                                                                          final int currentPackageIndex,
-                                                                          @Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
-                    onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendTimeOutAndRetry(data, tryCount, currentPackageIndex, packageCount);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataWriteWithNotificationSendTimeOut(@Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener,
-                                                                  final int currentPackageIndex,
-                                                                  final int packageCount,
-                                                                  @NonNull final byte[] data) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
-                    onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendTimeOut(currentPackageIndex, packageCount, data);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataWriteSendTimeOutAndRetry(final int pageCount, @NonNull final byte[] data,
-                                                          final int tryCount, final int currentPackageIndex,
-                                                          @Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.onSendTimeOutAndRetry(tryCount, currentPackageIndex, pageCount, data);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataWriteSendTimeOut(@Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener,
-                                                  final int pageCount, final int currentPackageIndex,
-                                                  @NonNull final byte[] data) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.onSendTimeOut(currentPackageIndex, pageCount, data);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataSendProgressChangedListener(final int pageCount, @NonNull final byte[] data,
-                                                             final int currentPackageCount,
-                                                             @Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.packageSendProgressChanged(currentPackageCount + 1, pageCount, data);
-                }
-            }
-        });
+     * @param serviceUuid                           service UUID for writing data
+     * @param characteristicUuid                    characteristic UUID for writing data
+     * @param ackServiceUuid                        service UUID for receiving acknowledges, null means no acknowledge
+     * @param ackCharacteristicUuid                 characteristic UUID for receiving acknowledges, null means no acknowledge
+     * @param largeDataSource                       source of the large data
+     * @param windowSize                            maximum count of packets written but not yet confirmed
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param priority                              share of the connection relative to the other streams
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @param transferId                            transfer ID of a resumable stream, null means the stream is not resumable
+     * @return session of the stream, null means request failed
+     */
+    @Nullable
+    private LargeDataStreamSession openStream(@NonNull String serviceUuid, @NonNull String characteristicUuid,
+                                              @Nullable String ackServiceUuid, @Nullable String ackCharacteristicUuid,
+                                              @NonNull LargeDataSource largeDataSource, int windowSize, int maxTryCount, boolean autoFormat,
+                                              int priority, @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener,
+                                              @Nullable String transferId) {
+        if (windowSize < 1 || priority < 1
+                || (!canWriteNoResponse(serviceUuid, characteristicUuid) && !canWrite(serviceUuid, characteristicUuid))) {
+            largeDataSource.closeQuietly();
+            return null;
+        }
+        LargeDataTransferScheduler.Flow flow = largeDataTransferScheduler.newFlow(priority);
+        LargeDataStreamTransfer largeDataStreamTransfer = new LargeDataStreamTransfer(flow, serviceUuid, characteristicUuid, ackServiceUuid,
+                ackCharacteristicUuid, largeDataSource, autoFormat, windowSize, maxTryCount, sendLargeDataTimeOut,
+                onLargeDataStreamStateChangedListener, transferId);
+        flow.setLargeDataStreamTransfer(largeDataStreamTransfer);
+        largeDataStreamTransfer.start();
+        return new LargeDataStreamSession(largeDataStreamTransfer, flow);
     }
 
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
@@ -1934,134 +2046,6 @@ public final class BleConnector implements Connector {
         return bluetoothLeService != null;
     }
 
-    private void performLargeDataSendFailedAndRetryListener(final int pageCount, @NonNull final byte[] data,
-                                                            final int tryCount, final int currentPackageCount,
-                                                            @Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.packageSendFailedAndRetry(currentPackageCount + 1, pageCount, tryCount, data);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataSendFailedListener(final int pageCount, @NonNull final byte[] data,
-                                                    final int currentPackageCount,
-                                                    @Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.packageSendFailed(currentPackageCount + 1, pageCount, data);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataSendFinishedListener(@Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.sendFinished();
-                }
-            }
-        });
-    }
-
-    private void performLargeDataSendStartedListener(@Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.sendStarted();
-                }
-            }
-        });
-    }
-
-    private void performLargeDataWriteWithNotificationSendFinishedListener(@Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
-                    onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendFinished();
-                }
-            }
-        });
-    }
-
-    private void performLargeDataWriteWithNotificationSendFailedListener(final int pageCount,
-                                                                         @NonNull final byte[] data,
-                                                                         final int currentPackageCount,
-                                                                         @Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
-                    onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendFailed(currentPackageCount, pageCount, data);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataWriteWithNotificationSendFailedAndRetryListener(final int pageCount,
-                                                                                 @NonNull final byte[] data,
-                                                                                 final int tryCount,
-                                                                                 final int currentPackageCount,
-                                                                                 @Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
-                    onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendFailedAndRetry(currentPackageCount, pageCount, data, tryCount);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataWriteWithNotificationSendProgressChangedListener(final int pageCount,
-                                                                                  @NonNull final byte[] data,
-                                                                                  final int currentPackageCount,
-                                                                                  @Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
-                    onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendProgressChanged(currentPackageCount + 1, pageCount, data);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataWriteWithNotificationSendFailedWithWrongNotifyDataListener(@Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
-                    onLargeDataWriteWithNotificationSendStateChangedListener.onSendFailedWithWrongNotifyData();
-                }
-            }
-        });
-    }
-
-    private void performLargeDataWriteWithNotificationSendFailedWithWrongNotifyDataAndRetryListener(@Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener,
-                                                                                                    final int tryCount,
-                                                                                                    final int currentPackageIndex,
-                                                                                                    final int packageCount,
-                                                                                                    @Nullable final byte[] data) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
-                    onLargeDataWriteWithNotificationSendStateChangedListener.onSendFailedWithWrongNotifyDataAndRetry(tryCount, currentPackageIndex, packageCount, data);
-                }
-            }
-        });
-    }
-
     private void performLargeDataSendWithNotificationStartFailedListener(@Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener) {
         BleManager.getHandler().post(new Runnable() {
             @Override
@@ -15,6 +15,26 @@ public final class BleConstants {
      */
     static final String CLIENT_CHARACTERISTIC_CONFIG = "00002902-0000-1000-8000-00805f9b34fb";
 
+    /**
+     * ATT MTU of a connection before any mtu exchange
+     */
+    static final int DEFAULT_ATT_MTU = 23;
+
+    /**
+     * UUID of the Generic Attribute service
+     */
+    static final String GENERIC_ATTRIBUTE_SERVICE = "00001801-0000-1000-8000-00805f9b34fb";
+
+    /**
+     * UUID of the Service Changed characteristic
+     */
+    static final String SERVICE_CHANGED = "00002a05-0000-1000-8000-00805f9b34fb";
+
+    /**
+     * UUID of the Database Hash characteristic
+     */
+    static final String DATABASE_HASH = "00002b2a-0000-1000-8000-00805f9b34fb";
+
     /*-----------------------------------public constants-----------------------------------*/
 
     /**
@@ -49,6 +69,34 @@ public final class BleConstants {
      * Context is null
      */
     public static final int CONTEXT_NULL = 7;
+    /**
+     * GATT operation got no result within its timeout
+     */
+    public static final int GATT_OPERATION_TIMEOUT = -1;
+    /**
+     * GATT operation could not be sent to the remote device
+     */
+    public static final int GATT_OPERATION_REQUEST_FAILED = -2;
+    /**
+     * Connection was closed before the GATT operation completed
+     */
+    public static final int GATT_OPERATION_CANCELLED = -3;
+    /**
+     * Large data source could not be read
+     */
+    public static final int LARGE_DATA_SOURCE_READ_FAILED = -4;
+    /**
+     * Notification frame dropped, a packet of the frame was lost
+     */
+    public static final int NOTIFICATION_FRAME_GAP = -5;
+    /**
+     * Notification frame dropped, it is longer than the reassembly buffer
+     */
+    public static final int NOTIFICATION_FRAME_OVERSIZED = -6;
+    /**
+     * Notification frame dropped, a packet header is invalid
+     */
+    public static final int NOTIFICATION_FRAME_MALFORMED = -7;
 
     /*-----------------------------------Constructor-----------------------------------*/
 
@@ -44,9 +44,13 @@ public final class BleDevice implements Serializable, Parcelable {
      */
     private int rssi;
     /**
-     * BleScanRecord
+     * Raw bytes of scan record
      */
-    private BleScanRecord bleScanRecord;
+    private byte[] scanRecordBytes;
+    /**
+     * BleScanRecord, parsed from {@link #scanRecordBytes} on first access
+     */
+    private volatile BleScanRecord bleScanRecord;
 
     /**
      * the primary Physical Layer on which this advertisment was received
@@ -82,6 +86,16 @@ public final class BleDevice implements Serializable, Parcelable {
      */
     private long timestampNanos;
 
+    /**
+     * smoothed rssi, see {@link com.sscl.blelibrary.enums.RssiFilterType}
+     */
+    private double smoothedRssi;
+
+    /**
+     * estimated distance(unit:m).-1 means unknown.
+     */
+    private double estimatedDistance = -1;
+
     /*-----------------------------------Constructor-----------------------------------*/
 
     /**
@@ -89,12 +103,13 @@ public final class BleDevice implements Serializable, Parcelable {
      *
      * @param bluetoothDevice BluetoothDevice
      * @param rssi            rssi
-     * @param bleScanRecord   BleScanRecord
+     * @param scanRecordBytes Raw bytes of scan record
      */
-    BleDevice(@NonNull BluetoothDevice bluetoothDevice, int rssi, @NonNull BleScanRecord bleScanRecord) {
+    BleDevice(@NonNull BluetoothDevice bluetoothDevice, int rssi, @NonNull byte[] scanRecordBytes) {
         this.bluetoothDevice = bluetoothDevice;
         this.rssi = rssi;
-        this.bleScanRecord = bleScanRecord;
+        this.scanRecordBytes = scanRecordBytes;
+        this.smoothedRssi = rssi;
     }
 
     /*-----------------------------------getter-----------------------------------*/
@@ -131,7 +146,7 @@ public final class BleDevice implements Serializable, Parcelable {
         if (deviceName != null) {
             return deviceName;
         }
-        return bleScanRecord.getDeviceName();
+        return getBleScanRecord().getDeviceName();
     }
 
     /**
@@ -177,7 +192,7 @@ public final class BleDevice implements Serializable, Parcelable {
      */
     @Nullable
     public byte[] getManufacturerSpecificData(byte type) {
-        return bleScanRecord.getManufacturerSpecificData(type);
+        return getBleScanRecord().getManufacturerSpecificData(type);
     }
 
     /**
@@ -186,7 +201,7 @@ public final class BleDevice implements Serializable, Parcelable {
      */
     @SuppressWarnings("WeakerAccess")
     public BleHashMap<Byte, byte[]> getManufacturerSpecificData() {
-        return bleScanRecord.getManufacturerSpecificData();
+        return getBleScanRecord().getManufacturerSpecificData();
     }
 
     /**
@@ -196,11 +211,21 @@ public final class BleDevice implements Serializable, Parcelable {
      */
     @NonNull
     public byte[] getScanRecordBytes() {
-        return bleScanRecord.getBytes();
+        return scanRecordBytes;
     }
 
+    /**
+     * get BleScanRecord.The scan record is parsed on the first call.
+     *
+     * @return BleScanRecord
+     */
     @NonNull
     public BleScanRecord getBleScanRecord() {
+        BleScanRecord bleScanRecord = this.bleScanRecord;
+        if (bleScanRecord == null) {
+            bleScanRecord = BleScanRecord.parseFromBytes(scanRecordBytes);
+            this.bleScanRecord = bleScanRecord;
+        }
         return bleScanRecord;
     }
 
@@ -242,6 +267,26 @@ public final class BleDevice implements Serializable, Parcelable {
         return timestampNanos;
     }
 
+    /**
+     * get smoothed rssi.
+     * The value of a device in the scan results is updated with every advertisement of the device.
+     *
+     * @return smoothed rssi
+     */
+    public double getSmoothedRssi() {
+        return smoothedRssi;
+    }
+
+    /**
+     * get distance estimated from the smoothed rssi.
+     * The value of a device in the scan results is updated with every advertisement of the device.
+     *
+     * @return estimated distance(unit:m).-1 means unknown.
+     */
+    public double getEstimatedDistance() {
+        return estimatedDistance;
+    }
+
     /*-----------------------------------package method-----------------------------------*/
 
     /**
@@ -306,6 +351,24 @@ public final class BleDevice implements Serializable, Parcelable {
         this.timestampNanos = timestampNanos;
     }
 
+    /**
+     * Set smoothed rssi
+     *
+     * @param smoothedRssi smoothed rssi
+     */
+    void setSmoothedRssi(double smoothedRssi) {
+        this.smoothedRssi = smoothedRssi;
+    }
+
+    /**
+     * Set estimated distance
+     *
+     * @param estimatedDistance estimated distance(unit:m)
+     */
+    void setEstimatedDistance(double estimatedDistance) {
+        this.estimatedDistance = estimatedDistance;
+    }
+
     /*-----------------------------------override method-----------------------------------*/
 
     /**
@@ -366,13 +429,18 @@ public final class BleDevice implements Serializable, Parcelable {
         return bluetoothDevice.equals(getBluetoothDevice());
     }
 
+    @Override
+    public int hashCode() {
+        return bluetoothDevice.hashCode();
+    }
+
     @Override
     public String toString() {
         return "BleDevice{" +
                 "bluetoothDevice=" + bluetoothDevice +
                 ", rssi=" + rssi +
                 ", scanRecordBytes=" + Arrays.toString(getScanRecordBytes()) +
-                ", bleScanRecord=" + bleScanRecord +
+                ", bleScanRecord=" + getBleScanRecord() +
                 '}';
     }
 
@@ -386,13 +454,18 @@ public final class BleDevice implements Serializable, Parcelable {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeParcelable(this.bluetoothDevice, flags);
         dest.writeInt(this.rssi);
-        dest.writeSerializable(this.bleScanRecord);
+        dest.writeSerializable(getBleScanRecord());
+        dest.writeDouble(this.smoothedRssi);
+        dest.writeDouble(this.estimatedDistance);
     }
 
     protected BleDevice(Parcel in) {
         this.bluetoothDevice = in.readParcelable(BluetoothDevice.class.getClassLoader());
         this.rssi = in.readInt();
         this.bleScanRecord = (BleScanRecord) in.readSerializable();
+        this.scanRecordBytes = bleScanRecord.getBytes();
+        this.smoothedRssi = in.readDouble();
+        this.estimatedDistance = in.readDouble();
     }
 
     public static final Creator<BleDevice> CREATOR = new Creator<BleDevice>() {
@@ -9,14 +9,21 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 import android.os.Build;
 
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import com.sscl.blelibrary.enums.CharacteristicCachePolicy;
 import com.sscl.blelibrary.enums.PhyMask;
 import com.sscl.blelibrary.enums.Transport;
+import com.sscl.blelibrary.interfaces.LargeDataResumeCallback;
 import com.sscl.blelibrary.interfaces.MultiConnector;
 import com.sscl.blelibrary.interfaces.OnBleConnectStateChangedListener;
+import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
+import com.sscl.blelibrary.interfaces.OnLargeDataStreamStateChangedListener;
+import com.sscl.blelibrary.interfaces.OnResumableLargeDataStreamStateChangedListener;
 
 import java.util.List;
 import java.util.UUID;
@@ -35,6 +42,14 @@ public final class BleDeviceController implements MultiConnector {
      * delay time
      */
     private static final int SEND_LARGE_DATA_PACKAGE_DELAY_TIME = 0;
+    /**
+     * default count of stream packets written but not yet confirmed
+     */
+    private static final int DEFAULT_STREAM_WINDOW_SIZE = 8;
+    /**
+     * default priority of a stream
+     */
+    private static final int DEFAULT_STREAM_PRIORITY = 1;
 
     /*-----------------------------------field variables-----------------------------------*/
 
@@ -46,6 +61,77 @@ public final class BleDeviceController implements MultiConnector {
      * device address
      */
     private String address;
+    /**
+     * running large data stream started by writeLargeDataStream
+     */
+    @Nullable
+    private volatile LargeDataStreamSession largeDataStreamSession;
+    /**
+     * connection of the large data streams
+     */
+    private final LargeDataLink largeDataLink = new LargeDataLink() {
+        @Override
+        public int getMtu() {
+            return BleDeviceController.this.getMtu();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return BleDeviceController.this.isConnected();
+        }
+
+        @Override
+        public boolean canWriteNoResponse(@NonNull String serviceUuid, @NonNull String characteristicUuid) {
+            return BleDeviceController.this.canWriteNoResponse(serviceUuid, characteristicUuid);
+        }
+
+        @Override
+        public boolean writeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull byte[] data, int writeType,
+                                 @NonNull OnGattOperationResultListener<byte[]> listener) {
+            BleMultiConnector bleMultiConnector = BleDeviceController.this.bleMultiConnector;
+            String address = BleDeviceController.this.address;
+            return bleMultiConnector != null && address != null && bleMultiConnector.writeData(address, serviceUuid, characteristicUuid, data, writeType, listener);
+        }
+
+        @Override
+        public boolean enableNotification(@NonNull String serviceUuid, @NonNull String characteristicUuid,
+                                          @Nullable OnGattOperationResultListener<byte[]> listener) {
+            BleMultiConnector bleMultiConnector = BleDeviceController.this.bleMultiConnector;
+            String address = BleDeviceController.this.address;
+            return bleMultiConnector != null && address != null && bleMultiConnector.enableNotification(address, serviceUuid, characteristicUuid, true, listener);
+        }
+
+        @Override
+        public boolean addOnBleReceiveNotificationListener(@NonNull String characteristicUuid,
+                                                           @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+            BleMultiConnector bleMultiConnector = BleDeviceController.this.bleMultiConnector;
+            String address = BleDeviceController.this.address;
+            return bleMultiConnector != null && address != null
+                    && bleMultiConnector.addOnBleReceiveNotificationListener(address, characteristicUuid, onBleReceiveNotificationListener);
+        }
+
+        @Override
+        public void removeOnBleReceiveNotificationListener(@NonNull String characteristicUuid,
+                                                           @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+            BleMultiConnector bleMultiConnector = BleDeviceController.this.bleMultiConnector;
+            String address = BleDeviceController.this.address;
+            if (bleMultiConnector != null && address != null) {
+                bleMultiConnector.removeOnBleReceiveNotificationListener(address, characteristicUuid, onBleReceiveNotificationListener);
+            }
+        }
+
+        @Override
+        public void dropPendingWrites() {
+        }
+
+        @Override
+        public void onTransferFinished() {
+        }
+    };
+    /**
+     * scheduler interleaving the packets of the large data streams
+     */
+    private final LargeDataTransferScheduler largeDataTransferScheduler = new LargeDataTransferScheduler(largeDataLink);
 
     /*-----------------------------------Constructor-----------------------------------*/
 
@@ -111,6 +197,85 @@ public final class BleDeviceController implements MultiConnector {
         return bleMultiConnector != null && address != null && bleMultiConnector.enableNotification(address, serviceUUID, characteristicUUID, enable);
     }
 
+    /**
+     * Resolve a characteristic once, requests through the returned handle skip looking it up again.
+     * The handle becomes invalid when the connection is lost or the services are discovered again.
+     *
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @return resolved characteristic, null means the characteristic is not found
+     */
+    @Override
+    @Nullable
+    public GattCharacteristicHandle resolveCharacteristic(@NonNull String serviceUUID, @NonNull String characteristicUUID) {
+        return bleMultiConnector == null || address == null ? null : bleMultiConnector.resolveCharacteristic(address, serviceUUID, characteristicUUID);
+    }
+
+    /**
+     * write data to remote device through a resolved characteristic.The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param data                     data
+     * @param listener                 result listener of this write, the result is the written value
+     * @return true means request queued successful, false means the handle is invalid
+     */
+    @Override
+    public boolean writeData(@NonNull GattCharacteristicHandle gattCharacteristicHandle, @NonNull byte[] data, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bleMultiConnector != null && address != null && bleMultiConnector.writeData(address, gattCharacteristicHandle, data, listener);
+    }
+
+    /**
+     * read data from remote device through a resolved characteristic.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param listener                 result listener of this read, the result is the read value
+     * @return true means request queued successful, false means the handle is invalid
+     */
+    @Override
+    public boolean readData(@NonNull GattCharacteristicHandle gattCharacteristicHandle, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bleMultiConnector != null && address != null && bleMultiConnector.readData(address, gattCharacteristicHandle, listener);
+    }
+
+    /**
+     * enable or disable notification of a resolved characteristic.The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param enable                   true means enable notification,false means disable notification
+     * @param listener                 result listener of the descriptor write
+     * @return true means successful, false means the handle is invalid
+     */
+    @Override
+    public boolean enableNotification(@NonNull GattCharacteristicHandle gattCharacteristicHandle, boolean enable, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bleMultiConnector != null && address != null && bleMultiConnector.enableNotification(address, gattCharacteristicHandle, enable, listener);
+    }
+
+    /**
+     * set how values read from a characteristic are cached.Reads of a characteristic made while a read of it is
+     * outstanding always share its result. Cached values are dropped when the characteristic is written, when the
+     * connection is lost and when the services are discovered again.
+     * Reads answered from the cache or by an outstanding read trigger only their own result listener.
+     *
+     * @param characteristicUUID characteristic UUID
+     * @param policy             cache policy
+     * @param ttl                time to live of a value for {@link CharacteristicCachePolicy#TTL}(unit:ms), ignored by the other policies
+     * @return true means successful
+     */
+    @Override
+    public boolean setCharacteristicCachePolicy(@NonNull String characteristicUUID, @NonNull CharacteristicCachePolicy policy, @IntRange(from = 0) long ttl) {
+        if (bleMultiConnector == null || address == null) {
+            return false;
+        }
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(characteristicUUID);
+        } catch (IllegalArgumentException e) {
+            DebugUtil.warnOut(BleDeviceController.class.getSimpleName(), "invalid characteristic UUID : " + characteristicUUID);
+            return false;
+        }
+        bleMultiConnector.setCharacteristicCachePolicy(address, uuid, policy, ttl);
+        return true;
+    }
+
     /**
      * get remote device RSSI.Result for request will be trigger callback {@link OnBleConnectStateChangedListener#readRemoteRssi(int)}
      *
@@ -128,6 +293,7 @@ public final class BleDeviceController implements MultiConnector {
      */
     @Override
     public boolean close() {
+        cancelLargeDataStreams();
         BleMultiConnector bleMultiConnector = this.bleMultiConnector;
         this.bleMultiConnector = null;
         boolean result = bleMultiConnector != null && bleMultiConnector.close(address);
@@ -182,6 +348,22 @@ public final class BleDeviceController implements MultiConnector {
         return bleMultiConnector.requestMtu(address, mtu);
     }
 
+    /**
+     * get negotiated ATT MTU of the connection
+     *
+     * @return ATT MTU, 23 before any mtu exchange
+     */
+    @Override
+    public int getMtu() {
+        if (bleMultiConnector == null) {
+            return BleConstants.DEFAULT_ATT_MTU;
+        }
+        if (address == null) {
+            return BleConstants.DEFAULT_ATT_MTU;
+        }
+        return bleMultiConnector.getMtu(address);
+    }
+
     /**
      * disconnect remote device
      *
@@ -762,6 +944,179 @@ public final class BleDeviceController implements MultiConnector {
         return bleMultiConnector != null && bleMultiConnector.isServiceDiscovered(address);
     }
 
+    /**
+     * Stream large data to remote device with writes without response.
+     * A window of 8 packets is kept in flight and the packets are formatted automatically.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeData                             large data
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] largeData,
+                                        @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        return writeLargeDataStream(serviceUUID, characteristicUUID, largeData, DEFAULT_STREAM_WINDOW_SIZE, true, onLargeDataStreamStateChangedListener);
+    }
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * A packet is confirmed when its write completed locally.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeData                             large data
+     * @param windowSize                            maximum count of packets queued at once
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] largeData,
+                                        @IntRange(from = 1) int windowSize, boolean autoFormat,
+                                        @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        return writeLargeDataStream(serviceUUID, characteristicUUID, LargeDataSource.fromBytes(largeData), windowSize, autoFormat, onLargeDataStreamStateChangedListener);
+    }
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * A packet is confirmed when its write completed locally.Packets are read from the source as they are sent.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets queued at once
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull LargeDataSource largeDataSource,
+                                        @IntRange(from = 1) int windowSize, boolean autoFormat,
+                                        @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        return startLargeDataStream(serviceUUID, characteristicUUID, null, null, largeDataSource, windowSize, DEFAULT_MAX_TRY_COUNT,
+                autoFormat, onLargeDataStreamStateChangedListener, null);
+    }
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * The remote device notifies the count of packets it received on the acknowledge characteristic,
+     * see {@link OnLargeDataStreamStateChangedListener#onReceiveAcknowledge(byte[])}.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges
+     * @param largeData                             large data
+     * @param windowSize                            maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                        @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                        @NonNull byte[] largeData, @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount,
+                                        boolean autoFormat, @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        return writeLargeDataStream(writeDataServiceUUID, writeDataCharacteristicUUID, ackServiceUUID, ackCharacteristicUUID,
+                LargeDataSource.fromBytes(largeData), windowSize, maxTryCount, autoFormat, onLargeDataStreamStateChangedListener);
+    }
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * The remote device notifies the count of packets it received on the acknowledge characteristic,
+     * see {@link OnLargeDataStreamStateChangedListener#onReceiveAcknowledge(byte[])}.Packets are read from the source as they are sent.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                        @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                        @NonNull LargeDataSource largeDataSource, @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount,
+                                        boolean autoFormat, @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        if (!canNotify(ackServiceUUID, ackCharacteristicUUID)) {
+            largeDataSource.closeQuietly();
+            return false;
+        }
+        return startLargeDataStream(writeDataServiceUUID, writeDataCharacteristicUUID, ackServiceUUID, ackCharacteristicUUID, largeDataSource,
+                windowSize, maxTryCount, autoFormat, onLargeDataStreamStateChangedListener, null);
+    }
+
+    /**
+     * Stream large data to remote device with writes without response and resume it after an interruption.
+     * The offset the remote device acknowledged is saved under the transfer ID while the stream runs and when it stops.
+     * A later stream with the same transfer ID and data length asks the listener to confirm the offset with the remote device,
+     * see {@link OnResumableLargeDataStreamStateChangedListener#onResumeRequested(int, int, LargeDataResumeCallback)}.
+     *
+     * @param writeDataServiceUUID                           service UUID for writing data
+     * @param writeDataCharacteristicUUID                    characteristic UUID for writing data
+     * @param ackServiceUUID                                 service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                          characteristic UUID for receiving acknowledges
+     * @param transferId                                     transfer ID, identifies the data across connections and app restarts
+     * @param largeDataSource                                source of the large data, closed when the stream ends or can not start
+     * @param windowSize                                     maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                                    Maximum number of retries without progress
+     * @param autoFormat                                     whether to format the packet
+     * @param onResumableLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    @Override
+    public boolean writeResumableLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                                 @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                                 @NonNull String transferId, @NonNull LargeDataSource largeDataSource,
+                                                 @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount, boolean autoFormat,
+                                                 @NonNull OnResumableLargeDataStreamStateChangedListener onResumableLargeDataStreamStateChangedListener) {
+        if (!canNotify(ackServiceUUID, ackCharacteristicUUID)) {
+            largeDataSource.closeQuietly();
+            return false;
+        }
+        return startLargeDataStream(writeDataServiceUUID, writeDataCharacteristicUUID, ackServiceUUID, ackCharacteristicUUID, largeDataSource,
+                windowSize, maxTryCount, autoFormat, onResumableLargeDataStreamStateChangedListener, transferId);
+    }
+
+    /**
+     * Open a large data stream that runs side by side with the other streams of the connection.
+     * Unlike writeLargeDataStream no running stream is cancelled, the packets of all open streams are interleaved
+     * and each stream gets a share of the written bytes proportional to its priority.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges, null means packets are confirmed by their write result
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges, null means packets are confirmed by their write result
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets written but not yet confirmed
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param priority                              share of the connection relative to the other streams
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return session to follow, re-prioritize or cancel the stream, null means request failed
+     */
+    @Nullable
+    @Override
+    public LargeDataStreamSession openLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                                      @Nullable String ackServiceUUID, @Nullable String ackCharacteristicUUID,
+                                                      @NonNull LargeDataSource largeDataSource, @IntRange(from = 1) int windowSize,
+                                                      @IntRange(from = 0) int maxTryCount, boolean autoFormat, @IntRange(from = 1) int priority,
+                                                      @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener) {
+        if (ackServiceUUID != null && ackCharacteristicUUID != null && !canNotify(ackServiceUUID, ackCharacteristicUUID)) {
+            largeDataSource.closeQuietly();
+            return null;
+        }
+        return openStream(writeDataServiceUUID, writeDataCharacteristicUUID, ackServiceUUID, ackCharacteristicUUID, largeDataSource,
+                windowSize, maxTryCount, autoFormat, priority, onLargeDataStreamStateChangedListener, null);
+    }
+
     /*-----------------------------------public method-----------------------------------*/
 
     public long getSendLargeDataTimeOut() {
@@ -806,4 +1161,79 @@ public final class BleDeviceController implements MultiConnector {
         }
         return bleMultiConnector.getBluetoothAdapter();
     }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * start a large data stream, the stream started last by this method is cancelled
+     *
+     * @param serviceUuid                           service UUID for writing data
+     * @param characteristicUuid                    characteristic UUID for writing data
+     * @param ackServiceUuid                        service UUID for receiving acknowledges, null means no acknowledge
+     * @param ackCharacteristicUuid                 characteristic UUID for receiving acknowledges, null means no acknowledge
+     * @param largeDataSource                       source of the large data
+     * @param windowSize                            maximum count of packets written but not yet confirmed
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @param transferId                            transfer ID of a resumable stream, null means the stream is not resumable
+     * @return true means request successful
+     */
+    private boolean startLargeDataStream(@NonNull String serviceUuid, @NonNull String characteristicUuid,
+                                         @Nullable String ackServiceUuid, @Nullable String ackCharacteristicUuid,
+                                         @NonNull LargeDataSource largeDataSource, int windowSize, int maxTryCount, boolean autoFormat,
+                                         @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener,
+                                         @Nullable String transferId) {
+        LargeDataStreamSession previousSession = largeDataStreamSession;
+        if (previousSession != null) {
+            previousSession.cancel();
+        }
+        largeDataStreamSession = openStream(serviceUuid, characteristicUuid, ackServiceUuid, ackCharacteristicUuid, largeDataSource,
+                windowSize, maxTryCount, autoFormat, DEFAULT_STREAM_PRIORITY, onLargeDataStreamStateChangedListener, transferId);
+        return largeDataStreamSession != null;
+    }
+
+    /**
+     * open a large data stream in the scheduler of the connection, running streams are not affected
+     *
+     * @param serviceUuid                           service UUID for writing data
+     * @param characteristicUuid                    characteristic UUID for writing data
+     * @param ackServiceUuid                        service UUID for receiving acknowledges, null means no acknowledge
+     * @param ackCharacteristicUuid                 characteristic UUID for receiving acknowledges, null means no acknowledge
+     * @param largeDataSource                       source of the large data
+     * @param windowSize                            maximum count of packets written but not yet confirmed
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param priority                              share of the connection relative to the other streams
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @param transferId                            transfer ID of a resumable stream, null means the stream is not resumable
+     * @return session of the stream, null means request failed
+     */
+    @Nullable
+    private LargeDataStreamSession openStream(@NonNull String serviceUuid, @NonNull String characteristicUuid,
+                                              @Nullable String ackServiceUuid, @Nullable String ackCharacteristicUuid,
+                                              @NonNull LargeDataSource largeDataSource, int windowSize, int maxTryCount, boolean autoFormat,
+                                              int priority, @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener,
+                                              @Nullable String transferId) {
+        if (bleMultiConnector == null || address == null || windowSize < 1 || priority < 1
+                || (!canWriteNoResponse(serviceUuid, characteristicUuid) && !canWrite(serviceUuid, characteristicUuid))) {
+            largeDataSource.closeQuietly();
+            return null;
+        }
+        LargeDataTransferScheduler.Flow flow = largeDataTransferScheduler.newFlow(priority);
+        LargeDataStreamTransfer largeDataStreamTransfer = new LargeDataStreamTransfer(flow, serviceUuid, characteristicUuid, ackServiceUuid,
+                ackCharacteristicUuid, largeDataSource, autoFormat, windowSize, maxTryCount, bleMultiConnector.getSendLargeDataTimeOut(),
+                onLargeDataStreamStateChangedListener, transferId);
+        flow.setLargeDataStreamTransfer(largeDataStreamTransfer);
+        largeDataStreamTransfer.start();
+        return new LargeDataStreamSession(largeDataStreamTransfer, flow);
+    }
+
+    /**
+     * cancel the running large data streams
+     */
+    private void cancelLargeDataStreams() {
+        largeDataStreamSession = null;
+        largeDataTransferScheduler.cancelAll();
+    }
 }
@@ -14,8 +14,11 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import com.sscl.blelibrary.enums.CharacteristicCachePolicy;
 import com.sscl.blelibrary.enums.PhyMask;
 import com.sscl.blelibrary.enums.Transport;
+import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
 import com.sscl.blelibrary.interfaces.OnLargeDataSendStateChangedListener;
 import com.sscl.blelibrary.interfaces.OnLargeDataWriteWithNotificationSendStateChangedListener;
 
@@ -179,6 +182,138 @@ public final class BleMultiConnector {
         return bluetoothMultiService != null && bluetoothMultiService.enableNotification(address, serviceUUID, characteristicUUID, enable);
     }
 
+    /**
+     * write data to remote device.The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address            device address
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param data               data
+     * @param writeType          write type of the characteristic, 0 keeps the write type of the characteristic
+     * @param listener           result listener of this write
+     * @return true means request queued successful
+     */
+    boolean writeData(@NonNull String address, @NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] data,
+                      int writeType, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bluetoothMultiService != null && bluetoothMultiService.writeData(address, serviceUUID, characteristicUUID, data, writeType, listener);
+    }
+
+    /**
+     * enable or disable notification.The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address            device address
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param enable             true means enable,false means disable
+     * @param listener           result listener of the descriptor write
+     * @return true means request success
+     */
+    boolean enableNotification(@NonNull String address, @NonNull String serviceUUID, @NonNull String characteristicUUID, boolean enable,
+                               @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bluetoothMultiService != null && bluetoothMultiService.enableNotification(address, serviceUUID, characteristicUUID, enable, listener);
+    }
+
+    /**
+     * set the cache policy of the values read from a characteristic of a connection
+     *
+     * @param address            device address
+     * @param characteristicUuid characteristic UUID
+     * @param policy             cache policy
+     * @param ttl                time to live of a value for {@link CharacteristicCachePolicy#TTL}(unit:ms)
+     * @return true means successful
+     */
+    boolean setCharacteristicCachePolicy(@NonNull String address, @NonNull UUID characteristicUuid, @NonNull CharacteristicCachePolicy policy,
+                                         @IntRange(from = 0) long ttl) {
+        if (bluetoothMultiService == null) {
+            return false;
+        }
+        bluetoothMultiService.setCharacteristicCachePolicy(address, characteristicUuid, policy, ttl);
+        return true;
+    }
+
+    /**
+     * Resolve a characteristic of a connection
+     *
+     * @param address            device address
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @return resolved characteristic, null means the device is not connected or the characteristic is not found
+     */
+    @Nullable
+    GattCharacteristicHandle resolveCharacteristic(@NonNull String address, @NonNull String serviceUUID, @NonNull String characteristicUUID) {
+        return bluetoothMultiService == null ? null : bluetoothMultiService.resolveCharacteristic(address, serviceUUID, characteristicUUID);
+    }
+
+    /**
+     * write data through a resolved characteristic.The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address                  device address
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param data                     data
+     * @param listener                 result listener of this write
+     * @return true means request success
+     */
+    boolean writeData(@NonNull String address, @NonNull GattCharacteristicHandle gattCharacteristicHandle, @NonNull byte[] data,
+                      @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bluetoothMultiService != null && bluetoothMultiService.writeData(address, gattCharacteristicHandle, data, 0, listener);
+    }
+
+    /**
+     * read data through a resolved characteristic.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address                  device address
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param listener                 result listener of this read
+     * @return true means request success
+     */
+    boolean readData(@NonNull String address, @NonNull GattCharacteristicHandle gattCharacteristicHandle,
+                     @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bluetoothMultiService != null && bluetoothMultiService.readData(address, gattCharacteristicHandle, listener);
+    }
+
+    /**
+     * enable or disable notification of a resolved characteristic.The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address                  device address
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param enable                   true means enable,false means disable
+     * @param listener                 result listener of the descriptor write
+     * @return true means request success
+     */
+    boolean enableNotification(@NonNull String address, @NonNull GattCharacteristicHandle gattCharacteristicHandle, boolean enable,
+                               @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return bluetoothMultiService != null && bluetoothMultiService.enableNotification(address, gattCharacteristicHandle, enable, listener);
+    }
+
+    /**
+     * add a library internal notification listener of one characteristic of a connection
+     *
+     * @param address                          device address
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener listener, called on the main thread
+     * @return true means successful
+     */
+    boolean addOnBleReceiveNotificationListener(@NonNull String address, @NonNull String characteristicUuid,
+                                                @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        return bluetoothMultiService != null
+                && bluetoothMultiService.addOnBleReceiveNotificationListener(address, characteristicUuid, onBleReceiveNotificationListener);
+    }
+
+    /**
+     * remove a library internal notification listener of one characteristic of a connection
+     *
+     * @param address                          device address
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener listener
+     */
+    void removeOnBleReceiveNotificationListener(@NonNull String address, @NonNull String characteristicUuid,
+                                                @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        if (bluetoothMultiService == null) {
+            return;
+        }
+        bluetoothMultiService.removeOnBleReceiveNotificationListener(address, characteristicUuid, onBleReceiveNotificationListener);
+    }
+
     /**
      * get GATT services by Specified address
      *
@@ -885,6 +1020,13 @@ public final class BleMultiConnector {
         return bluetoothMultiService != null && bluetoothMultiService.requestMtu(address, mtu);
     }
 
+    int getMtu(@NonNull String address) {
+        if (bluetoothMultiService == null) {
+            return BleConstants.DEFAULT_ATT_MTU;
+        }
+        return bluetoothMultiService.getMtu(address);
+    }
+
     /**
      * get service discovered status
      *
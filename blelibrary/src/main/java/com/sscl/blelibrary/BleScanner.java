@@ -4,8 +4,6 @@ import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
 import android.bluetooth.le.ScanFilter;
 import android.bluetooth.le.ScanRecord;
 import android.bluetooth.le.ScanResult;
@@ -15,7 +13,10 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.ParcelUuid;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -25,14 +26,17 @@ import com.sscl.blelibrary.enums.BleCallbackType;
 import com.sscl.blelibrary.enums.BleMatchMode;
 import com.sscl.blelibrary.enums.BleNumOfMatches;
 import com.sscl.blelibrary.enums.BleScanMode;
+import com.sscl.blelibrary.enums.RssiFilterType;
 import com.sscl.blelibrary.enums.ScanPhy;
+import com.sscl.blelibrary.interfaces.OnBleDeviceLostListener;
+import com.sscl.blelibrary.interfaces.OnBlePresenceChangedListener;
+import com.sscl.blelibrary.interfaces.OnBleScanBatchListener;
 import com.sscl.blelibrary.interfaces.OnBleScanStateChangedListener;
-import com.sscl.blelibrary.systems.BleArrayList;
-import com.sscl.blelibrary.systems.BleParcelUuid;
-import com.sscl.blelibrary.systems.BleScanRecord;
+import com.sscl.blelibrary.systems.BleScanRecordView;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * BLE Scanner
@@ -48,6 +52,16 @@ public final class BleScanner {
      */
     private static final String TAG = BleScanner.class.getSimpleName();
 
+    /**
+     * Executor that invokes the listeners on the main thread
+     */
+    private static final Executor MAIN_THREAD_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            BleManager.getHandler().post(command);
+        }
+    };
+
     /*-----------------------------------field variables-----------------------------------*/
 
     /**
@@ -56,9 +70,46 @@ public final class BleScanner {
     private long scanPeriod = 20000;
 
     /**
-     * Scan result list
+     * Scan result index(keyed by device address).It is only touched on the scan pipeline thread.
+     */
+    private volatile ScanResultIndex scanResultIndex = new ScanResultIndex();
+
+    /**
+     * Copy of the scan results, published by the scan pipeline thread once per delivery tick after changes.
+     * It is never modified once published.
+     */
+    private volatile ArrayList<BleDevice> scanResultsSnapshot = new ArrayList<>();
+
+    /**
+     * Whether {@link #publishScanResultsRunnable} is scheduled
+     */
+    private boolean publishScheduled;
+
+    /**
+     * task that publishes the scan results and reports the changes since the last publish
      */
-    private ArrayList<BleDevice> scanResults = new ArrayList<>();
+    private final Runnable publishScanResultsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            publishScheduled = false;
+            ScanResultIndex scanResultIndex = BleScanner.this.scanResultIndex;
+            if (scanResultIndex == null) {
+                return;
+            }
+            ArrayList<ScanResultIndex.Change> changes = new ArrayList<>();
+            ArrayList<BleDevice> scanResults = scanResultIndex.publish(changes);
+            scanResultsSnapshot = scanResults;
+            for (int i = 0; i < changes.size(); i++) {
+                ScanResultIndex.Change change = changes.get(i);
+                if (change.isLost()) {
+                    //noinspection ConstantConditions
+                    callOnDeviceLostListener(change.getIndex(), change.getBleDevice(), scanResults);
+                } else {
+                    callOnScanFindOneNewDeviceListener(change.getIndex(), change.getBleDevice(), scanResults);
+                }
+            }
+        }
+    };
 
     /**
      * BLE scan node
@@ -138,6 +189,18 @@ public final class BleScanner {
      */
     private ArrayList<ScanFilter> customScanFilters = new ArrayList<>();
 
+    /**
+     * Matcher compiled from the software filters above.
+     * It is rebuilt whenever a filter list changes.
+     */
+    private volatile ScanFilterMatcher scanFilterMatcher = ScanFilterMatcher.EMPTY;
+
+    /**
+     * Reusable view of the scan record being processed.
+     * Filters run on the view, so filtered out packets are not fully parsed.
+     */
+    private final BleScanRecordView scanRecordView = new BleScanRecordView();
+
     /**
      * Used to record whether the next scan is automatically performed
      */
@@ -148,6 +211,159 @@ public final class BleScanner {
      */
     @Nullable
     private OnBleScanStateChangedListener onBleScanStateChangedListener;
+    /**
+     * BLE scan batch listener
+     */
+    @Nullable
+    private OnBleScanBatchListener onBleScanBatchListener;
+
+    /**
+     * Thread of the scan pipeline.Parsing, filtering, dedup and delivery decisions run on it.
+     */
+    private final HandlerThread scanHandlerThread;
+
+    /**
+     * Handler of the scan pipeline thread
+     */
+    private final Handler scanHandler;
+
+    /**
+     * Executor that invokes the listeners
+     */
+    @NonNull
+    private volatile Executor callbackExecutor = MAIN_THREAD_EXECUTOR;
+
+    /**
+     * Delivery policy of scan results(rate limit, payload change check and batch)
+     */
+    private final ScanDeliveryCoalescer scanDeliveryCoalescer = new ScanDeliveryCoalescer();
+
+    /**
+     * task that delivers the pending batch
+     */
+    private final Runnable flushScanBatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final ArrayList<BleDevice> bleDevices = scanDeliveryCoalescer.drain();
+            if (bleDevices.isEmpty()) {
+                return;
+            }
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (onBleScanBatchListener != null) {
+                        onBleScanBatchListener.onScanFindDevices(bleDevices);
+                    }
+                }
+            });
+        }
+    };
+
+    /**
+     * Time to live of a device in the scan results since it was last seen(unit:ms).0 means forever.
+     */
+    private volatile long scanResultTtl;
+
+    /**
+     * Maximum device count of the scan results.0 means unlimited.
+     */
+    private volatile int maxScanResultCount;
+
+    /**
+     * Listener of devices removed from the scan results
+     */
+    @Nullable
+    private OnBleDeviceLostListener onBleDeviceLostListener;
+
+    /**
+     * Whether {@link #evictExpiredRunnable} is scheduled
+     */
+    private boolean evictionScheduled;
+
+    /**
+     * task that removes the devices whose time to live expired
+     */
+    private final Runnable evictExpiredRunnable = new Runnable() {
+        @Override
+        public void run() {
+            evictionScheduled = false;
+            evictScanResults();
+        }
+    };
+
+    /**
+     * Presence tracker.null means presence tracking is off.Only used on the scan pipeline thread.
+     */
+    @Nullable
+    private PresenceTracker presenceTracker;
+
+    /**
+     * sighting count needed for a device to become present
+     */
+    private int presenceFoundCount = 1;
+
+    /**
+     * minimum rssi of a sighting counted for an absent device
+     */
+    private int presenceFoundRssi = Integer.MIN_VALUE;
+
+    /**
+     * minimum rssi of a sighting that keeps a present device present
+     */
+    private int presenceLostRssi = Integer.MIN_VALUE;
+
+    /**
+     * BLE device presence changed listener
+     */
+    @Nullable
+    private OnBlePresenceChangedListener onBlePresenceChangedListener;
+
+    /**
+     * devices that became absent in one tick of the presence tracker
+     */
+    private final ArrayList<BleDevice> absentDevices = new ArrayList<>();
+
+    /**
+     * Whether {@link #presenceTickRunnable} is scheduled
+     */
+    private boolean presenceTickScheduled;
+
+    /**
+     * task that advances the presence tracker
+     */
+    private final Runnable presenceTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            presenceTickScheduled = false;
+            PresenceTracker presenceTracker = BleScanner.this.presenceTracker;
+            if (presenceTracker == null) {
+                return;
+            }
+            presenceTracker.advance(SystemClock.elapsedRealtime(), absentDevices);
+            for (int i = 0; i < absentDevices.size(); i++) {
+                callOnDeviceAbsentListener(absentDevices.get(i));
+            }
+            absentDevices.clear();
+            schedulePresenceTick(presenceTracker);
+        }
+    };
+
+    /**
+     * RSSI smoothing filter of the devices in the scan results.Only used on the scan pipeline thread.
+     */
+    private RssiFilter rssiFilter = new RssiFilter(RssiFilterType.NONE, RssiFilter.DEFAULT_WINDOW_SIZE,
+            RssiFilter.DEFAULT_EMA_ALPHA, RssiFilter.DEFAULT_PROCESS_NOISE, RssiFilter.DEFAULT_MEASUREMENT_NOISE, 0);
+
+    /**
+     * rssi at 1m used when the device does not advertise its TX power level
+     */
+    private volatile int defaultMeasuredPower = -59;
+
+    /**
+     * path loss exponent of the distance estimation
+     */
+    private volatile double pathLossExponent = 2.0;
+
     /**
      * Broadcast receiver detecting Bluetooth switch status
      */
@@ -174,23 +390,9 @@ public final class BleScanner {
     private boolean scanning;
 
     /**
-     * System scan callback (API 20 and below)
-     */
-    private BluetoothAdapter.LeScanCallback scanCallback18;
-
-    /**
-     * System scan callback (API 20 and above)
-     */
-    private ScanCallback scanCallback21;
-
-    /**
-     * a timer for scanner to stop scan
+     * scan scheduler(scan period, duty cycle and adaptive scan mode)
      */
-    private ScanTimer scanTimer;
-    /**
-     * System BLE scanner
-     */
-    private BluetoothLeScanner bluetoothLeScanner;
+    private final ScanScheduler scanScheduler;
 
     /*-----------------------------------Constructor-----------------------------------*/
 
@@ -201,18 +403,13 @@ public final class BleScanner {
      */
     BleScanner(@NonNull Context context) {
         this.context = context;
-        scanTimer = new ScanTimer(BleScanner.this);
+        scanHandlerThread = new HandlerThread(TAG);
+        scanHandlerThread.start();
+        scanHandler = new Handler(scanHandlerThread.getLooper());
+        scanScheduler = new ScanScheduler(BleScanner.this, scanHandler);
         if (!(context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_BLUETOOTH_LE))) {
             return;
         }
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            //Initialize scan callback (API21 and above)
-            initBleScanCallBack21();
-        } else {
-            //Initialize BLE scan callback (API21 below and does not include API21)
-            initBleScanCallBack18();
-        }
-
         bleScannerBluetoothStateReceiver = new BleScannerBluetoothStateReceiver(BleScanner.this);
 
         BluetoothManager bluetoothManager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
@@ -237,12 +434,13 @@ public final class BleScanner {
     /*-----------------------------------package private getter-----------------------------------*/
 
     /**
-     * get whether the next scan is automatically performed
+     * get the executor that invokes the listeners
      *
-     * @return whether the next scan is automatically performed
+     * @return executor
      */
-    boolean isAutoStartNextScan() {
-        return autoStartNextScan;
+    @NonNull
+    Executor getCallbackExecutor() {
+        return callbackExecutor;
     }
 
     /**
@@ -255,10 +453,113 @@ public final class BleScanner {
     }
 
     /**
-     * set scanning flag to false
+     * Start the platform scan.Called by {@link ScanScheduler} for every scan window.
+     *
+     * @param scanMode scan mode of the window(ignored below API 21)
+     * @return true means the platform scan started
+     */
+    boolean startPlatformScan(@Nullable BleScanMode scanMode) {
+        BluetoothAdapter bluetoothAdapter = this.bluetoothAdapter;
+        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return ScanSessionMultiplexer.getInstance().subscribe(BleScanner.this, bluetoothAdapter,
+                    refreshScanFilter(), refreshScanSettings(scanMode == null ? bleScanMode : scanMode),
+                    bleMatchMode.getMatchMode(), bleNumOfMatches.getValue());
+        } else {
+            return ScanSessionMultiplexer.getInstance().subscribe(BleScanner.this, bluetoothAdapter,
+                    new ArrayList<ScanFilter>(), null, 0, 0);
+        }
+    }
+
+    /**
+     * Stop the platform scan.Called by {@link ScanScheduler} at the end of every scan window.
+     *
+     * @return true means successful
+     */
+    boolean stopPlatformScan() {
+        return ScanSessionMultiplexer.getInstance().unsubscribe(BleScanner.this);
+    }
+
+    /**
+     * Called by {@link ScanSessionMultiplexer} when the platform scan found a device (API 20 and below)
+     *
+     * @param device     Bluetooth device
+     * @param rssi       rssi
+     * @param scanRecord scan record
+     */
+    void onPlatformLeScan(final BluetoothDevice device, final int rssi, final byte[] scanRecord) {
+        scanHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onApi18ScanResultProcessor(device, rssi, scanRecord);
+            }
+        });
+    }
+
+    /**
+     * Called by {@link ScanSessionMultiplexer} when the platform scan found a device matching the filters
+     * of this scanner (API 21 and above)
+     *
+     * @param result A Bluetooth LE scan result.
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    void onPlatformScanResult(final ScanResult result) {
+        scanHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onApi21ScanResultProcessor(result);
+            }
+        });
+    }
+
+    /**
+     * Called by {@link ScanSessionMultiplexer} when batch results matching the filters of this scanner are delivered
+     *
+     * @param results List of scan results that are previously scanned.
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    void onPlatformBatchScanResults(final List<ScanResult> results) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (onBleScanStateChangedListener != null) {
+                    onBleScanStateChangedListener.onBatchScanResults(results);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called by {@link ScanSessionMultiplexer} when the platform scan could not be started.
+     *
+     * @param errorCode Error code (one of SCAN_FAILED_*) for scan failure.
+     */
+    void onPlatformScanFailed(final int errorCode) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (onBleScanStateChangedListener != null) {
+                    onBleScanStateChangedListener.onScanFailed(errorCode);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called by {@link ScanScheduler} when the scan session finished by itself
      */
-    void setScanningFalse() {
-        this.scanning = false;
+    void onScanSessionFinished() {
+        scanning = false;
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (onBleScanStateChangedListener != null) {
+                    onBleScanStateChangedListener.onScanComplete();
+                }
+            }
+        });
     }
 
     /*-----------------------------------public setter and getter-----------------------------------*/
@@ -336,6 +637,41 @@ public final class BleScanner {
         this.autoStartNextScan = autoStartNextScan;
     }
 
+    /**
+     * set scan duty cycle.
+     * The radio scans for scanWindow in every scanInterval.
+     * Scan starts are kept within the limit of Android(5 starts in 30 seconds),
+     * a window that would exceed it is delayed.
+     *
+     * @param scanWindow   scan window(unit:ms).0 means continuous scanning.
+     * @param scanInterval scan interval(unit:ms)
+     */
+    public void setScanDutyCycle(long scanWindow, long scanInterval) {
+        scanScheduler.setDutyCycle(scanWindow, scanInterval);
+    }
+
+    /**
+     * set whether the scan mode is adaptive.
+     * The scan mode steps down after scan windows without new devices, and goes back to the mode set by
+     * {@link #setBleScanMode(BleScanMode)} as soon as a new device is found.
+     * It stays at or below {@link BleScanMode#BALANCED} when the battery is low.
+     *
+     * @param adaptiveScanMode true means adaptive
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    public void setAdaptiveScanMode(boolean adaptiveScanMode) {
+        scanScheduler.setAdaptiveScanMode(adaptiveScanMode);
+    }
+
+    /**
+     * get the total time the radio has been scanning for this scanner
+     *
+     * @return radio on time(unit:ms)
+     */
+    public long getRadioOnTime() {
+        return scanScheduler.getRadioOnTime();
+    }
+
     /**
      * get Context
      *
@@ -355,14 +691,47 @@ public final class BleScanner {
         this.scanPhy = scanPhy;
     }
 
+    /**
+     * set minimum interval between two deliveries of one device.
+     * Advertisements of the device received within the interval are not delivered to the listeners,
+     * but the scan results are still updated.
+     *
+     * @param minDeliveryInterval minimum interval(unit:ms).0 means no limit.
+     */
+    public void setMinDeliveryInterval(long minDeliveryInterval) {
+        scanDeliveryCoalescer.setMinIntervalMillis(minDeliveryInterval);
+    }
+
+    /**
+     * set whether a device is only delivered to the listeners when its advertisement payload changed
+     *
+     * @param deliverOnPayloadChangeOnly true means only deliver changed payload
+     */
+    public void setDeliverOnPayloadChangeOnly(boolean deliverOnPayloadChangeOnly) {
+        scanDeliveryCoalescer.setPayloadChangeOnly(deliverOnPayloadChangeOnly);
+    }
+
+    /**
+     * set batch interval.
+     * If it is greater than 0, devices found within one interval are delivered together
+     * by {@link OnBleScanBatchListener#onScanFindDevices(ArrayList)} instead of
+     * {@link OnBleScanStateChangedListener#onScanFindOneDevice(BleDevice)}.
+     * For example, 16ms gives at most one callback per frame.
+     *
+     * @param batchDeliveryInterval batch interval(unit:ms).0 means no batch.
+     */
+    public void setBatchDeliveryInterval(long batchDeliveryInterval) {
+        scanDeliveryCoalescer.setBatchIntervalMillis(batchDeliveryInterval);
+    }
+
     /**
      * get scan result
      *
-     * @return scan result
+     * @return a copy of the scan result
      */
     @NonNull
     public ArrayList<BleDevice> getScanResults() {
-        return scanResults;
+        return new ArrayList<>(scanResultsSnapshot);
     }
 
     /*-----------------------------------public method-----------------------------------*/
@@ -404,6 +773,7 @@ public final class BleScanner {
      */
     public void addFilterStartsName(@NonNull String startsName) {
         filterNames.add(startsName);
+        compileFilters();
     }
 
     /**
@@ -415,6 +785,7 @@ public final class BleScanner {
      */
     public void removeFilterStartsName(@NonNull String startsName) {
         filterNames.remove(startsName);
+        compileFilters();
     }
 
     /**
@@ -422,6 +793,7 @@ public final class BleScanner {
      */
     public void clearFilterStartsNames() {
         filterNames.clear();
+        compileFilters();
     }
 
     /**
@@ -434,6 +806,7 @@ public final class BleScanner {
     public void addFilterUuid(String uuid) {
         uuid = uuid.toLowerCase();
         filterUuids.add(uuid);
+        compileFilters();
     }
 
     /**
@@ -446,6 +819,7 @@ public final class BleScanner {
     public void removeFilterUuid(String uuid) {
         uuid = uuid.toLowerCase();
         filterUuids.remove(uuid);
+        compileFilters();
     }
 
     /**
@@ -453,6 +827,7 @@ public final class BleScanner {
      */
     public void clearFilterUuid() {
         filterUuids.clear();
+        compileFilters();
     }
 
     /**
@@ -464,6 +839,7 @@ public final class BleScanner {
      */
     public void addFilterFullName(@NonNull String fullName) {
         filterFullNames.add(fullName);
+        compileFilters();
     }
 
     /**
@@ -475,6 +851,7 @@ public final class BleScanner {
      */
     public void removeFilterFullName(@NonNull String fullName) {
         filterFullNames.remove(fullName);
+        compileFilters();
     }
 
     /**
@@ -482,6 +859,7 @@ public final class BleScanner {
      */
     public void clearFilterFullName() {
         filterFullNames.clear();
+        compileFilters();
     }
 
     /**
@@ -493,6 +871,7 @@ public final class BleScanner {
      */
     public void addFilterStartsAddress(@NonNull String startsAddress) {
         filterAddresses.add(startsAddress.toUpperCase());
+        compileFilters();
     }
 
     /**
@@ -504,6 +883,7 @@ public final class BleScanner {
      */
     public void removeFilterStartsAddress(@NonNull String startsAddress) {
         filterAddresses.remove(startsAddress.toUpperCase());
+        compileFilters();
     }
 
     /**
@@ -511,6 +891,7 @@ public final class BleScanner {
      */
     public void clearFilterStartsAddress() {
         filterAddresses.clear();
+        compileFilters();
     }
 
     /**
@@ -522,6 +903,7 @@ public final class BleScanner {
      */
     public void addFilterFullAddress(@NonNull String fullAddress) {
         filterFullAddresses.add(fullAddress.toUpperCase());
+        compileFilters();
     }
 
     /**
@@ -533,6 +915,7 @@ public final class BleScanner {
      */
     public void removeFilterFullAddress(@NonNull String fullAddress) {
         filterFullAddresses.remove(fullAddress.toUpperCase());
+        compileFilters();
     }
 
     /**
@@ -540,6 +923,7 @@ public final class BleScanner {
      */
     public void clearFilterFullAddress() {
         filterFullAddresses.clear();
+        compileFilters();
     }
 
     /**
@@ -563,70 +947,238 @@ public final class BleScanner {
      */
     public void setOnBleScanStateChangedListener(@Nullable OnBleScanStateChangedListener onBleScanStateChangedListener) {
         this.onBleScanStateChangedListener = onBleScanStateChangedListener;
-        if (scanTimer != null) {
-            scanTimer.setOnBleScanStateChangedListener(onBleScanStateChangedListener);
-        }
     }
 
     /**
-     * initialization
+     * set the executor that invokes {@link OnBleScanStateChangedListener} and {@link OnBleScanBatchListener}.
+     * Scan results are always processed on the scanner's own thread,
+     * this only decides where the listeners are called.For example,
+     * a direct executor calls the listeners on the scanner's thread and never touches the main looper.
+     *
+     * @param callbackExecutor executor.null means the main thread.
      */
-    public boolean init() {
-        if (context == null) {
-            return false;
+    public void setCallbackExecutor(@Nullable Executor callbackExecutor) {
+        if (callbackExecutor == null) {
+            this.callbackExecutor = MAIN_THREAD_EXECUTOR;
+        } else {
+            this.callbackExecutor = callbackExecutor;
         }
-        IntentFilter filter = new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED);
-        context.registerReceiver(bleScannerBluetoothStateReceiver, filter);
-        scanResults.clear();
-        initialized = true;
-        return true;
     }
 
     /**
-     * Flush pending batch scan results stored in Bluetooth controller. This will return Bluetooth
-     * LE scan results batched on bluetooth controller. Returns immediately, batch scan results data
-     * will be delivered through the {@code callback}.
-     * <p>
-     * used to start scan.
+     * set time to live of a device in the scan results.
+     * A device not seen within this time is removed from the scan results
+     * and {@link OnBleDeviceLostListener#onDeviceLost(int, BleDevice, ArrayList)} is triggered.
+     *
+     * @param scanResultTtl time to live(unit:ms).0 means forever.
      */
-    @SuppressWarnings("WeakerAccess")
-    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
-    public void flushPendingScanResults() {
-        if (bluetoothLeScanner != null) {
-            bluetoothLeScanner.flushPendingScanResults(scanCallback21);
-        }
+    public void setScanResultTtl(long scanResultTtl) {
+        this.scanResultTtl = scanResultTtl;
+        postEvictScanResults();
     }
 
     /**
-     * start scan
+     * set maximum device count of the scan results.
+     * When the scan results are full, the least recently seen device is removed
+     * and {@link OnBleDeviceLostListener#onDeviceLost(int, BleDevice, ArrayList)} is triggered.
      *
-     * @return true means the scanner successfully started scanning
+     * @param maxScanResultCount maximum device count.0 means unlimited.
      */
-    public boolean startScan() {
-        return startScan(false);
+    public void setMaxScanResultCount(int maxScanResultCount) {
+        this.maxScanResultCount = maxScanResultCount;
+        postEvictScanResults();
     }
 
     /**
-     * start scan
+     * set listener of devices removed from the scan results
      *
-     * @param clearScanResult whether to clear previous scan records
-     * @return true means the scanner successfully started scanning
+     * @param onBleDeviceLostListener listener of devices removed from the scan results
      */
-    public boolean startScan(boolean clearScanResult) {
-        if (context == null) {
-            return false;
-        }
-        if (bluetoothAdapter == null) {
-            return false;
-        }
-
-        if (!initialized) {
-            return false;
-        }
+    public void setOnBleDeviceLostListener(@Nullable OnBleDeviceLostListener onBleDeviceLostListener) {
+        this.onBleDeviceLostListener = onBleDeviceLostListener;
+    }
 
-        if (!bluetoothAdapter.isEnabled()) {
-            return false;
-        }
+    /**
+     * set lost timeout of presence tracking.
+     * A present device not seen within this time triggers {@link OnBlePresenceChangedListener#onDeviceAbsent(BleDevice)}.
+     * Changing the timeout restarts presence tracking without absent events.
+     *
+     * @param presenceLostTimeout lost timeout(unit:ms).0 means presence tracking is off.
+     */
+    public void setPresenceLostTimeout(final long presenceLostTimeout) {
+        scanHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (presenceLostTimeout <= 0) {
+                    presenceTracker = null;
+                    return;
+                }
+                PresenceTracker presenceTracker = new PresenceTracker(presenceLostTimeout, SystemClock.elapsedRealtime());
+                presenceTracker.setFoundCount(presenceFoundCount);
+                presenceTracker.setRssiThreshold(presenceFoundRssi, presenceLostRssi);
+                BleScanner.this.presenceTracker = presenceTracker;
+            }
+        });
+    }
+
+    /**
+     * set sighting count needed for a device to become present
+     *
+     * @param presenceFoundCount sighting count(at least 1)
+     */
+    public void setPresenceFoundCount(final int presenceFoundCount) {
+        scanHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                BleScanner.this.presenceFoundCount = presenceFoundCount;
+                if (presenceTracker != null) {
+                    presenceTracker.setFoundCount(presenceFoundCount);
+                }
+            }
+        });
+    }
+
+    /**
+     * set rssi hysteresis of presence tracking.
+     * An absent device only counts sightings with at least foundRssi,
+     * a present device only stays present with sightings of at least lostRssi.
+     * foundRssi should not be lower than lostRssi.
+     *
+     * @param foundRssi minimum rssi of a sighting counted for an absent device
+     * @param lostRssi  minimum rssi of a sighting that keeps a present device present
+     */
+    public void setPresenceRssiThreshold(final int foundRssi, final int lostRssi) {
+        scanHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                presenceFoundRssi = foundRssi;
+                presenceLostRssi = lostRssi;
+                if (presenceTracker != null) {
+                    presenceTracker.setRssiThreshold(foundRssi, lostRssi);
+                }
+            }
+        });
+    }
+
+    /**
+     * set ble device presence changed listener
+     *
+     * @param onBlePresenceChangedListener ble device presence changed listener
+     */
+    public void setOnBlePresenceChangedListener(@Nullable OnBlePresenceChangedListener onBlePresenceChangedListener) {
+        this.onBlePresenceChangedListener = onBlePresenceChangedListener;
+    }
+
+    /**
+     * set RSSI smoothing filter.The filter state of all devices is reset.
+     *
+     * @param rssiFilterType   filter type
+     * @param windowSize       sample count kept per device, the window of {@link RssiFilterType#MEDIAN}
+     * @param emaAlpha         smoothing factor of {@link RssiFilterType#EMA}, in (0, 1]
+     * @param processNoise     process noise of {@link RssiFilterType#KALMAN}
+     * @param measurementNoise measurement noise of {@link RssiFilterType#KALMAN}
+     * @throws IllegalArgumentException emaAlpha is not in (0, 1]
+     */
+    public void setRssiFilter(@NonNull final RssiFilterType rssiFilterType, final int windowSize, final double emaAlpha,
+                              final double processNoise, final double measurementNoise) {
+        RssiFilter.checkEmaAlpha(emaAlpha);
+        scanHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                rssiFilter = new RssiFilter(rssiFilterType, windowSize, emaAlpha, processNoise, measurementNoise, 0);
+            }
+        });
+    }
+
+    /**
+     * set RSSI smoothing filter with default parameters.The filter state of all devices is reset.
+     *
+     * @param rssiFilterType filter type
+     */
+    public void setRssiFilter(@NonNull RssiFilterType rssiFilterType) {
+        setRssiFilter(rssiFilterType, RssiFilter.DEFAULT_WINDOW_SIZE, RssiFilter.DEFAULT_EMA_ALPHA,
+                RssiFilter.DEFAULT_PROCESS_NOISE, RssiFilter.DEFAULT_MEASUREMENT_NOISE);
+    }
+
+    /**
+     * set parameters of the distance estimation.
+     * The rssi at 1m is derived from the advertised TX power level when there is one,
+     * otherwise defaultMeasuredPower is used.
+     *
+     * @param defaultMeasuredPower rssi at 1m(unit:dBm)
+     * @param pathLossExponent     path loss exponent, 2 in free space and usually 2~4 indoors
+     */
+    public void setDistanceEstimation(int defaultMeasuredPower, double pathLossExponent) {
+        this.defaultMeasuredPower = defaultMeasuredPower;
+        this.pathLossExponent = pathLossExponent;
+    }
+
+    /**
+     * set ble scan batch listener
+     *
+     * @param onBleScanBatchListener ble scan batch listener
+     */
+    public void setOnBleScanBatchListener(@Nullable OnBleScanBatchListener onBleScanBatchListener) {
+        this.onBleScanBatchListener = onBleScanBatchListener;
+    }
+
+    /**
+     * initialization
+     */
+    public boolean init() {
+        if (context == null) {
+            return false;
+        }
+        IntentFilter filter = new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED);
+        context.registerReceiver(bleScannerBluetoothStateReceiver, filter);
+        postClearScanResults();
+        initialized = true;
+        return true;
+    }
+
+    /**
+     * Flush pending batch scan results stored in Bluetooth controller. This will return Bluetooth
+     * LE scan results batched on bluetooth controller. Returns immediately, batch scan results data
+     * will be delivered through the {@code callback}.
+     * <p>
+     * used to start scan.
+     */
+    @SuppressWarnings("WeakerAccess")
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    public void flushPendingScanResults() {
+        ScanSessionMultiplexer.getInstance().flushPendingScanResults();
+    }
+
+    /**
+     * start scan
+     *
+     * @return true means the scanner successfully started scanning
+     */
+    public boolean startScan() {
+        return startScan(false);
+    }
+
+    /**
+     * start scan
+     *
+     * @param clearScanResult whether to clear previous scan records
+     * @return true means the scanner successfully started scanning
+     */
+    public boolean startScan(boolean clearScanResult) {
+        if (context == null) {
+            return false;
+        }
+        if (bluetoothAdapter == null) {
+            return false;
+        }
+
+        if (!initialized) {
+            return false;
+        }
+
+        if (!bluetoothAdapter.isEnabled()) {
+            return false;
+        }
 
         if (scanning) {
             return false;
@@ -639,27 +1191,15 @@ public final class BleScanner {
             }
         }
 
+        BleScanMode scanMode = null;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
-            try {
-                bluetoothLeScanner.startScan(refreshScanFilter(), refreshScanSettings(), scanCallback21);
-                scanTimer.startTimer(scanPeriod);
-                scanning = true;
-                return true;
-            } catch (Exception e) {
-                return false;
-            }
-
-        } else {
-            try {
-                bluetoothAdapter.startLeScan(scanCallback18);
-                scanTimer.startTimer(scanPeriod);
-                scanning = true;
-                return true;
-            } catch (Exception e) {
-                return false;
-            }
+            scanMode = bleScanMode;
         }
+        if (!scanScheduler.start(scanMode, scanPeriod, autoStartNextScan)) {
+            return false;
+        }
+        scanning = true;
+        return true;
     }
 
     /**
@@ -668,7 +1208,17 @@ public final class BleScanner {
      * @return true means the scanner successfully stop scanning
      */
     public boolean stopScan() {
-        return stopScan(0);
+        if (context == null) {
+            return false;
+        }
+        if (!initialized) {
+            return false;
+        }
+        if (!scanning) {
+            return false;
+        }
+        scanning = false;
+        return scanScheduler.stop();
     }
 
     /**
@@ -681,7 +1231,11 @@ public final class BleScanner {
         if (context == null) {
             return false;
         }
+        //the pipeline thread is started by the constructor, so it is quit even if the scanner was never initialized
+        scanHandler.removeCallbacksAndMessages(null);
+        scanHandlerThread.quit();
         if (!initialized) {
+            this.context = null;
             return false;
         }
 
@@ -698,13 +1252,11 @@ public final class BleScanner {
         initialized = false;
         scanning = false;
         autoStartNextScan = false;
-        scanResults = null;
+        scanResultIndex = null;
+        scanDeliveryCoalescer.clear();
         bleScannerBluetoothStateReceiver = null;
         this.context = null;
         bluetoothAdapter = null;
-        scanCallback18 = null;
-        scanCallback21 = null;
-        scanTimer = null;
         return true;
     }
 
@@ -712,74 +1264,67 @@ public final class BleScanner {
      * clear scan results
      */
     public void clearScanResults() {
-        scanResults.clear();
+        postClearScanResults();
     }
 
     /*-----------------------------------private method-----------------------------------*/
 
     /**
-     * initialization system scan callback for api 18
+     * Processing the scan results of API18
+     *
+     * @param device     Bluetooth device
+     * @param rssi       rssi
+     * @param scanRecord scan record
      */
-    private void initBleScanCallBack18() {
-        scanCallback18 = new BluetoothAdapter.LeScanCallback() {
-            @Override
-            public void onLeScan(final BluetoothDevice device, final int rssi, final byte[] scanRecord) {
-                final Context context = BleScanner.this.context;
-                if (context == null) {
-                    return;
-                }
-                if (scanRecord == null) {
-                    return;
-                }
-                String name = device.getName();
-                BleScanRecord bleScanRecord = BleScanRecord.parseFromBytes(scanRecord);
-                if (null == name || "".equals(name)) {
-                    name = bleScanRecord.getDeviceName();
-                }
+    private void onApi18ScanResultProcessor(BluetoothDevice device, int rssi, byte[] scanRecord) {
+        if (context == null) {
+            return;
+        }
+        if (scanRecord == null) {
+            return;
+        }
+        BleScanRecordView scanRecordView = this.scanRecordView.wrap(scanRecord);
+        String name = device.getName();
+        if (null == name || "".equals(name)) {
+            name = scanRecordView.getDeviceName();
+        }
 
-                if (!filterNames(name)) {
-                    return;
-                }
+        if (!filterNames(name)) {
+            return;
+        }
 
-                if (!filterFullName(name)) {
-                    return;
-                }
+        if (!filterFullName(name)) {
+            return;
+        }
 
-                if (!filterAddress(device.getAddress())) {
-                    return;
-                }
+        if (!filterAddress(device.getAddress())) {
+            return;
+        }
 
-                if (!filterFullAddress(device.getAddress())) {
-                    return;
-                }
-                if (!filterServiceUuid(bleScanRecord.getServiceUuids())) {
-                    return;
-                }
-                int primaryPhy = 1;
-                int secondaryPhy = 1;
-                int advertisingSid = 255;
-                int periodicAdvertisingInterval = 0;
-                int dataStatus = 0;
-                int txPower = 127;
-                long timestampNanos = System.currentTimeMillis();
-
-                final BleDevice bleDevice = new BleDevice(device, rssi, bleScanRecord);
-                bleDevice.setPrimaryPhy(primaryPhy);
-                bleDevice.setSecondaryPhy(secondaryPhy);
-                bleDevice.setAdvertisingSid(advertisingSid);
-                bleDevice.setPeriodicAdvertisingInterval(periodicAdvertisingInterval);
-                bleDevice.setDataStatus(dataStatus);
-                bleDevice.setTxPower(txPower);
-                bleDevice.setTimestampNanos(timestampNanos);
-
-                callOnScanFindOneDeviceListener(bleDevice);
-                if (!scanResults.contains(bleDevice)) {
-                    scanResults.add(bleDevice);
-                    callOnScanFindOneNewDeviceListener(scanResults.size() - 1, bleDevice, scanResults);
-                }
+        if (!filterFullAddress(device.getAddress())) {
+            return;
+        }
+        if (!filterServiceUuid(scanRecordView)) {
+            return;
+        }
+        int primaryPhy = 1;
+        int secondaryPhy = 1;
+        int advertisingSid = 255;
+        int periodicAdvertisingInterval = 0;
+        int dataStatus = 0;
+        int txPower = 127;
+        long timestampNanos = System.currentTimeMillis();
+
+        final BleDevice bleDevice = new BleDevice(device, rssi, scanRecord);
+        bleDevice.setPrimaryPhy(primaryPhy);
+        bleDevice.setSecondaryPhy(secondaryPhy);
+        bleDevice.setAdvertisingSid(advertisingSid);
+        bleDevice.setPeriodicAdvertisingInterval(periodicAdvertisingInterval);
+        bleDevice.setDataStatus(dataStatus);
+        bleDevice.setTxPower(txPower);
+        bleDevice.setTimestampNanos(timestampNanos);
 
-            }
-        };
+        onScanResultProcessed(bleDevice, scanRecordView);
     }
 
     /**
@@ -789,19 +1334,7 @@ public final class BleScanner {
      * @return true means pass
      */
     private boolean filterFullAddress(String address) {
-        if (filterFullAddresses.size() != 0) {
-            boolean pass = false;
-
-            for (int i = 0; i < filterFullAddresses.size(); i++) {
-                String filterName = filterFullAddresses.get(i);
-                if (address.equals(filterName)) {
-                    pass = true;
-                    break;
-                }
-            }
-            return pass;
-        }
-        return true;
+        return scanFilterMatcher.matchFullAddress(address);
     }
 
     /**
@@ -812,18 +1345,7 @@ public final class BleScanner {
      */
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     private boolean filterAddress(String address) {
-        if (filterAddresses.size() != 0) {
-            boolean pass = false;
-            for (int i = 0; i < filterAddresses.size(); i++) {
-                String filterName = filterAddresses.get(i);
-                if (address.startsWith(filterName)) {
-                    pass = true;
-                    break;
-                }
-            }
-            return pass;
-        }
-        return true;
+        return scanFilterMatcher.matchStartsAddress(address);
     }
 
     /**
@@ -833,41 +1355,17 @@ public final class BleScanner {
      * @return true means pass
      */
     private boolean filterFullName(String name) {
-        if (filterFullNames.size() != 0) {
-            boolean pass = false;
-            if (name == null) {
-                return false;
-            }
-            for (int i = 0; i < filterFullNames.size(); i++) {
-                String filterName = filterNames.get(i);
-                if (name.equals(filterName)) {
-                    pass = true;
-                    break;
-                }
-            }
-            return pass;
-        }
-        return true;
+        return scanFilterMatcher.matchFullName(name);
     }
 
-    private boolean filterServiceUuid(BleArrayList<BleParcelUuid> uuids) {
-
-        if (filterUuids.size() != 0) {
-            if (uuids == null) {
-                return false;
-            }
-            boolean pass = false;
-            for (BleParcelUuid parcelUuid : uuids) {
-                String uuidInDevice = parcelUuid.getUuid().toString();
-                DebugUtil.warnOut(TAG, "uuidInDevice = " + uuidInDevice);
-                if (filterUuids.contains(uuidInDevice)) {
-                    pass = true;
-                    break;
-                }
-            }
-            return pass;
-        }
-        return true;
+    /**
+     * Filter service uuids in advertise data
+     *
+     * @param scanRecordView scan record view
+     * @return true means pass
+     */
+    private boolean filterServiceUuid(BleScanRecordView scanRecordView) {
+        return scanFilterMatcher.matchServiceUuids(scanRecordView);
     }
 
     /**
@@ -878,77 +1376,14 @@ public final class BleScanner {
      */
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     private boolean filterNames(String name) {
-        if (filterNames.size() != 0) {
-            boolean pass = false;
-            if (name == null) {
-                return false;
-            }
-            for (int i = 0; i < filterNames.size(); i++) {
-                String filterName = filterNames.get(i);
-                if (name.startsWith(filterName)) {
-                    pass = true;
-                    break;
-                }
-            }
-            return pass;
-        }
-        return true;
+        return scanFilterMatcher.matchStartsName(name);
     }
 
     /**
-     * initialization system scan callback for api 21
+     * Compile the software filters into {@link #scanFilterMatcher}
      */
-    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
-    private void initBleScanCallBack21() {
-        scanCallback21 = new ScanCallback() {
-            /**
-             * BaseBleConnectCallback when a BLE advertisement has been found.
-             *
-             * @param callbackType Determines how this callback was triggered. Could be one of
-             *                     {@link ScanSettings#CALLBACK_TYPE_ALL_MATCHES},
-             *                     {@link ScanSettings#CALLBACK_TYPE_FIRST_MATCH} or
-             *                     {@link ScanSettings#CALLBACK_TYPE_MATCH_LOST}
-             * @param result       A Bluetooth LE scan result.
-             */
-            @Override
-            public void onScanResult(int callbackType, ScanResult result) {
-                onApi21ScanResultProcessor(result);
-            }
-
-            /**
-             * BaseBleConnectCallback when batch results are delivered.
-             *
-             * @param results List of scan results that are previously scanned.
-             */
-            @Override
-            public void onBatchScanResults(final List<ScanResult> results) {
-                BleManager.getHandler().post(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (onBleScanStateChangedListener != null) {
-                            onBleScanStateChangedListener.onBatchScanResults(results);
-                        }
-                    }
-                });
-            }
-
-            /**
-             * BaseBleConnectCallback when scan could not be started.
-             *
-             * @param errorCode Error code (one of SCAN_FAILED_*) for scan failure.
-             */
-            @Override
-            public void onScanFailed(final int errorCode) {
-                BleManager.getHandler().post(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (onBleScanStateChangedListener != null) {
-                            onBleScanStateChangedListener.onScanFailed(errorCode);
-                        }
-                    }
-                });
-            }
-        };
+    private void compileFilters() {
+        scanFilterMatcher = ScanFilterMatcher.compile(filterNames, filterFullNames, filterAddresses, filterFullAddresses, filterUuids);
     }
 
     /**
@@ -971,22 +1406,14 @@ public final class BleScanner {
 
         String deviceName;
         deviceName = result.getDevice().getName();
-        DebugUtil.warnOut(TAG, "deviceName = " + deviceName);
-        if (null == deviceName || "".equals(deviceName)) {
-            deviceName = scanRecord.getDeviceName();
-            DebugUtil.warnOut(TAG, "deviceName = " + deviceName);
-        }
         if (null == deviceName || "".equals(deviceName)) {
             deviceName = scanRecord.getDeviceName();
-            DebugUtil.warnOut(TAG, "deviceName = " + deviceName);
         }
         String address = device.getAddress();
-        DebugUtil.warnOut(TAG, "address = " + address);
-        BleScanRecord bleScanRecord = BleScanRecord.parseFromBytes(scanRecord.getBytes());
+        BleScanRecordView scanRecordView = this.scanRecordView.wrap(scanRecord.getBytes());
 
         if (null == deviceName || "".equals(deviceName)) {
-            deviceName = bleScanRecord.getDeviceName();
-            DebugUtil.warnOut(TAG, "deviceName = " + deviceName);
+            deviceName = scanRecordView.getDeviceName();
         }
 
         if (!filterNames(deviceName)) {
@@ -1023,10 +1450,7 @@ public final class BleScanner {
             txPower = 127;
         }
 
-        DebugUtil.warnOut(TAG, "primaryPhy = " + primaryPhy);
-        DebugUtil.warnOut(TAG, "secondaryPhy = " + secondaryPhy);
-
-        final BleDevice bleDevice = new BleDevice(device, rssi, bleScanRecord);
+        final BleDevice bleDevice = new BleDevice(device, rssi, scanRecordView.getBytes());
 
         bleDevice.setPrimaryPhy(primaryPhy);
         bleDevice.setSecondaryPhy(secondaryPhy);
@@ -1036,22 +1460,246 @@ public final class BleScanner {
         bleDevice.setTxPower(txPower);
         bleDevice.setTimestampNanos(timestampNanos);
 
-        callOnScanFindOneDeviceListener(bleDevice);
+        onScanResultProcessed(bleDevice, scanRecordView);
+    }
 
-        if (scanResults == null) {
+    /**
+     * Deliver a device that passed the filters and update the scan results
+     *
+     * @param bleDevice      BLE device
+     * @param scanRecordView view of the scan record of the device
+     */
+    private void onScanResultProcessed(@NonNull BleDevice bleDevice, @NonNull BleScanRecordView scanRecordView) {
+        long key = AddressTable.packAddress(bleDevice.getDeviceAddress());
+        if (key == AddressTable.NO_ADDRESS) {
+            DebugUtil.warnOut(TAG, "invalid device address : " + bleDevice.getDeviceAddress());
             return;
         }
-        if (!scanResults.contains(bleDevice)) {
-            scanResults.add(bleDevice);
-            callOnScanFindOneNewDeviceListener(scanResults.size() - 1, bleDevice, scanResults);
-        } else {
-            int index = scanResults.indexOf(bleDevice);
-            BleDevice bleDevice1 = scanResults.get(index);
-            if (bleDevice1.getDeviceName() == null && bleDevice.getDeviceName() != null) {
-                scanResults.set(index, bleDevice);
-                callOnScanFindOneNewDeviceListener(index, null, scanResults);
+        filterRssi(key, bleDevice, scanRecordView);
+        deliverScanResult(key, bleDevice);
+        updateScanResults(key, bleDevice);
+        trackPresence(key, bleDevice);
+    }
+
+    /**
+     * Smooth the rssi of a device and estimate its distance.
+     * Both the new device and the device in the scan results are updated.
+     *
+     * @param key            packed device address
+     * @param bleDevice      BLE device
+     * @param scanRecordView view of the scan record of the device
+     */
+    private void filterRssi(long key, @NonNull BleDevice bleDevice, @NonNull BleScanRecordView scanRecordView) {
+        ScanResultIndex scanResultIndex = this.scanResultIndex;
+        if (scanResultIndex == null) {
+            return;
+        }
+        int entry = scanResultIndex.indexOf(key);
+        // the filter state of a new device is started in updateScanResults
+        double smoothedRssi = entry == ScanResultIndex.NO_ENTRY ? bleDevice.getRssi() : rssiFilter.onSample(entry, bleDevice.getRssi());
+        double estimatedDistance = RssiFilter.estimateDistance(smoothedRssi, getMeasuredPower(bleDevice, scanRecordView), pathLossExponent);
+        bleDevice.setSmoothedRssi(smoothedRssi);
+        bleDevice.setEstimatedDistance(estimatedDistance);
+        if (entry != ScanResultIndex.NO_ENTRY) {
+            BleDevice bleDevice1 = scanResultIndex.get(entry);
+            bleDevice1.setSmoothedRssi(smoothedRssi);
+            bleDevice1.setEstimatedDistance(estimatedDistance);
+        }
+    }
+
+    /**
+     * Get the rssi at 1m of a device
+     *
+     * @param bleDevice      BLE device
+     * @param scanRecordView view of the scan record of the device
+     * @return rssi at 1m
+     */
+    private int getMeasuredPower(@NonNull BleDevice bleDevice, @NonNull BleScanRecordView scanRecordView) {
+        int txPowerLevel = scanRecordView.getTxPowerLevel();
+        if (txPowerLevel != Integer.MIN_VALUE) {
+            return txPowerLevel - RssiFilter.TX_POWER_TO_MEASURED_POWER;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && bleDevice.getTxPower() != ScanResult.TX_POWER_NOT_PRESENT) {
+            return bleDevice.getTxPower() - RssiFilter.TX_POWER_TO_MEASURED_POWER;
+        }
+        return defaultMeasuredPower;
+    }
+
+    /**
+     * Record a sighting in the presence tracker
+     *
+     * @param key       packed device address
+     * @param bleDevice BLE device
+     */
+    private void trackPresence(long key, @NonNull BleDevice bleDevice) {
+        PresenceTracker presenceTracker = this.presenceTracker;
+        if (presenceTracker == null) {
+            return;
+        }
+        int result = presenceTracker.onSighting(key, bleDevice, bleDevice.getRssi(), SystemClock.elapsedRealtime());
+        if (result == PresenceTracker.SIGHTING_FOUND) {
+            callOnDevicePresentListener(bleDevice);
+        }
+        schedulePresenceTick(presenceTracker);
+    }
+
+    /**
+     * Schedule the next tick of the presence tracker if it tracks any device
+     *
+     * @param presenceTracker presence tracker
+     */
+    private void schedulePresenceTick(@NonNull PresenceTracker presenceTracker) {
+        if (presenceTickScheduled || presenceTracker.isEmpty()) {
+            return;
+        }
+        presenceTickScheduled = true;
+        scanHandler.postDelayed(presenceTickRunnable, presenceTracker.getTickMillis());
+    }
+
+    /**
+     * Deliver a device to the listeners according to the delivery policy
+     *
+     * @param key       packed device address
+     * @param bleDevice BLE device
+     */
+    private void deliverScanResult(long key, @NonNull BleDevice bleDevice) {
+        ScanDeliveryCoalescer scanDeliveryCoalescer = this.scanDeliveryCoalescer;
+        if (!scanDeliveryCoalescer.accept(key, bleDevice.getScanRecordBytes(), SystemClock.elapsedRealtime())) {
+            return;
+        }
+        long batchIntervalMillis = scanDeliveryCoalescer.getBatchIntervalMillis();
+        if (batchIntervalMillis <= 0) {
+            callOnScanFindOneDeviceListener(bleDevice);
+            return;
+        }
+        if (scanDeliveryCoalescer.enqueue(key, bleDevice)) {
+            scanHandler.postDelayed(flushScanBatchRunnable, batchIntervalMillis);
+        }
+    }
+
+    /**
+     * Add a device to the scan results, or update it if it is already there.
+     * A device already in the scan results is only replaced when the new record brings the device name.
+     *
+     * @param key       packed device address
+     * @param bleDevice BLE device
+     */
+    private void updateScanResults(long key, @NonNull BleDevice bleDevice) {
+        ScanResultIndex scanResultIndex = this.scanResultIndex;
+        if (scanResultIndex == null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        int entry = scanResultIndex.indexOf(key);
+        if (entry == ScanResultIndex.NO_ENTRY) {
+            entry = scanResultIndex.add(key, bleDevice, now);
+            rssiFilter.reset(entry, bleDevice.getRssi());
+            scanScheduler.onNewDeviceFound();
+            schedulePublishScanResults();
+            evictScanResults();
+            return;
+        }
+        scanResultIndex.touch(entry, now);
+        BleDevice bleDevice1 = scanResultIndex.get(entry);
+        if (bleDevice1.getDeviceName() == null && bleDevice.getDeviceName() != null) {
+            scanResultIndex.set(entry, bleDevice);
+            schedulePublishScanResults();
+        }
+    }
+
+    /**
+     * Post {@link #evictScanResults()} to the scan pipeline thread
+     */
+    private void postEvictScanResults() {
+        scanHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // the time to live may have been shortened, check again from now on
+                scanHandler.removeCallbacks(evictExpiredRunnable);
+                evictionScheduled = false;
+                evictScanResults();
+            }
+        });
+    }
+
+    /**
+     * Remove the devices over the maximum count and the devices whose time to live expired,
+     * then schedule the next check for the least recently seen device.
+     * Must run on the scan pipeline thread.
+     */
+    private void evictScanResults() {
+        ScanResultIndex scanResultIndex = this.scanResultIndex;
+        if (scanResultIndex == null) {
+            return;
+        }
+        int maxScanResultCount = this.maxScanResultCount;
+        if (maxScanResultCount > 0) {
+            while (scanResultIndex.size() > maxScanResultCount) {
+                evictScanResult(scanResultIndex, scanResultIndex.oldest());
+            }
+        }
+        long scanResultTtl = this.scanResultTtl;
+        if (scanResultTtl <= 0) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        int entry;
+        while ((entry = scanResultIndex.oldest()) != ScanResultIndex.NO_ENTRY) {
+            long expiredTime = scanResultIndex.getLastSeenMillis(entry) + scanResultTtl;
+            if (expiredTime > now) {
+                if (!evictionScheduled) {
+                    evictionScheduled = true;
+                    scanHandler.postDelayed(evictExpiredRunnable, expiredTime - now);
+                }
+                return;
             }
+            evictScanResult(scanResultIndex, entry);
+        }
+    }
+
+    /**
+     * Remove one device from the scan results
+     *
+     * @param scanResultIndex scan result index
+     * @param entry           entry id
+     */
+    private void evictScanResult(@NonNull ScanResultIndex scanResultIndex, int entry) {
+        long key = scanResultIndex.keyOf(entry);
+        scanResultIndex.remove(entry);
+        scanDeliveryCoalescer.remove(key);
+        schedulePublishScanResults();
+    }
+
+    /**
+     * Publish the scan results on the next delivery tick, so any number of changes until then costs one copy of the list.
+     * Must run on the scan pipeline thread.
+     */
+    private void schedulePublishScanResults() {
+        if (publishScheduled) {
+            return;
         }
+        publishScheduled = true;
+        scanHandler.postDelayed(publishScanResultsRunnable, scanDeliveryCoalescer.getBatchIntervalMillis());
+    }
+
+    /**
+     * Post clearing the scan results and the delivery state to the scan pipeline thread
+     */
+    private void postClearScanResults() {
+        scanHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ScanResultIndex scanResultIndex = BleScanner.this.scanResultIndex;
+                if (scanResultIndex == null) {
+                    return;
+                }
+                scanResultIndex.clear();
+                scanDeliveryCoalescer.clear();
+                scanHandler.removeCallbacks(publishScanResultsRunnable);
+                publishScheduled = false;
+                scanResultsSnapshot = scanResultIndex.publish(new ArrayList<ScanResultIndex.Change>());
+            }
+        });
     }
 
     /**
@@ -1096,9 +1744,9 @@ public final class BleScanner {
      * @return ScanSettings
      */
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
-    private ScanSettings refreshScanSettings() {
+    private ScanSettings refreshScanSettings(@NonNull BleScanMode scanMode) {
         ScanSettings.Builder builder = new ScanSettings.Builder();
-        builder.setScanMode(bleScanMode.getScanMode())
+        builder.setScanMode(scanMode.getScanMode())
                 .setReportDelay(reportDelay);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             builder.setMatchMode(bleMatchMode.getMatchMode())
@@ -1119,73 +1767,52 @@ public final class BleScanner {
         return builder.build();
     }
 
-    /**
-     * stop scan
-     *
-     * @param tryCount try count
-     * @return true means successful
-     */
-    private boolean stopScan(int tryCount) {
-        tryCount++;
-        Context context = this.context;
-        if (context == null) {
-            return false;
-        }
-        if (!initialized) {
-            return false;
-        }
-
-        if (!scanning) {
-            return false;
-        }
-
-        if (bluetoothAdapter == null) {
-            return false;
-        }
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            if (bluetoothLeScanner == null) {
-                return false;
+    private void callOnScanFindOneNewDeviceListener(final int inedx, final BleDevice bleDevice, final ArrayList<BleDevice> mScanResults) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (onBleScanStateChangedListener != null) {
+                    onBleScanStateChangedListener.onScanFindOneNewDevice(inedx, bleDevice, mScanResults);
+                }
             }
-            try {
-                bluetoothLeScanner.stopScan(scanCallback21);
-                scanTimer.stopTimer();
-                scanning = false;
-                return true;
-            } catch (Exception e) {
-                if (tryCount >= 3) {
-                    return false;
+        });
+    }
+
+    private void callOnDeviceLostListener(final int index, final BleDevice bleDevice, final ArrayList<BleDevice> scanResults) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (onBleDeviceLostListener != null) {
+                    onBleDeviceLostListener.onDeviceLost(index, bleDevice, scanResults);
                 }
-                return stopScan(tryCount);
             }
-        } else {
-            try {
-                this.bluetoothAdapter.stopLeScan(scanCallback18);
-                scanTimer.stopTimer();
-                scanning = false;
-                return true;
-            } catch (Exception e) {
-                if (tryCount >= 3) {
-                    return false;
+        });
+    }
+
+    private void callOnDevicePresentListener(final BleDevice bleDevice) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (onBlePresenceChangedListener != null) {
+                    onBlePresenceChangedListener.onDevicePresent(bleDevice);
                 }
-                return stopScan(tryCount);
             }
-        }
+        });
     }
 
-    private void callOnScanFindOneNewDeviceListener(final int inedx, final BleDevice bleDevice, final ArrayList<BleDevice> mScanResults) {
-        BleManager.getHandler().post(new Runnable() {
+    private void callOnDeviceAbsentListener(final BleDevice bleDevice) {
+        callbackExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                if (onBleScanStateChangedListener != null) {
-                    onBleScanStateChangedListener.onScanFindOneNewDevice(inedx, bleDevice, mScanResults);
+                if (onBlePresenceChangedListener != null) {
+                    onBlePresenceChangedListener.onDeviceAbsent(bleDevice);
                 }
             }
         });
     }
 
     private void callOnScanFindOneDeviceListener(final BleDevice bleDevice) {
-        BleManager.getHandler().post(new Runnable() {
+        callbackExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 if (onBleScanStateChangedListener != null) {
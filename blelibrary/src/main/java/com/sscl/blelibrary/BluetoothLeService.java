@@ -15,20 +15,20 @@ import android.content.Intent;
 import android.os.Build;
 import android.os.IBinder;
 
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import com.sscl.blelibrary.enums.CharacteristicCachePolicy;
 import com.sscl.blelibrary.enums.PhyMask;
 import com.sscl.blelibrary.enums.Transport;
 import com.sscl.blelibrary.interfaces.OnBleCharacteristicWriteListener;
 import com.sscl.blelibrary.interfaces.OnBleConnectStateChangedListener;
 import com.sscl.blelibrary.interfaces.OnBleDescriptorWriteListener;
 import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
@@ -54,10 +54,20 @@ public final class BluetoothLeService extends Service {
      */
     private BluetoothLeServiceBinder bluetoothLeServiceBinder;
 
+    /**
+     * GATT operation queue of the connection
+     */
+    private final GattOperationQueue gattOperationQueue = new GattOperationQueue();
+
+    /**
+     * resolved characteristics of the connection
+     */
+    private final GattHandleTable gattHandleTable = new GattHandleTable();
+
     /**
      * Required callback for Bluetooth GATT connection
      */
-    private BleBluetoothGattCallback bleBluetoothGattCallback = new BleBluetoothGattCallback();
+    private BleBluetoothGattCallback bleBluetoothGattCallback = new BleBluetoothGattCallback(gattOperationQueue, gattHandleTable);
 
 
     /**
@@ -100,6 +110,7 @@ public final class BluetoothLeService extends Service {
         super.onDestroy();
         bluetoothLeServiceBinder.releaseData();
         bluetoothLeServiceBinder = null;
+        gattOperationQueue.setBluetoothGatt(null);
         bleBluetoothGattCallback = null;
         bluetoothManager = null;
         bluetoothAdapter = null;
@@ -238,6 +249,9 @@ public final class BluetoothLeService extends Service {
         } else {
             bluetoothGatt = bluetoothDevice.connectGatt(this, autoReconnect, bleBluetoothGattCallback);
         }
+        gattOperationQueue.setBluetoothGatt(bluetoothGatt);
+        gattHandleTable.invalidate();
+        gattHandleTable.setAddress(bluetoothDevice.getAddress());
         return bluetoothGatt != null;
     }
 
@@ -271,119 +285,212 @@ public final class BluetoothLeService extends Service {
             result = false;
         } finally {
             bluetoothGatt = null;
+            gattOperationQueue.setBluetoothGatt(null);
+            gattHandleTable.invalidate();
         }
         return result;
     }
 
+    /**
+     * set timeout of queued GATT operations
+     *
+     * @param operationTimeout timeout(unit:ms), 0 means no timeout
+     */
+    synchronized void setGattOperationTimeout(@IntRange(from = 0) long operationTimeout) {
+        gattOperationQueue.setOperationTimeout(operationTimeout);
+    }
+
     /**
      * write data to remote device.Result for request will be trigger callback {@link OnBleConnectStateChangedListener#writeCharacteristicData(BluetoothGattCharacteristic, byte[])}
+     * The write is queued behind the outstanding GATT operations of the connection.
      *
      * @param serviceUuid        service UUID
      * @param characteristicUuid characteristic UUID
      * @param data               data
+     * @param listener           result listener of this write
      * @return true means request successful
      */
-    synchronized boolean writeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull byte[] data) {
-        DebugUtil.warnOut(TAG, "bluetoothGatt == " + bluetoothGatt);
-        if (bluetoothGatt == null) {
-            return false;
-        }
-        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUuid));
-        DebugUtil.warnOut(TAG, "service from uuid = " + service);
-        if (service == null) {
-            return false;
-        }
-        BluetoothGattCharacteristic characteristic = service.getCharacteristic(UUID.fromString(characteristicUuid));
+    synchronized boolean writeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull byte[] data,
+                                   @Nullable OnGattOperationResultListener<byte[]> listener) {
+        return writeData(serviceUuid, characteristicUuid, data, 0, listener);
+    }
 
-        DebugUtil.warnOut(TAG, "characteristic from uuid = " + characteristic);
-        if (characteristic == null) {
-            return false;
-        }
+    /**
+     * write data to remote device with the specified write type.
+     * The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param serviceUuid        service UUID
+     * @param characteristicUuid characteristic UUID
+     * @param data               data
+     * @param writeType          {@link BluetoothGattCharacteristic#WRITE_TYPE_DEFAULT} or {@link BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE},
+     *                           0 keeps the write type of the characteristic
+     * @param listener           result listener of this write
+     * @return true means request successful
+     */
+    synchronized boolean writeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull byte[] data, int writeType,
+                                   @Nullable OnGattOperationResultListener<byte[]> listener) {
+        GattCharacteristicHandle gattCharacteristicHandle = gattHandleTable.resolve(bluetoothGatt, serviceUuid, characteristicUuid);
+        return gattCharacteristicHandle != null && writeData(gattCharacteristicHandle, data, writeType, listener);
+    }
 
-        if (!canWrite(characteristic)) {
+    /**
+     * write data to remote device through a resolved characteristic.
+     * The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param data                     data
+     * @param writeType                {@link BluetoothGattCharacteristic#WRITE_TYPE_DEFAULT} or {@link BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE},
+     *                                 0 keeps the write type of the characteristic
+     * @param listener                 result listener of this write
+     * @return true means request successful, false means the handle is invalid or the characteristic can not be written
+     */
+    synchronized boolean writeData(@NonNull GattCharacteristicHandle gattCharacteristicHandle, @NonNull byte[] data, int writeType,
+                                   @Nullable OnGattOperationResultListener<byte[]> listener) {
+        if (bluetoothGatt == null || !gattHandleTable.isValid(gattCharacteristicHandle)) {
             return false;
         }
-
-        if (!characteristic.setValue(data)) {
-            DebugUtil.warnOut(TAG, "characteristic setValue failed");
+        BluetoothGattCharacteristic characteristic = gattCharacteristicHandle.getCharacteristic();
+        if (writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE) {
+            if (!canWriteNoResponse(characteristic)) {
+                return false;
+            }
+        } else if (!canWrite(characteristic)) {
             return false;
         }
-        DebugUtil.warnOut(TAG, "characteristic setValue success");
-
-        DebugUtil.warnOut(TAG, "values = " + Arrays.toString(data));
-        return bluetoothGatt.writeCharacteristic(characteristic);
+        gattHandleTable.getCharacteristicValueCache().invalidate(characteristic);
+        if (listener == null) {
+            listener = bleBluetoothGattCallback.newTaskFailedListener("writeData");
+        }
+        return gattOperationQueue.enqueue(GattOperationQueue.GattOperation.writeCharacteristic(characteristic, data, writeType, listener));
     }
 
     /**
      * read data from remote device.Result for request will be trigger callback {@link OnBleConnectStateChangedListener#readCharacteristicData(BluetoothGattCharacteristic, byte[])}
+     * The read is queued behind the outstanding GATT operations of the connection.
      *
      * @param serviceUuid        service UUID
      * @param characteristicUuid characteristic UUID
+     * @param listener           result listener of this read
      * @return true means request successful
      */
-    synchronized boolean readData(@NonNull String serviceUuid, @NonNull String characteristicUuid) {
-        if (bluetoothGatt == null) {
-            return false;
-        }
-        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUuid));
-        if (service == null) {
-            return false;
-        }
-
-        BluetoothGattCharacteristic characteristic = service.getCharacteristic(UUID.fromString(characteristicUuid));
+    synchronized boolean readData(@NonNull String serviceUuid, @NonNull String characteristicUuid,
+                                  @Nullable OnGattOperationResultListener<byte[]> listener) {
+        GattCharacteristicHandle gattCharacteristicHandle = gattHandleTable.resolve(bluetoothGatt, serviceUuid, characteristicUuid);
+        return gattCharacteristicHandle != null && readData(gattCharacteristicHandle, listener);
+    }
 
-        //noinspection SimplifiableIfStatement
-        if (characteristic == null) {
+    /**
+     * read data from remote device through a resolved characteristic.
+     * The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param listener                 result listener of this read
+     * @return true means request successful, false means the handle is invalid or the characteristic can not be read
+     */
+    synchronized boolean readData(@NonNull GattCharacteristicHandle gattCharacteristicHandle,
+                                  @Nullable OnGattOperationResultListener<byte[]> listener) {
+        if (bluetoothGatt == null || !gattHandleTable.isValid(gattCharacteristicHandle)) {
             return false;
         }
+        BluetoothGattCharacteristic characteristic = gattCharacteristicHandle.getCharacteristic();
         if (!canRead(characteristic)) {
             return false;
         }
-        return bluetoothGatt.readCharacteristic(characteristic);
+        if (listener == null) {
+            //The result goes to the connect state listener, so every read is sent to keep one callback per call
+            return gattOperationQueue.enqueue(GattOperationQueue.GattOperation.readCharacteristic(characteristic,
+                    bleBluetoothGattCallback.newTaskFailedListener("readData")));
+        }
+        return gattHandleTable.getCharacteristicValueCache().read(characteristic, gattOperationQueue, listener);
     }
 
     /**
-     * enable or disable notification
+     * enable or disable notification.The descriptor write is queued behind the outstanding GATT operations of the connection.
      *
      * @param serviceUuid        service UUID
      * @param characteristicUuid characteristic UUID
      * @param enable             true means enable notification,false means disable notification
+     * @param listener           result listener of the descriptor write
      * @return true means successful
      */
-    synchronized boolean enableNotification(@NonNull String serviceUuid, @NonNull String characteristicUuid, boolean enable) {
-        if (bluetoothGatt == null) {
-            return false;
-        }
-        BluetoothGattService bluetoothGattService = bluetoothGatt.getService(UUID.fromString(serviceUuid));
-        if (bluetoothGattService == null) {
-            return false;
-        }
-        BluetoothGattCharacteristic bluetoothGattCharacteristic = bluetoothGattService.getCharacteristic(UUID.fromString(characteristicUuid));
-        if (bluetoothGattCharacteristic == null) {
+    synchronized boolean enableNotification(@NonNull String serviceUuid, @NonNull String characteristicUuid, boolean enable,
+                                            @Nullable OnGattOperationResultListener<byte[]> listener) {
+        GattCharacteristicHandle gattCharacteristicHandle = gattHandleTable.resolve(bluetoothGatt, serviceUuid, characteristicUuid);
+        return gattCharacteristicHandle != null && enableNotification(gattCharacteristicHandle, enable, listener);
+    }
+
+    /**
+     * enable or disable notification of a resolved characteristic.
+     * The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param enable                   true means enable notification,false means disable notification
+     * @param listener                 result listener of the descriptor write
+     * @return true means successful, false means the handle is invalid or the request failed
+     */
+    synchronized boolean enableNotification(@NonNull GattCharacteristicHandle gattCharacteristicHandle, boolean enable,
+                                            @Nullable OnGattOperationResultListener<byte[]> listener) {
+        if (bluetoothGatt == null || !gattHandleTable.isValid(gattCharacteristicHandle)) {
             return false;
         }
+        BluetoothGattCharacteristic bluetoothGattCharacteristic = gattCharacteristicHandle.getCharacteristic();
         if (!bluetoothGatt.setCharacteristicNotification(bluetoothGattCharacteristic, enable)) {
             return false;
         }
         BluetoothGattDescriptor bluetoothGattDescriptor = bluetoothGattCharacteristic.getDescriptor(UUID.fromString(BleConstants.CLIENT_CHARACTERISTIC_CONFIG));
         if (bluetoothGattDescriptor == null) {
             DebugUtil.warnOut(TAG, "bluetoothGattDescriptor == null");
+            if (listener != null) {
+                // nothing to write, the notification state is already set locally
+                final OnGattOperationResultListener<byte[]> resultListener = listener;
+                BleManager.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        resultListener.onGattOperationSucceed(null);
+                    }
+                });
+            }
             return true;
         }
-        bluetoothGattDescriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-        return bluetoothGatt.writeDescriptor(bluetoothGattDescriptor);
+        byte[] value = enable ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE : BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE;
+        return gattOperationQueue.enqueue(GattOperationQueue.GattOperation.writeDescriptor(bluetoothGattDescriptor, value, listener));
+    }
+
+    /**
+     * set the cache policy of the values read from a characteristic
+     *
+     * @param characteristicUuid characteristic UUID
+     * @param policy             cache policy
+     * @param ttl                time to live of a value for {@link CharacteristicCachePolicy#TTL}(unit:ms)
+     */
+    void setCharacteristicCachePolicy(@NonNull UUID characteristicUuid, @NonNull CharacteristicCachePolicy policy, @IntRange(from = 0) long ttl) {
+        gattHandleTable.getCharacteristicValueCache().setCachePolicy(characteristicUuid, policy, ttl);
+    }
+
+    /**
+     * Resolve a characteristic of the connection
+     *
+     * @param serviceUuid        service UUID
+     * @param characteristicUuid characteristic UUID
+     * @return resolved characteristic, null means the characteristic is not found
+     */
+    @Nullable
+    synchronized GattCharacteristicHandle resolveCharacteristic(@NonNull String serviceUuid, @NonNull String characteristicUuid) {
+        return gattHandleTable.resolve(bluetoothGatt, serviceUuid, characteristicUuid);
     }
 
     /**
      * get remote device RSSI.Result for request will be trigger callback {@link OnBleConnectStateChangedListener#readRemoteRssi(int)}
+     * The read is queued behind the outstanding GATT operations of the connection.
      *
+     * @param listener result listener of this read
      * @return true means request successful
      */
-    synchronized boolean getRssi() {
+    synchronized boolean getRssi(@Nullable OnGattOperationResultListener<Integer> listener) {
         if (bluetoothGatt == null) {
             return false;
         }
-        return bluetoothGatt.readRemoteRssi();
+        return gattOperationQueue.enqueue(GattOperationQueue.GattOperation.readRssi(listener));
     }
 
     /**
@@ -393,22 +500,7 @@ public final class BluetoothLeService extends Service {
      * @return true means successful.
      */
     synchronized boolean refreshGattCache() {
-        if (bluetoothGatt == null) {
-            return false;
-        }
-
-        try {
-            //noinspection JavaReflectionMemberAccess
-            Method refresh = bluetoothGatt.getClass().getMethod("refresh");
-            return (boolean) refresh.invoke(bluetoothGatt);
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        }
-        return false;
+        return bluetoothGatt != null && GattDatabaseCache.refreshPlatformCache(bluetoothGatt);
     }
 
     /**
@@ -440,13 +532,28 @@ public final class BluetoothLeService extends Service {
 
     /**
      * request change mtu value.Result of request will be trigger callback{@link OnBleConnectStateChangedListener#mtuChanged(int)}
+     * The request is queued behind the outstanding GATT operations of the connection.
      *
-     * @param mtu mtu value
+     * @param mtu      mtu value
+     * @param listener result listener of this request
      * @return true means request send successful.
      */
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
-    synchronized boolean requestMtu(int mtu) {
-        return bluetoothGatt != null && bluetoothGatt.requestMtu(mtu);
+    synchronized boolean requestMtu(int mtu, @Nullable OnGattOperationResultListener<Integer> listener) {
+        return bluetoothGatt != null && gattOperationQueue.enqueue(GattOperationQueue.GattOperation.requestMtu(mtu, listener));
+    }
+
+    /**
+     * get negotiated ATT MTU of the connection
+     *
+     * @return ATT MTU
+     */
+    int getMtu() {
+        BleBluetoothGattCallback bleBluetoothGattCallback = this.bleBluetoothGattCallback;
+        if (bleBluetoothGattCallback == null) {
+            return BleConstants.DEFAULT_ATT_MTU;
+        }
+        return bleBluetoothGattCallback.getMtu();
     }
 
     /**
@@ -573,6 +680,28 @@ public final class BluetoothLeService extends Service {
         return bleBluetoothGattCallback.removeOnBleReceiveNotificationListener(onBleReceiveNotificationListener);
     }
 
+    /**
+     * add a callback triggered when received notification data of one characteristic
+     *
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     * @return true means successful
+     */
+    synchronized boolean addOnBleReceiveNotificationListener(@NonNull String characteristicUuid, @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        return bleBluetoothGattCallback.addOnBleReceiveNotificationListener(characteristicUuid, onBleReceiveNotificationListener);
+    }
+
+    /**
+     * remove a callback triggered when received notification data of one characteristic
+     *
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     * @return true means successful
+     */
+    synchronized boolean removeOnBleReceiveNotificationListener(@NonNull String characteristicUuid, @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        return bleBluetoothGattCallback.removeOnBleReceiveNotificationListener(characteristicUuid, onBleReceiveNotificationListener);
+    }
+
     /**
      * add a callback triggered when gatt characteristic write data successful
      *
@@ -603,6 +732,15 @@ public final class BluetoothLeService extends Service {
 
     }
 
+    /**
+     * set the pending connect timeout, it is cancelled when the services are discovered
+     *
+     * @param connectTimeout connect timeout, null means none
+     */
+    void setConnectTimeout(@Nullable TimerWheel.Timeout connectTimeout) {
+        bleBluetoothGattCallback.setConnectTimeout(connectTimeout);
+    }
+
     /**
      * Initiates a reliable write transaction for a given remote device.
      *
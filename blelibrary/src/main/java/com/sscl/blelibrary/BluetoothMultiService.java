@@ -19,12 +19,12 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import com.sscl.blelibrary.enums.CharacteristicCachePolicy;
 import com.sscl.blelibrary.enums.PhyMask;
 import com.sscl.blelibrary.enums.Transport;
-import com.sscl.blelibrary.interfaces.OnLargeDataSendStateChangedListener;
+import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,22 +42,10 @@ public final class BluetoothMultiService extends Service {
     /*-----------------------------------static constant-----------------------------------*/
 
     private static final String TAG = BluetoothMultiService.class.getSimpleName();
-    /**
-     * default value of maximum length of valid data transmitted per packet when large packet transmission
-     */
-    private static final int LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH = 17;
-    /**
-     * default value of maximum length of data packets sent while Bluetooth connection
-     */
-    private static final int PACKAGE_MAX_LENGTH = 20;
     /**
      * timeout for sending large data pack
      */
     private long sendLargeDataTimeOut = 3000;
-    /**
-     * default value of resend delay when data transmission fails
-     */
-    private static final int RETRY_DELAY_TIME = 100;
 
     /*-----------------------------------field variables-----------------------------------*/
 
@@ -214,6 +202,9 @@ public final class BluetoothMultiService extends Service {
         } else {
             bluetoothGatt = bluetoothDevice.connectGatt(this, autoConnect, bleBluetoothMultiGattCallback);
         }
+        if (bluetoothGatt != null) {
+            bleBluetoothMultiGattCallback.setBluetoothGatt(address, bluetoothGatt);
+        }
         if (autoConnect) {
             if (!bleBluetoothMultiGattCallback.callbackHashMap.containsKey(address)) {
                 bleBluetoothMultiGattCallback.callbackHashMap.put(address, baseBleConnectCallback);
@@ -253,7 +244,11 @@ public final class BluetoothMultiService extends Service {
         }
         gatt.close();
         gattCallbackHashMap.remove(address);
-        bleBluetoothMultiGattCallback.callbackHashMap.remove(address);
+        BaseBleConnectCallback baseBleConnectCallback = bleBluetoothMultiGattCallback.callbackHashMap.remove(address);
+        if (baseBleConnectCallback != null) {
+            baseBleConnectCallback.setConnectTimeout(null);
+        }
+        bleBluetoothMultiGattCallback.removeGattOperationQueue(address);
         return true;
     }
 
@@ -267,9 +262,11 @@ public final class BluetoothMultiService extends Service {
             device = gatt.getDevice();
             gatt.disconnect();
             gatt.close();
+            bleBluetoothMultiGattCallback.removeGattOperationQueue(entry.getKey());
         }
         for (Map.Entry<String, BaseBleConnectCallback> entry : bleBluetoothMultiGattCallback.callbackHashMap.entrySet()) {
             BaseBleConnectCallback baseBleConnectCallback = entry.getValue();
+            baseBleConnectCallback.setConnectTimeout(null);
             baseBleConnectCallback.onGattClosed(device);
         }
         bleBluetoothMultiGattCallback.callbackHashMap.clear();
@@ -395,19 +392,7 @@ public final class BluetoothMultiService extends Service {
             return false;
         }
 
-        try {
-            //noinspection JavaReflectionMemberAccess
-            Method refresh = bluetoothGatt.getClass().getMethod("refresh");
-            return (boolean) refresh.invoke(bluetoothGatt);
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        }
-
-        return false;
+        return GattDatabaseCache.refreshPlatformCache(bluetoothGatt);
     }
 
     /**
@@ -427,31 +412,56 @@ public final class BluetoothMultiService extends Service {
      * @param serviceUUID        service UUID
      * @param characteristicUUID characteristic UUID
      * @param data               data
-     * @return true means request success
+     * @return true means request queued successful, a later failure is reported by {@link BaseBleConnectCallback#onBluetoothGattOptionsNotSuccess(BluetoothGatt, String, int)}
      */
     boolean writeData(@NonNull String address, @NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] data) {
+        return writeData(address, serviceUUID, characteristicUUID, data, 0, null);
+    }
 
-        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
-            return false;
-        }
+    /**
+     * write data to remote device by specified address.The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address            device address
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param data               data
+     * @param writeType          {@link BluetoothGattCharacteristic#WRITE_TYPE_DEFAULT} or {@link BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE},
+     *                           0 keeps the write type of the characteristic
+     * @param listener           result listener of this write
+     * @return true means request queued successful
+     */
+    boolean writeData(@NonNull String address, @NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] data,
+                      int writeType, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        GattCharacteristicHandle gattCharacteristicHandle = resolveCharacteristic(address, serviceUUID, characteristicUUID);
+        return gattCharacteristicHandle != null && writeData(address, gattCharacteristicHandle, data, writeType, listener);
+    }
 
-        if (!gattCallbackHashMap.containsKey(address)) {
+    /**
+     * write data to remote device through a resolved characteristic.The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address                  device address
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param data                     data
+     * @param writeType                {@link BluetoothGattCharacteristic#WRITE_TYPE_DEFAULT} or {@link BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE},
+     *                                 0 keeps the write type of the characteristic
+     * @param listener                 result listener of this write
+     * @return true means request queued successful, false means the handle is invalid
+     */
+    boolean writeData(@NonNull String address, @NonNull GattCharacteristicHandle gattCharacteristicHandle, @NonNull byte[] data,
+                      int writeType, @Nullable OnGattOperationResultListener<byte[]> listener) {
+        if (!bleBluetoothMultiGattCallback.getGattHandleTable(address).isValid(gattCharacteristicHandle)) {
             return false;
         }
-
-        BluetoothGatt bluetoothGatt = gattCallbackHashMap.get(address);
-
-        if (bluetoothGatt == null) {
+        GattOperationQueue gattOperationQueue = bleBluetoothMultiGattCallback.getGattOperationQueue(address);
+        if (gattOperationQueue == null) {
             return false;
         }
-        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-        if (service == null) {
-            return false;
+        BluetoothGattCharacteristic characteristic = gattCharacteristicHandle.getCharacteristic();
+        bleBluetoothMultiGattCallback.getGattHandleTable(address).getCharacteristicValueCache().invalidate(characteristic);
+        if (listener == null) {
+            listener = newTaskFailedListener(address, "writeData");
         }
-        BluetoothGattCharacteristic characteristic = service.getCharacteristic(UUID.fromString(characteristicUUID));
-        return characteristic != null && characteristic.setValue(data) && bluetoothGatt.writeCharacteristic(characteristic);
-
-
+        return gattOperationQueue.enqueue(GattOperationQueue.GattOperation.writeCharacteristic(characteristic, data, writeType, listener));
     }
 
     /**
@@ -460,31 +470,51 @@ public final class BluetoothMultiService extends Service {
      * @param address            device address
      * @param serviceUUID        service UUID
      * @param characteristicUUID characteristic UUID
-     * @return true means request success
+     * @return true means request queued successful, a later failure is reported by {@link BaseBleConnectCallback#onBluetoothGattOptionsNotSuccess(BluetoothGatt, String, int)}
      */
     boolean readData(@NonNull String address, @NonNull String serviceUUID, @NonNull String characteristicUUID) {
+        return readData(address, serviceUUID, characteristicUUID, null);
+    }
 
-        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
-            return false;
-        }
+    /**
+     * read data from remote device by specified address.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address            device address
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param listener           result listener of this read
+     * @return true means request queued successful
+     */
+    boolean readData(@NonNull String address, @NonNull String serviceUUID, @NonNull String characteristicUUID,
+                     @Nullable OnGattOperationResultListener<byte[]> listener) {
+        GattCharacteristicHandle gattCharacteristicHandle = resolveCharacteristic(address, serviceUUID, characteristicUUID);
+        return gattCharacteristicHandle != null && readData(address, gattCharacteristicHandle, listener);
+    }
 
-        if (!gattCallbackHashMap.containsKey(address)) {
+    /**
+     * read data from remote device through a resolved characteristic.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address                  device address
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param listener                 result listener of this read
+     * @return true means request queued successful, false means the handle is invalid
+     */
+    boolean readData(@NonNull String address, @NonNull GattCharacteristicHandle gattCharacteristicHandle,
+                     @Nullable OnGattOperationResultListener<byte[]> listener) {
+        if (!bleBluetoothMultiGattCallback.getGattHandleTable(address).isValid(gattCharacteristicHandle)) {
             return false;
         }
-
-        BluetoothGatt bluetoothGatt = gattCallbackHashMap.get(address);
-
-        if (bluetoothGatt == null) {
+        GattOperationQueue gattOperationQueue = bleBluetoothMultiGattCallback.getGattOperationQueue(address);
+        if (gattOperationQueue == null) {
             return false;
         }
-        BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-        if (service == null) {
-            return false;
+        if (listener == null) {
+            //The result goes to the connect callback, so every read is sent to keep one callback per call
+            return gattOperationQueue.enqueue(GattOperationQueue.GattOperation.readCharacteristic(gattCharacteristicHandle.getCharacteristic(),
+                    newTaskFailedListener(address, "readData")));
         }
-
-        BluetoothGattCharacteristic characteristic = service.getCharacteristic(UUID.fromString(characteristicUUID));
-
-        return characteristic != null && bluetoothGatt.readCharacteristic(characteristic);
+        return bleBluetoothMultiGattCallback.getGattHandleTable(address).getCharacteristicValueCache()
+                .read(gattCharacteristicHandle.getCharacteristic(), gattOperationQueue, listener);
     }
 
     /**
@@ -497,33 +527,98 @@ public final class BluetoothMultiService extends Service {
      * @return true means request success
      */
     boolean enableNotification(@NonNull String address, @NonNull String serviceUUID, @NonNull String characteristicUUID, boolean enable) {
-        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
-            return false;
-        }
+        return enableNotification(address, serviceUUID, characteristicUUID, enable, null);
+    }
 
-        if (!gattCallbackHashMap.containsKey(address)) {
-            return false;
-        }
+    /**
+     * enable or disable notification by specified address.The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address            device address
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param enable             true means enable,false means disable
+     * @param listener           result listener of the descriptor write
+     * @return true means request successful
+     */
+    boolean enableNotification(@NonNull String address, @NonNull String serviceUUID, @NonNull String characteristicUUID, boolean enable,
+                               @Nullable OnGattOperationResultListener<byte[]> listener) {
+        GattCharacteristicHandle gattCharacteristicHandle = resolveCharacteristic(address, serviceUUID, characteristicUUID);
+        return gattCharacteristicHandle != null && enableNotification(address, gattCharacteristicHandle, enable, listener);
+    }
 
+    /**
+     * enable or disable notification of a resolved characteristic.The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param address                  device address
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param enable                   true means enable,false means disable
+     * @param listener                 result listener of the descriptor write
+     * @return true means request successful, false means the handle is invalid or the request failed
+     */
+    boolean enableNotification(@NonNull String address, @NonNull GattCharacteristicHandle gattCharacteristicHandle, boolean enable,
+                               @Nullable OnGattOperationResultListener<byte[]> listener) {
         BluetoothGatt bluetoothGatt = gattCallbackHashMap.get(address);
-        if (bluetoothGatt == null) {
+        if (bluetoothGatt == null || !bleBluetoothMultiGattCallback.getGattHandleTable(address).isValid(gattCharacteristicHandle)) {
             return false;
         }
-        BluetoothGattService bluetoothGattService = bluetoothGatt.getService(UUID.fromString(serviceUUID));
-        if (bluetoothGattService == null) {
+        BluetoothGattCharacteristic bluetoothGattCharacteristic = gattCharacteristicHandle.getCharacteristic();
+        GattOperationQueue gattOperationQueue = bleBluetoothMultiGattCallback.getGattOperationQueue(address);
+        if (gattOperationQueue == null) {
             return false;
         }
-        BluetoothGattCharacteristic bluetoothGattCharacteristic = bluetoothGattService.getCharacteristic(UUID.fromString(characteristicUUID));
         if (!bluetoothGatt.setCharacteristicNotification(bluetoothGattCharacteristic, enable)) {
             return false;
         }
         BluetoothGattDescriptor bluetoothGattDescriptor = bluetoothGattCharacteristic.getDescriptor(UUID.fromString(BleConstants.CLIENT_CHARACTERISTIC_CONFIG));
         if (bluetoothGattDescriptor == null) {
             DebugUtil.warnOut(TAG, "bluetoothGattDescriptor == null");
+            if (listener != null) {
+                // nothing to write, the notification state is already set locally
+                final OnGattOperationResultListener<byte[]> resultListener = listener;
+                BleManager.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        resultListener.onGattOperationSucceed(null);
+                    }
+                });
+            }
             return true;
         }
-        bluetoothGattDescriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-        return bluetoothGatt.writeDescriptor(bluetoothGattDescriptor);
+        byte[] value = enable ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE : BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE;
+        return gattOperationQueue.enqueue(GattOperationQueue.GattOperation.writeDescriptor(bluetoothGattDescriptor, value, listener));
+    }
+
+    /**
+     * set the cache policy of the values read from a characteristic of a connection
+     *
+     * @param address            device address
+     * @param characteristicUuid characteristic UUID
+     * @param policy             cache policy
+     * @param ttl                time to live of a value for {@link CharacteristicCachePolicy#TTL}(unit:ms)
+     */
+    void setCharacteristicCachePolicy(@NonNull String address, @NonNull UUID characteristicUuid, @NonNull CharacteristicCachePolicy policy,
+                                      @IntRange(from = 0) long ttl) {
+        bleBluetoothMultiGattCallback.getGattHandleTable(address).getCharacteristicValueCache().setCachePolicy(characteristicUuid, policy, ttl);
+    }
+
+    /**
+     * Resolve a characteristic of a connection
+     *
+     * @param address            device address
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @return resolved characteristic, null means the device is not connected or the characteristic is not found
+     */
+    @Nullable
+    GattCharacteristicHandle resolveCharacteristic(@NonNull String address, @NonNull String serviceUUID, @NonNull String characteristicUUID) {
+        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
+            return null;
+        }
+        BluetoothGatt bluetoothGatt = gattCallbackHashMap.get(address);
+        if (bluetoothGatt == null) {
+            return null;
+        }
+        return bleBluetoothMultiGattCallback.getGattHandleTable(address).resolve(bluetoothGatt, serviceUUID, characteristicUUID);
     }
 
     /**
@@ -643,7 +738,8 @@ public final class BluetoothMultiService extends Service {
         if (bluetoothGatt == null) {
             return false;
         }
-        return bluetoothGatt.readRemoteRssi();
+        GattOperationQueue gattOperationQueue = bleBluetoothMultiGattCallback.getGattOperationQueue(address);
+        return gattOperationQueue != null && gattOperationQueue.enqueue(GattOperationQueue.GattOperation.readRssi(null));
     }
 
     /**
@@ -685,6 +781,7 @@ public final class BluetoothMultiService extends Service {
         if (bluetoothGatt == null) {
             return false;
         }
+        bleBluetoothMultiGattCallback.setBluetoothGatt(address, null);
         bluetoothGatt.close();
         return true;
     }
@@ -736,7 +833,47 @@ public final class BluetoothMultiService extends Service {
         if (bluetoothGatt == null) {
             return false;
         }
-        return bluetoothGatt.requestMtu(mtu);
+        GattOperationQueue gattOperationQueue = bleBluetoothMultiGattCallback.getGattOperationQueue(address);
+        return gattOperationQueue != null && gattOperationQueue.enqueue(GattOperationQueue.GattOperation.requestMtu(mtu, null));
+    }
+
+    /**
+     * add a library internal notification listener of one characteristic of a connection
+     *
+     * @param address                          device address
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener listener, called on the main thread
+     * @return true means successful
+     */
+    boolean addOnBleReceiveNotificationListener(@NonNull String address, @NonNull String characteristicUuid,
+                                                @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        return bleBluetoothMultiGattCallback.addOnBleReceiveNotificationListener(address, characteristicUuid, onBleReceiveNotificationListener);
+    }
+
+    /**
+     * remove a library internal notification listener of one characteristic of a connection
+     *
+     * @param address                          device address
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener listener
+     */
+    void removeOnBleReceiveNotificationListener(@NonNull String address, @NonNull String characteristicUuid,
+                                                @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        bleBluetoothMultiGattCallback.removeOnBleReceiveNotificationListener(address, characteristicUuid, onBleReceiveNotificationListener);
+    }
+
+    /**
+     * get negotiated ATT MTU of the connection
+     *
+     * @param address device address
+     * @return ATT MTU
+     */
+    int getMtu(@NonNull String address) {
+        BaseBleConnectCallback baseBleConnectCallback = bleBluetoothMultiGattCallback.callbackHashMap.get(address);
+        if (baseBleConnectCallback == null) {
+            return BleConstants.DEFAULT_ATT_MTU;
+        }
+        return baseBleConnectCallback.getMtu();
     }
 
     /**
@@ -782,209 +919,59 @@ public final class BluetoothMultiService extends Service {
     /*-----------------------------------private method-----------------------------------*/
 
     /**
-     * check connect time out
+     * Create the result listener of a request made without one.A request that fails in the GATT operation queue
+     * never reaches the GATT callback, so that failure is reported by
+     * {@link BaseBleConnectCallback#onBluetoothGattOptionsNotSuccess(BluetoothGatt, String, int)}.
      *
-     * @param baseBleConnectCallback BaseBleConnectCallback
+     * @param address    device address
+     * @param methodName name of the request
+     * @return result listener
      */
-    private void checkTimeOut(@NonNull final BaseBleConnectCallback baseBleConnectCallback, final BluetoothGatt bluetoothGatt) {
-        Runnable runnable = new Runnable() {
-            @Override
-            public void run() {
-                long startTime = System.currentTimeMillis();
-                while (!baseBleConnectCallback.isConnected() && !baseBleConnectCallback.isServiceDiscovered()) {
-                    if (System.currentTimeMillis() - startTime >= connectTimeOut) {
-                        BleManager.getHandler().post(new Runnable() {
-                            @Override
-                            public void run() {
-                                baseBleConnectCallback.onConnectTimeOut(bluetoothGatt);
-                            }
-                        });
-                        break;
-                    }
-                }
-            }
-        };
-        BleManager.getThreadFactory().newThread(runnable).start();
-    }
-
-    /**
-     * get total package count
-     *
-     * @param dataLength data length
-     * @param autoFormat whether to format the packet
-     * @return total package count
-     */
-    private int getPageCount(int dataLength, boolean autoFormat) {
-
-        if (autoFormat) {
-            if (dataLength % LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH == 0) {
-                return dataLength / LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH;
-            } else {
-                return (dataLength / LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH) + 1;
-            }
-        } else {
-            if (dataLength % PACKAGE_MAX_LENGTH == 0) {
-                return dataLength / PACKAGE_MAX_LENGTH;
-            } else {
-                return (dataLength / PACKAGE_MAX_LENGTH) + 1;
-            }
-        }
-    }
-
-    private void performLargeDataSendStartedListener(@Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
+    @NonNull
+    private OnGattOperationResultListener<byte[]> newTaskFailedListener(@NonNull final String address, @NonNull final String methodName) {
+        return new OnGattOperationResultListener<byte[]>() {
             @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.sendStarted();
-                }
+            public void onGattOperationSucceed(@Nullable byte[] result) {
             }
-        });
-    }
 
-    private void performLargeDataWriteSendTimeOut(@Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener,
-                                                  final int pageCount, final int currentPackageIndex,
-                                                  @NonNull final byte[] data) {
-        BleManager.getHandler().post(new Runnable() {
             @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.onSendTimeOut(currentPackageIndex, pageCount, data);
+            public void onGattOperationFailed(int status) {
+                //A failure with a GATT status was reported by the GATT callback already
+                if (status >= 0) {
+                    return;
                 }
-            }
-        });
-    }
-
-    private void performLargeDataWriteSendTimeOutAndRetry(final int pageCount, @NonNull final byte[] data,
-                                                          final int tryCount, final int currentPackageIndex,
-                                                          @Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.onSendTimeOutAndRetry(tryCount, currentPackageIndex, pageCount, data);
+                BaseBleConnectCallback baseBleConnectCallback = bleBluetoothMultiGattCallback.callbackHashMap.get(address);
+                BluetoothGatt bluetoothGatt = gattCallbackHashMap.get(address);
+                if (baseBleConnectCallback == null || bluetoothGatt == null) {
+                    return;
                 }
+                baseBleConnectCallback.onBluetoothGattOptionsNotSuccess(bluetoothGatt, methodName, status);
             }
-        });
-    }
-
-    /**
-     * Let the current thread delay for a while before continuing
-     *
-     * @param packageDelayTime delay time (unit:ms)
-     */
-    private void sleepTime(int packageDelayTime) {
-        ThreadUtil.sleep(packageDelayTime);
+        };
     }
 
     /**
-     * get package data by specified index
+     * check connect time out
      *
-     * @param packageIndex index
-     * @param largeData    large data
-     * @param pageCount    total count
-     * @param autoFormat   whether to format the packet
-     * @return packet data
+     * @param baseBleConnectCallback BaseBleConnectCallback
+     * @param bluetoothGatt          BluetoothGatt
      */
-    @Nullable
-    private byte[] getCurrentPackageData(int packageIndex, @NonNull byte[] largeData, int pageCount, boolean autoFormat) {
-        if (packageIndex >= pageCount) {
-            return null;
-        }
-        int largeDataLength = largeData.length;
-        if (autoFormat) {
-            if (packageIndex == pageCount - 1) {
-                int remainder = largeDataLength % LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH;
-                if (remainder == 0) {
-                    byte[] data = new byte[20];
-                    data[0] = (byte) pageCount;
-                    data[1] = (byte) (packageIndex + 1);
-                    data[2] = LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH;
-                    System.arraycopy(largeData, packageIndex * LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data, PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data.length - (PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH));
-                    return data;
-                } else {
-                    byte[] data = new byte[remainder + PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH];
-                    data[0] = (byte) pageCount;
-                    data[1] = (byte) (packageIndex + 1);
-                    data[2] = (byte) remainder;
-                    System.arraycopy(largeData, packageIndex * LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data, PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data.length - (PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH));
-                    return data;
-                }
-            } else {
-                byte[] data = new byte[20];
-                data[0] = (byte) pageCount;
-                data[1] = (byte) (packageIndex + 1);
-                data[2] = (byte) LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH;
-                System.arraycopy(largeData, packageIndex * LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data, PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH, data.length - (PACKAGE_MAX_LENGTH - LARGE_DATA_AUTO_FORMAT_TRANSFORM_PACKAGE_MAX_LENGTH));
-                return data;
-            }
-        } else {
-            if (packageIndex == pageCount - 1) {
-                int remainder = largeDataLength % PACKAGE_MAX_LENGTH;
-                if (remainder == 0) {
-                    byte[] data = new byte[20];
-                    System.arraycopy(largeData, packageIndex * PACKAGE_MAX_LENGTH, data, 0, data.length);
-                    return data;
-                } else {
-                    byte[] data = new byte[remainder];
-                    System.arraycopy(largeData, packageIndex * PACKAGE_MAX_LENGTH, data, 0, data.length);
-                    return data;
-                }
-            } else {
-                byte[] data = new byte[20];
-                System.arraycopy(largeData, packageIndex * PACKAGE_MAX_LENGTH, data, 0, data.length);
-                return data;
-            }
-        }
-    }
-
-    private void performLargeDataSendFinishedListener(@Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.sendFinished();
-                }
-            }
-        });
-    }
-
-    private void performLargeDataSendProgressChangedListener(final int pageCount, @NonNull final byte[] data,
-                                                             final int currentPackageCount,
-                                                             @Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.packageSendProgressChanged(currentPackageCount + 1, pageCount, data);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataSendFailedListener(final int pageCount, @NonNull final byte[] data,
-                                                    final int currentPackageCount,
-                                                    @Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
-            @Override
-            public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.packageSendFailed(currentPackageCount + 1, pageCount, data);
-                }
-            }
-        });
-    }
-
-    private void performLargeDataSendFailedAndRetryListener(final int pageCount, @NonNull final byte[] data,
-                                                            final int tryCount, final int currentPackageCount,
-                                                            @Nullable final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener) {
-        BleManager.getHandler().post(new Runnable() {
+    private void checkTimeOut(@NonNull final BaseBleConnectCallback baseBleConnectCallback, final BluetoothGatt bluetoothGatt) {
+        Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                if (onLargeDataSendStateChangedListener != null) {
-                    onLargeDataSendStateChangedListener.packageSendFailedAndRetry(currentPackageCount + 1, pageCount, tryCount, data);
+                if (baseBleConnectCallback.isConnected() || baseBleConnectCallback.isServiceDiscovered()) {
+                    return;
                 }
+                BleManager.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        baseBleConnectCallback.onConnectTimeOut(bluetoothGatt);
+                    }
+                });
             }
-        });
+        };
+        // cancelled by the callback as soon as the services are discovered
+        baseBleConnectCallback.setConnectTimeout(TimerWheel.getInstance().newTimeout(runnable, connectTimeOut));
     }
 }
@@ -0,0 +1,325 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.os.SystemClock;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.enums.CharacteristicCachePolicy;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Values read from the characteristics of one connection, in front of the read path of the GATT operation queue.
+ * <p>
+ * Reads of a characteristic made while a read of it is outstanding wait for that read instead of queuing another ATT
+ * request, and its result is handed to all of them. Characteristics with a {@link CharacteristicCachePolicy#STATIC}
+ * or {@link CharacteristicCachePolicy#TTL} policy keep the value read and answer later reads from it without a
+ * request. A write to a characteristic drops its value, and the values are dropped together with the resolved
+ * characteristics of the connection. {@link CharacteristicCachePolicy#STATIC} values are also kept by the UUIDs and
+ * instance IDs of the characteristic and its service, those survive reconnects to the same device and are only dropped
+ * when the GATT database of the device changed or another device is connected.
+ * Policies are kept by characteristic UUID and survive both.
+ * <p>
+ * Only reads with a result listener go through the cache. A read without one reports its value through the connect
+ * callback of the GATT client, which only fires for a request that is actually sent, so such reads bypass the cache.
+ *
+ * @author jackie
+ */
+final class CharacteristicValueCache {
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * cache policies by characteristic UUID
+     */
+    private final ConcurrentHashMap<UUID, CachePolicy> cachePolicies = new ConcurrentHashMap<>();
+
+    /**
+     * values and outstanding reads by characteristic
+     */
+    private final HashMap<BluetoothGattCharacteristic, Entry> entries = new HashMap<>();
+
+    /**
+     * {@link CharacteristicCachePolicy#STATIC} values by attribute key, kept across reconnects
+     */
+    private final HashMap<String, byte[]> staticValues = new HashMap<>();
+
+    /**
+     * address of the device the static values belong to
+     */
+    @Nullable
+    private String address;
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * set the cache policy of a characteristic
+     *
+     * @param characteristicUuid characteristic UUID
+     * @param policy             cache policy
+     * @param ttl                time to live of a value for {@link CharacteristicCachePolicy#TTL}(unit:ms)
+     */
+    synchronized void setCachePolicy(@NonNull UUID characteristicUuid, @NonNull CharacteristicCachePolicy policy, @IntRange(from = 0) long ttl) {
+        if (policy == CharacteristicCachePolicy.ALWAYS_FRESH) {
+            cachePolicies.remove(characteristicUuid);
+        } else {
+            cachePolicies.put(characteristicUuid, new CachePolicy(policy, ttl));
+        }
+        for (BluetoothGattCharacteristic characteristic : new ArrayList<>(entries.keySet())) {
+            if (characteristicUuid.equals(characteristic.getUuid())) {
+                invalidate(characteristic);
+            }
+        }
+        String keyPrefix = characteristicUuid.toString() + '@';
+        Iterator<String> iterator = staticValues.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(keyPrefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * set the device of the connection, the static values of another device are dropped
+     *
+     * @param address device address
+     */
+    synchronized void setAddress(@NonNull String address) {
+        if (!address.equals(this.address)) {
+            staticValues.clear();
+            this.address = address;
+        }
+    }
+
+    /**
+     * Read a characteristic: from the cached value, by joining the outstanding read, or by queuing a new read
+     *
+     * @param characteristic     characteristic
+     * @param gattOperationQueue GATT operation queue of the connection
+     * @param listener           result listener of this read
+     * @return true means request successful
+     */
+    synchronized boolean read(@NonNull BluetoothGattCharacteristic characteristic, @NonNull GattOperationQueue gattOperationQueue,
+                              @NonNull final OnGattOperationResultListener<byte[]> listener) {
+        Entry entry = entries.get(characteristic);
+        if (entry == null) {
+            entry = restoreStaticValue(characteristic);
+        }
+        if (entry != null && entry.value != null && SystemClock.elapsedRealtime() < entry.expireTime) {
+            final byte[] value = entry.value.clone();
+            BleManager.getHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onGattOperationSucceed(value);
+                }
+            });
+            return true;
+        }
+        if (entry != null && entry.reading) {
+            entry.listeners.add(listener);
+            return true;
+        }
+        final Entry newEntry = new Entry(characteristic);
+        newEntry.reading = true;
+        newEntry.listeners.add(listener);
+        boolean enqueued = gattOperationQueue.enqueue(GattOperationQueue.GattOperation.readCharacteristic(characteristic, new OnGattOperationResultListener<byte[]>() {
+            @Override
+            public void onGattOperationSucceed(@Nullable byte[] result) {
+                for (OnGattOperationResultListener<byte[]> waitingListener : complete(newEntry, result)) {
+                    waitingListener.onGattOperationSucceed(result == null ? null : result.clone());
+                }
+            }
+
+            @Override
+            public void onGattOperationFailed(int status) {
+                for (OnGattOperationResultListener<byte[]> waitingListener : complete(newEntry, null)) {
+                    waitingListener.onGattOperationFailed(status);
+                }
+            }
+        }));
+        if (!enqueued) {
+            return false;
+        }
+        entries.put(characteristic, newEntry);
+        return true;
+    }
+
+    /**
+     * drop the value of a characteristic, the result of its outstanding read is not kept
+     *
+     * @param characteristic characteristic
+     */
+    synchronized void invalidate(@NonNull BluetoothGattCharacteristic characteristic) {
+        entries.remove(characteristic);
+        staticValues.remove(getAttributeKey(characteristic));
+    }
+
+    /**
+     * drop the values of the connection, the results of outstanding reads are not kept.Static values are kept.
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * drop all values including the static values, the GATT database of the device changed
+     */
+    synchronized void clearAll() {
+        entries.clear();
+        staticValues.clear();
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * An outstanding read finished, keep its value if the policy allows it
+     *
+     * @param entry entry of the read
+     * @param value value read, null means the read failed
+     * @return listeners waiting for the read
+     */
+    @NonNull
+    private synchronized ArrayList<OnGattOperationResultListener<byte[]>> complete(@NonNull Entry entry, @Nullable byte[] value) {
+        ArrayList<OnGattOperationResultListener<byte[]>> listeners = entry.listeners;
+        entry.listeners = new ArrayList<>(1);
+        entry.reading = false;
+        if (entries.get(entry.characteristic) != entry) {
+            return listeners;
+        }
+        CachePolicy cachePolicy = cachePolicies.get(entry.characteristic.getUuid());
+        if (value == null || cachePolicy == null) {
+            entries.remove(entry.characteristic);
+            return listeners;
+        }
+        entry.value = value.clone();
+        if (cachePolicy.policy == CharacteristicCachePolicy.STATIC) {
+            entry.expireTime = Long.MAX_VALUE;
+            staticValues.put(getAttributeKey(entry.characteristic), value.clone());
+        } else {
+            entry.expireTime = SystemClock.elapsedRealtime() + cachePolicy.ttl;
+        }
+        return listeners;
+    }
+
+    /**
+     * Create the entry of a characteristic from its static value kept from an earlier connection
+     *
+     * @param characteristic characteristic
+     * @return entry, null means the characteristic has no static value
+     */
+    @Nullable
+    private Entry restoreStaticValue(@NonNull BluetoothGattCharacteristic characteristic) {
+        CachePolicy cachePolicy = cachePolicies.get(characteristic.getUuid());
+        if (cachePolicy == null || cachePolicy.policy != CharacteristicCachePolicy.STATIC) {
+            return null;
+        }
+        byte[] value = staticValues.get(getAttributeKey(characteristic));
+        if (value == null) {
+            return null;
+        }
+        Entry entry = new Entry(characteristic);
+        entry.value = value;
+        entry.expireTime = Long.MAX_VALUE;
+        entries.put(characteristic, entry);
+        return entry;
+    }
+
+    /**
+     * get the key of a characteristic that stays the same across connections while the GATT database does
+     *
+     * @param characteristic characteristic
+     * @return characteristic UUID and instance ID, followed by those of its service
+     */
+    @NonNull
+    private static String getAttributeKey(@NonNull BluetoothGattCharacteristic characteristic) {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(characteristic.getUuid()).append('@').append(characteristic.getInstanceId());
+        BluetoothGattService service = characteristic.getService();
+        if (service != null) {
+            stringBuilder.append('/').append(service.getUuid()).append('@').append(service.getInstanceId());
+        }
+        return stringBuilder.toString();
+    }
+
+    /*-----------------------------------inner class-----------------------------------*/
+
+    /**
+     * cache policy of a characteristic
+     */
+    private static final class CachePolicy {
+
+        /**
+         * cache policy
+         */
+        @NonNull
+        private final CharacteristicCachePolicy policy;
+
+        /**
+         * time to live of a value(unit:ms)
+         */
+        private final long ttl;
+
+        /**
+         * Constructor
+         *
+         * @param policy cache policy
+         * @param ttl    time to live of a value(unit:ms)
+         */
+        private CachePolicy(@NonNull CharacteristicCachePolicy policy, long ttl) {
+            this.policy = policy;
+            this.ttl = ttl;
+        }
+    }
+
+    /**
+     * value and outstanding read of a characteristic
+     */
+    private static final class Entry {
+
+        /**
+         * characteristic
+         */
+        @NonNull
+        private final BluetoothGattCharacteristic characteristic;
+
+        /**
+         * listeners waiting for the outstanding read
+         */
+        @NonNull
+        private ArrayList<OnGattOperationResultListener<byte[]>> listeners = new ArrayList<>(1);
+
+        /**
+         * a read is outstanding
+         */
+        private boolean reading;
+
+        /**
+         * cached value, null means none
+         */
+        @Nullable
+        private byte[] value;
+
+        /**
+         * elapsed realtime the cached value expires at
+         */
+        private long expireTime;
+
+        /**
+         * Constructor
+         *
+         * @param characteristic characteristic
+         */
+        private Entry(@NonNull BluetoothGattCharacteristic characteristic) {
+            this.characteristic = characteristic;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A characteristic of one connection, resolved once from its service and characteristic UUID.
+ * <p>
+ * Writing, reading and enabling notification through a handle skips parsing the UUIDs and looking up the service
+ * and characteristic on every request. A handle is valid until the connection is lost or its services are discovered
+ * again, requests through an invalid handle fail and the characteristic has to be resolved again.
+ *
+ * @author jackie
+ */
+public final class GattCharacteristicHandle {
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * resolved characteristic
+     */
+    @NonNull
+    private final BluetoothGattCharacteristic characteristic;
+
+    /**
+     * service UUID the handle was resolved from
+     */
+    @NonNull
+    private final String serviceUuid;
+
+    /**
+     * characteristic UUID the handle was resolved from
+     */
+    @NonNull
+    private final String characteristicUuid;
+
+    /**
+     * handle table of the connection that resolved the handle
+     */
+    @NonNull
+    final GattHandleTable gattHandleTable;
+
+    /**
+     * generation of the handle table when the handle was resolved
+     */
+    final int generation;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param characteristic     resolved characteristic
+     * @param serviceUuid        service UUID
+     * @param characteristicUuid characteristic UUID
+     * @param gattHandleTable    handle table of the connection
+     * @param generation         generation of the handle table
+     */
+    GattCharacteristicHandle(@NonNull BluetoothGattCharacteristic characteristic, @NonNull String serviceUuid, @NonNull String characteristicUuid,
+                             @NonNull GattHandleTable gattHandleTable, int generation) {
+        this.characteristic = characteristic;
+        this.serviceUuid = serviceUuid;
+        this.characteristicUuid = characteristicUuid;
+        this.gattHandleTable = gattHandleTable;
+        this.generation = generation;
+    }
+
+    /*-----------------------------------public method-----------------------------------*/
+
+    /**
+     * get resolved characteristic
+     *
+     * @return BluetoothGattCharacteristic
+     */
+    @NonNull
+    public BluetoothGattCharacteristic getCharacteristic() {
+        return characteristic;
+    }
+
+    /**
+     * get service UUID the handle was resolved from
+     *
+     * @return service UUID
+     */
+    @NonNull
+    public String getServiceUuid() {
+        return serviceUuid;
+    }
+
+    /**
+     * get characteristic UUID the handle was resolved from
+     *
+     * @return characteristic UUID
+     */
+    @NonNull
+    public String getCharacteristicUuid() {
+        return characteristicUuid;
+    }
+
+    /**
+     * Check whether the handle can still be used
+     *
+     * @return true means valid, false means the connection was lost or its services were discovered again
+     */
+    public boolean isValid() {
+        return gattHandleTable.isValid(this);
+    }
+}
@@ -0,0 +1,303 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Persisted GATT database layouts of known devices.
+ * <p>
+ * The layout of services, characteristics and descriptors found by service discovery is stored per device address
+ * together with the Database Hash of the remote device when it has one. The platform answers service discovery from
+ * its own GATT cache, so the platform cache no longer has to be refreshed blindly: after discovery the Database Hash
+ * is read and compared with the stored one, and only a changed hash with an unchanged layout means the platform served
+ * a stale database and has to be refreshed. A Service Changed indication drops the stored layout.
+ * Layouts are kept in a small private shared preferences file and survive restarts of the app.
+ *
+ * @author jackie
+ */
+final class GattDatabaseCache {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = GattDatabaseCache.class.getSimpleName();
+
+    /**
+     * name of the shared preferences file
+     */
+    private static final String PREFERENCES_NAME = "ble_library_gatt_database";
+
+    /**
+     * key suffix of the Database Hash
+     */
+    private static final String KEY_HASH = ".hash";
+
+    /**
+     * key suffix of the layout
+     */
+    private static final String KEY_LAYOUT = ".layout";
+
+    /**
+     * UUID of the Generic Attribute service
+     */
+    private static final UUID GENERIC_ATTRIBUTE_SERVICE_UUID = UUID.fromString(BleConstants.GENERIC_ATTRIBUTE_SERVICE);
+
+    /**
+     * UUID of the Service Changed characteristic
+     */
+    private static final UUID SERVICE_CHANGED_UUID = UUID.fromString(BleConstants.SERVICE_CHANGED);
+
+    /**
+     * UUID of the Database Hash characteristic
+     */
+    private static final UUID DATABASE_HASH_UUID = UUID.fromString(BleConstants.DATABASE_HASH);
+
+    /**
+     * hex digits
+     */
+    private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @throws InstantiationException Prohibit creating instances
+     */
+    private GattDatabaseCache() throws InstantiationException {
+        throw new InstantiationException("Do not create an instance!");
+    }
+
+    /*-----------------------------------package private static method-----------------------------------*/
+
+    /**
+     * Check the discovered database of a connection against the stored one, the result is reported on the main thread.
+     * Nothing is reported when the connection closed before the Database Hash was read.
+     *
+     * @param gatt                GATT client that finished service discovery
+     * @param gattOperationQueue  GATT operation queue of the connection, null means the Database Hash is not read
+     * @param onValidatedListener result listener
+     */
+    static void validate(@NonNull BluetoothGatt gatt, @Nullable GattOperationQueue gattOperationQueue,
+                         @NonNull final OnValidatedListener onValidatedListener) {
+        final String address = gatt.getDevice().getAddress();
+        final String layout = describeLayout(gatt.getServices());
+        BluetoothGattCharacteristic databaseHash = null;
+        BluetoothGattService genericAttributeService = gatt.getService(GENERIC_ATTRIBUTE_SERVICE_UUID);
+        if (genericAttributeService != null) {
+            databaseHash = genericAttributeService.getCharacteristic(DATABASE_HASH_UUID);
+        }
+        if (gattOperationQueue == null || databaseHash == null || (databaseHash.getProperties() & BluetoothGattCharacteristic.PROPERTY_READ) == 0) {
+            postResult(address, null, layout, onValidatedListener);
+            return;
+        }
+        boolean enqueued = gattOperationQueue.enqueue(GattOperationQueue.GattOperation.readCharacteristic(databaseHash, new OnGattOperationResultListener<byte[]>() {
+            @Override
+            public void onGattOperationSucceed(@Nullable byte[] result) {
+                checkDatabase(address, result == null || result.length == 0 ? null : toHex(result), layout, onValidatedListener);
+            }
+
+            @Override
+            public void onGattOperationFailed(int status) {
+                if (status == BleConstants.GATT_OPERATION_CANCELLED) {
+                    return;
+                }
+                //Without the hash nothing can be compared, and the stored database is kept for the next connection
+                DebugUtil.warnOut(TAG, address + " read database hash failed : " + status);
+                onValidatedListener.onValidated(true, false);
+            }
+        }));
+        if (!enqueued) {
+            postResult(address, null, layout, onValidatedListener);
+        }
+    }
+
+    /**
+     * Check whether a characteristic is the Service Changed characteristic
+     *
+     * @param characteristic characteristic
+     * @return true means Service Changed
+     */
+    static boolean isServiceChanged(@NonNull BluetoothGattCharacteristic characteristic) {
+        return SERVICE_CHANGED_UUID.equals(characteristic.getUuid());
+    }
+
+    /**
+     * remove the stored database of a device
+     *
+     * @param address device address
+     */
+    static void invalidate(@NonNull String address) {
+        SharedPreferences sharedPreferences = getSharedPreferences();
+        if (sharedPreferences == null) {
+            return;
+        }
+        sharedPreferences.edit()
+                .remove(address + KEY_HASH)
+                .remove(address + KEY_LAYOUT)
+                .apply();
+    }
+
+    /**
+     * Refresh the platform GATT cache of a connection.
+     * Notice:Some Custom system return true but not take effect.There is no solution so far.
+     *
+     * @param gatt GATT client
+     * @return true means successful.
+     */
+    static boolean refreshPlatformCache(@NonNull BluetoothGatt gatt) {
+        try {
+            //noinspection JavaReflectionMemberAccess
+            Method refresh = gatt.getClass().getMethod("refresh");
+            return (boolean) refresh.invoke(gatt);
+        } catch (NoSuchMethodException e) {
+            e.printStackTrace();
+        } catch (InvocationTargetException e) {
+            e.printStackTrace();
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /*-----------------------------------private static method-----------------------------------*/
+
+    /**
+     * Check the database on the main thread, behind the GATT events already posted
+     *
+     * @param address             device address
+     * @param hash                Database Hash, null means the device has none
+     * @param layout              discovered layout
+     * @param onValidatedListener result listener
+     */
+    private static void postResult(@NonNull final String address, @Nullable final String hash, @NonNull final String layout,
+                                   @NonNull final OnValidatedListener onValidatedListener) {
+        BleManager.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                checkDatabase(address, hash, layout, onValidatedListener);
+            }
+        });
+    }
+
+    /**
+     * Compare the discovered database with the stored one, store it when it is valid and report the result
+     *
+     * @param address             device address
+     * @param hash                Database Hash, null means the device has none
+     * @param layout              discovered layout
+     * @param onValidatedListener result listener
+     */
+    private static void checkDatabase(@NonNull String address, @Nullable String hash, @NonNull String layout,
+                                      @NonNull OnValidatedListener onValidatedListener) {
+        SharedPreferences sharedPreferences = getSharedPreferences();
+        if (sharedPreferences == null) {
+            onValidatedListener.onValidated(true, false);
+            return;
+        }
+        String storedHash = sharedPreferences.getString(address + KEY_HASH, null);
+        String storedLayout = sharedPreferences.getString(address + KEY_LAYOUT, null);
+        if (hash != null && storedHash != null && !hash.equals(storedHash) && layout.equals(storedLayout)) {
+            DebugUtil.warnOut(TAG, address + " database hash changed, cached services are stale");
+            invalidate(address);
+            onValidatedListener.onValidated(false, true);
+            return;
+        }
+        if (layout.equals(storedLayout) && (hash == null ? storedHash == null : hash.equals(storedHash))) {
+            onValidatedListener.onValidated(true, false);
+            return;
+        }
+        sharedPreferences.edit()
+                .putString(address + KEY_HASH, hash)
+                .putString(address + KEY_LAYOUT, layout)
+                .apply();
+        onValidatedListener.onValidated(true, storedLayout != null);
+    }
+
+    /**
+     * Describe the services, characteristics and descriptors of a database with their handles
+     *
+     * @param services services of the database
+     * @return layout
+     */
+    @NonNull
+    private static String describeLayout(@Nullable List<BluetoothGattService> services) {
+        StringBuilder stringBuilder = new StringBuilder();
+        if (services == null) {
+            return "";
+        }
+        for (BluetoothGattService service : services) {
+            stringBuilder.append(service.getUuid()).append('@').append(service.getInstanceId()).append('{');
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                stringBuilder.append(characteristic.getUuid()).append('@').append(characteristic.getInstanceId())
+                        .append('/').append(characteristic.getProperties()).append('[');
+                for (BluetoothGattDescriptor descriptor : characteristic.getDescriptors()) {
+                    stringBuilder.append(descriptor.getUuid()).append(',');
+                }
+                stringBuilder.append(']');
+            }
+            stringBuilder.append('}');
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Convert bytes to a hex string
+     *
+     * @param bytes bytes
+     * @return hex string
+     */
+    @NonNull
+    private static String toHex(@NonNull byte[] bytes) {
+        char[] hexChars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int value = bytes[i] & 0xFF;
+            hexChars[i * 2] = HEX_ARRAY[value >>> 4];
+            hexChars[i * 2 + 1] = HEX_ARRAY[value & 0x0F];
+        }
+        return new String(hexChars);
+    }
+
+    /**
+     * get the shared preferences of the databases
+     *
+     * @return shared preferences, null means the library is not initialized
+     */
+    @Nullable
+    private static SharedPreferences getSharedPreferences() {
+        Context context = BleManager.getContext();
+        if (context == null) {
+            return null;
+        }
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /*-----------------------------------inner class-----------------------------------*/
+
+    /**
+     * Result listener of a database check, triggered on the main thread
+     */
+    interface OnValidatedListener {
+
+        /**
+         * callback triggered when the database was checked
+         *
+         * @param valid   true means the discovered services can be used, false means the platform cache is stale
+         * @param changed true means the database differs from the one stored by an earlier connection
+         */
+        void onValidated(boolean valid, boolean changed);
+    }
+}
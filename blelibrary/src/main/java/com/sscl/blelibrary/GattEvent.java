@@ -0,0 +1,175 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.os.Handler;
+import android.os.Message;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Arguments of a GATT callback event, carried to the main thread in a {@link Message}.
+ * <p>
+ * Events are kept in a small pool like {@link Message} itself: a GATT callback obtains an event, fills it and sends it,
+ * the handler callback on the main thread recycles it after dispatching, so steady GATT traffic allocates neither.
+ *
+ * @author jackie
+ */
+final class GattEvent {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    /**
+     * maximum count of pooled events
+     */
+    private static final int MAX_POOL_SIZE = 50;
+
+    /**
+     * lock of the pool
+     */
+    private static final Object POOL_LOCK = new Object();
+
+    /*-----------------------------------static variables-----------------------------------*/
+
+    /**
+     * first pooled event
+     */
+    @Nullable
+    private static GattEvent pool;
+
+    /**
+     * count of pooled events
+     */
+    private static int poolSize;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * GATT client of the event
+     */
+    @Nullable
+    BluetoothGatt gatt;
+
+    /**
+     * connect callback of the connection
+     */
+    @Nullable
+    BaseBleConnectCallback baseBleConnectCallback;
+
+    /**
+     * characteristic of the event
+     */
+    @Nullable
+    BluetoothGattCharacteristic characteristic;
+
+    /**
+     * descriptor of the event
+     */
+    @Nullable
+    BluetoothGattDescriptor descriptor;
+
+    /**
+     * value of the characteristic or descriptor
+     */
+    @Nullable
+    byte[] value;
+
+    /**
+     * notification listeners of the connection
+     */
+    @Nullable
+    NotificationRouter notificationRouter;
+
+    /**
+     * GATT callback method name of a failed operation
+     */
+    @Nullable
+    String methodName;
+
+    /**
+     * GATT status
+     */
+    int status;
+
+    /**
+     * first integer argument, such as rssi, mtu, tx phy or connection state
+     */
+    int arg1;
+
+    /**
+     * second integer argument, such as rx phy
+     */
+    int arg2;
+
+    /**
+     * next pooled event
+     */
+    @Nullable
+    private GattEvent next;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     */
+    private GattEvent() {
+    }
+
+    /*-----------------------------------package private static method-----------------------------------*/
+
+    /**
+     * get an event from the pool, a new one when the pool is empty
+     *
+     * @return cleared event
+     */
+    @NonNull
+    static GattEvent obtain() {
+        synchronized (POOL_LOCK) {
+            GattEvent gattEvent = pool;
+            if (gattEvent != null) {
+                pool = gattEvent.next;
+                gattEvent.next = null;
+                poolSize--;
+                return gattEvent;
+            }
+        }
+        return new GattEvent();
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * Send the event to the main thread
+     *
+     * @param handler handler whose callback dispatches the event and recycles it
+     * @param what    event code
+     */
+    void send(@NonNull Handler handler, int what) {
+        Message.obtain(handler, what, this).sendToTarget();
+    }
+
+    /**
+     * Clear the event and put it back into the pool, the event must not be used afterwards
+     */
+    void recycle() {
+        gatt = null;
+        baseBleConnectCallback = null;
+        characteristic = null;
+        descriptor = null;
+        value = null;
+        notificationRouter = null;
+        methodName = null;
+        status = 0;
+        arg1 = 0;
+        arg2 = 0;
+        synchronized (POOL_LOCK) {
+            if (poolSize < MAX_POOL_SIZE) {
+                next = pool;
+                pool = this;
+                poolSize++;
+            }
+        }
+    }
+}
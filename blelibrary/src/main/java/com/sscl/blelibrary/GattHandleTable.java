@@ -0,0 +1,140 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolved characteristics of one connection, keyed by the service and characteristic UUID strings of the requests.
+ * <p>
+ * A characteristic is looked up in the services of the GATT once, later requests with the same UUID strings find its
+ * handle with two hash lookups and no parsing. The table is invalidated when the connection state changes and when the
+ * services are discovered again, which makes every handle resolved before invalid and drops the cached values
+ * except the static ones. Those are only dropped by {@link #reset()}, when the GATT database of the device changed.
+ *
+ * @author jackie
+ */
+final class GattHandleTable {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = GattHandleTable.class.getSimpleName();
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * resolved handles by service UUID and characteristic UUID
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, GattCharacteristicHandle>> handles = new ConcurrentHashMap<>();
+
+    /**
+     * generation of the table, increased on every invalidation
+     */
+    private volatile int generation;
+
+    /**
+     * values read from the resolved characteristics
+     */
+    private final CharacteristicValueCache characteristicValueCache = new CharacteristicValueCache();
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * Resolve a characteristic, the handle resolved before is reused while it is valid
+     *
+     * @param bluetoothGatt      GATT of the connection
+     * @param serviceUuid        service UUID
+     * @param characteristicUuid characteristic UUID
+     * @return handle, null means the characteristic is not found or the UUID is invalid
+     */
+    @Nullable
+    GattCharacteristicHandle resolve(@Nullable BluetoothGatt bluetoothGatt, @NonNull String serviceUuid, @NonNull String characteristicUuid) {
+        int generation = this.generation;
+        ConcurrentHashMap<String, GattCharacteristicHandle> characteristicHandles = handles.get(serviceUuid);
+        if (characteristicHandles != null) {
+            GattCharacteristicHandle gattCharacteristicHandle = characteristicHandles.get(characteristicUuid);
+            if (gattCharacteristicHandle != null && gattCharacteristicHandle.generation == generation) {
+                return gattCharacteristicHandle;
+            }
+        }
+        if (bluetoothGatt == null) {
+            return null;
+        }
+        BluetoothGattCharacteristic characteristic;
+        try {
+            BluetoothGattService service = bluetoothGatt.getService(UUID.fromString(serviceUuid));
+            if (service == null) {
+                return null;
+            }
+            characteristic = service.getCharacteristic(UUID.fromString(characteristicUuid));
+        } catch (IllegalArgumentException e) {
+            DebugUtil.warnOut(TAG, "invalid UUID : " + serviceUuid + " " + characteristicUuid);
+            return null;
+        }
+        if (characteristic == null) {
+            return null;
+        }
+        GattCharacteristicHandle gattCharacteristicHandle = new GattCharacteristicHandle(characteristic, serviceUuid, characteristicUuid, this, generation);
+        if (characteristicHandles == null) {
+            ConcurrentHashMap<String, GattCharacteristicHandle> newCharacteristicHandles = new ConcurrentHashMap<>();
+            characteristicHandles = handles.putIfAbsent(serviceUuid, newCharacteristicHandles);
+            if (characteristicHandles == null) {
+                characteristicHandles = newCharacteristicHandles;
+            }
+        }
+        characteristicHandles.put(characteristicUuid, gattCharacteristicHandle);
+        return gattCharacteristicHandle;
+    }
+
+    /**
+     * Check whether a handle was resolved by this table and is still valid
+     *
+     * @param gattCharacteristicHandle handle
+     * @return true means valid
+     */
+    boolean isValid(@NonNull GattCharacteristicHandle gattCharacteristicHandle) {
+        return gattCharacteristicHandle.gattHandleTable == this && gattCharacteristicHandle.generation == generation;
+    }
+
+    /**
+     * get values read from the resolved characteristics
+     *
+     * @return characteristic value cache
+     */
+    @NonNull
+    CharacteristicValueCache getCharacteristicValueCache() {
+        return characteristicValueCache;
+    }
+
+    /**
+     * set the device of the connection, the static values of another device are dropped
+     *
+     * @param address device address
+     */
+    void setAddress(@NonNull String address) {
+        characteristicValueCache.setAddress(address);
+    }
+
+    /**
+     * Invalidate all resolved handles and drop the cached values, static values are kept for the next connection
+     */
+    synchronized void invalidate() {
+        generation++;
+        handles.clear();
+        characteristicValueCache.clear();
+    }
+
+    /**
+     * Invalidate all resolved handles and drop all cached values, the GATT database of the device changed
+     */
+    synchronized void reset() {
+        invalidate();
+        characteristicValueCache.clearAll();
+    }
+}
@@ -0,0 +1,526 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.os.Build;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * GATT operation queue of one connection.
+ * <p>
+ * Android allows only one outstanding GATT operation per connection, so reads, writes, descriptor writes,
+ * mtu requests and rssi reads are queued here.The next operation is dispatched as soon as
+ * {@link BleBluetoothGattCallback} reports the current one complete.A completion is matched on the operation type
+ * and the characteristic or descriptor instance, so a callback of an operation not requested through the queue
+ * never completes a queued one.
+ * <p>
+ * An operation that got no result within the timeout on the library {@link TimerWheel} is failed and the next one is
+ * dispatched.Its late callback, if it ever arrives, is recognized as stale and completes nothing.
+ * Requests to {@link BluetoothGatt} are binder calls, they are made outside the monitor of the queue.
+ * Results are reported to the typed listener of every operation on the main thread.
+ *
+ * @author jackie
+ */
+final class GattOperationQueue {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = GattOperationQueue.class.getSimpleName();
+
+    /**
+     * default operation timeout(unit:ms)
+     */
+    static final long DEFAULT_OPERATION_TIMEOUT = 5000;
+
+    /**
+     * operation type : read characteristic
+     */
+    static final int TYPE_READ_CHARACTERISTIC = 0;
+
+    /**
+     * operation type : write characteristic
+     */
+    static final int TYPE_WRITE_CHARACTERISTIC = 1;
+
+    /**
+     * operation type : write descriptor
+     */
+    static final int TYPE_WRITE_DESCRIPTOR = 2;
+
+    /**
+     * operation type : request mtu
+     */
+    static final int TYPE_REQUEST_MTU = 3;
+
+    /**
+     * operation type : read remote rssi
+     */
+    static final int TYPE_READ_RSSI = 4;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * operations waiting for dispatch
+     */
+    private final ArrayDeque<GattOperation> operations = new ArrayDeque<>();
+
+    /**
+     * the operation waiting for its result
+     */
+    @Nullable
+    private GattOperation current;
+
+    /**
+     * operations failed with a timeout whose late callback may still arrive
+     */
+    private final ArrayDeque<GattOperation> timedOutOperations = new ArrayDeque<>();
+
+    /**
+     * GATT of the connection
+     */
+    @Nullable
+    private BluetoothGatt bluetoothGatt;
+
+    /**
+     * operation timeout(unit:ms)
+     */
+    private long operationTimeout = DEFAULT_OPERATION_TIMEOUT;
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * set GATT of the connection.Pending operations of the previous GATT are cancelled.
+     *
+     * @param bluetoothGatt GATT
+     */
+    synchronized void setBluetoothGatt(@Nullable BluetoothGatt bluetoothGatt) {
+        if (this.bluetoothGatt != bluetoothGatt) {
+            cancelAll();
+        }
+        this.bluetoothGatt = bluetoothGatt;
+    }
+
+    /**
+     * set operation timeout
+     *
+     * @param operationTimeout timeout(unit:ms)
+     */
+    synchronized void setOperationTimeout(@IntRange(from = 0) long operationTimeout) {
+        this.operationTimeout = operationTimeout;
+    }
+
+    /**
+     * Queue an operation.It is dispatched at once if no operation is outstanding.
+     *
+     * @param gattOperation operation
+     * @return false means there is no GATT
+     */
+    boolean enqueue(@NonNull GattOperation gattOperation) {
+        synchronized (this) {
+            if (bluetoothGatt == null) {
+                return false;
+            }
+            operations.add(gattOperation);
+        }
+        dispatchNext();
+        return true;
+    }
+
+    /**
+     * Called by {@link BleBluetoothGattCallback} when an operation completed
+     *
+     * @param type      operation type
+     * @param target    characteristic or descriptor of the callback, null for mtu requests and rssi reads
+     * @param status    GATT status
+     * @param value     value of characteristic and descriptor operations
+     * @param intResult mtu or rssi
+     */
+    void onOperationComplete(int type, @Nullable Object target, int status, @Nullable byte[] value, int intResult) {
+        GattOperation gattOperation;
+        synchronized (this) {
+            if (removeTimedOutOperation(type, target)) {
+                // the late result of an operation already failed with a timeout
+                return;
+            }
+            gattOperation = current;
+            if (gattOperation == null || gattOperation.type != type || gattOperation.target() != target) {
+                // not requested through the queue
+                return;
+            }
+            current = null;
+            gattOperation.cancelTimeout();
+        }
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            gattOperation.succeed(value, intResult);
+        } else {
+            gattOperation.fail(status);
+        }
+        dispatchNext();
+    }
+
+    /**
+     * Fail the outstanding operation and all queued operations with {@link BleConstants#GATT_OPERATION_CANCELLED}
+     */
+    synchronized void cancelAll() {
+        GattOperation gattOperation = current;
+        current = null;
+        timedOutOperations.clear();
+        if (gattOperation != null) {
+            gattOperation.cancelTimeout();
+            gattOperation.fail(BleConstants.GATT_OPERATION_CANCELLED);
+        }
+        while ((gattOperation = operations.poll()) != null) {
+            gattOperation.fail(BleConstants.GATT_OPERATION_CANCELLED);
+        }
+    }
+
+    /**
+     * An operation got no result within the timeout, called by the timer wheel
+     *
+     * @param gattOperation operation
+     */
+    void onTimeout(@NonNull GattOperation gattOperation) {
+        synchronized (this) {
+            if (current != gattOperation) {
+                return;
+            }
+            current = null;
+            gattOperation.timeout = null;
+            timedOutOperations.add(gattOperation);
+        }
+        DebugUtil.warnOut(TAG, "gatt operation " + gattOperation.type + " time out");
+        gattOperation.fail(BleConstants.GATT_OPERATION_TIMEOUT);
+        dispatchNext();
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Dispatch the next operation that can be sent if no operation is outstanding.
+     * The operation takes the slot before the request is made outside the monitor, so only one caller dispatches at a time.
+     */
+    private void dispatchNext() {
+        while (true) {
+            GattOperation gattOperation;
+            BluetoothGatt bluetoothGatt;
+            synchronized (this) {
+                if (current != null) {
+                    return;
+                }
+                gattOperation = operations.poll();
+                if (gattOperation == null) {
+                    return;
+                }
+                bluetoothGatt = this.bluetoothGatt;
+                current = gattOperation;
+            }
+            boolean requested = bluetoothGatt != null && execute(bluetoothGatt, gattOperation);
+            synchronized (this) {
+                if (current != gattOperation) {
+                    // completed or cancelled while the request was made, the next operation is dispatched by that path
+                    return;
+                }
+                if (requested) {
+                    scheduleTimeout(gattOperation);
+                    return;
+                }
+                current = null;
+            }
+            DebugUtil.warnOut(TAG, "gatt operation " + gattOperation.type + " request failed");
+            gattOperation.fail(BleConstants.GATT_OPERATION_REQUEST_FAILED);
+        }
+    }
+
+    /**
+     * Remove the first timed out operation a callback belongs to
+     *
+     * @param type   operation type of the callback
+     * @param target characteristic or descriptor of the callback
+     * @return true means the callback is the late result of a timed out operation
+     */
+    private boolean removeTimedOutOperation(int type, @Nullable Object target) {
+        Iterator<GattOperation> iterator = timedOutOperations.iterator();
+        while (iterator.hasNext()) {
+            GattOperation gattOperation = iterator.next();
+            if (gattOperation.type == type && gattOperation.target() == target) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Send an operation to the remote device
+     *
+     * @param bluetoothGatt GATT
+     * @param gattOperation operation
+     * @return true means request successful
+     */
+    private boolean execute(@NonNull BluetoothGatt bluetoothGatt, @NonNull GattOperation gattOperation) {
+        try {
+            switch (gattOperation.type) {
+                case TYPE_READ_CHARACTERISTIC:
+                    return bluetoothGatt.readCharacteristic(gattOperation.characteristic);
+                case TYPE_WRITE_CHARACTERISTIC:
+                    //noinspection ConstantConditions
+                    if (!gattOperation.characteristic.setValue(gattOperation.value)) {
+                        return false;
+                    }
+                    if (gattOperation.intValue == 0) {
+                        return bluetoothGatt.writeCharacteristic(gattOperation.characteristic);
+                    }
+                    // the write type is read when the request is made, restore it for the other writes
+                    int writeType = gattOperation.characteristic.getWriteType();
+                    gattOperation.characteristic.setWriteType(gattOperation.intValue);
+                    boolean result = bluetoothGatt.writeCharacteristic(gattOperation.characteristic);
+                    gattOperation.characteristic.setWriteType(writeType);
+                    return result;
+                case TYPE_WRITE_DESCRIPTOR:
+                    //noinspection ConstantConditions
+                    if (!gattOperation.descriptor.setValue(gattOperation.value)) {
+                        return false;
+                    }
+                    return bluetoothGatt.writeDescriptor(gattOperation.descriptor);
+                case TYPE_REQUEST_MTU:
+                    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && bluetoothGatt.requestMtu(gattOperation.intValue);
+                case TYPE_READ_RSSI:
+                    return bluetoothGatt.readRemoteRssi();
+                default:
+                    return false;
+            }
+        } catch (Exception e) {
+            DebugUtil.warnOut(TAG, "gatt operation exception : " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Schedule the timeout of the outstanding operation
+     *
+     * @param gattOperation operation
+     */
+    private void scheduleTimeout(@NonNull final GattOperation gattOperation) {
+        if (operationTimeout <= 0) {
+            return;
+        }
+        gattOperation.timeout = TimerWheel.getInstance().newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(gattOperation);
+            }
+        }, operationTimeout);
+    }
+
+    /*-----------------------------------inner class-----------------------------------*/
+
+    /**
+     * A queued GATT operation
+     */
+    static final class GattOperation {
+
+        /**
+         * operation type
+         */
+        private final int type;
+
+        /**
+         * target characteristic
+         */
+        @Nullable
+        private final BluetoothGattCharacteristic characteristic;
+
+        /**
+         * target descriptor
+         */
+        @Nullable
+        private final BluetoothGattDescriptor descriptor;
+
+        /**
+         * value to write
+         */
+        @Nullable
+        private final byte[] value;
+
+        /**
+         * mtu to request, or write type of a characteristic write (0 keeps the write type of the characteristic)
+         */
+        private final int intValue;
+
+        /**
+         * listener of characteristic and descriptor operations
+         */
+        @Nullable
+        private final OnGattOperationResultListener<byte[]> valueListener;
+
+        /**
+         * listener of mtu requests and rssi reads
+         */
+        @Nullable
+        private final OnGattOperationResultListener<Integer> intListener;
+
+        /**
+         * pending timeout
+         */
+        @Nullable
+        private TimerWheel.Timeout timeout;
+
+        /**
+         * Constructor
+         *
+         * @param type           operation type
+         * @param characteristic target characteristic
+         * @param descriptor     target descriptor
+         * @param value          value to write
+         * @param intValue       mtu to request, or write type of a characteristic write
+         * @param valueListener  listener of characteristic and descriptor operations
+         * @param intListener    listener of mtu requests and rssi reads
+         */
+        private GattOperation(int type, @Nullable BluetoothGattCharacteristic characteristic, @Nullable BluetoothGattDescriptor descriptor,
+                              @Nullable byte[] value, int intValue,
+                              @Nullable OnGattOperationResultListener<byte[]> valueListener,
+                              @Nullable OnGattOperationResultListener<Integer> intListener) {
+            this.type = type;
+            this.characteristic = characteristic;
+            this.descriptor = descriptor;
+            this.value = value;
+            this.intValue = intValue;
+            this.valueListener = valueListener;
+            this.intListener = intListener;
+        }
+
+        /**
+         * Create a characteristic read
+         *
+         * @param characteristic characteristic
+         * @param listener       result listener
+         * @return operation
+         */
+        static GattOperation readCharacteristic(@NonNull BluetoothGattCharacteristic characteristic,
+                                                @Nullable OnGattOperationResultListener<byte[]> listener) {
+            return new GattOperation(TYPE_READ_CHARACTERISTIC, characteristic, null, null, 0, listener, null);
+        }
+
+        /**
+         * Create a characteristic write with the specified write type
+         *
+         * @param characteristic characteristic
+         * @param value          value
+         * @param writeType      {@link BluetoothGattCharacteristic#WRITE_TYPE_DEFAULT} or {@link BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE}
+         * @param listener       result listener
+         * @return operation
+         */
+        static GattOperation writeCharacteristic(@NonNull BluetoothGattCharacteristic characteristic, @NonNull byte[] value, int writeType,
+                                                 @Nullable OnGattOperationResultListener<byte[]> listener) {
+            return new GattOperation(TYPE_WRITE_CHARACTERISTIC, characteristic, null, value, writeType, listener, null);
+        }
+
+        /**
+         * Create a descriptor write
+         *
+         * @param descriptor descriptor
+         * @param value      value
+         * @param listener   result listener
+         * @return operation
+         */
+        static GattOperation writeDescriptor(@NonNull BluetoothGattDescriptor descriptor, @NonNull byte[] value,
+                                             @Nullable OnGattOperationResultListener<byte[]> listener) {
+            return new GattOperation(TYPE_WRITE_DESCRIPTOR, null, descriptor, value, 0, listener, null);
+        }
+
+        /**
+         * Create a mtu request
+         *
+         * @param mtu      mtu
+         * @param listener result listener
+         * @return operation
+         */
+        static GattOperation requestMtu(int mtu, @Nullable OnGattOperationResultListener<Integer> listener) {
+            return new GattOperation(TYPE_REQUEST_MTU, null, null, null, mtu, null, listener);
+        }
+
+        /**
+         * Create a rssi read
+         *
+         * @param listener result listener
+         * @return operation
+         */
+        static GattOperation readRssi(@Nullable OnGattOperationResultListener<Integer> listener) {
+            return new GattOperation(TYPE_READ_RSSI, null, null, null, 0, null, listener);
+        }
+
+        /**
+         * Get the characteristic or descriptor of the operation
+         *
+         * @return characteristic or descriptor, null for mtu requests and rssi reads
+         */
+        @Nullable
+        private Object target() {
+            return characteristic != null ? characteristic : descriptor;
+        }
+
+        /**
+         * cancel the pending timeout
+         */
+        private void cancelTimeout() {
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+        }
+
+        /**
+         * Report success on the main thread
+         *
+         * @param value     value of characteristic and descriptor operations
+         * @param intResult mtu or rssi
+         */
+        private void succeed(@Nullable final byte[] value, final int intResult) {
+            if (valueListener == null && intListener == null) {
+                return;
+            }
+            BleManager.getHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    if (valueListener != null) {
+                        valueListener.onGattOperationSucceed(value);
+                    }
+                    if (intListener != null) {
+                        intListener.onGattOperationSucceed(intResult);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Report failure on the main thread
+         *
+         * @param status status
+         */
+        private void fail(final int status) {
+            if (valueListener == null && intListener == null) {
+                return;
+            }
+            BleManager.getHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    if (valueListener != null) {
+                        valueListener.onGattOperationFailed(status);
+                    }
+                    if (intListener != null) {
+                        intListener.onGattOperationFailed(status);
+                    }
+                }
+            });
+        }
+    }
+}
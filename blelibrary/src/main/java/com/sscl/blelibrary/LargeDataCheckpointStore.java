@@ -0,0 +1,124 @@
+package com.sscl.blelibrary;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Persisted checkpoints of resumable large data streams.
+ * <p>
+ * A checkpoint is the count of bytes the remote device acknowledged for a transfer ID, stored together with
+ * the total length of the data so a checkpoint of different data is never resumed.
+ * Checkpoints are kept in a small private shared preferences file and survive restarts of the app.
+ *
+ * @author jackie
+ */
+public final class LargeDataCheckpointStore {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    /**
+     * name of the shared preferences file
+     */
+    private static final String PREFERENCES_NAME = "ble_library_large_data_checkpoints";
+
+    /**
+     * key suffix of the acknowledged offset
+     */
+    private static final String KEY_OFFSET = ".offset";
+
+    /**
+     * key suffix of the data length
+     */
+    private static final String KEY_LENGTH = ".length";
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @throws InstantiationException Prohibit creating instances
+     */
+    private LargeDataCheckpointStore() throws InstantiationException {
+        throw new InstantiationException("Do not create an instance!");
+    }
+
+    /*-----------------------------------public static method-----------------------------------*/
+
+    /**
+     * get the acknowledged offset of a transfer
+     *
+     * @param transferId transfer ID
+     * @param length     total length of the data
+     * @return acknowledged offset, 0 means there is no checkpoint for this data
+     */
+    public static int getCheckpoint(@NonNull String transferId, int length) {
+        SharedPreferences sharedPreferences = getSharedPreferences();
+        if (sharedPreferences == null) {
+            return 0;
+        }
+        if (sharedPreferences.getInt(transferId + KEY_LENGTH, -1) != length) {
+            return 0;
+        }
+        int offset = sharedPreferences.getInt(transferId + KEY_OFFSET, 0);
+        if (offset < 0 || offset > length) {
+            return 0;
+        }
+        return offset;
+    }
+
+    /**
+     * remove the checkpoint of a transfer
+     *
+     * @param transferId transfer ID
+     */
+    public static void clearCheckpoint(@NonNull String transferId) {
+        SharedPreferences sharedPreferences = getSharedPreferences();
+        if (sharedPreferences == null) {
+            return;
+        }
+        sharedPreferences.edit()
+                .remove(transferId + KEY_OFFSET)
+                .remove(transferId + KEY_LENGTH)
+                .apply();
+    }
+
+    /*-----------------------------------package private static method-----------------------------------*/
+
+    /**
+     * save the acknowledged offset of a transfer, the file is written in the background
+     *
+     * @param transferId transfer ID
+     * @param length     total length of the data
+     * @param offset     acknowledged offset
+     */
+    static void saveCheckpoint(@NonNull String transferId, int length, int offset) {
+        SharedPreferences sharedPreferences = getSharedPreferences();
+        if (sharedPreferences == null) {
+            DebugUtil.warnOut(LargeDataCheckpointStore.class.getSimpleName(), "context is null, checkpoint not saved");
+            return;
+        }
+        sharedPreferences.edit()
+                .putInt(transferId + KEY_OFFSET, offset)
+                .putInt(transferId + KEY_LENGTH, length)
+                .apply();
+    }
+
+    /*-----------------------------------private static method-----------------------------------*/
+
+    /**
+     * get the shared preferences of the checkpoints
+     *
+     * @return shared preferences, null means the library is not initialized
+     */
+    @Nullable
+    private static SharedPreferences getSharedPreferences() {
+        Context context = BleManager.getContext();
+        if (context == null) {
+            return null;
+        }
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,91 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
+
+/**
+ * The GATT operations a large data stream needs from one connection,
+ * implemented for {@link BleConnector} and {@link BleDeviceController}.
+ *
+ * @author jackie
+ */
+interface LargeDataLink {
+
+    /**
+     * get negotiated ATT MTU of the connection
+     *
+     * @return ATT MTU
+     */
+    int getMtu();
+
+    /**
+     * get whether the connection is connected
+     *
+     * @return true means connected
+     */
+    boolean isConnected();
+
+    /**
+     * Check for support write(no response)
+     *
+     * @param serviceUuid        Service UUID
+     * @param characteristicUuid characteristic UUID
+     * @return true means support
+     */
+    boolean canWriteNoResponse(@NonNull String serviceUuid, @NonNull String characteristicUuid);
+
+    /**
+     * write data to remote device, queued behind the outstanding GATT operations of the connection
+     *
+     * @param serviceUuid        service UUID
+     * @param characteristicUuid characteristic UUID
+     * @param data               data
+     * @param writeType          write type of the characteristic
+     * @param listener           result listener of this write
+     * @return true means request queued successful
+     */
+    boolean writeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull byte[] data, int writeType,
+                      @NonNull OnGattOperationResultListener<byte[]> listener);
+
+    /**
+     * enable notification
+     *
+     * @param serviceUuid        service UUID
+     * @param characteristicUuid characteristic UUID
+     * @param listener           result listener of the descriptor write
+     * @return true means request successful
+     */
+    boolean enableNotification(@NonNull String serviceUuid, @NonNull String characteristicUuid,
+                               @Nullable OnGattOperationResultListener<byte[]> listener);
+
+    /**
+     * add a callback triggered when received notification data of one characteristic
+     *
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     * @return true means successful
+     */
+    boolean addOnBleReceiveNotificationListener(@NonNull String characteristicUuid, @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener);
+
+    /**
+     * remove a callback triggered when received notification data of one characteristic
+     *
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     */
+    void removeOnBleReceiveNotificationListener(@NonNull String characteristicUuid, @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener);
+
+    /**
+     * The stream using this link went back, its writes not yet queued are stale and fail with
+     * {@link BleConstants#GATT_OPERATION_CANCELLED} instead of being sent
+     */
+    void dropPendingWrites();
+
+    /**
+     * The stream using this link finished, failed or was cancelled, its writes not yet queued can be dropped
+     */
+    void onTransferFinished();
+}
@@ -0,0 +1,246 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Splits large data into packets that fit the negotiated ATT MTU of a connection.
+ * <p>
+ * With autoFormat, every packet starts with a header.The version 1 header is the original three bytes
+ * {page count, page index, payload length} and is used whenever it can describe the transfer.
+ * Larger transfers use the version 2 header: a zero byte (a version 1 page count is never zero),
+ * the header version, then page count, page index and payload length as big endian 16 bit values.
+ * Version 2 describes at most 65535 packets, about 786 KB at the default MTU of 23.
+ * Transfers with more packets use the version 3 header, which has the layout of version 2
+ * with page count and page index as big endian 32 bit values, so the data length is only limited by the source.
+ * Page indexes start at 1 in all versions.
+ * <p>
+ * The payload of a packet is read from the {@link LargeDataSource} into a buffer of the caller when the packet is built.
+ * A resumed transfer packetizes the data from its start offset on, page count and indexes then cover only that part.
+ *
+ * @author jackie
+ */
+final class LargeDataPacketizer {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    /**
+     * length of the ATT write request header (opcode and attribute handle)
+     */
+    private static final int ATT_WRITE_HEADER_LENGTH = 3;
+
+    /**
+     * header length of version 1
+     */
+    static final int HEADER_LENGTH_V1 = 3;
+
+    /**
+     * header length of version 2
+     */
+    static final int HEADER_LENGTH_V2 = 8;
+
+    /**
+     * first byte of the version 2 header
+     */
+    static final byte HEADER_V2_MARKER = 0;
+
+    /**
+     * header length of version 3
+     */
+    static final int HEADER_LENGTH_V3 = 12;
+
+    /**
+     * header version 2
+     */
+    static final byte HEADER_VERSION_2 = 2;
+
+    /**
+     * header version 3
+     */
+    static final byte HEADER_VERSION_3 = 3;
+
+    /**
+     * maximum page count and payload length of version 1
+     */
+    private static final int MAX_VALUE_V1 = 0xFF;
+
+    /**
+     * maximum page count and payload length of version 2, maximum payload length of version 3
+     */
+    private static final int MAX_VALUE_V2 = 0xFFFF;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * source of the large data
+     */
+    @NonNull
+    private final LargeDataSource largeDataSource;
+
+    /**
+     * offset in the source of the first packet
+     */
+    private final int startOffset;
+
+    /**
+     * length of the data from the start offset on
+     */
+    private final int dataLength;
+
+    /**
+     * header length, 0 without autoFormat
+     */
+    private final int headerLength;
+
+    /**
+     * payload length of a full packet
+     */
+    private final int payloadLength;
+
+    /**
+     * total package count
+     */
+    private final int pageCount;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param largeDataSource source of the large data
+     * @param autoFormat      whether to format the packet
+     * @param mtu             negotiated ATT MTU of the connection
+     */
+    LargeDataPacketizer(@NonNull LargeDataSource largeDataSource, boolean autoFormat, int mtu) {
+        this(largeDataSource, 0, autoFormat, mtu);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param largeDataSource source of the large data
+     * @param startOffset     offset in the source of the first packet
+     * @param autoFormat      whether to format the packet
+     * @param mtu             negotiated ATT MTU of the connection
+     */
+    LargeDataPacketizer(@NonNull LargeDataSource largeDataSource, int startOffset, boolean autoFormat, int mtu) {
+        this.largeDataSource = largeDataSource;
+        this.startOffset = Math.max(0, Math.min(startOffset, largeDataSource.length()));
+        this.dataLength = largeDataSource.length() - this.startOffset;
+        int packageMaxLength = Math.max(BleConstants.DEFAULT_ATT_MTU, mtu) - ATT_WRITE_HEADER_LENGTH;
+        if (!autoFormat) {
+            headerLength = 0;
+            payloadLength = packageMaxLength;
+        } else if (getPageCount(dataLength, Math.min(packageMaxLength - HEADER_LENGTH_V1, MAX_VALUE_V1)) <= MAX_VALUE_V1) {
+            headerLength = HEADER_LENGTH_V1;
+            payloadLength = Math.min(packageMaxLength - HEADER_LENGTH_V1, MAX_VALUE_V1);
+        } else if (getPageCount(dataLength, Math.min(packageMaxLength - HEADER_LENGTH_V2, MAX_VALUE_V2)) <= MAX_VALUE_V2) {
+            headerLength = HEADER_LENGTH_V2;
+            payloadLength = Math.min(packageMaxLength - HEADER_LENGTH_V2, MAX_VALUE_V2);
+        } else {
+            headerLength = HEADER_LENGTH_V3;
+            payloadLength = Math.min(packageMaxLength - HEADER_LENGTH_V3, MAX_VALUE_V2);
+        }
+        pageCount = getPageCount(dataLength, payloadLength);
+        largeDataSource.prefetch(this.startOffset);
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * get total package count
+     *
+     * @return total package count
+     */
+    int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * get the offset in the source after a count of packets
+     *
+     * @param packageCount count of packets from the start offset on
+     * @return offset in the source
+     */
+    int getSourceOffset(int packageCount) {
+        return startOffset + (int) Math.min((long) packageCount * payloadLength, dataLength);
+    }
+
+    /**
+     * get packet length by specified index
+     *
+     * @param packageIndex index
+     * @return packet length, header included
+     */
+    int getPackageLength(int packageIndex) {
+        return headerLength + Math.min(payloadLength, dataLength - packageIndex * payloadLength);
+    }
+
+    /**
+     * Read a packet into a buffer of {@link #getPackageLength(int)} bytes
+     *
+     * @param packageIndex index, packets must be read in increasing order
+     * @param data         buffer
+     * @throws IOException the source could not be read
+     */
+    void readPackage(int packageIndex, @NonNull byte[] data) throws IOException {
+        if (packageIndex < 0 || packageIndex >= pageCount || data.length != getPackageLength(packageIndex)) {
+            throw new IllegalArgumentException("packageIndex = " + packageIndex + ", length = " + data.length);
+        }
+        int length = data.length - headerLength;
+        if (headerLength == HEADER_LENGTH_V1) {
+            data[0] = (byte) pageCount;
+            data[1] = (byte) (packageIndex + 1);
+            data[2] = (byte) length;
+        } else if (headerLength == HEADER_LENGTH_V2) {
+            data[0] = HEADER_V2_MARKER;
+            data[1] = HEADER_VERSION_2;
+            data[2] = (byte) (pageCount >> 8);
+            data[3] = (byte) pageCount;
+            data[4] = (byte) ((packageIndex + 1) >> 8);
+            data[5] = (byte) (packageIndex + 1);
+            data[6] = (byte) (length >> 8);
+            data[7] = (byte) length;
+        } else if (headerLength == HEADER_LENGTH_V3) {
+            data[0] = HEADER_V2_MARKER;
+            data[1] = HEADER_VERSION_3;
+            putInt(data, 2, pageCount);
+            putInt(data, 6, packageIndex + 1);
+            data[10] = (byte) (length >> 8);
+            data[11] = (byte) length;
+        }
+        largeDataSource.read(startOffset + packageIndex * payloadLength, data, headerLength, length);
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Write a big endian 32 bit value
+     *
+     * @param data   buffer
+     * @param offset offset in the buffer
+     * @param value  value
+     */
+    private static void putInt(@NonNull byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >> 24);
+        data[offset + 1] = (byte) (value >> 16);
+        data[offset + 2] = (byte) (value >> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    /**
+     * get total package count
+     *
+     * @param dataLength    data length
+     * @param payloadLength payload length of a full packet
+     * @return total package count
+     */
+    private static int getPageCount(int dataLength, int payloadLength) {
+        if (dataLength % payloadLength == 0) {
+            return dataLength / payloadLength;
+        } else {
+            return (dataLength / payloadLength) + 1;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Source of a large data transfer.
+ * <p>
+ * A transfer pulls the bytes of each packet when it is about to write it, so a source backed by an
+ * {@link InputStream} or a memory-mapped file never has to be loaded onto the heap as a whole.
+ * Every packet is read once and in order, retries resend the packet buffers the transfer still holds.
+ * The transfer closes its source when it finishes, fails or is cancelled.
+ *
+ * @author jackie
+ */
+public abstract class LargeDataSource implements Closeable {
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     */
+    LargeDataSource() {
+    }
+
+    /*-----------------------------------public static method-----------------------------------*/
+
+    /**
+     * Create a source of a byte array
+     *
+     * @param largeData large data
+     * @return source
+     */
+    @NonNull
+    public static LargeDataSource fromBytes(@NonNull byte[] largeData) {
+        return new ByteBufferSource(ByteBuffer.wrap(largeData), null);
+    }
+
+    /**
+     * Create a source of the remaining bytes of a buffer.The position of the buffer is not changed.
+     *
+     * @param byteBuffer buffer
+     * @return source
+     */
+    @NonNull
+    public static LargeDataSource fromByteBuffer(@NonNull ByteBuffer byteBuffer) {
+        return new ByteBufferSource(byteBuffer.duplicate(), null);
+    }
+
+    /**
+     * Create a source of an input stream.The stream is read ahead on a worker thread while the transfer runs,
+     * the transfer only waits for it when the stream is slower than the connection.
+     *
+     * @param inputStream input stream
+     * @param length      count of bytes to send from the stream
+     * @return source
+     */
+    @NonNull
+    public static LargeDataSource fromInputStream(@NonNull InputStream inputStream, int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length < 0");
+        }
+        return new InputStreamSource(inputStream, length);
+    }
+
+    /**
+     * Create a source of a whole file.The file is mapped into memory read only, pages are loaded as packets are sent.
+     *
+     * @param fileChannel file channel
+     * @return source
+     * @throws IOException the file could not be mapped
+     */
+    @NonNull
+    public static LargeDataSource fromFileChannel(@NonNull FileChannel fileChannel) throws IOException {
+        long size = fileChannel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("file is too large : " + size);
+        }
+        return new ByteBufferSource(fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size), fileChannel);
+    }
+
+    /*-----------------------------------public method-----------------------------------*/
+
+    /**
+     * get total length of the data
+     *
+     * @return length
+     */
+    public abstract int length();
+
+    /**
+     * Release the resources of the source
+     *
+     * @throws IOException close failed
+     */
+    @Override
+    public void close() throws IOException {
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * Read bytes of the data.Offsets of consecutive reads never decrease.
+     *
+     * @param offset       offset in the data
+     * @param buffer       target buffer
+     * @param bufferOffset offset in the target buffer
+     * @param length       count of bytes to read
+     * @throws IOException read failed or the data ended early
+     */
+    abstract void read(int offset, @NonNull byte[] buffer, int bufferOffset, int length) throws IOException;
+
+    /**
+     * Start loading the data ahead of the reads, called once when a transfer starts
+     *
+     * @param offset offset in the data of the first read
+     */
+    void prefetch(int offset) {
+    }
+
+    /**
+     * Close the source, errors are only logged
+     */
+    final void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            DebugUtil.warnOut(LargeDataSource.class.getSimpleName(), "close large data source failed : " + e.getMessage());
+        }
+    }
+
+    /*-----------------------------------inner class-----------------------------------*/
+
+    /**
+     * Source of a byte buffer, also used for byte arrays and mapped files
+     */
+    private static final class ByteBufferSource extends LargeDataSource {
+
+        /**
+         * buffer, its position is the start of the data
+         */
+        @NonNull
+        private final ByteBuffer byteBuffer;
+
+        /**
+         * start of the data in the buffer
+         */
+        private final int start;
+
+        /**
+         * resource closed with the source
+         */
+        @Nullable
+        private final Closeable closeable;
+
+        /**
+         * Constructor
+         *
+         * @param byteBuffer buffer, owned by the source
+         * @param closeable  resource closed with the source
+         */
+        private ByteBufferSource(@NonNull ByteBuffer byteBuffer, @Nullable Closeable closeable) {
+            this.byteBuffer = byteBuffer;
+            this.start = byteBuffer.position();
+            this.closeable = closeable;
+        }
+
+        @Override
+        public int length() {
+            return byteBuffer.limit() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closeable != null) {
+                closeable.close();
+            }
+        }
+
+        @Override
+        void read(int offset, @NonNull byte[] buffer, int bufferOffset, int length) throws IOException {
+            if (offset < 0 || offset + length > length()) {
+                throw new EOFException("offset " + offset + " length " + length);
+            }
+            byteBuffer.position(start + offset);
+            byteBuffer.get(buffer, bufferOffset, length);
+        }
+    }
+
+    /**
+     * Source of an input stream.
+     * The stream is read in chunks by a worker thread, a bounded queue of chunks keeps it ahead of the transfer
+     * without loading the whole stream onto the heap.
+     */
+    private static final class InputStreamSource extends LargeDataSource {
+
+        /**
+         * size of a chunk
+         */
+        private static final int CHUNK_SIZE = 4096;
+
+        /**
+         * count of chunks loaded ahead of the transfer
+         */
+        private static final int PREFETCH_CHUNK_COUNT = 16;
+
+        /**
+         * chunk that marks the end of the loaded chunks
+         */
+        private static final byte[] END_OF_CHUNKS = new byte[0];
+
+        /**
+         * input stream
+         */
+        @NonNull
+        private final InputStream inputStream;
+
+        /**
+         * count of bytes to send
+         */
+        private final int length;
+
+        /**
+         * chunks loaded by the worker thread
+         */
+        @NonNull
+        private final ArrayBlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(PREFETCH_CHUNK_COUNT);
+
+        /**
+         * worker thread, null means not started
+         */
+        @Nullable
+        private Thread prefetchThread;
+
+        /**
+         * failure of the worker thread
+         */
+        @Nullable
+        private volatile IOException loadException;
+
+        /**
+         * the source is closed
+         */
+        private volatile boolean closed;
+
+        /**
+         * chunk being read
+         */
+        @Nullable
+        private byte[] chunk;
+
+        /**
+         * offset of the next byte in the chunk being read
+         */
+        private int chunkPosition;
+
+        /**
+         * offset in the data of the next byte of the chunks
+         */
+        private int position;
+
+        /**
+         * Constructor
+         *
+         * @param inputStream input stream
+         * @param length      count of bytes to send
+         */
+        private InputStreamSource(@NonNull InputStream inputStream, int length) {
+            this.inputStream = inputStream instanceof BufferedInputStream ? inputStream : new BufferedInputStream(inputStream);
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            if (prefetchThread != null) {
+                prefetchThread.interrupt();
+            }
+            inputStream.close();
+        }
+
+        @Override
+        void prefetch(final int offset) {
+            if (prefetchThread != null) {
+                return;
+            }
+            position = offset;
+            prefetchThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    load(offset);
+                }
+            }, InputStreamSource.class.getSimpleName());
+            prefetchThread.setDaemon(true);
+            prefetchThread.start();
+        }
+
+        @Override
+        void read(int offset, @NonNull byte[] buffer, int bufferOffset, int length) throws IOException {
+            if (prefetchThread == null) {
+                prefetch(offset);
+            }
+            if (offset < position || offset + length > this.length) {
+                throw new IOException("offset " + offset + " length " + length + " position " + position);
+            }
+            int count = 0;
+            while (count < length) {
+                byte[] current = nextChunk();
+                int available = current.length - chunkPosition;
+                if (position < offset) {
+                    int skipped = Math.min(available, offset - position);
+                    chunkPosition += skipped;
+                    position += skipped;
+                    continue;
+                }
+                int copied = Math.min(available, length - count);
+                System.arraycopy(current, chunkPosition, buffer, bufferOffset + count, copied);
+                chunkPosition += copied;
+                position += copied;
+                count += copied;
+            }
+        }
+
+        /**
+         * Get the chunk that holds the next byte, waits for the worker thread when it is behind
+         *
+         * @return chunk
+         * @throws IOException the worker thread failed
+         */
+        @NonNull
+        private byte[] nextChunk() throws IOException {
+            if (chunk != null && chunkPosition < chunk.length) {
+                return chunk;
+            }
+            if (chunk == END_OF_CHUNKS) {
+                throw failure();
+            }
+            byte[] next;
+            try {
+                next = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("wait for input stream interrupted");
+            }
+            chunk = next;
+            chunkPosition = 0;
+            if (next == END_OF_CHUNKS) {
+                throw failure();
+            }
+            return next;
+        }
+
+        /**
+         * get the failure that ended the chunks
+         *
+         * @return failure
+         */
+        @NonNull
+        private IOException failure() {
+            IOException exception = loadException;
+            return exception != null ? exception : new EOFException("stream ended at " + position);
+        }
+
+        /**
+         * Load the chunks, runs on the worker thread
+         *
+         * @param offset offset in the data of the first chunk
+         */
+        private void load(int offset) {
+            try {
+                int skippedCount = 0;
+                while (skippedCount < offset) {
+                    long skipped = inputStream.skip(offset - skippedCount);
+                    if (skipped <= 0) {
+                        throw new EOFException("skip failed at " + skippedCount);
+                    }
+                    skippedCount += (int) skipped;
+                }
+                int loadedCount = offset;
+                while (loadedCount < length && !closed) {
+                    byte[] data = new byte[Math.min(CHUNK_SIZE, length - loadedCount)];
+                    int count = 0;
+                    while (count < data.length) {
+                        int read = inputStream.read(data, count, data.length - count);
+                        if (read < 0) {
+                            throw new EOFException("stream ended at " + (loadedCount + count));
+                        }
+                        count += read;
+                    }
+                    chunks.put(data);
+                    loadedCount += data.length;
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    loadException = e;
+                    try {
+                        chunks.put(END_OF_CHUNKS);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
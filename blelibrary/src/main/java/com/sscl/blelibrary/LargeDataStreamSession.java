@@ -0,0 +1,97 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+/**
+ * Handle of a large data stream that shares its connection with other streams.
+ * <p>
+ * Streams of one connection are interleaved packet by packet, a stream gets a share of the written bytes
+ * proportional to its priority while other streams have data to send.
+ * All methods may be called on any thread.
+ *
+ * @author jackie
+ */
+public final class LargeDataStreamSession {
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * stream of the session
+     */
+    @NonNull
+    private final LargeDataStreamTransfer largeDataStreamTransfer;
+
+    /**
+     * flow of the stream in the scheduler of the connection
+     */
+    @NonNull
+    private final LargeDataTransferScheduler.Flow flow;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param largeDataStreamTransfer stream of the session
+     * @param flow                    flow of the stream in the scheduler of the connection
+     */
+    LargeDataStreamSession(@NonNull LargeDataStreamTransfer largeDataStreamTransfer, @NonNull LargeDataTransferScheduler.Flow flow) {
+        this.largeDataStreamTransfer = largeDataStreamTransfer;
+        this.flow = flow;
+    }
+
+    /*-----------------------------------public method-----------------------------------*/
+
+    /**
+     * Cancel the stream without further callbacks, other streams of the connection keep running
+     */
+    public void cancel() {
+        largeDataStreamTransfer.cancel();
+    }
+
+    /**
+     * get priority of the stream
+     *
+     * @return priority
+     */
+    public int getPriority() {
+        return flow.getPriority();
+    }
+
+    /**
+     * set priority of the stream, applies to the packets queued afterwards
+     *
+     * @param priority share of the connection relative to the other streams
+     */
+    public void setPriority(@IntRange(from = 1) int priority) {
+        flow.setPriority(priority);
+    }
+
+    /**
+     * get the number of packages confirmed so far
+     *
+     * @return confirmed count
+     */
+    public int getConfirmedCount() {
+        return largeDataStreamTransfer.getConfirmedCount();
+    }
+
+    /**
+     * get total number of packages
+     *
+     * @return package count, 0 until the stream started
+     */
+    public int getPageCount() {
+        return largeDataStreamTransfer.getPageCount();
+    }
+
+    /**
+     * get whether the stream finished, failed or was cancelled
+     *
+     * @return true means finished
+     */
+    public boolean isFinished() {
+        return largeDataStreamTransfer.isFinished();
+    }
+}
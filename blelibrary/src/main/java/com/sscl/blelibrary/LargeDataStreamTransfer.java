@@ -0,0 +1,715 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.interfaces.LargeDataResumeCallback;
+import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
+import com.sscl.blelibrary.interfaces.OnLargeDataStreamStateChangedListener;
+import com.sscl.blelibrary.interfaces.OnResumableLargeDataStreamStateChangedListener;
+
+import java.io.IOException;
+
+/**
+ * Pipelined large data stream.
+ * <p>
+ * Packets are written without response and up to a window of them are queued on the connection at once,
+ * so the GATT queue never runs dry between two packets.Without an acknowledge characteristic a packet is
+ * confirmed when its write completed locally.With one, the remote device notifies the cumulative count of
+ * packets it received and the window only slides with those acknowledges, so a slow device is never flooded.
+ * When no packet is confirmed within the timeout, or a write fails, the stream goes back to the first
+ * unconfirmed packet and sends again from there after a delay that doubles with every try without progress.
+ * A stream whose connection is gone fails with {@link BleConstants#GATT_OPERATION_CANCELLED} instead of trying again.
+ * <p>
+ * Each packet is read from the {@link LargeDataSource} once, into a ring of window size buffers.
+ * Going back resends the buffers of the ring, so the memory of a stream does not grow with the data.
+ * <p>
+ * A stream with a transfer ID saves the confirmed offset in the {@link LargeDataCheckpointStore}, while it runs and when it stops,
+ * with or without an acknowledge characteristic.
+ * When a checkpoint of the same data exists at start, the listener confirms the offset with the remote device
+ * and the stream is packetized from the confirmed offset on.
+ * <p>
+ * Like {@link LargeDataTransfer} the stream runs on the main thread and uses the {@link TimerWheel} for its timeout.
+ *
+ * @author jackie
+ */
+final class LargeDataStreamTransfer {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = LargeDataStreamTransfer.class.getSimpleName();
+
+    /**
+     * state : not started
+     */
+    private static final int STATE_IDLE = 0;
+
+    /**
+     * state : waiting for the acknowledge characteristic to be enabled or for the resume offset
+     */
+    private static final int STATE_STARTING = 1;
+
+    /**
+     * state : streaming
+     */
+    private static final int STATE_RUNNING = 2;
+
+    /**
+     * state : finished, failed or cancelled
+     */
+    private static final int STATE_FINISHED = 3;
+
+    /**
+     * minimum interval between two checkpoint saves while the stream runs(unit:ms)
+     */
+    private static final long CHECKPOINT_INTERVAL = 1000;
+
+    /**
+     * delay before the first retry(unit:ms)
+     */
+    private static final long RETRY_DELAY = 100;
+
+    /**
+     * maximum delay before a retry(unit:ms)
+     */
+    private static final long MAX_RETRY_DELAY = 3200;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * connection of the stream
+     */
+    @NonNull
+    private final LargeDataLink largeDataLink;
+
+    /**
+     * service uuid to write data
+     */
+    @NonNull
+    private final String serviceUuid;
+
+    /**
+     * characteristic uuid to write data
+     */
+    @NonNull
+    private final String characteristicUuid;
+
+    /**
+     * service uuid of the acknowledge characteristic, null means packets are confirmed by their write result
+     */
+    @Nullable
+    private final String ackServiceUuid;
+
+    /**
+     * characteristic uuid of the acknowledge characteristic, null means packets are confirmed by their write result
+     */
+    @Nullable
+    private final String ackCharacteristicUuid;
+
+    /**
+     * source of the large data
+     */
+    @NonNull
+    private final LargeDataSource largeDataSource;
+
+    /**
+     * whether to format the packet
+     */
+    private final boolean autoFormat;
+
+    /**
+     * maximum count of packets written but not yet confirmed
+     */
+    private final int windowSize;
+
+    /**
+     * max try count without progress
+     */
+    private final int maxTryCount;
+
+    /**
+     * time without progress after which the stream goes back(unit:ms)
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Callback of the stream
+     */
+    @NonNull
+    private final OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener;
+
+    /**
+     * transfer ID of a resumable stream, null means the stream is not resumable
+     */
+    @Nullable
+    private final String transferId;
+
+    /**
+     * time of the last checkpoint save
+     */
+    private long checkpointTime;
+
+    /**
+     * buffers of the packets written but not yet confirmed
+     */
+    @NonNull
+    private final PacketBufferRing packetBufferRing;
+
+    /**
+     * packetizer, created when the stream starts with the ATT MTU of that moment
+     */
+    @Nullable
+    private LargeDataPacketizer largeDataPacketizer;
+
+    /**
+     * total package count
+     */
+    private volatile int pageCount;
+
+    /**
+     * write type of the packets
+     */
+    private int writeType;
+
+    /**
+     * index of the next packet to write
+     */
+    private int nextIndex;
+
+    /**
+     * count of packets read from the source
+     */
+    private int loadedCount;
+
+    /**
+     * count of packets confirmed in order
+     */
+    private volatile int confirmedCount;
+
+    /**
+     * count of writes queued on the connection and not completed, including writes of an older generation
+     */
+    private int queuedWrites;
+
+    /**
+     * try count since the last progress
+     */
+    private int tryCount;
+
+    /**
+     * whether the stream went back and waits for the retry delay before sending again
+     */
+    private boolean waitingRetry;
+
+    /**
+     * current state
+     */
+    private volatile int state = STATE_IDLE;
+
+    /**
+     * Incremented whenever the stream goes back or stops, results of an older generation are stale and ignored
+     */
+    private int generation;
+
+    /**
+     * pending timeout
+     */
+    @Nullable
+    private TimerWheel.Timeout timeout;
+
+    /**
+     * notification listener of the acknowledge characteristic
+     */
+    private final OnBleReceiveNotificationListener onBleReceiveNotificationListener = new OnBleReceiveNotificationListener() {
+        @Override
+        public void onBleReceiveNotification(BluetoothGattCharacteristic gattCharacteristic, byte[] data) {
+            onAcknowledge(data);
+        }
+    };
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param largeDataLink                         connection of the stream
+     * @param serviceUuid                           service uuid to write data
+     * @param characteristicUuid                    characteristic uuid to write data
+     * @param ackServiceUuid                        service uuid of the acknowledge characteristic, null means packets are confirmed by their write result
+     * @param ackCharacteristicUuid                 characteristic uuid of the acknowledge characteristic, null means packets are confirmed by their write result
+     * @param largeDataSource                       source of the large data
+     * @param autoFormat                            whether to format the packet
+     * @param windowSize                            maximum count of packets written but not yet confirmed
+     * @param maxTryCount                           max try count without progress
+     * @param timeoutMillis                         time without progress after which the stream goes back
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @param transferId                            transfer ID of a resumable stream, null means the stream is not resumable
+     */
+    LargeDataStreamTransfer(@NonNull LargeDataLink largeDataLink, @NonNull String serviceUuid, @NonNull String characteristicUuid,
+                            @Nullable String ackServiceUuid, @Nullable String ackCharacteristicUuid,
+                            @NonNull LargeDataSource largeDataSource, boolean autoFormat, int windowSize, int maxTryCount, long timeoutMillis,
+                            @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener,
+                            @Nullable String transferId) {
+        this.largeDataLink = largeDataLink;
+        this.serviceUuid = serviceUuid;
+        this.characteristicUuid = characteristicUuid;
+        this.ackServiceUuid = ackServiceUuid;
+        this.ackCharacteristicUuid = ackServiceUuid == null ? null : ackCharacteristicUuid;
+        this.largeDataSource = largeDataSource;
+        this.autoFormat = autoFormat;
+        this.windowSize = Math.max(1, windowSize);
+        this.maxTryCount = maxTryCount;
+        this.timeoutMillis = timeoutMillis;
+        this.onLargeDataStreamStateChangedListener = onLargeDataStreamStateChangedListener;
+        this.packetBufferRing = new PacketBufferRing(this.windowSize);
+        this.transferId = transferId;
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * Start the stream on the main thread
+     */
+    void start() {
+        BleManager.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if (state != STATE_IDLE) {
+                    return;
+                }
+                if (largeDataLink.canWriteNoResponse(serviceUuid, characteristicUuid)) {
+                    writeType = BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
+                } else {
+                    DebugUtil.warnOut(TAG, "write without response is not supported, stream with acknowledged writes");
+                    writeType = BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+                }
+                state = STATE_STARTING;
+                if (ackServiceUuid == null || ackCharacteristicUuid == null) {
+                    requestResume();
+                    return;
+                }
+                if (!largeDataLink.addOnBleReceiveNotificationListener(ackCharacteristicUuid, onBleReceiveNotificationListener)) {
+                    startFailed();
+                    return;
+                }
+                final int startGeneration = generation;
+                boolean result = largeDataLink.enableNotification(ackServiceUuid, ackCharacteristicUuid, new OnGattOperationResultListener<byte[]>() {
+                    @Override
+                    public void onGattOperationSucceed(@Nullable byte[] result) {
+                        if (startGeneration == generation && state == STATE_STARTING) {
+                            requestResume();
+                        }
+                    }
+
+                    @Override
+                    public void onGattOperationFailed(int status) {
+                        if (startGeneration == generation && state == STATE_STARTING) {
+                            DebugUtil.warnOut(TAG, "enable acknowledge notification failed : " + status);
+                            startFailed();
+                        }
+                    }
+                });
+                if (!result) {
+                    startFailed();
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancel the stream without further callbacks
+     */
+    void cancel() {
+        BleManager.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                finish();
+            }
+        });
+    }
+
+    /**
+     * get count of packets confirmed in order, may be called on any thread
+     *
+     * @return confirmed count
+     */
+    int getConfirmedCount() {
+        return confirmedCount;
+    }
+
+    /**
+     * get total package count, may be called on any thread
+     *
+     * @return package count, 0 until the stream started
+     */
+    int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * get whether the stream finished, failed or was cancelled, may be called on any thread
+     *
+     * @return true means finished
+     */
+    boolean isFinished() {
+        return state == STATE_FINISHED;
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Ask the listener to confirm the checkpoint of a resumable stream, or start from the beginning
+     */
+    private void requestResume() {
+        int checkpointOffset = transferId == null ? 0 : LargeDataCheckpointStore.getCheckpoint(transferId, largeDataSource.length());
+        if (checkpointOffset == 0 || !(onLargeDataStreamStateChangedListener instanceof OnResumableLargeDataStreamStateChangedListener)) {
+            begin(0);
+            return;
+        }
+        final int resumeGeneration = generation;
+        scheduleStartTimeout();
+        ((OnResumableLargeDataStreamStateChangedListener) onLargeDataStreamStateChangedListener).onResumeRequested(
+                checkpointOffset, largeDataSource.length(), new LargeDataResumeCallback() {
+                    @Override
+                    public void resume(final int offset) {
+                        BleManager.getHandler().post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (resumeGeneration == generation && state == STATE_STARTING) {
+                                    begin(offset);
+                                }
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * Start streaming
+     *
+     * @param startOffset offset in the source of the first packet
+     */
+    private void begin(int startOffset) {
+        largeDataPacketizer = new LargeDataPacketizer(largeDataSource, startOffset, autoFormat, largeDataLink.getMtu());
+        pageCount = largeDataPacketizer.getPageCount();
+        state = STATE_RUNNING;
+        checkpointTime = SystemClock.elapsedRealtime();
+        onLargeDataStreamStateChangedListener.onStreamStarted(pageCount);
+        if (pageCount == 0) {
+            finish();
+            clearCheckpoint();
+            onLargeDataStreamStateChangedListener.onStreamFinished();
+            return;
+        }
+        scheduleTimeout();
+        pump();
+    }
+
+    /**
+     * Queue packets until the window is full
+     */
+    private void pump() {
+        while (state == STATE_RUNNING && !waitingRetry && nextIndex < pageCount && queuedWrites < windowSize
+                && nextIndex - confirmedCount < windowSize) {
+            final byte[] packageData = loadPackage(nextIndex);
+            if (packageData == null) {
+                return;
+            }
+            final int packageIndex = nextIndex;
+            final int writeGeneration = generation;
+            boolean result = largeDataLink.writeData(serviceUuid, characteristicUuid, packageData, writeType, new OnGattOperationResultListener<byte[]>() {
+                @Override
+                public void onGattOperationSucceed(@Nullable byte[] result) {
+                    queuedWrites--;
+                    packetBufferRing.onWriteCompleted(packageIndex, packageData);
+                    if (state != STATE_RUNNING) {
+                        return;
+                    }
+                    if (writeGeneration == generation) {
+                        onWriteSucceed(packageIndex);
+                    } else {
+                        pump();
+                    }
+                }
+
+                @Override
+                public void onGattOperationFailed(int status) {
+                    queuedWrites--;
+                    packetBufferRing.onWriteCompleted(packageIndex, packageData);
+                    if (state != STATE_RUNNING) {
+                        return;
+                    }
+                    if (writeGeneration == generation) {
+                        DebugUtil.warnOut(TAG, "stream packet " + (packageIndex + 1) + " write failed : " + status);
+                        goBack(status);
+                    } else {
+                        pump();
+                    }
+                }
+            });
+            if (!result) {
+                // the timeout goes back and tries again
+                DebugUtil.warnOut(TAG, "writeData failed");
+                return;
+            }
+            packetBufferRing.onWriteQueued(packageIndex);
+            queuedWrites++;
+            nextIndex++;
+        }
+    }
+
+    /**
+     * get the buffer of a packet, packets past the loaded ones are read from the source
+     *
+     * @param packageIndex index of the packet
+     * @return packet data, null means the source could not be read and the stream failed
+     */
+    @Nullable
+    private byte[] loadPackage(int packageIndex) {
+        if (packageIndex < loadedCount) {
+            return packetBufferRing.get(packageIndex);
+        }
+        //noinspection ConstantConditions
+        byte[] packageData = packetBufferRing.obtain(packageIndex, largeDataPacketizer.getPackageLength(packageIndex));
+        try {
+            largeDataPacketizer.readPackage(packageIndex, packageData);
+        } catch (IOException e) {
+            DebugUtil.warnOut(TAG, "read large data source failed : " + e.getMessage());
+            finish();
+            onLargeDataStreamStateChangedListener.onStreamFailed(BleConstants.LARGE_DATA_SOURCE_READ_FAILED, confirmedCount, pageCount);
+            return null;
+        }
+        loadedCount = packageIndex + 1;
+        return packageData;
+    }
+
+    /**
+     * A packet write completed.The queue completes writes in order, so all packets before it completed too.
+     *
+     * @param packageIndex index of the packet
+     */
+    private void onWriteSucceed(int packageIndex) {
+        if (ackCharacteristicUuid == null) {
+            confirm(packageIndex + 1);
+            return;
+        }
+        pump();
+    }
+
+    /**
+     * The remote device notified on the acknowledge characteristic
+     *
+     * @param data notification data
+     */
+    private void onAcknowledge(@Nullable byte[] data) {
+        if (state != STATE_RUNNING) {
+            return;
+        }
+        int count = onLargeDataStreamStateChangedListener.onReceiveAcknowledge(data);
+        if (count <= confirmedCount) {
+            return;
+        }
+        confirm(Math.min(count, pageCount));
+    }
+
+    /**
+     * Packets were confirmed
+     *
+     * @param count count of packets confirmed in order
+     */
+    private void confirm(int count) {
+        confirmedCount = count;
+        waitingRetry = false;
+        if (nextIndex < confirmedCount) {
+            nextIndex = confirmedCount;
+        }
+        tryCount = 0;
+        onLargeDataStreamStateChangedListener.onStreamProgressChanged(confirmedCount, pageCount);
+        if (confirmedCount >= pageCount) {
+            finish();
+            clearCheckpoint();
+            onLargeDataStreamStateChangedListener.onStreamFinished();
+            return;
+        }
+        if (SystemClock.elapsedRealtime() - checkpointTime >= CHECKPOINT_INTERVAL) {
+            saveCheckpoint();
+        }
+        scheduleTimeout();
+        pump();
+    }
+
+    /**
+     * Send again from the first unconfirmed packet after the retry delay, or fail when the retries are used up
+     * or the connection is gone
+     *
+     * @param status GATT status of the failure
+     */
+    private void goBack(int status) {
+        cancelTimer();
+        if (!largeDataLink.isConnected()) {
+            disconnected();
+            return;
+        }
+        if (tryCount >= maxTryCount) {
+            finish();
+            onLargeDataStreamStateChangedListener.onStreamFailed(status, confirmedCount, pageCount);
+            return;
+        }
+        tryCount++;
+        generation++;
+        nextIndex = confirmedCount;
+        largeDataLink.dropPendingWrites();
+        onLargeDataStreamStateChangedListener.onStreamRetry(tryCount, confirmedCount, pageCount);
+        scheduleRetry();
+    }
+
+    /**
+     * Fail the stream because its connection is gone
+     */
+    private void disconnected() {
+        DebugUtil.warnOut(TAG, "connection lost, stream stopped");
+        finish();
+        onLargeDataStreamStateChangedListener.onStreamFailed(BleConstants.GATT_OPERATION_CANCELLED, confirmedCount, pageCount);
+    }
+
+    /**
+     * Save the confirmed offset of a resumable stream.Without an acknowledge characteristic the offset covers the packets
+     * written locally, the listener confirms it with the remote device before the stream resumes.
+     */
+    private void saveCheckpoint() {
+        if (transferId == null || largeDataPacketizer == null) {
+            return;
+        }
+        checkpointTime = SystemClock.elapsedRealtime();
+        LargeDataCheckpointStore.saveCheckpoint(transferId, largeDataSource.length(), largeDataPacketizer.getSourceOffset(confirmedCount));
+    }
+
+    /**
+     * Remove the checkpoint of a resumable stream that finished
+     */
+    private void clearCheckpoint() {
+        if (transferId != null) {
+            LargeDataCheckpointStore.clearCheckpoint(transferId);
+        }
+    }
+
+    /**
+     * Report a failed start
+     */
+    private void startFailed() {
+        finish();
+        onLargeDataStreamStateChangedListener.onStartFailed();
+    }
+
+    /**
+     * Schedule the progress timeout
+     */
+    private void scheduleTimeout() {
+        cancelTimer();
+        final int timeoutGeneration = generation;
+        final int timeoutConfirmedCount = confirmedCount;
+        timeout = TimerWheel.getInstance().newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                BleManager.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (timeoutGeneration == generation && timeoutConfirmedCount == confirmedCount && state == STATE_RUNNING) {
+                            DebugUtil.warnOut(TAG, "stream packet " + (confirmedCount + 1) + " time out");
+                            goBack(BleConstants.GATT_OPERATION_TIMEOUT);
+                        }
+                    }
+                });
+            }
+        }, timeoutMillis);
+    }
+
+    /**
+     * Send again after a delay that doubles with every try without progress.
+     * An acknowledge that arrives meanwhile is progress, it resumes the stream at once.
+     */
+    private void scheduleRetry() {
+        waitingRetry = true;
+        final int retryGeneration = generation;
+        long delay = Math.min(RETRY_DELAY << Math.min(tryCount - 1, 16), MAX_RETRY_DELAY);
+        timeout = TimerWheel.getInstance().newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                BleManager.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (retryGeneration != generation || state != STATE_RUNNING || !waitingRetry) {
+                            return;
+                        }
+                        waitingRetry = false;
+                        if (!largeDataLink.isConnected()) {
+                            disconnected();
+                            return;
+                        }
+                        scheduleTimeout();
+                        pump();
+                    }
+                });
+            }
+        }, delay);
+    }
+
+    /**
+     * Schedule the timeout of the resume request, the start fails when the offset is not confirmed in time
+     */
+    private void scheduleStartTimeout() {
+        cancelTimer();
+        final int timeoutGeneration = generation;
+        timeout = TimerWheel.getInstance().newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                BleManager.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (timeoutGeneration == generation && state == STATE_STARTING) {
+                            DebugUtil.warnOut(TAG, "resume offset not confirmed in time");
+                            startFailed();
+                        }
+                    }
+                });
+            }
+        }, timeoutMillis);
+    }
+
+    /**
+     * Cancel the pending timeout
+     */
+    private void cancelTimer() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+    }
+
+    /**
+     * Stop the stream
+     */
+    private void finish() {
+        if (state == STATE_FINISHED) {
+            return;
+        }
+        boolean listening = state != STATE_IDLE && ackCharacteristicUuid != null;
+        if (state == STATE_RUNNING) {
+            saveCheckpoint();
+        }
+        state = STATE_FINISHED;
+        generation++;
+        cancelTimer();
+        if (listening) {
+            //noinspection ConstantConditions
+            largeDataLink.removeOnBleReceiveNotificationListener(ackCharacteristicUuid, onBleReceiveNotificationListener);
+        }
+        packetBufferRing.clear();
+        largeDataSource.closeQuietly();
+        largeDataLink.onTransferFinished();
+    }
+}
@@ -0,0 +1,545 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
+import com.sscl.blelibrary.interfaces.OnLargeDataSendStateChangedListener;
+import com.sscl.blelibrary.interfaces.OnLargeDataWriteWithNotificationSendStateChangedListener;
+
+import java.io.IOException;
+
+/**
+ * Completion driven large data transfer of {@link BleConnector}.
+ * <p>
+ * The transfer is a state machine that runs on the main thread: the write result of a packet, the notification
+ * of the remote device, or a timer event on the library {@link TimerWheel} advances it.
+ * Delays between packets, retries and timeouts are timer events, so nothing waits or polls in between.
+ * Without a notification characteristic the next packet is written when the current one is acknowledged,
+ * otherwise when the remote device notified and the listener accepted the notification.
+ * Packets are sized by the ATT MTU of the connection when the transfer starts, see {@link LargeDataPacketizer}.
+ * Each packet is read from the {@link LargeDataSource} when it is sent, into a new array, because the listeners
+ * receive the packet arrays and may keep them.
+ *
+ * @author jackie
+ */
+final class LargeDataTransfer {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = LargeDataTransfer.class.getSimpleName();
+
+    /**
+     * default value of resend delay when data transmission fails
+     */
+    private static final int RETRY_DELAY_TIME = 100;
+
+    /**
+     * state : not started or waiting for a timer to send the current packet
+     */
+    private static final int STATE_IDLE = 0;
+
+    /**
+     * state : waiting for the write result of the current packet
+     */
+    private static final int STATE_WAIT_WRITE = 1;
+
+    /**
+     * state : waiting for the notification of the current packet
+     */
+    private static final int STATE_WAIT_NOTIFICATION = 2;
+
+    /**
+     * state : finished, failed or cancelled
+     */
+    private static final int STATE_FINISHED = 3;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * BLE connector
+     */
+    @NonNull
+    private final BleConnector bleConnector;
+
+    /**
+     * service uuid to write data
+     */
+    @NonNull
+    private final String serviceUuid;
+
+    /**
+     * characteristic uuid to write data
+     */
+    @NonNull
+    private final String characteristicUuid;
+
+    /**
+     * characteristic uuid to receive notification data, null means no notification is awaited
+     */
+    @Nullable
+    private final String notificationCharacteristicUuid;
+
+    /**
+     * source of the large data
+     */
+    @NonNull
+    private final LargeDataSource largeDataSource;
+
+    /**
+     * whether to format the packet
+     */
+    private final boolean autoFormat;
+
+    /**
+     * Time interval between each packet of data(unit:ms)
+     */
+    private final int packageDelayTime;
+
+    /**
+     * max try count of one packet
+     */
+    private final int maxTryCount;
+
+    /**
+     * timeout of the write result and of the notification(unit:ms)
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Callback during large data transmission
+     */
+    @Nullable
+    private final OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener;
+
+    /**
+     * Callback that write large data and require remote devices to notify collaboration
+     */
+    @Nullable
+    private final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener;
+
+    /**
+     * packetizer, created when the transfer starts with the ATT MTU of that moment
+     */
+    @Nullable
+    private LargeDataPacketizer largeDataPacketizer;
+
+    /**
+     * total package count
+     */
+    private int pageCount;
+
+    /**
+     * index of the current packet
+     */
+    private int packageIndex;
+
+    /**
+     * data of the current packet
+     */
+    @Nullable
+    private byte[] packageData;
+
+    /**
+     * index of the packet held in packageData, -1 means none
+     */
+    private int loadedPackageIndex = -1;
+
+    /**
+     * try count of the current packet
+     */
+    private int tryCount;
+
+    /**
+     * count of notifications the listener rejected in a row
+     */
+    private int wrongNotificationCount;
+
+    /**
+     * current state
+     */
+    private int state = STATE_IDLE;
+
+    /**
+     * Incremented on every state change, events of an older generation are stale and ignored
+     */
+    private int generation;
+
+    /**
+     * pending timer event
+     */
+    @Nullable
+    private TimerWheel.Timeout timeout;
+
+    /**
+     * notification listener of the transfer
+     */
+    private final OnBleReceiveNotificationListener onBleReceiveNotificationListener = new OnBleReceiveNotificationListener() {
+        @Override
+        public void onBleReceiveNotification(BluetoothGattCharacteristic gattCharacteristic, byte[] data) {
+            onNotification(data);
+        }
+    };
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param bleConnector                                             BLE connector
+     * @param serviceUuid                                              service uuid to write data
+     * @param characteristicUuid                                       characteristic uuid to write data
+     * @param notificationCharacteristicUuid                           characteristic uuid to receive notification data, null means no notification is awaited
+     * @param largeDataSource                                          source of the large data
+     * @param autoFormat                                               whether to format the packet
+     * @param packageDelayTime                                         Time interval between each packet of data
+     * @param maxTryCount                                              max try count of one packet
+     * @param timeoutMillis                                            timeout of the write result and of the notification
+     * @param onLargeDataSendStateChangedListener                      Callback during large data transmission
+     * @param onLargeDataWriteWithNotificationSendStateChangedListener Callback that write large data and require remote devices to notify collaboration
+     */
+    LargeDataTransfer(@NonNull BleConnector bleConnector, @NonNull String serviceUuid, @NonNull String characteristicUuid,
+                      @Nullable String notificationCharacteristicUuid, @NonNull LargeDataSource largeDataSource, boolean autoFormat,
+                      int packageDelayTime, int maxTryCount, long timeoutMillis,
+                      @Nullable OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener,
+                      @Nullable OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener) {
+        this.bleConnector = bleConnector;
+        this.serviceUuid = serviceUuid;
+        this.characteristicUuid = characteristicUuid;
+        this.notificationCharacteristicUuid = notificationCharacteristicUuid;
+        this.largeDataSource = largeDataSource;
+        this.autoFormat = autoFormat;
+        this.packageDelayTime = packageDelayTime;
+        this.maxTryCount = maxTryCount;
+        this.timeoutMillis = timeoutMillis;
+        this.onLargeDataSendStateChangedListener = onLargeDataSendStateChangedListener;
+        this.onLargeDataWriteWithNotificationSendStateChangedListener = onLargeDataWriteWithNotificationSendStateChangedListener;
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * Start the transfer on the main thread
+     */
+    void start() {
+        BleManager.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if (state != STATE_IDLE || largeDataPacketizer != null) {
+                    return;
+                }
+                largeDataPacketizer = new LargeDataPacketizer(largeDataSource, autoFormat, bleConnector.getMtu());
+                pageCount = largeDataPacketizer.getPageCount();
+                if (notificationCharacteristicUuid != null) {
+                    if (!bleConnector.addOnBleReceiveNotificationListener(notificationCharacteristicUuid, onBleReceiveNotificationListener)) {
+                        finish();
+                        if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+                            onLargeDataWriteWithNotificationSendStateChangedListener.onStartFailed();
+                        }
+                        return;
+                    }
+                    if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+                        onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendStart();
+                    }
+                } else if (onLargeDataSendStateChangedListener != null) {
+                    onLargeDataSendStateChangedListener.sendStarted();
+                }
+                sendCurrentPackage();
+            }
+        });
+    }
+
+    /**
+     * Cancel the transfer without further callbacks
+     */
+    void cancel() {
+        BleManager.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                finish();
+            }
+        });
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Write the current packet, or finish when all packets are written
+     */
+    private void sendCurrentPackage() {
+        if (state == STATE_FINISHED) {
+            return;
+        }
+        if (packageIndex >= pageCount) {
+            finish();
+            if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+                onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendFinished();
+            }
+            if (onLargeDataSendStateChangedListener != null) {
+                onLargeDataSendStateChangedListener.sendFinished();
+            }
+            return;
+        }
+        if (loadedPackageIndex != packageIndex && !loadCurrentPackage()) {
+            return;
+        }
+        if (notificationCharacteristicUuid == null && onLargeDataSendStateChangedListener != null) {
+            //noinspection ConstantConditions
+            onLargeDataSendStateChangedListener.packageSendProgressChanged(packageIndex + 1, pageCount, packageData);
+        }
+        if (tryCount >= maxTryCount) {
+            finish();
+            if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+                onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendFailed(packageIndex + 1, pageCount, packageData);
+            }
+            if (onLargeDataSendStateChangedListener != null) {
+                onLargeDataSendStateChangedListener.packageSendFailed(packageIndex + 1, pageCount, packageData);
+            }
+            return;
+        }
+        if (!writeCurrentPackage()) {
+            if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+                onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendFailedAndRetry(packageIndex + 1, pageCount, packageData, tryCount);
+            }
+            if (onLargeDataSendStateChangedListener != null) {
+                onLargeDataSendStateChangedListener.packageSendFailedAndRetry(packageIndex + 1, pageCount, tryCount, packageData);
+            }
+            tryCount++;
+            DebugUtil.warnOut(TAG, "writeData failed");
+            scheduleSend(RETRY_DELAY_TIME);
+        }
+    }
+
+    /**
+     * Read the current packet from the source, the transfer fails when the source can not be read
+     *
+     * @return true means the packet is loaded
+     */
+    private boolean loadCurrentPackage() {
+        //noinspection ConstantConditions
+        byte[] data = new byte[largeDataPacketizer.getPackageLength(packageIndex)];
+        try {
+            largeDataPacketizer.readPackage(packageIndex, data);
+        } catch (IOException e) {
+            DebugUtil.warnOut(TAG, "read large data source failed : " + e.getMessage());
+            finish();
+            if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+                onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendFailed(packageIndex + 1, pageCount, new byte[0]);
+            }
+            if (onLargeDataSendStateChangedListener != null) {
+                onLargeDataSendStateChangedListener.packageSendFailed(packageIndex + 1, pageCount, new byte[0]);
+            }
+            return false;
+        }
+        packageData = data;
+        loadedPackageIndex = packageIndex;
+        return true;
+    }
+
+    /**
+     * Write the current packet and wait for its result
+     *
+     * @return true means the write is queued
+     */
+    private boolean writeCurrentPackage() {
+        state = STATE_WAIT_WRITE;
+        final int writeGeneration = ++generation;
+        //noinspection ConstantConditions
+        boolean result = bleConnector.writeData(serviceUuid, characteristicUuid, packageData, new OnGattOperationResultListener<byte[]>() {
+            @Override
+            public void onGattOperationSucceed(@Nullable byte[] result) {
+                if (writeGeneration == generation && state == STATE_WAIT_WRITE) {
+                    onWriteSucceed();
+                }
+            }
+
+            @Override
+            public void onGattOperationFailed(int status) {
+                if (writeGeneration == generation && state == STATE_WAIT_WRITE) {
+                    onTimeout();
+                }
+            }
+        });
+        if (!result) {
+            state = STATE_IDLE;
+            return false;
+        }
+        scheduleTimeout();
+        return true;
+    }
+
+    /**
+     * The current packet was acknowledged
+     */
+    private void onWriteSucceed() {
+        cancelTimer();
+        tryCount = 0;
+        if (notificationCharacteristicUuid == null) {
+            packageIndex++;
+            scheduleSend(packageDelayTime);
+            return;
+        }
+        if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+            //noinspection ConstantConditions
+            onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendProgressChanged(packageIndex + 1, pageCount, packageData);
+        }
+        state = STATE_WAIT_NOTIFICATION;
+        generation++;
+        scheduleTimeout();
+    }
+
+    /**
+     * The remote device notified.A notification that arrives before the write result also acknowledges the write.
+     *
+     * @param data notification data
+     */
+    private void onNotification(@Nullable byte[] data) {
+        if (state != STATE_WAIT_WRITE && state != STATE_WAIT_NOTIFICATION) {
+            return;
+        }
+        cancelTimer();
+        tryCount = 0;
+        state = STATE_IDLE;
+        generation++;
+        boolean result = true;
+        if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+            result = onLargeDataWriteWithNotificationSendStateChangedListener.onReceiveNotification(data, packageIndex + 1, pageCount, packageData);
+            DebugUtil.warnOut(TAG, "onLargeDataWriteWithNotificationSendStateChangedListener onReceiveNotification result = " + result);
+        }
+        if (result) {
+            wrongNotificationCount = 0;
+            packageIndex++;
+            scheduleSend(packageDelayTime);
+            return;
+        }
+        if (wrongNotificationCount >= maxTryCount) {
+            finish();
+            if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+                onLargeDataWriteWithNotificationSendStateChangedListener.onSendFailedWithWrongNotifyData();
+            }
+            return;
+        }
+        wrongNotificationCount++;
+        if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+            onLargeDataWriteWithNotificationSendStateChangedListener.onSendFailedWithWrongNotifyDataAndRetry(wrongNotificationCount, packageIndex + 1, pageCount, packageData);
+        }
+        scheduleSend(RETRY_DELAY_TIME);
+    }
+
+    /**
+     * No write result or notification arrived in time, or the write failed
+     */
+    private void onTimeout() {
+        cancelTimer();
+        //noinspection ConstantConditions
+        byte[] data = packageData;
+        if (tryCount >= maxTryCount) {
+            finish();
+            if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+                onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendTimeOut(packageIndex + 1, pageCount, data);
+            }
+            if (onLargeDataSendStateChangedListener != null) {
+                onLargeDataSendStateChangedListener.onSendTimeOut(packageIndex, pageCount, data);
+            }
+            return;
+        }
+        tryCount++;
+        if (writeCurrentPackage()) {
+            if (onLargeDataWriteWithNotificationSendStateChangedListener != null) {
+                onLargeDataWriteWithNotificationSendStateChangedListener.onDataSendTimeOutAndRetry(data, tryCount, packageIndex + 1, pageCount);
+            }
+            if (onLargeDataSendStateChangedListener != null) {
+                onLargeDataSendStateChangedListener.onSendTimeOutAndRetry(tryCount, packageIndex + 1, pageCount, data);
+            }
+            return;
+        }
+        // the retry could not be queued, try again later with the same packet
+        tryCount--;
+        scheduleSend(RETRY_DELAY_TIME);
+    }
+
+    /**
+     * Send the current packet after a delay
+     *
+     * @param delayMillis delay(unit:ms)
+     */
+    private void scheduleSend(long delayMillis) {
+        state = STATE_IDLE;
+        final int sendGeneration = ++generation;
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                if (sendGeneration == generation && state == STATE_IDLE) {
+                    sendCurrentPackage();
+                }
+            }
+        };
+        if (delayMillis <= 0) {
+            BleManager.getHandler().post(runnable);
+            return;
+        }
+        schedule(runnable, delayMillis);
+    }
+
+    /**
+     * Schedule the timeout of the current state
+     */
+    private void scheduleTimeout() {
+        final int timeoutGeneration = generation;
+        final int timeoutState = state;
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (timeoutGeneration == generation && timeoutState == state) {
+                    DebugUtil.warnOut(TAG, "large data packet " + (packageIndex + 1) + " time out");
+                    onTimeout();
+                }
+            }
+        }, timeoutMillis);
+    }
+
+    /**
+     * Run a task on the main thread after a delay
+     *
+     * @param runnable    task
+     * @param delayMillis delay(unit:ms)
+     */
+    private void schedule(@NonNull final Runnable runnable, long delayMillis) {
+        cancelTimer();
+        timeout = TimerWheel.getInstance().newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                BleManager.getHandler().post(runnable);
+            }
+        }, delayMillis);
+    }
+
+    /**
+     * Cancel the pending timer event
+     */
+    private void cancelTimer() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+    }
+
+    /**
+     * Stop the state machine
+     */
+    private void finish() {
+        if (state == STATE_FINISHED) {
+            return;
+        }
+        state = STATE_FINISHED;
+        generation++;
+        cancelTimer();
+        if (notificationCharacteristicUuid != null) {
+            bleConnector.removeOnBleReceiveNotificationListener(notificationCharacteristicUuid, onBleReceiveNotificationListener);
+        }
+        largeDataSource.closeQuietly();
+    }
+}
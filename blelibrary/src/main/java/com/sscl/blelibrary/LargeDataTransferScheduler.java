@@ -0,0 +1,370 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+import com.sscl.blelibrary.interfaces.OnGattOperationResultListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Shares the writes of one connection between concurrent large data streams.
+ * <p>
+ * Every stream writes through its own flow. The scheduler hands at most {@link #QUEUED_WRITE_LIMIT} packets to the
+ * GATT queue of the connection at once and picks the next packet by self clocked weighted fair queuing:
+ * each packet gets a finish tag of max(virtual time, previous tag of the flow) + length / weight,
+ * the packet with the smallest tag is written next and its tag becomes the virtual time.
+ * A flow of priority 2 therefore gets twice the bytes of a flow of priority 1 while both have data.
+ * <p>
+ * Only used on the main thread.
+ *
+ * @author jackie
+ */
+final class LargeDataTransferScheduler {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = LargeDataTransferScheduler.class.getSimpleName();
+
+    /**
+     * maximum count of packets in the GATT queue of the connection at once
+     */
+    private static final int QUEUED_WRITE_LIMIT = 4;
+
+    /**
+     * scale of the finish tags, keeps the division by the weight precise
+     */
+    private static final long TAG_SCALE = 1 << 16;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * connection of the streams
+     */
+    @NonNull
+    private final LargeDataLink largeDataLink;
+
+    /**
+     * flows with a running stream
+     */
+    private final ArrayList<Flow> flows = new ArrayList<>();
+
+    /**
+     * virtual time, the finish tag of the packet written last
+     */
+    private long virtualTime;
+
+    /**
+     * count of packets in the GATT queue of the connection
+     */
+    private int queuedWrites;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param largeDataLink connection of the streams
+     */
+    LargeDataTransferScheduler(@NonNull LargeDataLink largeDataLink) {
+        this.largeDataLink = largeDataLink;
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * Create the flow of a new stream, the flow is registered on the main thread before the stream starts
+     *
+     * @param priority weight of the flow
+     * @return flow, the link the stream writes through
+     */
+    @NonNull
+    Flow newFlow(int priority) {
+        final Flow flow = new Flow(priority);
+        BleManager.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if (!flow.closed) {
+                    flows.add(flow);
+                }
+            }
+        });
+        return flow;
+    }
+
+    /**
+     * Cancel the streams of all flows
+     */
+    void cancelAll() {
+        BleManager.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<Flow> flows = new ArrayList<>(LargeDataTransferScheduler.this.flows);
+                for (int i = 0; i < flows.size(); i++) {
+                    flows.get(i).cancel();
+                }
+            }
+        });
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Hand packets to the GATT queue until the limit is reached
+     */
+    private void dispatch() {
+        while (queuedWrites < QUEUED_WRITE_LIMIT) {
+            Flow next = null;
+            for (int i = 0; i < flows.size(); i++) {
+                Flow flow = flows.get(i);
+                PendingWrite head = flow.pendingWrites.peekFirst();
+                if (head != null && (next == null || head.finishTag < next.pendingWrites.getFirst().finishTag)) {
+                    next = flow;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            final PendingWrite pendingWrite = next.pendingWrites.pollFirst();
+            //noinspection ConstantConditions
+            virtualTime = pendingWrite.finishTag;
+            boolean result = largeDataLink.writeData(pendingWrite.serviceUuid, pendingWrite.characteristicUuid, pendingWrite.data,
+                    pendingWrite.writeType, new OnGattOperationResultListener<byte[]>() {
+                        @Override
+                        public void onGattOperationSucceed(@Nullable byte[] result) {
+                            queuedWrites--;
+                            pendingWrite.listener.onGattOperationSucceed(result);
+                            dispatch();
+                        }
+
+                        @Override
+                        public void onGattOperationFailed(int status) {
+                            queuedWrites--;
+                            pendingWrite.listener.onGattOperationFailed(status);
+                            dispatch();
+                        }
+                    });
+            if (!result) {
+                DebugUtil.warnOut(TAG, "writeData failed");
+                // report asynchronously, the stream may be in the middle of queuing packets
+                BleManager.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        pendingWrite.listener.onGattOperationFailed(BleConstants.GATT_OPERATION_REQUEST_FAILED);
+                    }
+                });
+                continue;
+            }
+            queuedWrites++;
+        }
+    }
+
+    /*-----------------------------------inner class-----------------------------------*/
+
+    /**
+     * Link of one stream, writes are queued in the scheduler, everything else goes to the connection
+     */
+    final class Flow implements LargeDataLink {
+
+        /**
+         * packets waiting for the GATT queue
+         */
+        private final ArrayDeque<PendingWrite> pendingWrites = new ArrayDeque<>();
+
+        /**
+         * weight of the flow
+         */
+        private volatile int priority;
+
+        /**
+         * finish tag of the last packet of the flow
+         */
+        private long lastFinishTag;
+
+        /**
+         * stream of the flow
+         */
+        @Nullable
+        private volatile LargeDataStreamTransfer largeDataStreamTransfer;
+
+        /**
+         * whether the stream of the flow finished
+         */
+        private boolean closed;
+
+        /**
+         * Constructor
+         *
+         * @param priority weight of the flow
+         */
+        private Flow(int priority) {
+            this.priority = Math.max(1, priority);
+        }
+
+        /**
+         * set the stream of the flow, before the stream starts
+         *
+         * @param largeDataStreamTransfer stream
+         */
+        void setLargeDataStreamTransfer(@NonNull LargeDataStreamTransfer largeDataStreamTransfer) {
+            this.largeDataStreamTransfer = largeDataStreamTransfer;
+        }
+
+        /**
+         * get weight of the flow
+         *
+         * @return weight
+         */
+        int getPriority() {
+            return priority;
+        }
+
+        /**
+         * set weight of the flow, applies to packets queued afterwards
+         *
+         * @param priority weight
+         */
+        void setPriority(int priority) {
+            this.priority = Math.max(1, priority);
+        }
+
+        /**
+         * Cancel the stream of the flow
+         */
+        void cancel() {
+            LargeDataStreamTransfer largeDataStreamTransfer = this.largeDataStreamTransfer;
+            if (largeDataStreamTransfer != null) {
+                largeDataStreamTransfer.cancel();
+            }
+        }
+
+        @Override
+        public int getMtu() {
+            return largeDataLink.getMtu();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return largeDataLink.isConnected();
+        }
+
+        @Override
+        public boolean canWriteNoResponse(@NonNull String serviceUuid, @NonNull String characteristicUuid) {
+            return largeDataLink.canWriteNoResponse(serviceUuid, characteristicUuid);
+        }
+
+        @Override
+        public boolean writeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull byte[] data, int writeType,
+                                 @NonNull OnGattOperationResultListener<byte[]> listener) {
+            if (closed) {
+                return false;
+            }
+            long startTag = Math.max(virtualTime, lastFinishTag);
+            lastFinishTag = startTag + data.length * TAG_SCALE / priority;
+            pendingWrites.addLast(new PendingWrite(serviceUuid, characteristicUuid, data, writeType, listener, lastFinishTag));
+            dispatch();
+            return true;
+        }
+
+        @Override
+        public boolean enableNotification(@NonNull String serviceUuid, @NonNull String characteristicUuid,
+                                          @Nullable OnGattOperationResultListener<byte[]> listener) {
+            return largeDataLink.enableNotification(serviceUuid, characteristicUuid, listener);
+        }
+
+        @Override
+        public boolean addOnBleReceiveNotificationListener(@NonNull String characteristicUuid,
+                                                           @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+            return largeDataLink.addOnBleReceiveNotificationListener(characteristicUuid, onBleReceiveNotificationListener);
+        }
+
+        @Override
+        public void removeOnBleReceiveNotificationListener(@NonNull String characteristicUuid,
+                                                           @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+            largeDataLink.removeOnBleReceiveNotificationListener(characteristicUuid, onBleReceiveNotificationListener);
+        }
+
+        @Override
+        public void dropPendingWrites() {
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+            ArrayList<PendingWrite> droppedWrites = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+            // dropped packets used no share of the connection
+            lastFinishTag = virtualTime;
+            for (int i = 0; i < droppedWrites.size(); i++) {
+                droppedWrites.get(i).listener.onGattOperationFailed(BleConstants.GATT_OPERATION_CANCELLED);
+            }
+        }
+
+        @Override
+        public void onTransferFinished() {
+            closed = true;
+            pendingWrites.clear();
+            flows.remove(this);
+        }
+    }
+
+    /**
+     * packet waiting for the GATT queue
+     */
+    private static final class PendingWrite {
+
+        /**
+         * service uuid to write data
+         */
+        @NonNull
+        private final String serviceUuid;
+
+        /**
+         * characteristic uuid to write data
+         */
+        @NonNull
+        private final String characteristicUuid;
+
+        /**
+         * packet data
+         */
+        @NonNull
+        private final byte[] data;
+
+        /**
+         * write type of the packet
+         */
+        private final int writeType;
+
+        /**
+         * result listener of the stream
+         */
+        @NonNull
+        private final OnGattOperationResultListener<byte[]> listener;
+
+        /**
+         * finish tag of the packet, the packet with the smallest tag is written next
+         */
+        private final long finishTag;
+
+        /**
+         * Constructor
+         *
+         * @param serviceUuid        service uuid to write data
+         * @param characteristicUuid characteristic uuid to write data
+         * @param data               packet data
+         * @param writeType          write type of the packet
+         * @param listener           result listener of the stream
+         * @param finishTag          finish tag of the packet
+         */
+        private PendingWrite(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull byte[] data, int writeType,
+                             @NonNull OnGattOperationResultListener<byte[]> listener, long finishTag) {
+            this.serviceUuid = serviceUuid;
+            this.characteristicUuid = characteristicUuid;
+            this.data = data;
+            this.writeType = writeType;
+            this.listener = listener;
+            this.finishTag = finishTag;
+        }
+    }
+}
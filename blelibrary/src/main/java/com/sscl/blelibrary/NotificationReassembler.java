@@ -0,0 +1,374 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+import com.sscl.blelibrary.interfaces.OnNotificationFrameReceivedListener;
+
+import java.nio.ByteOrder;
+import java.util.UUID;
+
+/**
+ * Reassembles frames that the remote device splits over several notifications of one characteristic.
+ * <p>
+ * Two framings are supported:
+ * <ul>
+ * <li>paged frames, every notification carries the autoFormat header the library writes large data with,
+ * {page count, page index, payload length} or its 16 and 32 bit versions.Lost packets are detected by the page index,
+ * the frame is dropped and reassembly restarts with the next page 1. Repeated packets are ignored.</li>
+ * <li>length-prefixed streams, a frame is a 1 to 4 byte length followed by that many bytes, frames may span
+ * notifications and a notification may carry several frames.The stream has no sequence numbers, so loss can not be detected.
+ * An oversized length drops the rest of the notification and reassembly restarts with the next notification.</li>
+ * </ul>
+ * All buffers are allocated once, the frame array handed to the listener is reused for every frame.
+ * Add the reassembler as {@link OnBleReceiveNotificationListener} of the connection, notifications are handled on the main thread.
+ *
+ * @author jackie
+ */
+public final class NotificationReassembler implements OnBleReceiveNotificationListener {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = NotificationReassembler.class.getSimpleName();
+
+    /**
+     * maximum length of the length prefix
+     */
+    private static final int MAX_PREFIX_LENGTH = 4;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * characteristic of the notifications
+     */
+    @NonNull
+    private final UUID characteristicUuid;
+
+    /**
+     * length of the length prefix, 0 means paged frames
+     */
+    private final int prefixLength;
+
+    /**
+     * whether the length prefix is big endian
+     */
+    private final boolean bigEndian;
+
+    /**
+     * buffer of the frame handed to the listener
+     */
+    @NonNull
+    private final byte[] frameBuffer;
+
+    /**
+     * staging ring of a length-prefixed stream, null for paged frames
+     */
+    @Nullable
+    private final byte[] ringBuffer;
+
+    /**
+     * Callback of the reassembler
+     */
+    @NonNull
+    private final OnNotificationFrameReceivedListener onNotificationFrameReceivedListener;
+
+    /**
+     * page count of the frame being reassembled, 0 means no frame is started
+     */
+    private int pageCount;
+
+    /**
+     * page count of the frame completed last, its final packet repeated is not a gap
+     */
+    private int lastPageCount;
+
+    /**
+     * page index expected next
+     */
+    private int nextPageIndex;
+
+    /**
+     * length of the frame reassembled so far
+     */
+    private int frameLength;
+
+    /**
+     * whether packets are skipped until the next page 1, the drop was already reported
+     */
+    private boolean skipping;
+
+    /**
+     * start of the staged bytes in the ring
+     */
+    private int ringHead;
+
+    /**
+     * count of the staged bytes in the ring
+     */
+    private int ringSize;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param characteristicUuid                  characteristic of the notifications
+     * @param prefixLength                        length of the length prefix, 0 means paged frames
+     * @param bigEndian                           whether the length prefix is big endian
+     * @param maxFrameLength                      maximum frame length
+     * @param onNotificationFrameReceivedListener Callback of the reassembler
+     */
+    private NotificationReassembler(@NonNull String characteristicUuid, int prefixLength, boolean bigEndian, int maxFrameLength,
+                                    @NonNull OnNotificationFrameReceivedListener onNotificationFrameReceivedListener) {
+        this.characteristicUuid = UUID.fromString(characteristicUuid);
+        this.prefixLength = prefixLength;
+        this.bigEndian = bigEndian;
+        this.frameBuffer = new byte[maxFrameLength];
+        this.ringBuffer = prefixLength == 0 ? null : new byte[prefixLength + maxFrameLength];
+        this.onNotificationFrameReceivedListener = onNotificationFrameReceivedListener;
+    }
+
+    /*-----------------------------------public static method-----------------------------------*/
+
+    /**
+     * Create a reassembler of frames sent with the autoFormat header
+     *
+     * @param characteristicUuid                  characteristic UUID of the notifications
+     * @param maxFrameLength                      maximum frame length, longer frames are dropped
+     * @param onNotificationFrameReceivedListener Callback of the reassembler
+     * @return reassembler
+     */
+    @NonNull
+    public static NotificationReassembler forPagedFrames(@NonNull String characteristicUuid, @IntRange(from = 1) int maxFrameLength,
+                                                         @NonNull OnNotificationFrameReceivedListener onNotificationFrameReceivedListener) {
+        if (maxFrameLength < 1) {
+            throw new IllegalArgumentException("maxFrameLength < 1");
+        }
+        return new NotificationReassembler(characteristicUuid, 0, true, maxFrameLength, onNotificationFrameReceivedListener);
+    }
+
+    /**
+     * Create a reassembler of a length-prefixed stream
+     *
+     * @param characteristicUuid                  characteristic UUID of the notifications
+     * @param prefixLength                        length of the length prefix, the prefix does not count itself
+     * @param byteOrder                           byte order of the length prefix
+     * @param maxFrameLength                      maximum frame length, a longer length prefix drops the rest of the notification
+     * @param onNotificationFrameReceivedListener Callback of the reassembler
+     * @return reassembler
+     */
+    @NonNull
+    public static NotificationReassembler forLengthPrefixedFrames(@NonNull String characteristicUuid, @IntRange(from = 1, to = MAX_PREFIX_LENGTH) int prefixLength,
+                                                                  @NonNull ByteOrder byteOrder, @IntRange(from = 1) int maxFrameLength,
+                                                                  @NonNull OnNotificationFrameReceivedListener onNotificationFrameReceivedListener) {
+        if (prefixLength < 1 || prefixLength > MAX_PREFIX_LENGTH) {
+            throw new IllegalArgumentException("prefixLength must be 1 to " + MAX_PREFIX_LENGTH);
+        }
+        if (maxFrameLength < 1) {
+            throw new IllegalArgumentException("maxFrameLength < 1");
+        }
+        return new NotificationReassembler(characteristicUuid, prefixLength, byteOrder == ByteOrder.BIG_ENDIAN, maxFrameLength,
+                onNotificationFrameReceivedListener);
+    }
+
+    /*-----------------------------------public method-----------------------------------*/
+
+    /**
+     * Drop the partial frame, call it on the main thread when the connection is lost
+     */
+    public void reset() {
+        pageCount = 0;
+        lastPageCount = 0;
+        nextPageIndex = 0;
+        frameLength = 0;
+        skipping = false;
+        ringHead = 0;
+        ringSize = 0;
+    }
+
+    /*-----------------------------------implementation parent methods-----------------------------------*/
+
+    /**
+     * received remote device data
+     *
+     * @param gattCharacteristic BluetoothGattCharacteristic
+     * @param data               received data
+     */
+    @Override
+    public void onBleReceiveNotification(BluetoothGattCharacteristic gattCharacteristic, byte[] data) {
+        if (gattCharacteristic == null || data == null || !characteristicUuid.equals(gattCharacteristic.getUuid())) {
+            return;
+        }
+        if (ringBuffer == null) {
+            onPagedPacket(gattCharacteristic, data);
+        } else {
+            onStreamBytes(gattCharacteristic, ringBuffer, data);
+        }
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Handle a notification of paged frames
+     *
+     * @param gattCharacteristic BluetoothGattCharacteristic
+     * @param data               notification data
+     */
+    private void onPagedPacket(@NonNull BluetoothGattCharacteristic gattCharacteristic, @NonNull byte[] data) {
+        int headerLength;
+        int count;
+        int index;
+        int length;
+        if (data.length >= LargeDataPacketizer.HEADER_LENGTH_V1 && data[0] != LargeDataPacketizer.HEADER_V2_MARKER) {
+            headerLength = LargeDataPacketizer.HEADER_LENGTH_V1;
+            count = data[0] & 0xFF;
+            index = data[1] & 0xFF;
+            length = data[2] & 0xFF;
+        } else if (data.length >= LargeDataPacketizer.HEADER_LENGTH_V2 && data[1] == LargeDataPacketizer.HEADER_VERSION_2) {
+            headerLength = LargeDataPacketizer.HEADER_LENGTH_V2;
+            count = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+            index = ((data[4] & 0xFF) << 8) | (data[5] & 0xFF);
+            length = ((data[6] & 0xFF) << 8) | (data[7] & 0xFF);
+        } else if (data.length >= LargeDataPacketizer.HEADER_LENGTH_V3 && data[1] == LargeDataPacketizer.HEADER_VERSION_3) {
+            headerLength = LargeDataPacketizer.HEADER_LENGTH_V3;
+            count = getInt(data, 2);
+            index = getInt(data, 6);
+            length = ((data[10] & 0xFF) << 8) | (data[11] & 0xFF);
+        } else {
+            dropFrame(gattCharacteristic, BleConstants.NOTIFICATION_FRAME_MALFORMED);
+            return;
+        }
+        if (index < 1 || index > count || length > data.length - headerLength) {
+            dropFrame(gattCharacteristic, BleConstants.NOTIFICATION_FRAME_MALFORMED);
+            return;
+        }
+        if (index == 1) {
+            // a repeated page 1 restarts the same frame, only a frame with more pages is lost
+            if (pageCount != 0 && nextPageIndex > 2) {
+                dropFrame(gattCharacteristic, BleConstants.NOTIFICATION_FRAME_GAP);
+            }
+            pageCount = count;
+            nextPageIndex = 1;
+            frameLength = 0;
+            skipping = false;
+        } else if (pageCount == 0) {
+            if (skipping || (index == lastPageCount && count == lastPageCount)) {
+                return;
+            }
+            dropFrame(gattCharacteristic, BleConstants.NOTIFICATION_FRAME_GAP);
+            return;
+        } else if (count != pageCount) {
+            dropFrame(gattCharacteristic, BleConstants.NOTIFICATION_FRAME_MALFORMED);
+            return;
+        } else if (index < nextPageIndex) {
+            return;
+        } else if (index > nextPageIndex) {
+            DebugUtil.warnOut(TAG, "notification page " + nextPageIndex + " lost");
+            dropFrame(gattCharacteristic, BleConstants.NOTIFICATION_FRAME_GAP);
+            return;
+        }
+        if (frameLength + length > frameBuffer.length) {
+            dropFrame(gattCharacteristic, BleConstants.NOTIFICATION_FRAME_OVERSIZED);
+            return;
+        }
+        System.arraycopy(data, headerLength, frameBuffer, frameLength, length);
+        frameLength += length;
+        nextPageIndex++;
+        if (index == pageCount) {
+            int completedLength = frameLength;
+            lastPageCount = pageCount;
+            pageCount = 0;
+            frameLength = 0;
+            onNotificationFrameReceivedListener.onFrameReceived(gattCharacteristic, frameBuffer, completedLength);
+        }
+    }
+
+    /**
+     * Read a big endian 32 bit value
+     *
+     * @param data   buffer
+     * @param offset offset in the buffer
+     * @return value
+     */
+    private static int getInt(@NonNull byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Drop the partial paged frame and skip packets until the next page 1
+     *
+     * @param gattCharacteristic BluetoothGattCharacteristic
+     * @param reason             reason of the drop
+     */
+    private void dropFrame(@NonNull BluetoothGattCharacteristic gattCharacteristic, int reason) {
+        pageCount = 0;
+        lastPageCount = 0;
+        frameLength = 0;
+        skipping = true;
+        onNotificationFrameReceivedListener.onFrameDropped(gattCharacteristic, reason);
+    }
+
+    /**
+     * Handle a notification of a length-prefixed stream
+     *
+     * @param gattCharacteristic BluetoothGattCharacteristic
+     * @param ringBuffer         staging ring
+     * @param data               notification data
+     */
+    private void onStreamBytes(@NonNull BluetoothGattCharacteristic gattCharacteristic, @NonNull byte[] ringBuffer, @NonNull byte[] data) {
+        int offset = 0;
+        while (offset < data.length) {
+            // the ring holds a whole frame, so it never stays full
+            int count = Math.min(data.length - offset, ringBuffer.length - ringSize);
+            int tail = (ringHead + ringSize) % ringBuffer.length;
+            int firstPart = Math.min(count, ringBuffer.length - tail);
+            System.arraycopy(data, offset, ringBuffer, tail, firstPart);
+            System.arraycopy(data, offset + firstPart, ringBuffer, 0, count - firstPart);
+            ringSize += count;
+            offset += count;
+            if (!takeFrames(gattCharacteristic, ringBuffer)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hand every complete frame in the ring to the listener
+     *
+     * @param gattCharacteristic BluetoothGattCharacteristic
+     * @param ringBuffer         staging ring
+     * @return false means the stream lost its framing and the ring was cleared
+     */
+    private boolean takeFrames(@NonNull BluetoothGattCharacteristic gattCharacteristic, @NonNull byte[] ringBuffer) {
+        while (ringSize >= prefixLength) {
+            long length = 0;
+            for (int i = 0; i < prefixLength; i++) {
+                long value = ringBuffer[(ringHead + i) % ringBuffer.length] & 0xFF;
+                length = bigEndian ? (length << 8) | value : length | (value << (8 * i));
+            }
+            if (length > frameBuffer.length) {
+                DebugUtil.warnOut(TAG, "notification frame length " + length + " exceeds " + frameBuffer.length);
+                ringHead = 0;
+                ringSize = 0;
+                onNotificationFrameReceivedListener.onFrameDropped(gattCharacteristic, BleConstants.NOTIFICATION_FRAME_OVERSIZED);
+                return false;
+            }
+            int frameLength = (int) length;
+            if (ringSize < prefixLength + frameLength) {
+                return true;
+            }
+            int start = (ringHead + prefixLength) % ringBuffer.length;
+            int firstPart = Math.min(frameLength, ringBuffer.length - start);
+            System.arraycopy(ringBuffer, start, frameBuffer, 0, firstPart);
+            System.arraycopy(ringBuffer, 0, frameBuffer, firstPart, frameLength - firstPart);
+            ringHead = (start + frameLength) % ringBuffer.length;
+            ringSize -= prefixLength + frameLength;
+            onNotificationFrameReceivedListener.onFrameReceived(gattCharacteristic, frameBuffer, frameLength);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,199 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.interfaces.OnBleReceiveNotificationListener;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Notification listeners of one connection, routed by characteristic UUID.
+ * <p>
+ * Listeners subscribed to a characteristic only receive its notifications, listeners without a characteristic receive all.
+ * Every listener list is an immutable array that is copied on change, so dispatching a notification takes no lock
+ * and allocates nothing. Adding and removing listeners is synchronized on the router.
+ *
+ * @author jackie
+ */
+final class NotificationRouter {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = NotificationRouter.class.getSimpleName();
+
+    /**
+     * empty listener list
+     */
+    private static final OnBleReceiveNotificationListener[] NO_LISTENERS = new OnBleReceiveNotificationListener[0];
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * listeners of all characteristics
+     */
+    @NonNull
+    private volatile OnBleReceiveNotificationListener[] allCharacteristicListeners = NO_LISTENERS;
+
+    /**
+     * listeners of every subscribed characteristic
+     */
+    private final ConcurrentHashMap<UUID, OnBleReceiveNotificationListener[]> characteristicListeners = new ConcurrentHashMap<>();
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * add a listener of all characteristics
+     *
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     */
+    synchronized void addListener(@NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        allCharacteristicListeners = append(allCharacteristicListeners, onBleReceiveNotificationListener);
+    }
+
+    /**
+     * remove a listener of all characteristics
+     *
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     * @return true means the listener was added before
+     */
+    synchronized boolean removeListener(@NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        OnBleReceiveNotificationListener[] listeners = remove(allCharacteristicListeners, onBleReceiveNotificationListener);
+        if (listeners == null) {
+            return false;
+        }
+        allCharacteristicListeners = listeners;
+        return true;
+    }
+
+    /**
+     * add a listener of one characteristic
+     *
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     * @return true means successful, false means the UUID is invalid
+     */
+    synchronized boolean addListener(@NonNull String characteristicUuid, @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        UUID uuid = parseUuid(characteristicUuid);
+        if (uuid == null) {
+            return false;
+        }
+        OnBleReceiveNotificationListener[] listeners = characteristicListeners.get(uuid);
+        characteristicListeners.put(uuid, append(listeners == null ? NO_LISTENERS : listeners, onBleReceiveNotificationListener));
+        return true;
+    }
+
+    /**
+     * remove a listener of one characteristic
+     *
+     * @param characteristicUuid               characteristic UUID
+     * @param onBleReceiveNotificationListener callback triggered when received notification data
+     * @return true means the listener was added before
+     */
+    synchronized boolean removeListener(@NonNull String characteristicUuid, @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        UUID uuid = parseUuid(characteristicUuid);
+        if (uuid == null) {
+            return false;
+        }
+        OnBleReceiveNotificationListener[] listeners = characteristicListeners.get(uuid);
+        if (listeners == null) {
+            return false;
+        }
+        listeners = remove(listeners, onBleReceiveNotificationListener);
+        if (listeners == null) {
+            return false;
+        }
+        if (listeners.length == 0) {
+            characteristicListeners.remove(uuid);
+        } else {
+            characteristicListeners.put(uuid, listeners);
+        }
+        return true;
+    }
+
+    /**
+     * remove all listeners
+     */
+    synchronized void clear() {
+        allCharacteristicListeners = NO_LISTENERS;
+        characteristicListeners.clear();
+    }
+
+    /**
+     * Hand a notification to the listeners of all characteristics and to the listeners of its characteristic
+     *
+     * @param gattCharacteristic BluetoothGattCharacteristic
+     * @param value              notification data
+     */
+    void dispatch(@NonNull BluetoothGattCharacteristic gattCharacteristic, @Nullable byte[] value) {
+        OnBleReceiveNotificationListener[] listeners = allCharacteristicListeners;
+        for (OnBleReceiveNotificationListener onBleReceiveNotificationListener : listeners) {
+            onBleReceiveNotificationListener.onBleReceiveNotification(gattCharacteristic, value);
+        }
+        listeners = characteristicListeners.get(gattCharacteristic.getUuid());
+        if (listeners == null) {
+            return;
+        }
+        for (OnBleReceiveNotificationListener onBleReceiveNotificationListener : listeners) {
+            onBleReceiveNotificationListener.onBleReceiveNotification(gattCharacteristic, value);
+        }
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Parse a characteristic UUID
+     *
+     * @param characteristicUuid characteristic UUID
+     * @return UUID, null means invalid
+     */
+    @Nullable
+    private static UUID parseUuid(@NonNull String characteristicUuid) {
+        try {
+            return UUID.fromString(characteristicUuid);
+        } catch (IllegalArgumentException e) {
+            DebugUtil.warnOut(TAG, "invalid characteristic UUID : " + characteristicUuid);
+            return null;
+        }
+    }
+
+    /**
+     * Copy a listener list with a listener appended
+     *
+     * @param listeners                        listener list
+     * @param onBleReceiveNotificationListener listener to append
+     * @return new listener list
+     */
+    @NonNull
+    private static OnBleReceiveNotificationListener[] append(@NonNull OnBleReceiveNotificationListener[] listeners,
+                                                             @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        OnBleReceiveNotificationListener[] newListeners = new OnBleReceiveNotificationListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        newListeners[listeners.length] = onBleReceiveNotificationListener;
+        return newListeners;
+    }
+
+    /**
+     * Copy a listener list without the first occurrence of a listener
+     *
+     * @param listeners                        listener list
+     * @param onBleReceiveNotificationListener listener to remove
+     * @return new listener list, null means the listener is not in the list
+     */
+    @Nullable
+    private static OnBleReceiveNotificationListener[] remove(@NonNull OnBleReceiveNotificationListener[] listeners,
+                                                             @NonNull OnBleReceiveNotificationListener onBleReceiveNotificationListener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(onBleReceiveNotificationListener)) {
+                OnBleReceiveNotificationListener[] newListeners = new OnBleReceiveNotificationListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                return newListeners;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,106 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Reusable packet buffers of a large data transfer, one slot per packet the transfer may hold at once.
+ * <p>
+ * Packet i lives in slot i % size.A slot buffer is only reused while no queued write still references it,
+ * a slot whose buffer is still queued gets a new buffer and the old one is left to the write.
+ * Only used on the main thread.
+ *
+ * @author jackie
+ */
+final class PacketBufferRing {
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * buffer of every slot
+     */
+    @NonNull
+    private final byte[][] buffers;
+
+    /**
+     * count of queued writes that reference the buffer of every slot
+     */
+    @NonNull
+    private final int[] pendingWrites;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param size slot count
+     */
+    PacketBufferRing(int size) {
+        buffers = new byte[Math.max(1, size)][];
+        pendingWrites = new int[buffers.length];
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * get a buffer for a packet, the previous packet of the slot is dropped
+     *
+     * @param packageIndex index of the packet
+     * @param length       packet length
+     * @return buffer of exactly length bytes
+     */
+    @NonNull
+    byte[] obtain(int packageIndex, int length) {
+        int slot = packageIndex % buffers.length;
+        byte[] buffer = buffers[slot];
+        if (buffer == null || buffer.length != length || pendingWrites[slot] != 0) {
+            buffer = new byte[length];
+            buffers[slot] = buffer;
+            pendingWrites[slot] = 0;
+        }
+        return buffer;
+    }
+
+    /**
+     * get the buffer of a packet that is still held
+     *
+     * @param packageIndex index of the packet
+     * @return buffer, null means the slot is empty
+     */
+    @Nullable
+    byte[] get(int packageIndex) {
+        return buffers[packageIndex % buffers.length];
+    }
+
+    /**
+     * A write of the packet buffer was queued
+     *
+     * @param packageIndex index of the packet
+     */
+    void onWriteQueued(int packageIndex) {
+        pendingWrites[packageIndex % buffers.length]++;
+    }
+
+    /**
+     * A write of a packet buffer completed, failed or was cancelled
+     *
+     * @param packageIndex index of the packet
+     * @param buffer       buffer of the write
+     */
+    void onWriteCompleted(int packageIndex, @NonNull byte[] buffer) {
+        int slot = packageIndex % buffers.length;
+        if (buffers[slot] == buffer && pendingWrites[slot] > 0) {
+            pendingWrites[slot]--;
+        }
+    }
+
+    /**
+     * Drop all buffers
+     */
+    void clear() {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = null;
+            pendingWrites[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Software presence tracker of scanned devices, the counterpart of
+ * {@link android.bluetooth.le.ScanSettings#CALLBACK_TYPE_FIRST_MATCH} and
+ * {@link android.bluetooth.le.ScanSettings#CALLBACK_TYPE_MATCH_LOST} for devices without hardware offload.
+ * <p>
+ * A device becomes present after {@link #setFoundCount(int)} sightings with at least the found rssi,
+ * and becomes absent when no sighting with at least the lost rssi arrived within the lost timeout.
+ * The found rssi should not be lower than the lost rssi, the gap between them is the hysteresis.
+ * <p>
+ * Device state lives in primitive arrays indexed by {@link AddressTable} entry id.
+ * Expiry uses a hashed timer wheel: every entry is linked into the bucket of its deadline,
+ * a sighting only updates the last seen time and the entry is moved lazily when its bucket is reached,
+ * so there is no task per device and a sighting costs O(1).
+ * Not thread safe, all methods must be called on the same thread.
+ *
+ * @author jackie
+ */
+final class PresenceTracker {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    /**
+     * bucket count of the timer wheel(must be power of two)
+     */
+    private static final int WHEEL_SIZE = 64;
+
+    /**
+     * minimum tick duration of the timer wheel(unit:ms)
+     */
+    private static final long MIN_TICK_MILLIS = 50;
+
+    /**
+     * ticks per lost timeout.It bounds the lateness of a lost event to 1/TICKS_PER_TIMEOUT of the timeout.
+     */
+    private static final int TICKS_PER_TIMEOUT = 16;
+
+    /**
+     * sighting result : nothing changed
+     */
+    static final int SIGHTING_NONE = 0;
+
+    /**
+     * sighting result : the device became present
+     */
+    static final int SIGHTING_FOUND = 1;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * lost timeout(unit:ms)
+     */
+    private final long lostTimeoutMillis;
+
+    /**
+     * tick duration of the timer wheel(unit:ms)
+     */
+    private final long tickMillis;
+
+    /**
+     * sighting count needed to become present
+     */
+    private int foundCount = 1;
+
+    /**
+     * minimum rssi of a sighting counted for an absent device
+     */
+    private int foundRssi = Integer.MIN_VALUE;
+
+    /**
+     * minimum rssi of a sighting that keeps a present device present
+     */
+    private int lostRssi = Integer.MIN_VALUE;
+
+    /**
+     * device address to entry id
+     */
+    private final AddressTable addressTable = new AddressTable();
+
+    /**
+     * latest device of the entry
+     */
+    private BleDevice[] devices;
+    /**
+     * last seen time of the entry(unit:ms)
+     */
+    private long[] lastSeenMillis;
+    /**
+     * sighting count of an absent entry
+     */
+    private int[] sightings;
+    /**
+     * whether the entry is present
+     */
+    private boolean[] present;
+    /**
+     * next entry in the same wheel bucket
+     */
+    private int[] wheelNext;
+
+    /**
+     * first entry of every wheel bucket
+     */
+    private final int[] buckets = new int[WHEEL_SIZE];
+
+    /**
+     * the last tick that has been processed
+     */
+    private long currentTick;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param lostTimeoutMillis lost timeout(unit:ms)
+     * @param nowMillis         current time(unit:ms)
+     */
+    PresenceTracker(long lostTimeoutMillis, long nowMillis) {
+        this.lostTimeoutMillis = lostTimeoutMillis;
+        this.tickMillis = Math.max(MIN_TICK_MILLIS, lostTimeoutMillis / TICKS_PER_TIMEOUT);
+        Arrays.fill(buckets, AddressTable.NO_ENTRY);
+        currentTick = nowMillis / tickMillis;
+        allocate(addressTable.capacity());
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * set sighting count needed to become present
+     *
+     * @param foundCount sighting count
+     */
+    void setFoundCount(int foundCount) {
+        this.foundCount = Math.max(1, foundCount);
+    }
+
+    /**
+     * set rssi hysteresis
+     *
+     * @param foundRssi minimum rssi of a sighting counted for an absent device
+     * @param lostRssi  minimum rssi of a sighting that keeps a present device present
+     */
+    void setRssiThreshold(int foundRssi, int lostRssi) {
+        this.foundRssi = foundRssi;
+        this.lostRssi = lostRssi;
+    }
+
+    /**
+     * get tick duration of the timer wheel
+     *
+     * @return tick duration(unit:ms)
+     */
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * whether no device is tracked
+     *
+     * @return true means no device is tracked
+     */
+    boolean isEmpty() {
+        return addressTable.size() == 0;
+    }
+
+    /**
+     * Record a sighting of a device
+     *
+     * @param key       packed device address
+     * @param bleDevice BLE device
+     * @param rssi      rssi of the sighting
+     * @param nowMillis current time(unit:ms)
+     * @return {@link #SIGHTING_FOUND} if the device became present, otherwise {@link #SIGHTING_NONE}
+     */
+    int onSighting(long key, @NonNull BleDevice bleDevice, int rssi, long nowMillis) {
+        int entry = addressTable.indexOf(key);
+        if (entry == AddressTable.NO_ENTRY) {
+            if (rssi < foundRssi) {
+                return SIGHTING_NONE;
+            }
+            entry = addressTable.add(key);
+            if (addressTable.capacity() > devices.length) {
+                grow(addressTable.capacity());
+            }
+            devices[entry] = bleDevice;
+            lastSeenMillis[entry] = nowMillis;
+            sightings[entry] = 0;
+            present[entry] = false;
+            schedule(entry, nowMillis + lostTimeoutMillis);
+        } else if (rssi < (present[entry] ? lostRssi : foundRssi)) {
+            return SIGHTING_NONE;
+        }
+        devices[entry] = bleDevice;
+        lastSeenMillis[entry] = nowMillis;
+        if (present[entry]) {
+            return SIGHTING_NONE;
+        }
+        sightings[entry]++;
+        if (sightings[entry] < foundCount) {
+            return SIGHTING_NONE;
+        }
+        present[entry] = true;
+        return SIGHTING_FOUND;
+    }
+
+    /**
+     * Advance the timer wheel to now.Devices that were not seen within the lost timeout are removed.
+     *
+     * @param nowMillis current time(unit:ms)
+     * @param lost      the removed devices that were present are added to it
+     */
+    void advance(long nowMillis, @NonNull ArrayList<BleDevice> lost) {
+        long targetTick = nowMillis / tickMillis;
+        // one revolution visits every bucket, so more ticks than that are not needed
+        if (targetTick - currentTick > WHEEL_SIZE) {
+            currentTick = targetTick - WHEEL_SIZE;
+        }
+        while (currentTick < targetTick) {
+            currentTick++;
+            int bucket = (int) (currentTick & (WHEEL_SIZE - 1));
+            int entry = buckets[bucket];
+            buckets[bucket] = AddressTable.NO_ENTRY;
+            while (entry != AddressTable.NO_ENTRY) {
+                int nextEntry = wheelNext[entry];
+                long deadline = lastSeenMillis[entry] + lostTimeoutMillis;
+                if (deadline > nowMillis) {
+                    schedule(entry, deadline);
+                } else {
+                    if (present[entry]) {
+                        lost.add(devices[entry]);
+                    }
+                    devices[entry] = null;
+                    addressTable.remove(entry);
+                }
+                entry = nextEntry;
+            }
+        }
+    }
+
+    /**
+     * Remove all devices without lost events
+     */
+    void clear() {
+        addressTable.clear();
+        Arrays.fill(devices, null);
+        Arrays.fill(buckets, AddressTable.NO_ENTRY);
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Link an entry into the bucket of its deadline
+     *
+     * @param entry          entry id
+     * @param deadlineMillis deadline(unit:ms)
+     */
+    private void schedule(int entry, long deadlineMillis) {
+        // round up, an entry never fires before its deadline
+        long tick = (deadlineMillis + tickMillis - 1) / tickMillis;
+        if (tick <= currentTick) {
+            tick = currentTick + 1;
+        }
+        int bucket = (int) (tick & (WHEEL_SIZE - 1));
+        int first = buckets[bucket];
+        wheelNext[entry] = first;
+        buckets[bucket] = entry;
+    }
+
+    /**
+     * Grow the entry arrays
+     *
+     * @param capacity new capacity
+     */
+    private void grow(int capacity) {
+        devices = Arrays.copyOf(devices, capacity);
+        lastSeenMillis = Arrays.copyOf(lastSeenMillis, capacity);
+        sightings = Arrays.copyOf(sightings, capacity);
+        present = Arrays.copyOf(present, capacity);
+        wheelNext = Arrays.copyOf(wheelNext, capacity);
+    }
+
+    /**
+     * Allocate the entry arrays
+     *
+     * @param capacity capacity
+     */
+    private void allocate(int capacity) {
+        devices = new BleDevice[capacity];
+        lastSeenMillis = new long[capacity];
+        sightings = new int[capacity];
+        present = new boolean[capacity];
+        wheelNext = new int[capacity];
+    }
+}
@@ -0,0 +1,265 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.NonNull;
+
+import com.sscl.blelibrary.enums.RssiFilterType;
+
+import java.util.Arrays;
+
+/**
+ * Per-device RSSI smoothing filter attached to {@link ScanResultIndex}.
+ * <p>
+ * The state of a device is stored at its entry id: the latest samples in a fixed-size ring buffer,
+ * plus the estimate and error of the EMA / Kalman filters, so a sample does not allocate.
+ * Not thread safe, all methods must be called on the same thread.
+ *
+ * @author jackie
+ */
+final class RssiFilter {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    /**
+     * default window size
+     */
+    static final int DEFAULT_WINDOW_SIZE = 8;
+
+    /**
+     * default EMA smoothing factor
+     */
+    static final double DEFAULT_EMA_ALPHA = 0.25;
+
+    /**
+     * default Kalman process noise
+     */
+    static final double DEFAULT_PROCESS_NOISE = 0.008;
+
+    /**
+     * default Kalman measurement noise
+     */
+    static final double DEFAULT_MEASUREMENT_NOISE = 4;
+
+    /**
+     * Difference between the advertised TX power level(at 0m) and the rssi measured at 1m
+     */
+    static final int TX_POWER_TO_MEASURED_POWER = 41;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * filter type
+     */
+    private final RssiFilterType rssiFilterType;
+    /**
+     * ring buffer size of one device
+     */
+    private final int windowSize;
+    /**
+     * EMA smoothing factor
+     */
+    private final double emaAlpha;
+    /**
+     * Kalman process noise
+     */
+    private final double processNoise;
+    /**
+     * Kalman measurement noise
+     */
+    private final double measurementNoise;
+
+    /**
+     * ring buffers of all devices.The buffer of an entry starts at entry * windowSize.
+     */
+    private int[] samples;
+    /**
+     * sample count of the device, at most windowSize
+     */
+    private int[] sampleCounts;
+    /**
+     * next write position in the ring buffer of the device
+     */
+    private int[] ringPositions;
+    /**
+     * current estimate of the device
+     */
+    private double[] estimates;
+    /**
+     * Kalman error covariance of the device
+     */
+    private double[] errors;
+    /**
+     * scratch array for the median
+     */
+    private final int[] sorted;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param rssiFilterType   filter type
+     * @param windowSize       ring buffer size of one device
+     * @param emaAlpha         EMA smoothing factor(0, 1]
+     * @param processNoise     Kalman process noise
+     * @param measurementNoise Kalman measurement noise
+     * @param capacity         initial entry capacity
+     * @throws IllegalArgumentException emaAlpha is not in (0, 1]
+     */
+    RssiFilter(@NonNull RssiFilterType rssiFilterType, int windowSize, double emaAlpha,
+               double processNoise, double measurementNoise, int capacity) {
+        checkEmaAlpha(emaAlpha);
+        this.rssiFilterType = rssiFilterType;
+        this.windowSize = Math.max(1, windowSize);
+        this.emaAlpha = emaAlpha;
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+        sorted = new int[this.windowSize];
+        samples = new int[capacity * this.windowSize];
+        sampleCounts = new int[capacity];
+        ringPositions = new int[capacity];
+        estimates = new double[capacity];
+        errors = new double[capacity];
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * Check an EMA smoothing factor.A factor of 0 freezes the estimate, one above 1 makes it overshoot.
+     *
+     * @param emaAlpha EMA smoothing factor
+     * @throws IllegalArgumentException emaAlpha is not in (0, 1]
+     */
+    static void checkEmaAlpha(double emaAlpha) {
+        if (!(emaAlpha > 0 && emaAlpha <= 1)) {
+            throw new IllegalArgumentException("emaAlpha must be in (0, 1] : " + emaAlpha);
+        }
+    }
+
+    /**
+     * Estimate the distance with the log-distance path loss model
+     *
+     * @param rssi             rssi
+     * @param measuredPower    rssi at 1m
+     * @param pathLossExponent path loss exponent, 2 in free space
+     * @return distance(unit:m)
+     */
+    static double estimateDistance(double rssi, int measuredPower, double pathLossExponent) {
+        return Math.pow(10, (measuredPower - rssi) / (10 * pathLossExponent));
+    }
+
+    /**
+     * Start a new device at an entry with its first sample
+     *
+     * @param entry entry id
+     * @param rssi  first rssi
+     * @return smoothed rssi
+     */
+    double reset(int entry, int rssi) {
+        ensureCapacity(entry);
+        sampleCounts[entry] = 0;
+        ringPositions[entry] = 0;
+        estimates[entry] = rssi;
+        errors[entry] = measurementNoise;
+        return record(entry, rssi);
+    }
+
+    /**
+     * Add a sample of a device
+     *
+     * @param entry entry id
+     * @param rssi  rssi
+     * @return smoothed rssi
+     */
+    double onSample(int entry, int rssi) {
+        ensureCapacity(entry);
+        if (sampleCounts[entry] == 0) {
+            return reset(entry, rssi);
+        }
+        switch (rssiFilterType) {
+            case EMA:
+                estimates[entry] += emaAlpha * (rssi - estimates[entry]);
+                break;
+            case KALMAN:
+                double error = errors[entry] + processNoise;
+                double gain = error / (error + measurementNoise);
+                estimates[entry] += gain * (rssi - estimates[entry]);
+                errors[entry] = (1 - gain) * error;
+                break;
+            default:
+                break;
+        }
+        return record(entry, rssi);
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Write a sample into the ring buffer and compute the smoothed rssi
+     *
+     * @param entry entry id
+     * @param rssi  rssi
+     * @return smoothed rssi
+     */
+    private double record(int entry, int rssi) {
+        int base = entry * windowSize;
+        samples[base + ringPositions[entry]] = rssi;
+        ringPositions[entry] = (ringPositions[entry] + 1) % windowSize;
+        if (sampleCounts[entry] < windowSize) {
+            sampleCounts[entry]++;
+        }
+        switch (rssiFilterType) {
+            case EMA:
+            case KALMAN:
+                return estimates[entry];
+            case MEDIAN:
+                return median(base, sampleCounts[entry]);
+            default:
+                return rssi;
+        }
+    }
+
+    /**
+     * Median of the samples in a ring buffer
+     *
+     * @param base  start of the ring buffer
+     * @param count sample count
+     * @return median
+     */
+    private double median(int base, int count) {
+        // insertion sort, the window is small
+        for (int i = 0; i < count; i++) {
+            int value = samples[base + i];
+            int j = i;
+            while (j > 0 && sorted[j - 1] > value) {
+                sorted[j] = sorted[j - 1];
+                j--;
+            }
+            sorted[j] = value;
+        }
+        int middle = count >> 1;
+        if ((count & 1) == 1) {
+            return sorted[middle];
+        }
+        return (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    /**
+     * Grow the arrays so that the entry fits
+     *
+     * @param entry entry id
+     */
+    private void ensureCapacity(int entry) {
+        int capacity = sampleCounts.length;
+        if (entry < capacity) {
+            return;
+        }
+        while (capacity <= entry) {
+            capacity = Math.max(capacity * 2, 1);
+        }
+        samples = Arrays.copyOf(samples, capacity * windowSize);
+        sampleCounts = Arrays.copyOf(sampleCounts, capacity);
+        ringPositions = Arrays.copyOf(ringPositions, capacity);
+        estimates = Arrays.copyOf(estimates, capacity);
+        errors = Arrays.copyOf(errors, capacity);
+    }
+}
@@ -0,0 +1,274 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Decides which advertisements of {@link BleScanner} are delivered to the listeners.
+ * <p>
+ * Per device it applies a minimum delivery interval and an optional "payload changed" check,
+ * and it coalesces the delivered devices into one batch per batch interval,
+ * so a busy air does not turn into one main thread post per advertisement.
+ * Device state is kept in primitive arrays indexed by {@link AddressTable} entry id.
+ *
+ * @author jackie
+ */
+final class ScanDeliveryCoalescer {
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * minimum interval between two deliveries of one device(unit:ms).0 means no limit.
+     */
+    private volatile long minIntervalMillis;
+
+    /**
+     * whether a device is only delivered when its advertisement payload changed
+     */
+    private volatile boolean payloadChangeOnly;
+
+    /**
+     * batch interval(unit:ms).0 means no batch.
+     */
+    private volatile long batchIntervalMillis;
+
+    /**
+     * packed device address to entry id
+     */
+    private final AddressTable addressTable = new AddressTable();
+
+    /**
+     * last delivery time of the device
+     */
+    private long[] lastDeliveredMillis;
+    /**
+     * hash of the last delivered payload of the device
+     */
+    private int[] payloadHashes;
+    /**
+     * copy of the last delivered payload of the device, compared when the hashes are equal
+     */
+    private byte[][] payloads;
+    /**
+     * index of the device in the pending batch
+     */
+    private int[] pendingIndexes;
+    /**
+     * batch generation of {@link #pendingIndexes}.An index of an older generation is stale.
+     */
+    private int[] pendingGenerations;
+
+    /**
+     * devices waiting for the next batch
+     */
+    private ArrayList<BleDevice> pending = new ArrayList<>();
+    /**
+     * current batch generation
+     */
+    private int generation = 1;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     */
+    ScanDeliveryCoalescer() {
+        allocate(addressTable.capacity());
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * set minimum interval between two deliveries of one device
+     *
+     * @param minIntervalMillis minimum interval(unit:ms).0 means no limit.
+     */
+    void setMinIntervalMillis(long minIntervalMillis) {
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * set whether a device is only delivered when its advertisement payload changed
+     *
+     * @param payloadChangeOnly true means only deliver changed payload
+     */
+    void setPayloadChangeOnly(boolean payloadChangeOnly) {
+        this.payloadChangeOnly = payloadChangeOnly;
+    }
+
+    /**
+     * set batch interval
+     *
+     * @param batchIntervalMillis batch interval(unit:ms).0 means no batch.
+     */
+    void setBatchIntervalMillis(long batchIntervalMillis) {
+        this.batchIntervalMillis = batchIntervalMillis;
+    }
+
+    /**
+     * get batch interval
+     *
+     * @return batch interval(unit:ms).0 means no batch.
+     */
+    long getBatchIntervalMillis() {
+        return batchIntervalMillis;
+    }
+
+    /**
+     * Check the delivery policy for an advertisement.If it passes, the device is recorded as delivered.
+     *
+     * @param key       packed device address
+     * @param payload   advertisement payload
+     * @param nowMillis current time(unit:ms)
+     * @return true means the advertisement should be delivered
+     */
+    synchronized boolean accept(long key, @Nullable byte[] payload, long nowMillis) {
+        long minIntervalMillis = this.minIntervalMillis;
+        boolean payloadChangeOnly = this.payloadChangeOnly;
+        if (minIntervalMillis <= 0 && !payloadChangeOnly) {
+            return true;
+        }
+        int payloadHash = Arrays.hashCode(payload);
+        int entry = addressTable.indexOf(key);
+        if (entry == AddressTable.NO_ENTRY) {
+            entry = insert(key);
+        } else {
+            if (minIntervalMillis > 0 && nowMillis - lastDeliveredMillis[entry] < minIntervalMillis) {
+                return false;
+            }
+            if (payloadChangeOnly && payloadHashes[entry] == payloadHash && Arrays.equals(payloads[entry], payload)) {
+                return false;
+            }
+        }
+        lastDeliveredMillis[entry] = nowMillis;
+        payloadHashes[entry] = payloadHash;
+        if (payloadChangeOnly) {
+            storePayload(entry, payload);
+        }
+        return true;
+    }
+
+    /**
+     * Add a device to the pending batch.A device already pending is replaced by the newer one.
+     *
+     * @param key       packed device address
+     * @param bleDevice BLE device
+     * @return true means the batch was empty, the caller should schedule a flush
+     */
+    synchronized boolean enqueue(long key, @NonNull BleDevice bleDevice) {
+        int entry = addressTable.indexOf(key);
+        if (entry == AddressTable.NO_ENTRY) {
+            entry = insert(key);
+        }
+        if (pendingGenerations[entry] == generation) {
+            pending.set(pendingIndexes[entry], bleDevice);
+            return false;
+        }
+        pendingGenerations[entry] = generation;
+        pendingIndexes[entry] = pending.size();
+        pending.add(bleDevice);
+        return pending.size() == 1;
+    }
+
+    /**
+     * Take the pending batch
+     *
+     * @return pending devices
+     */
+    @NonNull
+    synchronized ArrayList<BleDevice> drain() {
+        ArrayList<BleDevice> batch = pending;
+        pending = new ArrayList<>(batch.size());
+        generation++;
+        return batch;
+    }
+
+    /**
+     * Forget the state of a device
+     *
+     * @param key packed device address
+     */
+    synchronized void remove(long key) {
+        int entry = addressTable.indexOf(key);
+        if (entry != AddressTable.NO_ENTRY) {
+            addressTable.remove(entry);
+        }
+    }
+
+    /**
+     * clear all device states and the pending batch
+     */
+    synchronized void clear() {
+        pending.clear();
+        generation++;
+        addressTable.clear();
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Insert a key that is not in the table
+     *
+     * @param key packed device address
+     * @return entry id of the key
+     */
+    private int insert(long key) {
+        int entry = addressTable.add(key);
+        if (addressTable.capacity() > lastDeliveredMillis.length) {
+            grow(addressTable.capacity());
+        }
+        lastDeliveredMillis[entry] = 0;
+        payloadHashes[entry] = 0;
+        payloads[entry] = null;
+        pendingGenerations[entry] = 0;
+        return entry;
+    }
+
+    /**
+     * Keep a copy of the delivered payload of a device, the array of the previous payload is reused when the length is the same
+     *
+     * @param entry   entry id
+     * @param payload advertisement payload
+     */
+    private void storePayload(int entry, @Nullable byte[] payload) {
+        if (payload == null) {
+            payloads[entry] = null;
+            return;
+        }
+        byte[] stored = payloads[entry];
+        if (stored == null || stored.length != payload.length) {
+            stored = new byte[payload.length];
+            payloads[entry] = stored;
+        }
+        System.arraycopy(payload, 0, stored, 0, payload.length);
+    }
+
+    /**
+     * Grow the device states to the capacity of the address table.Entry ids are kept.
+     *
+     * @param capacity new capacity
+     */
+    private void grow(int capacity) {
+        lastDeliveredMillis = Arrays.copyOf(lastDeliveredMillis, capacity);
+        payloadHashes = Arrays.copyOf(payloadHashes, capacity);
+        payloads = Arrays.copyOf(payloads, capacity);
+        pendingIndexes = Arrays.copyOf(pendingIndexes, capacity);
+        pendingGenerations = Arrays.copyOf(pendingGenerations, capacity);
+    }
+
+    /**
+     * Allocate empty device states
+     *
+     * @param capacity capacity
+     */
+    private void allocate(int capacity) {
+        lastDeliveredMillis = new long[capacity];
+        payloadHashes = new int[capacity];
+        payloads = new byte[capacity][];
+        pendingIndexes = new int[capacity];
+        pendingGenerations = new int[capacity];
+    }
+}
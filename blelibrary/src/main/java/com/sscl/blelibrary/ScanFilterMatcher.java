@@ -0,0 +1,356 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.systems.BleScanRecordView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable matcher compiled from the software scan filters of {@link BleScanner}.
+ * Starts-with filters are kept in a prefix trie, full name and full address filters in hash sets,
+ * and service UUID filters in a hash table of the two {@code long} halves of the UUID,
+ * so the cost of a match does not grow with the number of filters.
+ *
+ * @author jackie
+ */
+final class ScanFilterMatcher {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = ScanFilterMatcher.class.getSimpleName();
+
+    /**
+     * Matcher without any filter
+     */
+    static final ScanFilterMatcher EMPTY = new ScanFilterMatcher(null, null, null, null, null);
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * device name prefixes.null means no filter.
+     */
+    @Nullable
+    private final PrefixTrie startsNames;
+
+    /**
+     * device full names.null means no filter.
+     */
+    @Nullable
+    private final HashSet<String> fullNames;
+
+    /**
+     * device address prefixes.null means no filter.
+     */
+    @Nullable
+    private final PrefixTrie startsAddresses;
+
+    /**
+     * device full addresses.null means no filter.
+     */
+    @Nullable
+    private final HashSet<String> fullAddresses;
+
+    /**
+     * service uuids.null means no filter.
+     */
+    @Nullable
+    private final UuidSet serviceUuids;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    private ScanFilterMatcher(@Nullable PrefixTrie startsNames, @Nullable HashSet<String> fullNames,
+                              @Nullable PrefixTrie startsAddresses, @Nullable HashSet<String> fullAddresses,
+                              @Nullable UuidSet serviceUuids) {
+        this.startsNames = startsNames;
+        this.fullNames = fullNames;
+        this.startsAddresses = startsAddresses;
+        this.fullAddresses = fullAddresses;
+        this.serviceUuids = serviceUuids;
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * Compile the filter lists into a matcher.An empty list means the filter does not take effect.
+     *
+     * @param startsNames     device name prefixes
+     * @param fullNames       device full names
+     * @param startsAddresses device address prefixes(upper case)
+     * @param fullAddresses   device full addresses(upper case)
+     * @param serviceUuids    service uuids
+     * @return matcher
+     */
+    @NonNull
+    static ScanFilterMatcher compile(@NonNull List<String> startsNames, @NonNull List<String> fullNames,
+                                     @NonNull List<String> startsAddresses, @NonNull List<String> fullAddresses,
+                                     @NonNull List<String> serviceUuids) {
+        if (startsNames.isEmpty() && fullNames.isEmpty() && startsAddresses.isEmpty()
+                && fullAddresses.isEmpty() && serviceUuids.isEmpty()) {
+            return EMPTY;
+        }
+        return new ScanFilterMatcher(
+                startsNames.isEmpty() ? null : new PrefixTrie(startsNames),
+                fullNames.isEmpty() ? null : new HashSet<>(fullNames),
+                startsAddresses.isEmpty() ? null : new PrefixTrie(startsAddresses),
+                fullAddresses.isEmpty() ? null : new HashSet<>(fullAddresses),
+                serviceUuids.isEmpty() ? null : new UuidSet(serviceUuids));
+    }
+
+    /**
+     * Filter the start character of the device name
+     *
+     * @param name device name
+     * @return true means pass
+     */
+    boolean matchStartsName(@Nullable String name) {
+        if (startsNames == null) {
+            return true;
+        }
+        return name != null && startsNames.matchPrefix(name);
+    }
+
+    /**
+     * Filter device full name
+     *
+     * @param name device name
+     * @return true means pass
+     */
+    boolean matchFullName(@Nullable String name) {
+        if (fullNames == null) {
+            return true;
+        }
+        return name != null && fullNames.contains(name);
+    }
+
+    /**
+     * Filter the start character of the device address
+     *
+     * @param address device address
+     * @return true means pass
+     */
+    boolean matchStartsAddress(@NonNull String address) {
+        return startsAddresses == null || startsAddresses.matchPrefix(address);
+    }
+
+    /**
+     * Filter device full address
+     *
+     * @param address device address
+     * @return true means pass
+     */
+    boolean matchFullAddress(@NonNull String address) {
+        return fullAddresses == null || fullAddresses.contains(address);
+    }
+
+    /**
+     * Filter service uuids in advertise data
+     *
+     * @param scanRecordView scan record view
+     * @return true means pass
+     */
+    boolean matchServiceUuids(@NonNull BleScanRecordView scanRecordView) {
+        if (serviceUuids == null) {
+            return true;
+        }
+        for (int i = 0; i < scanRecordView.getServiceUuidCount(); i++) {
+            if (serviceUuids.contains(scanRecordView.getServiceUuidMostSigBits(i), scanRecordView.getServiceUuidLeastSigBits(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*-----------------------------------inner class-----------------------------------*/
+
+    /**
+     * Prefix trie over the characters of the filter strings.
+     * Nodes and edges are stored in flat arrays, the edges of each node are sorted by label.
+     */
+    private static final class PrefixTrie {
+
+        /**
+         * whether a filter string ends at the node
+         */
+        private final boolean[] terminal;
+        /**
+         * index of the first edge of the node
+         */
+        private final int[] firstEdge;
+        /**
+         * edge count of the node
+         */
+        private final int[] edgeCount;
+        /**
+         * edge labels
+         */
+        private final char[] edgeLabels;
+        /**
+         * edge target nodes
+         */
+        private final int[] edgeTargets;
+
+        PrefixTrie(@NonNull List<String> prefixes) {
+            ArrayList<HashMap<Character, Integer>> children = new ArrayList<>();
+            ArrayList<Boolean> ends = new ArrayList<>();
+            children.add(new HashMap<Character, Integer>());
+            ends.add(false);
+            int edges = 0;
+            for (int i = 0; i < prefixes.size(); i++) {
+                String prefix = prefixes.get(i);
+                int node = 0;
+                for (int j = 0; j < prefix.length(); j++) {
+                    HashMap<Character, Integer> next = children.get(node);
+                    Integer child = next.get(prefix.charAt(j));
+                    if (child == null) {
+                        child = children.size();
+                        next.put(prefix.charAt(j), child);
+                        children.add(new HashMap<Character, Integer>());
+                        ends.add(false);
+                        edges++;
+                    }
+                    node = child;
+                }
+                ends.set(node, true);
+            }
+
+            int nodeCount = children.size();
+            terminal = new boolean[nodeCount];
+            firstEdge = new int[nodeCount];
+            edgeCount = new int[nodeCount];
+            edgeLabels = new char[edges];
+            edgeTargets = new int[edges];
+            int edge = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                terminal[node] = ends.get(node);
+                firstEdge[node] = edge;
+                HashMap<Character, Integer> next = children.get(node);
+                edgeCount[node] = next.size();
+                for (Map.Entry<Character, Integer> entry : next.entrySet()) {
+                    // insertion sort keeps the edges of this node ordered by label
+                    int position = edge;
+                    while (position > firstEdge[node] && edgeLabels[position - 1] > entry.getKey()) {
+                        edgeLabels[position] = edgeLabels[position - 1];
+                        edgeTargets[position] = edgeTargets[position - 1];
+                        position--;
+                    }
+                    edgeLabels[position] = entry.getKey();
+                    edgeTargets[position] = entry.getValue();
+                    edge++;
+                }
+            }
+        }
+
+        /**
+         * Whether any filter string is a prefix of the value
+         *
+         * @param value value
+         * @return true means matched
+         */
+        boolean matchPrefix(@NonNull String value) {
+            int node = 0;
+            int length = value.length();
+            for (int i = 0; ; i++) {
+                if (terminal[node]) {
+                    return true;
+                }
+                if (i == length) {
+                    return false;
+                }
+                node = findChild(node, value.charAt(i));
+                if (node < 0) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Binary search the child of a node
+         *
+         * @param node  node
+         * @param label edge label
+         * @return child node, or -1 if not found
+         */
+        private int findChild(int node, char label) {
+            int low = firstEdge[node];
+            int high = low + edgeCount[node] - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char current = edgeLabels[middle];
+                if (current < label) {
+                    low = middle + 1;
+                } else if (current > label) {
+                    high = middle - 1;
+                } else {
+                    return edgeTargets[middle];
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Open addressing hash set of uuids stored as their two {@code long} halves
+     */
+    private static final class UuidSet {
+
+        private final long[] mostSigBits;
+        private final long[] leastSigBits;
+        private final boolean[] used;
+        private final int mask;
+
+        UuidSet(@NonNull List<String> uuids) {
+            int capacity = 4;
+            while (capacity < uuids.size() * 2) {
+                capacity <<= 1;
+            }
+            mostSigBits = new long[capacity];
+            leastSigBits = new long[capacity];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+            for (int i = 0; i < uuids.size(); i++) {
+                UUID uuid;
+                try {
+                    uuid = UUID.fromString(uuids.get(i));
+                } catch (IllegalArgumentException e) {
+                    DebugUtil.warnOut(TAG, "invalid filter uuid : " + uuids.get(i));
+                    continue;
+                }
+                long msb = uuid.getMostSignificantBits();
+                long lsb = uuid.getLeastSignificantBits();
+                if (contains(msb, lsb)) {
+                    continue;
+                }
+                int slot = slot(msb, lsb);
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                mostSigBits[slot] = msb;
+                leastSigBits[slot] = lsb;
+            }
+        }
+
+        boolean contains(long msb, long lsb) {
+            int slot = slot(msb, lsb);
+            while (used[slot]) {
+                if (mostSigBits[slot] == msb && leastSigBits[slot] == lsb) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        private int slot(long msb, long lsb) {
+            long hash = (msb ^ (lsb * 0x9E3779B97F4A7C15L)) * 0xC2B2AE3D27D4EB4FL;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.sscl.blelibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Scan result index.
+ * Scan results are keyed by the packed 48-bit device address in an {@link AddressTable}, so insert, update and lookup
+ * cost O(1) no matter how many devices are in range.
+ * <p>
+ * Every device is stored in an entry with a stable id.The entries are also linked in the order
+ * they were last seen, so the least recently seen device is always at the head of that list.
+ * The list is the only timing structure needed for TTL and LRU eviction.
+ * <p>
+ * Devices are kept in insertion order in a slot array.Removing a device only leaves a tombstone in its slot, so
+ * replacing and removing a device cost O(1) too and the order of the other devices never changes.
+ * The scan result list is built by {@link #publish(ArrayList)}, which also drops the tombstones, like
+ * {@link java.util.ArrayList#remove(int)} the devices after a removed one move down by one position.
+ * The changes made since the last publish are recorded and resolved against the published list, so the list
+ * is built once for any number of changes.
+ *
+ * @author jackie
+ */
+final class ScanResultIndex {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    /**
+     * Entry id that means "no entry"
+     */
+    static final int NO_ENTRY = AddressTable.NO_ENTRY;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * packed device address to entry id
+     */
+    private final AddressTable addressTable = new AddressTable();
+
+    /**
+     * device of the entry
+     */
+    private BleDevice[] entryDevices;
+    /**
+     * slot of the entry
+     */
+    private int[] slots;
+    /**
+     * position of the entry in the last published list, -1 means not published yet
+     */
+    private int[] publishedPositions;
+    /**
+     * last seen time of the entry(unit:ms)
+     */
+    private long[] lastSeenMillis;
+    /**
+     * previous entry in last seen order
+     */
+    private int[] previous;
+    /**
+     * next entry in last seen order
+     */
+    private int[] next;
+    /**
+     * least recently seen entry
+     */
+    private int head = NO_ENTRY;
+    /**
+     * most recently seen entry
+     */
+    private int tail = NO_ENTRY;
+    /**
+     * entry of every slot in insertion order, {@link #NO_ENTRY} for a removed device
+     */
+    private int[] slotEntries;
+    /**
+     * count of used slots
+     */
+    private int slotCount;
+    /**
+     * count of devices
+     */
+    private int size;
+    /**
+     * changes since the last publish
+     */
+    private final ArrayList<Change> changes = new ArrayList<>();
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     */
+    ScanResultIndex() {
+        allocate(addressTable.capacity());
+        slotEntries = new int[addressTable.capacity()];
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * Get the entry of a device
+     *
+     * @param key packed device address
+     * @return entry id, or {@link #NO_ENTRY} if the device is not in the index
+     */
+    int indexOf(long key) {
+        return addressTable.indexOf(key);
+    }
+
+    /**
+     * Add a device that is not in the index yet.The device is appended in insertion order
+     * and becomes the most recently seen device.
+     *
+     * @param key       packed device address
+     * @param bleDevice BLE device
+     * @param nowMillis current time(unit:ms)
+     * @return entry id of the device
+     */
+    int add(long key, @NonNull BleDevice bleDevice, long nowMillis) {
+        int entry = addressTable.add(key);
+        if (addressTable.capacity() > entryDevices.length) {
+            grow(addressTable.capacity());
+        }
+        entryDevices[entry] = bleDevice;
+        lastSeenMillis[entry] = nowMillis;
+        linkLast(entry);
+        if (slotCount == slotEntries.length) {
+            slotEntries = Arrays.copyOf(slotEntries, slotCount * 2);
+        }
+        slots[entry] = slotCount;
+        slotEntries[slotCount++] = entry;
+        publishedPositions[entry] = -1;
+        size++;
+        changes.add(new Change(key, bleDevice, false));
+        return entry;
+    }
+
+    /**
+     * Get the device of an entry
+     *
+     * @param entry entry id
+     * @return BLE device
+     */
+    @NonNull
+    BleDevice get(int entry) {
+        return entryDevices[entry];
+    }
+
+    /**
+     * Get the packed device address of an entry
+     *
+     * @param entry entry id
+     * @return packed device address
+     */
+    long keyOf(int entry) {
+        return addressTable.keyOf(entry);
+    }
+
+    /**
+     * Replace the device of an entry, its position is kept
+     *
+     * @param entry     entry id
+     * @param bleDevice BLE device
+     */
+    void set(int entry, @NonNull BleDevice bleDevice) {
+        entryDevices[entry] = bleDevice;
+        changes.add(new Change(addressTable.keyOf(entry), null, false));
+    }
+
+    /**
+     * Mark the device of an entry as the most recently seen device
+     *
+     * @param entry     entry id
+     * @param nowMillis current time(unit:ms)
+     */
+    void touch(int entry, long nowMillis) {
+        lastSeenMillis[entry] = nowMillis;
+        if (entry != tail) {
+            unlink(entry);
+            linkLast(entry);
+        }
+    }
+
+    /**
+     * Get the least recently seen entry
+     *
+     * @return entry id, or {@link #NO_ENTRY} if the index is empty
+     */
+    int oldest() {
+        return head;
+    }
+
+    /**
+     * Get the last seen time of an entry
+     *
+     * @param entry entry id
+     * @return last seen time(unit:ms)
+     */
+    long getLastSeenMillis(int entry) {
+        return lastSeenMillis[entry];
+    }
+
+    /**
+     * Remove an entry.Its slot becomes a tombstone until the next publish, the other devices keep their order.
+     *
+     * @param entry entry id
+     * @return the position the device had in the last published list, -1 means it was not published
+     */
+    int remove(int entry) {
+        int position = publishedPositions[entry];
+        if (position >= 0) {
+            Change change = new Change(addressTable.keyOf(entry), entryDevices[entry], true);
+            change.index = position;
+            changes.add(change);
+        }
+        slotEntries[slots[entry]] = NO_ENTRY;
+        size--;
+        unlink(entry);
+        entryDevices[entry] = null;
+        addressTable.remove(entry);
+        return position;
+    }
+
+    /**
+     * get device count
+     *
+     * @return device count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Build the scan result list in insertion order and remember the position of every device in it.
+     * The tombstones of removed devices are dropped.The index never touches the returned list.
+     *
+     * @param publishedChanges receives the changes since the last publish in their order.A lost device has the position
+     *                         it had in the previous list, an added or updated device its position in the new list,
+     *                         a device added and removed again in between is left out.
+     * @return scan result list
+     */
+    @NonNull
+    ArrayList<BleDevice> publish(@NonNull ArrayList<Change> publishedChanges) {
+        ArrayList<BleDevice> scanResults = new ArrayList<>(size);
+        for (int slot = 0; slot < slotCount; slot++) {
+            int entry = slotEntries[slot];
+            if (entry == NO_ENTRY) {
+                continue;
+            }
+            int position = scanResults.size();
+            slots[entry] = position;
+            slotEntries[position] = entry;
+            publishedPositions[entry] = position;
+            scanResults.add(entryDevices[entry]);
+        }
+        slotCount = scanResults.size();
+        for (int i = 0; i < changes.size(); i++) {
+            Change change = changes.get(i);
+            if (!change.lost) {
+                int entry = addressTable.indexOf(change.key);
+                if (entry == NO_ENTRY) {
+                    continue;
+                }
+                change.index = publishedPositions[entry];
+            }
+            publishedChanges.add(change);
+        }
+        changes.clear();
+        return scanResults;
+    }
+
+    /**
+     * clear all devices
+     */
+    void clear() {
+        addressTable.clear();
+        slotCount = 0;
+        size = 0;
+        changes.clear();
+        Arrays.fill(entryDevices, null);
+        head = NO_ENTRY;
+        tail = NO_ENTRY;
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Append an entry to the last seen list
+     *
+     * @param entry entry id
+     */
+    private void linkLast(int entry) {
+        previous[entry] = tail;
+        next[entry] = NO_ENTRY;
+        if (tail == NO_ENTRY) {
+            head = entry;
+        } else {
+            next[tail] = entry;
+        }
+        tail = entry;
+    }
+
+    /**
+     * Remove an entry from the last seen list
+     *
+     * @param entry entry id
+     */
+    private void unlink(int entry) {
+        int previousEntry = previous[entry];
+        int nextEntry = next[entry];
+        if (previousEntry == NO_ENTRY) {
+            head = nextEntry;
+        } else {
+            next[previousEntry] = nextEntry;
+        }
+        if (nextEntry == NO_ENTRY) {
+            tail = previousEntry;
+        } else {
+            previous[nextEntry] = previousEntry;
+        }
+    }
+
+    /**
+     * Grow the entries to the capacity of the address table.Entry ids are kept.
+     *
+     * @param capacity new capacity
+     */
+    private void grow(int capacity) {
+        entryDevices = Arrays.copyOf(entryDevices, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+        publishedPositions = Arrays.copyOf(publishedPositions, capacity);
+        lastSeenMillis = Arrays.copyOf(lastSeenMillis, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+        next = Arrays.copyOf(next, capacity);
+    }
+
+    /**
+     * Allocate empty entries
+     *
+     * @param capacity capacity
+     */
+    private void allocate(int capacity) {
+        entryDevices = new BleDevice[capacity];
+        slots = new int[capacity];
+        publishedPositions = new int[capacity];
+        lastSeenMillis = new long[capacity];
+        previous = new int[capacity];
+        next = new int[capacity];
+    }
+
+    /*-----------------------------------inner class-----------------------------------*/
+
+    /**
+     * A change of the scan results
+     */
+    static final class Change {
+
+        /**
+         * packed device address
+         */
+        private final long key;
+
+        /**
+         * added or lost device, null means the device of the position was updated
+         */
+        @Nullable
+        private final BleDevice bleDevice;
+
+        /**
+         * whether the device was lost
+         */
+        private final boolean lost;
+
+        /**
+         * position of the device
+         */
+        private int index;
+
+        /**
+         * Constructor
+         *
+         * @param key       packed device address
+         * @param bleDevice added or lost device, null means the device of the position was updated
+         * @param lost      whether the device was lost
+         */
+        private Change(long key, @Nullable BleDevice bleDevice, boolean lost) {
+            this.key = key;
+            this.bleDevice = bleDevice;
+            this.lost = lost;
+        }
+
+        /**
+         * get position of the device
+         *
+         * @return position
+         */
+        int getIndex() {
+            return index;
+        }
+
+        /**
+         * get added or lost device
+         *
+         * @return device, null means the device of the position was updated
+         */
+        @Nullable
+        BleDevice getBleDevice() {
+            return bleDevice;
+        }
+
+        /**
+         * get whether the device was lost
+         *
+         * @return true means lost
+         */
+        boolean isLost() {
+            return lost;
+        }
+    }
+}
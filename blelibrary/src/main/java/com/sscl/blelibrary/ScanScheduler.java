@@ -0,0 +1,532 @@
+package com.sscl.blelibrary;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sscl.blelibrary.enums.BleScanMode;
+
+/**
+ * Scan scheduler of {@link BleScanner}.
+ * <p>
+ * A scan session is split into windows: the radio scans for the scan window, then rests until the
+ * scan interval has passed.A scan window of 0, or not less than the scan interval, means one
+ * continuous window.The session ends after the scan period, or runs until it is stopped.
+ * <p>
+ * Android blocks an app that starts more than {@link #MAX_STARTS_PER_PERIOD} scans within
+ * {@link #START_LIMIT_PERIOD} without reporting it, so every platform scan start is recorded in an app wide
+ * budget and a window that would exceed it is delayed until the budget allows it.The platform scan itself is
+ * shared by all scanners through {@link ScanSessionMultiplexer}.
+ * <p>
+ * In adaptive mode the scan mode steps down after {@link #IDLE_WINDOWS_TO_STEP_DOWN} windows without
+ * new devices, and goes back to the configured scan mode as soon as a new device is found.
+ * It never goes above {@link BleScanMode#BALANCED} when the battery is low and not charging.
+ * <p>
+ * All timed events run on the handler of the scanner's pipeline thread.
+ *
+ * @author jackie
+ */
+final class ScanScheduler {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = ScanScheduler.class.getSimpleName();
+
+    /**
+     * maximum scan starts within {@link #START_LIMIT_PERIOD}
+     */
+    private static final int MAX_STARTS_PER_PERIOD = 5;
+
+    /**
+     * period of the scan start limit(unit:ms)
+     */
+    private static final long START_LIMIT_PERIOD = 30000;
+
+    /**
+     * windows without new devices before the scan mode steps down
+     */
+    private static final int IDLE_WINDOWS_TO_STEP_DOWN = 3;
+
+    /**
+     * Evaluation period of the adaptive scan mode during continuous scanning(unit:ms)
+     */
+    private static final long ADAPTIVE_EVALUATION_PERIOD = 10000;
+
+    /**
+     * battery level(percent) under which the battery is low
+     */
+    private static final int LOW_BATTERY_LEVEL = 15;
+
+    /**
+     * Scan start times of the app, shared by all scanners
+     */
+    private static final long[] START_TIMES = new long[MAX_STARTS_PER_PERIOD];
+
+    /**
+     * next write position of {@link #START_TIMES}
+     */
+    private static int startTimePosition;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * BLE scanner
+     */
+    @NonNull
+    private final BleScanner bleScanner;
+
+    /**
+     * handler of the scanner's pipeline thread
+     */
+    @NonNull
+    private final Handler handler;
+
+    /**
+     * scan window(unit:ms)
+     */
+    private long scanWindow;
+
+    /**
+     * scan interval(unit:ms)
+     */
+    private long scanInterval;
+
+    /**
+     * whether the scan mode is adaptive
+     */
+    private boolean adaptiveScanMode;
+
+    /**
+     * whether a scan session is running
+     */
+    private boolean running;
+
+    /**
+     * whether the radio is scanning now
+     */
+    private boolean radioOn;
+
+    /**
+     * time the current window started(unit:ms)
+     */
+    private long radioOnSince;
+
+    /**
+     * radio on time of the finished windows(unit:ms)
+     */
+    private long radioOnTime;
+
+    /**
+     * configured scan mode, the highest mode of the adaptive scan mode
+     */
+    @Nullable
+    private BleScanMode configuredScanMode;
+
+    /**
+     * scan mode of the current window
+     */
+    @Nullable
+    private BleScanMode currentScanMode;
+
+    /**
+     * new devices found in the current window
+     */
+    private int newDevicesInWindow;
+
+    /**
+     * windows without new devices in a row
+     */
+    private int idleWindows;
+
+    /**
+     * task that opens a window
+     */
+    private final Runnable openWindowRunnable = new Runnable() {
+        @Override
+        public void run() {
+            boolean finished = false;
+            synchronized (ScanScheduler.this) {
+                if (running && !radioOn && !openWindow(adaptScanMode(currentScanMode))) {
+                    DebugUtil.warnOut(TAG, "start scan window failed");
+                    stop();
+                    finished = true;
+                }
+            }
+            if (finished) {
+                bleScanner.onScanSessionFinished();
+            }
+        }
+    };
+
+    /**
+     * task that closes a window
+     */
+    private final Runnable closeWindowRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ScanScheduler.this) {
+                if (running && radioOn) {
+                    closeWindow();
+                }
+            }
+        }
+    };
+
+    /**
+     * task that evaluates the adaptive scan mode during continuous scanning
+     */
+    private final Runnable evaluateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            boolean finished = false;
+            synchronized (ScanScheduler.this) {
+                if (running && radioOn) {
+                    finished = !evaluateContinuous();
+                }
+            }
+            if (finished) {
+                bleScanner.onScanSessionFinished();
+            }
+        }
+    };
+
+    /**
+     * task that ends the scan session
+     */
+    private final Runnable sessionEndRunnable = new Runnable() {
+        @Override
+        public void run() {
+            boolean finished = false;
+            synchronized (ScanScheduler.this) {
+                if (running) {
+                    stop();
+                    finished = true;
+                }
+            }
+            // the scanner is called back without holding the scheduler monitor
+            if (finished) {
+                bleScanner.onScanSessionFinished();
+            }
+        }
+    };
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     *
+     * @param bleScanner BleScanner
+     * @param handler    handler of the scanner's pipeline thread
+     */
+    ScanScheduler(@NonNull BleScanner bleScanner, @NonNull Handler handler) {
+        this.bleScanner = bleScanner;
+        this.handler = handler;
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * set duty cycle
+     *
+     * @param scanWindow   scan window(unit:ms)
+     * @param scanInterval scan interval(unit:ms)
+     */
+    synchronized void setDutyCycle(long scanWindow, long scanInterval) {
+        this.scanWindow = scanWindow;
+        this.scanInterval = scanInterval;
+    }
+
+    /**
+     * set whether the scan mode is adaptive
+     *
+     * @param adaptiveScanMode true means adaptive
+     */
+    synchronized void setAdaptiveScanMode(boolean adaptiveScanMode) {
+        this.adaptiveScanMode = adaptiveScanMode;
+    }
+
+    /**
+     * Start a scan session.The first window is opened now, or later if the start budget is used up.
+     *
+     * @param scanMode   configured scan mode
+     * @param scanPeriod scan period(unit:ms)
+     * @param continuous true means the session runs until it is stopped
+     * @return true means the session started
+     */
+    synchronized boolean start(@Nullable BleScanMode scanMode, long scanPeriod, boolean continuous) {
+        if (running) {
+            return false;
+        }
+        configuredScanMode = scanMode;
+        currentScanMode = scanMode;
+        newDevicesInWindow = 0;
+        idleWindows = 0;
+        running = true;
+        if (!openWindow(adaptScanMode(scanMode))) {
+            running = false;
+            return false;
+        }
+        if (!continuous) {
+            handler.postDelayed(sessionEndRunnable, scanPeriod);
+        }
+        return true;
+    }
+
+    /**
+     * Stop the scan session
+     *
+     * @return false means the platform scan could not be stopped
+     */
+    synchronized boolean stop() {
+        if (!running) {
+            return true;
+        }
+        running = false;
+        removeCallbacks();
+        if (radioOn) {
+            radioOff();
+            return bleScanner.stopPlatformScan();
+        }
+        return true;
+    }
+
+    /**
+     * Record that a new device was found
+     */
+    synchronized void onNewDeviceFound() {
+        newDevicesInWindow++;
+    }
+
+    /**
+     * Get the total time the radio was scanning
+     *
+     * @return radio on time(unit:ms)
+     */
+    synchronized long getRadioOnTime() {
+        if (radioOn) {
+            return radioOnTime + SystemClock.elapsedRealtime() - radioOnSince;
+        }
+        return radioOnTime;
+    }
+
+    /**
+     * Take one scan start from the app wide budget.Called for every platform scan start.
+     *
+     * @param now current time(unit:ms)
+     * @return 0 means the start is recorded, otherwise the time to wait(unit:ms)
+     */
+    static long acquireStart(long now) {
+        synchronized (START_TIMES) {
+            long delay = peekStartDelay(now);
+            if (delay == 0) {
+                START_TIMES[startTimePosition] = now;
+                startTimePosition = (startTimePosition + 1) % MAX_STARTS_PER_PERIOD;
+            }
+            return delay;
+        }
+    }
+
+    /**
+     * Get the time to wait before a scan start is within the app wide budget
+     *
+     * @param now current time(unit:ms)
+     * @return time to wait(unit:ms)
+     */
+    static long peekStartDelay(long now) {
+        synchronized (START_TIMES) {
+            // the oldest of the last MAX_STARTS_PER_PERIOD starts
+            long oldest = START_TIMES[startTimePosition];
+            if (oldest == 0) {
+                return 0;
+            }
+            return Math.max(0, oldest + START_LIMIT_PERIOD - now);
+        }
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Whether the scan is split into windows
+     *
+     * @return true means duty cycled
+     */
+    private boolean isDutyCycled() {
+        return scanWindow > 0 && scanWindow < scanInterval;
+    }
+
+    /**
+     * Open a window, or schedule it if the start budget is used up
+     *
+     * @param scanMode scan mode of the window
+     * @return false means the platform scan could not be started
+     */
+    private boolean openWindow(@Nullable BleScanMode scanMode) {
+        long now = SystemClock.elapsedRealtime();
+        // the start is taken from the budget by ScanSessionMultiplexer, only if the platform scan restarts
+        long delay = peekStartDelay(now);
+        if (delay > 0) {
+            DebugUtil.warnOut(TAG, "scan start limit reached, next window in " + delay + "ms");
+            handler.postDelayed(openWindowRunnable, delay);
+            return true;
+        }
+        currentScanMode = scanMode;
+        if (!bleScanner.startPlatformScan(currentScanMode)) {
+            return false;
+        }
+        radioOn = true;
+        radioOnSince = now;
+        newDevicesInWindow = 0;
+        if (isDutyCycled()) {
+            handler.postDelayed(closeWindowRunnable, scanWindow);
+        } else if (adaptiveScanMode && currentScanMode != null) {
+            handler.postDelayed(evaluateRunnable, ADAPTIVE_EVALUATION_PERIOD);
+        }
+        return true;
+    }
+
+    /**
+     * Close the current window and schedule the next one
+     */
+    private void closeWindow() {
+        radioOff();
+        bleScanner.stopPlatformScan();
+        updateIdleWindows();
+        handler.postDelayed(openWindowRunnable, scanInterval - scanWindow);
+    }
+
+    /**
+     * Evaluate the adaptive scan mode during continuous scanning.
+     * The scan is only restarted when the mode changed and the start budget allows it.
+     *
+     * @return false means the scan could not be restarted and the session was stopped
+     */
+    private boolean evaluateContinuous() {
+        updateIdleWindows();
+        newDevicesInWindow = 0;
+        BleScanMode scanMode = adaptScanMode(currentScanMode);
+        if (scanMode != currentScanMode && peekStartDelay(SystemClock.elapsedRealtime()) == 0) {
+            // subscribing again replaces the subscription without stopping a shared platform scan
+            radioOff();
+            if (!openWindow(scanMode)) {
+                stop();
+                return false;
+            }
+            return true;
+        }
+        handler.postDelayed(evaluateRunnable, ADAPTIVE_EVALUATION_PERIOD);
+        return true;
+    }
+
+    /**
+     * Count the windows without new devices
+     */
+    private void updateIdleWindows() {
+        if (newDevicesInWindow > 0) {
+            idleWindows = 0;
+        } else {
+            idleWindows++;
+        }
+    }
+
+    /**
+     * Choose the scan mode of the next window.The mode steps down one level per window or evaluation
+     * as long as no new device is found, the idle count is only reset by a new device.
+     *
+     * @param scanMode scan mode of the last window
+     * @return scan mode of the next window
+     */
+    @Nullable
+    private BleScanMode adaptScanMode(@Nullable BleScanMode scanMode) {
+        BleScanMode configuredScanMode = this.configuredScanMode;
+        if (!adaptiveScanMode || scanMode == null || configuredScanMode == null || rank(configuredScanMode) < 0) {
+            return scanMode;
+        }
+        int rank;
+        if (idleWindows == 0) {
+            rank = rank(configuredScanMode);
+        } else if (idleWindows >= IDLE_WINDOWS_TO_STEP_DOWN) {
+            rank = Math.max(0, rank(scanMode) - 1);
+        } else {
+            rank = rank(scanMode);
+        }
+        if (rank > rank(BleScanMode.BALANCED) && isBatteryLow()) {
+            rank = rank(BleScanMode.BALANCED);
+        }
+        return fromRank(rank);
+    }
+
+    /**
+     * Account the radio on time of the current window
+     */
+    private void radioOff() {
+        radioOn = false;
+        radioOnTime += SystemClock.elapsedRealtime() - radioOnSince;
+    }
+
+    private void removeCallbacks() {
+        handler.removeCallbacks(openWindowRunnable);
+        handler.removeCallbacks(closeWindowRunnable);
+        handler.removeCallbacks(evaluateRunnable);
+        handler.removeCallbacks(sessionEndRunnable);
+    }
+
+    /**
+     * Whether the battery is low and not charging
+     *
+     * @return true means the battery is low
+     */
+    private boolean isBatteryLow() {
+        Context context = bleScanner.getContext();
+        if (context == null) {
+            return false;
+        }
+        Intent batteryStatus = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (batteryStatus == null) {
+            return false;
+        }
+        int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        if (status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL) {
+            return false;
+        }
+        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level >= 0 && scale > 0 && level * 100 < LOW_BATTERY_LEVEL * scale;
+    }
+
+    /**
+     * Rank of a scan mode in the adaptive ladder
+     *
+     * @param scanMode scan mode
+     * @return rank, or -1 if the mode is not adaptive
+     */
+    private static int rank(@NonNull BleScanMode scanMode) {
+        switch (scanMode) {
+            case LOW_POWER:
+                return 0;
+            case BALANCED:
+                return 1;
+            case LOW_LATENCY:
+                return 2;
+            default:
+                return -1;
+        }
+    }
+
+    @NonNull
+    private static BleScanMode fromRank(int rank) {
+        switch (rank) {
+            case 0:
+                return BleScanMode.LOW_POWER;
+            case 1:
+                return BleScanMode.BALANCED;
+            default:
+                return BleScanMode.LOW_LATENCY;
+        }
+    }
+}
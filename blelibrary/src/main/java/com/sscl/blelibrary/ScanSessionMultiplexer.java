@@ -0,0 +1,727 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Build;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shares one platform scan between all scanning {@link BleScanner} instances of the app.
+ * <p>
+ * Android only grants an app a few scanner slots, so every scanner subscribes here instead of starting
+ * its own platform scan.The platform scan runs with the merged filters of all subscribed scanners(no filter
+ * at all if one of them has none) and settings merged field by field: the highest scan mode, the shortest
+ * report delay, the most eager match mode and match count, a non-legacy scan if any scanner asks for one and
+ * all PHYs if the scanners ask for different ones.Scanners asking for different callback types can not share
+ * a platform scan, such a subscription is refused.A scanner that joins a platform scan which already covers it
+ * costs no extra radio session.
+ * <p>
+ * Every result is dispatched to the scanners whose own platform filters match it, and goes through the
+ * scanner's pipeline as before.The platform scan is only restarted when a scanner is not covered by it,
+ * or when a narrower scan is possible and the start budget of {@link ScanScheduler} allows it.
+ *
+ * @author jackie
+ */
+final class ScanSessionMultiplexer {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = ScanSessionMultiplexer.class.getSimpleName();
+
+    /**
+     * maximum try count of stopping the platform scan
+     */
+    private static final int MAX_STOP_TRY_COUNT = 3;
+
+    /**
+     * single instance
+     */
+    private static final ScanSessionMultiplexer INSTANCE = new ScanSessionMultiplexer();
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * subscribed scanners.Replaced on every change, so the callbacks read it without lock.
+     */
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    /**
+     * Bluetooth adapter of the latest subscription
+     */
+    private BluetoothAdapter bluetoothAdapter;
+
+    /**
+     * System BLE scanner of the running platform scan
+     */
+    private BluetoothLeScanner bluetoothLeScanner;
+
+    /**
+     * whether the platform scan is running
+     */
+    private boolean platformScanning;
+
+    /**
+     * settings of the running platform scan
+     */
+    private ScanParameters runningScanParameters;
+
+    /**
+     * filters of the running platform scan, empty means no filter
+     */
+    private ArrayList<ScanFilter> runningScanFilters;
+
+    /**
+     * System scan callback (API 20 and below)
+     */
+    private final BluetoothAdapter.LeScanCallback scanCallback18 = new BluetoothAdapter.LeScanCallback() {
+        @Override
+        public void onLeScan(BluetoothDevice device, int rssi, byte[] scanRecord) {
+            Subscription[] subscriptions = ScanSessionMultiplexer.this.subscriptions;
+            for (Subscription subscription : subscriptions) {
+                subscription.bleScanner.onPlatformLeScan(device, rssi, scanRecord);
+            }
+        }
+    };
+
+    /**
+     * System scan callback (API 21 and above)
+     */
+    private ScanCallback scanCallback21;
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     */
+    private ScanSessionMultiplexer() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            initScanCallback21();
+        }
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * get single instance
+     *
+     * @return ScanSessionMultiplexer
+     */
+    static ScanSessionMultiplexer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Subscribe a scanner to the platform scan.A subscribed scanner replaces its previous subscription.
+     *
+     * @param bleScanner       BLE scanner
+     * @param bluetoothAdapter Bluetooth adapter
+     * @param scanFilters      platform filters of the scanner, empty means no filter(ignored below API 21)
+     * @param scanSettings     platform settings of the scanner(null below API 21)
+     * @param matchMode        match mode of the settings(ignored below API 23)
+     * @param numOfMatches     match count of the settings(ignored below API 23)
+     * @return true means the platform scan covers the scanner
+     */
+    synchronized boolean subscribe(@NonNull BleScanner bleScanner, @NonNull BluetoothAdapter bluetoothAdapter,
+                                   @NonNull ArrayList<ScanFilter> scanFilters, @Nullable ScanSettings scanSettings,
+                                   int matchMode, int numOfMatches) {
+        this.bluetoothAdapter = bluetoothAdapter;
+        Subscription[] previous = subscriptions;
+        Subscription[] others = without(previous, bleScanner);
+        Subscription[] next = Arrays.copyOf(others, others.length + 1);
+        next[others.length] = new Subscription(bleScanner, scanFilters,
+                scanSettings == null ? null : new ScanParameters(scanSettings, matchMode, numOfMatches));
+        subscriptions = next;
+        if (refresh()) {
+            return true;
+        }
+        subscriptions = others;
+        if (others.length == 0) {
+            stopPlatformScan(0);
+        }
+        return false;
+    }
+
+    /**
+     * Unsubscribe a scanner.The platform scan stops with the last scanner.
+     *
+     * @param bleScanner BLE scanner
+     * @return true means successful
+     */
+    synchronized boolean unsubscribe(@NonNull BleScanner bleScanner) {
+        Subscription[] previous = subscriptions;
+        Subscription[] next = without(previous, bleScanner);
+        if (next.length == previous.length) {
+            return true;
+        }
+        subscriptions = next;
+        if (next.length == 0) {
+            return stopPlatformScan(0);
+        }
+        refresh();
+        return true;
+    }
+
+    /**
+     * Flush pending batch scan results of the platform scan
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    synchronized void flushPendingScanResults() {
+        if (platformScanning && bluetoothLeScanner != null) {
+            bluetoothLeScanner.flushPendingScanResults(scanCallback21);
+        }
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * initialization system scan callback for api 21
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    private void initScanCallback21() {
+        scanCallback21 = new ScanCallback() {
+            /**
+             * BaseBleConnectCallback when a BLE advertisement has been found.
+             *
+             * @param callbackType Determines how this callback was triggered.
+             * @param result       A Bluetooth LE scan result.
+             */
+            @Override
+            public void onScanResult(int callbackType, ScanResult result) {
+                Subscription[] subscriptions = ScanSessionMultiplexer.this.subscriptions;
+                for (Subscription subscription : subscriptions) {
+                    if (subscription.matches(result)) {
+                        subscription.bleScanner.onPlatformScanResult(result);
+                    }
+                }
+            }
+
+            /**
+             * BaseBleConnectCallback when batch results are delivered.
+             *
+             * @param results List of scan results that are previously scanned.
+             */
+            @Override
+            public void onBatchScanResults(List<ScanResult> results) {
+                Subscription[] subscriptions = ScanSessionMultiplexer.this.subscriptions;
+                for (Subscription subscription : subscriptions) {
+                    ArrayList<ScanResult> matched = new ArrayList<>(results.size());
+                    for (int i = 0; i < results.size(); i++) {
+                        ScanResult result = results.get(i);
+                        if (subscription.matches(result)) {
+                            matched.add(result);
+                        }
+                    }
+                    if (!matched.isEmpty()) {
+                        subscription.bleScanner.onPlatformBatchScanResults(matched);
+                    }
+                }
+            }
+
+            /**
+             * BaseBleConnectCallback when scan could not be started.
+             *
+             * @param errorCode Error code (one of SCAN_FAILED_*) for scan failure.
+             */
+            @Override
+            public void onScanFailed(int errorCode) {
+                Subscription[] subscriptions = ScanSessionMultiplexer.this.subscriptions;
+                for (Subscription subscription : subscriptions) {
+                    subscription.bleScanner.onPlatformScanFailed(errorCode);
+                }
+            }
+        };
+    }
+
+    /**
+     * Make the platform scan follow the subscriptions.A running platform scan that covers all subscriptions
+     * is kept when the start budget does not allow a narrower one.
+     *
+     * @return true means the platform scan covers all subscriptions
+     */
+    private boolean refresh() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            if (platformScanning) {
+                return true;
+            }
+            return startPlatformScan18();
+        }
+        ScanParameters scanParameters = mergeScanParameters();
+        if (scanParameters == null) {
+            DebugUtil.warnOut(TAG, "scanners ask for different callback types, they can not share the platform scan");
+            return false;
+        }
+        ArrayList<ScanFilter> scanFilters = mergeScanFilters();
+        if (platformScanning) {
+            if (runningScanParameters.equals(scanParameters) && runningScanFilters.equals(scanFilters)) {
+                return true;
+            }
+            if (covers(scanParameters, scanFilters) && ScanScheduler.peekStartDelay(SystemClock.elapsedRealtime()) > 0) {
+                // keep the wider platform scan, results are still dispatched by the filters of every scanner
+                return true;
+            }
+        }
+        return startPlatformScan21(scanParameters, scanFilters);
+    }
+
+    /**
+     * Whether the running platform scan covers the merged settings and filters
+     *
+     * @param scanParameters merged settings
+     * @param scanFilters    merged filters
+     * @return true means covered
+     */
+    private boolean covers(@NonNull ScanParameters scanParameters, @NonNull ArrayList<ScanFilter> scanFilters) {
+        if (!runningScanParameters.covers(scanParameters)) {
+            return false;
+        }
+        if (runningScanFilters.isEmpty()) {
+            return true;
+        }
+        return !scanFilters.isEmpty() && runningScanFilters.containsAll(scanFilters);
+    }
+
+    /**
+     * Merge the settings of all subscriptions field by field
+     *
+     * @return settings, null means the subscriptions ask for different callback types
+     */
+    @Nullable
+    private ScanParameters mergeScanParameters() {
+        ScanParameters merged = null;
+        for (Subscription subscription : subscriptions) {
+            ScanParameters scanParameters = subscription.scanParameters;
+            if (scanParameters == null) {
+                continue;
+            }
+            if (merged == null) {
+                merged = scanParameters;
+                continue;
+            }
+            merged = merged.merge(scanParameters);
+            if (merged == null) {
+                return null;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Union of the filters of all subscriptions
+     *
+     * @return filters, empty means no filter
+     */
+    private ArrayList<ScanFilter> mergeScanFilters() {
+        ArrayList<ScanFilter> merged = new ArrayList<>();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.scanFilters.isEmpty()) {
+                merged.clear();
+                return merged;
+            }
+            for (int i = 0; i < subscription.scanFilters.size(); i++) {
+                ScanFilter scanFilter = subscription.scanFilters.get(i);
+                if (!merged.contains(scanFilter)) {
+                    merged.add(scanFilter);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * (Re)start the platform scan of API 21.If a running platform scan was stopped and the new one can not be
+     * started, the previous platform scan is started again so the other scanners keep scanning.
+     *
+     * @param scanParameters merged settings
+     * @param scanFilters    merged filters
+     * @return true means started
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean startPlatformScan21(@NonNull ScanParameters scanParameters, @NonNull ArrayList<ScanFilter> scanFilters) {
+        BluetoothAdapter bluetoothAdapter = this.bluetoothAdapter;
+        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
+            return false;
+        }
+        long delay = ScanScheduler.acquireStart(SystemClock.elapsedRealtime());
+        if (delay > 0) {
+            DebugUtil.warnOut(TAG, "scan start limit reached, platform scan not restarted");
+            return false;
+        }
+        ScanParameters previousScanParameters = null;
+        ArrayList<ScanFilter> previousScanFilters = null;
+        if (platformScanning) {
+            previousScanParameters = runningScanParameters;
+            previousScanFilters = runningScanFilters;
+            stopPlatformScan(0);
+        }
+        bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (bluetoothLeScanner == null) {
+            restorePlatformScan21(previousScanParameters, previousScanFilters);
+            return false;
+        }
+        try {
+            bluetoothLeScanner.startScan(scanFilters, scanParameters.toScanSettings(), scanCallback21);
+        } catch (Exception e) {
+            DebugUtil.warnOut(TAG, "start platform scan failed : " + e.getMessage());
+            restorePlatformScan21(previousScanParameters, previousScanFilters);
+            return false;
+        }
+        platformScanning = true;
+        runningScanParameters = scanParameters;
+        runningScanFilters = scanFilters;
+        return true;
+    }
+
+    /**
+     * Start the previous platform scan again after a restart failed.
+     * If it can not be started either, every subscribed scanner is told that the scan failed.
+     *
+     * @param scanParameters settings of the previous platform scan, null means none was running
+     * @param scanFilters    filters of the previous platform scan
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    private void restorePlatformScan21(@Nullable ScanParameters scanParameters, @Nullable ArrayList<ScanFilter> scanFilters) {
+        if (scanParameters == null || scanFilters == null) {
+            return;
+        }
+        BluetoothLeScanner bluetoothLeScanner = this.bluetoothLeScanner;
+        if (bluetoothLeScanner != null && ScanScheduler.acquireStart(SystemClock.elapsedRealtime()) == 0) {
+            try {
+                bluetoothLeScanner.startScan(scanFilters, scanParameters.toScanSettings(), scanCallback21);
+                platformScanning = true;
+                runningScanParameters = scanParameters;
+                runningScanFilters = scanFilters;
+                return;
+            } catch (Exception e) {
+                DebugUtil.warnOut(TAG, "restore platform scan failed : " + e.getMessage());
+            }
+        }
+        Subscription[] subscriptions = this.subscriptions;
+        for (Subscription subscription : subscriptions) {
+            subscription.bleScanner.onPlatformScanFailed(ScanCallback.SCAN_FAILED_INTERNAL_ERROR);
+        }
+    }
+
+    /**
+     * Start the platform scan of API 18
+     *
+     * @return true means started
+     */
+    private boolean startPlatformScan18() {
+        BluetoothAdapter bluetoothAdapter = this.bluetoothAdapter;
+        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
+            return false;
+        }
+        if (ScanScheduler.acquireStart(SystemClock.elapsedRealtime()) > 0) {
+            DebugUtil.warnOut(TAG, "scan start limit reached, platform scan not started");
+            return false;
+        }
+        try {
+            platformScanning = bluetoothAdapter.startLeScan(scanCallback18);
+        } catch (Exception e) {
+            platformScanning = false;
+        }
+        return platformScanning;
+    }
+
+    /**
+     * stop the platform scan
+     *
+     * @param tryCount try count
+     * @return true means successful
+     */
+    private boolean stopPlatformScan(int tryCount) {
+        tryCount++;
+        BluetoothAdapter bluetoothAdapter = this.bluetoothAdapter;
+        if (!platformScanning || bluetoothAdapter == null) {
+            platformScanning = false;
+            return false;
+        }
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                if (bluetoothLeScanner != null) {
+                    bluetoothLeScanner.stopScan(scanCallback21);
+                }
+            } else {
+                bluetoothAdapter.stopLeScan(scanCallback18);
+            }
+        } catch (Exception e) {
+            if (tryCount < MAX_STOP_TRY_COUNT) {
+                return stopPlatformScan(tryCount);
+            }
+            platformScanning = false;
+            return false;
+        }
+        platformScanning = false;
+        runningScanParameters = null;
+        runningScanFilters = null;
+        return true;
+    }
+
+    /**
+     * Copy the subscriptions without the subscription of a scanner
+     *
+     * @param subscriptions subscriptions
+     * @param bleScanner    BLE scanner
+     * @return subscriptions without the scanner
+     */
+    private static Subscription[] without(@NonNull Subscription[] subscriptions, @NonNull BleScanner bleScanner) {
+        for (int i = 0; i < subscriptions.length; i++) {
+            if (subscriptions[i].bleScanner == bleScanner) {
+                Subscription[] result = new Subscription[subscriptions.length - 1];
+                System.arraycopy(subscriptions, 0, result, 0, i);
+                System.arraycopy(subscriptions, i + 1, result, i, subscriptions.length - i - 1);
+                return result;
+            }
+        }
+        return subscriptions;
+    }
+
+    /*-----------------------------------inner class-----------------------------------*/
+
+    /**
+     * Subscription of a scanner
+     */
+    private static final class Subscription {
+
+        /**
+         * BLE scanner
+         */
+        @NonNull
+        private final BleScanner bleScanner;
+
+        /**
+         * platform filters of the scanner, empty means no filter
+         */
+        @NonNull
+        private final ArrayList<ScanFilter> scanFilters;
+
+        /**
+         * platform settings of the scanner
+         */
+        @Nullable
+        private final ScanParameters scanParameters;
+
+        /**
+         * Constructor
+         *
+         * @param bleScanner     BLE scanner
+         * @param scanFilters    platform filters of the scanner
+         * @param scanParameters platform settings of the scanner
+         */
+        private Subscription(@NonNull BleScanner bleScanner, @NonNull ArrayList<ScanFilter> scanFilters, @Nullable ScanParameters scanParameters) {
+            this.bleScanner = bleScanner;
+            this.scanFilters = scanFilters;
+            this.scanParameters = scanParameters;
+        }
+
+        /**
+         * Whether a result passes the platform filters of the scanner
+         *
+         * @param result scan result
+         * @return true means matched
+         */
+        @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+        private boolean matches(@NonNull ScanResult result) {
+            if (scanFilters.isEmpty()) {
+                return true;
+            }
+            for (int i = 0; i < scanFilters.size(); i++) {
+                if (scanFilters.get(i).matches(result)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Platform scan settings as plain values, so they can be compared and merged field by field.
+     * Fields the platform does not support are kept at their default values.
+     */
+    private static final class ScanParameters {
+
+        /**
+         * scan mode
+         */
+        private final int scanMode;
+        /**
+         * report delay(unit:ms)
+         */
+        private final long reportDelayMillis;
+        /**
+         * callback type
+         */
+        private final int callbackType;
+        /**
+         * match mode
+         */
+        private final int matchMode;
+        /**
+         * match count
+         */
+        private final int numOfMatches;
+        /**
+         * whether only legacy advertisements are reported
+         */
+        private final boolean legacy;
+        /**
+         * PHY of the scan
+         */
+        private final int phy;
+
+        /**
+         * Constructor
+         *
+         * @param scanSettings platform settings
+         * @param matchMode    match mode of the settings
+         * @param numOfMatches match count of the settings
+         */
+        @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+        private ScanParameters(@NonNull ScanSettings scanSettings, int matchMode, int numOfMatches) {
+            this.scanMode = scanSettings.getScanMode();
+            this.reportDelayMillis = scanSettings.getReportDelayMillis();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                this.callbackType = scanSettings.getCallbackType();
+                this.matchMode = matchMode;
+                this.numOfMatches = numOfMatches;
+            } else {
+                this.callbackType = ScanSettings.CALLBACK_TYPE_ALL_MATCHES;
+                this.matchMode = ScanSettings.MATCH_MODE_AGGRESSIVE;
+                this.numOfMatches = ScanSettings.MATCH_NUM_MAX_ADVERTISEMENT;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                this.legacy = scanSettings.getLegacy();
+                this.phy = scanSettings.getPhy();
+            } else {
+                this.legacy = true;
+                this.phy = ScanSettings.PHY_LE_ALL_SUPPORTED;
+            }
+        }
+
+        /**
+         * Constructor
+         *
+         * @param scanMode          scan mode
+         * @param reportDelayMillis report delay(unit:ms)
+         * @param callbackType      callback type
+         * @param matchMode         match mode
+         * @param numOfMatches      match count
+         * @param legacy            whether only legacy advertisements are reported
+         * @param phy               PHY of the scan
+         */
+        private ScanParameters(int scanMode, long reportDelayMillis, int callbackType, int matchMode,
+                               int numOfMatches, boolean legacy, int phy) {
+            this.scanMode = scanMode;
+            this.reportDelayMillis = reportDelayMillis;
+            this.callbackType = callbackType;
+            this.matchMode = matchMode;
+            this.numOfMatches = numOfMatches;
+            this.legacy = legacy;
+            this.phy = phy;
+        }
+
+        /**
+         * Merge with the settings of another scanner
+         *
+         * @param other settings of another scanner
+         * @return merged settings, null means the callback types differ
+         */
+        @Nullable
+        private ScanParameters merge(@NonNull ScanParameters other) {
+            if (callbackType != other.callbackType) {
+                return null;
+            }
+            return new ScanParameters(Math.max(scanMode, other.scanMode),
+                    Math.min(reportDelayMillis, other.reportDelayMillis),
+                    callbackType,
+                    // aggressive matching reports devices sticky matching would still hold back
+                    Math.min(matchMode, other.matchMode),
+                    Math.max(numOfMatches, other.numOfMatches),
+                    // a non-legacy scan also reports legacy advertisements
+                    legacy && other.legacy,
+                    phy == other.phy ? phy : ScanSettings.PHY_LE_ALL_SUPPORTED);
+        }
+
+        /**
+         * Whether a platform scan with these settings also serves the other settings
+         *
+         * @param other other settings
+         * @return true means covered
+         */
+        private boolean covers(@NonNull ScanParameters other) {
+            return scanMode >= other.scanMode
+                    && reportDelayMillis <= other.reportDelayMillis
+                    && callbackType == other.callbackType
+                    && matchMode <= other.matchMode
+                    && numOfMatches >= other.numOfMatches
+                    && (!legacy || other.legacy)
+                    && (phy == other.phy || phy == ScanSettings.PHY_LE_ALL_SUPPORTED);
+        }
+
+        /**
+         * Build the platform settings
+         *
+         * @return platform settings
+         */
+        @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+        @NonNull
+        private ScanSettings toScanSettings() {
+            ScanSettings.Builder builder = new ScanSettings.Builder()
+                    .setScanMode(scanMode)
+                    .setReportDelay(reportDelayMillis);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                builder.setCallbackType(callbackType)
+                        .setMatchMode(matchMode)
+                        .setNumOfMatches(numOfMatches);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                builder.setLegacy(legacy)
+                        .setPhy(phy);
+            }
+            return builder.build();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ScanParameters)) {
+                return false;
+            }
+            ScanParameters that = (ScanParameters) o;
+            return scanMode == that.scanMode
+                    && reportDelayMillis == that.reportDelayMillis
+                    && callbackType == that.callbackType
+                    && matchMode == that.matchMode
+                    && numOfMatches == that.numOfMatches
+                    && legacy == that.legacy
+                    && phy == that.phy;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = scanMode;
+            result = 31 * result + (int) (reportDelayMillis ^ (reportDelayMillis >>> 32));
+            result = 31 * result + callbackType;
+            result = 31 * result + matchMode;
+            result = 31 * result + numOfMatches;
+            result = 31 * result + (legacy ? 1 : 0);
+            result = 31 * result + phy;
+            return result;
+        }
+    }
+}
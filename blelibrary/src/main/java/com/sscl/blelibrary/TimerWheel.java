@@ -0,0 +1,303 @@
+package com.sscl.blelibrary;
+
+import android.os.SystemClock;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+
+/**
+ * Library wide timer service: a hashed timer wheel on a single daemon thread.
+ * <p>
+ * A timeout is linked into the bucket of its deadline tick, with the number of wheel revolutions left,
+ * so scheduling and cancelling cost O(1) whatever the number of pending timeouts.The thread sleeps
+ * until the next tick, and waits without waking up while no timeout is pending.
+ * <p>
+ * Tasks run on the timer thread and must be short: post to a handler for anything else.
+ *
+ * @author jackie
+ */
+final class TimerWheel {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    private static final String TAG = TimerWheel.class.getSimpleName();
+
+    /**
+     * tick duration(unit:ms)
+     */
+    private static final long TICK_MILLIS = 10;
+
+    /**
+     * bucket count of the wheel(must be power of two)
+     */
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * single instance, created on first use
+     */
+    private static TimerWheel INSTANCE;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * first timeout of every bucket
+     */
+    private final Timeout[] buckets = new Timeout[WHEEL_SIZE];
+
+    /**
+     * start time of tick 0(unit:ms)
+     */
+    private final long startMillis;
+
+    /**
+     * the last tick that has been processed
+     */
+    private long currentTick;
+
+    /**
+     * pending timeout count
+     */
+    private int pendingCount;
+
+    /**
+     * timer thread
+     */
+    private final Runnable workerRunnable = new Runnable() {
+        @Override
+        public void run() {
+            ArrayList<Timeout> expired = new ArrayList<>();
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                try {
+                    awaitExpired(expired);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                for (int i = 0; i < expired.size(); i++) {
+                    try {
+                        expired.get(i).task.run();
+                    } catch (Throwable e) {
+                        // one failing task must not stop the timer thread of every other timeout
+                        DebugUtil.warnOut(TAG, "timer task failed : " + e);
+                    }
+                }
+                expired.clear();
+            }
+        }
+    };
+
+    /*-----------------------------------Constructor-----------------------------------*/
+
+    /**
+     * Constructor
+     */
+    private TimerWheel() {
+        startMillis = SystemClock.elapsedRealtime();
+        Thread thread = BleManager.getThreadFactory().newThread(workerRunnable);
+        thread.setName(TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*-----------------------------------package private method-----------------------------------*/
+
+    /**
+     * get single instance
+     *
+     * @return TimerWheel
+     */
+    static synchronized TimerWheel getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new TimerWheel();
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Schedule a task
+     *
+     * @param task        task, runs on the timer thread
+     * @param delayMillis delay(unit:ms)
+     * @return timeout handle to cancel the task
+     */
+    @NonNull
+    synchronized Timeout newTimeout(@NonNull Runnable task, @IntRange(from = 0) long delayMillis) {
+        long now = SystemClock.elapsedRealtime();
+        if (pendingCount == 0) {
+            // the thread was idle, skip the ticks it did not process
+            currentTick = Math.max(currentTick, (now - startMillis) / TICK_MILLIS);
+        }
+        // round up, a task never runs before its delay
+        long deadlineTick = (now - startMillis + Math.max(0, delayMillis) + TICK_MILLIS - 1) / TICK_MILLIS;
+        if (deadlineTick <= currentTick) {
+            deadlineTick = currentTick + 1;
+        }
+        Timeout timeout = new Timeout(this, task);
+        timeout.remainingRounds = (deadlineTick - currentTick - 1) / WHEEL_SIZE;
+        timeout.bucket = (int) (deadlineTick & (WHEEL_SIZE - 1));
+        Timeout first = buckets[timeout.bucket];
+        timeout.next = first;
+        if (first != null) {
+            first.previous = timeout;
+        }
+        buckets[timeout.bucket] = timeout;
+        pendingCount++;
+        notifyAll();
+        return timeout;
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Cancel a timeout
+     *
+     * @param timeout timeout
+     * @return true means the task will not run
+     */
+    private synchronized boolean cancel(@NonNull Timeout timeout) {
+        if (timeout.state != Timeout.STATE_PENDING) {
+            return timeout.state == Timeout.STATE_CANCELLED;
+        }
+        timeout.state = Timeout.STATE_CANCELLED;
+        unlink(timeout);
+        return true;
+    }
+
+    /**
+     * Wait for the next tick and collect the expired timeouts
+     *
+     * @param expired expired timeouts are added to it
+     * @throws InterruptedException the thread was interrupted
+     */
+    private synchronized void awaitExpired(@NonNull ArrayList<Timeout> expired) throws InterruptedException {
+        while (true) {
+            if (pendingCount == 0) {
+                wait();
+                continue;
+            }
+            long sleepMillis = startMillis + (currentTick + 1) * TICK_MILLIS - SystemClock.elapsedRealtime();
+            if (sleepMillis > 0) {
+                wait(sleepMillis);
+                continue;
+            }
+            currentTick++;
+            int bucket = (int) (currentTick & (WHEEL_SIZE - 1));
+            Timeout timeout = buckets[bucket];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    timeout.state = Timeout.STATE_EXPIRED;
+                    unlink(timeout);
+                    expired.add(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+            if (!expired.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove a timeout from its bucket
+     *
+     * @param timeout timeout
+     */
+    private void unlink(@NonNull Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        pendingCount--;
+    }
+
+    /*-----------------------------------inner class-----------------------------------*/
+
+    /**
+     * Handle of a scheduled task
+     */
+    static final class Timeout {
+
+        /**
+         * state : waiting for the deadline
+         */
+        private static final int STATE_PENDING = 0;
+
+        /**
+         * state : cancelled
+         */
+        private static final int STATE_CANCELLED = 1;
+
+        /**
+         * state : the task ran or is running
+         */
+        private static final int STATE_EXPIRED = 2;
+
+        /**
+         * timer wheel
+         */
+        @NonNull
+        private final TimerWheel timerWheel;
+
+        /**
+         * task
+         */
+        @NonNull
+        private final Runnable task;
+
+        /**
+         * state, guarded by the timer wheel
+         */
+        private int state = STATE_PENDING;
+
+        /**
+         * bucket index
+         */
+        private int bucket;
+
+        /**
+         * wheel revolutions left before the deadline
+         */
+        private long remainingRounds;
+
+        /**
+         * previous timeout in the same bucket
+         */
+        private Timeout previous;
+
+        /**
+         * next timeout in the same bucket
+         */
+        private Timeout next;
+
+        /**
+         * Constructor
+         *
+         * @param timerWheel timer wheel
+         * @param task       task
+         */
+        private Timeout(@NonNull TimerWheel timerWheel, @NonNull Runnable task) {
+            this.timerWheel = timerWheel;
+            this.task = task;
+        }
+
+        /**
+         * Cancel the task
+         *
+         * @return true means the task will not run
+         */
+        boolean cancel() {
+            return timerWheel.cancel(this);
+        }
+    }
+}
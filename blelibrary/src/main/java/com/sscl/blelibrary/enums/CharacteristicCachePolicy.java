@@ -0,0 +1,24 @@
+package com.sscl.blelibrary.enums;
+
+/**
+ * enum of the caching of characteristic values read from the remote device
+ *
+ * @author jackie
+ */
+public enum CharacteristicCachePolicy {
+
+    /**
+     * Every read is sent to the remote device, reads made while a read is outstanding share its result.
+     * This is the default of every characteristic.
+     */
+    ALWAYS_FRESH,
+    /**
+     * The value never changes while the GATT database of the device stays the same.
+     * It is read once and kept across reconnects to the same device, until the device reports changed services.
+     */
+    STATIC,
+    /**
+     * The value read is reused until the time to live has elapsed
+     */
+    TTL
+}
@@ -0,0 +1,26 @@
+package com.sscl.blelibrary.enums;
+
+/**
+ * enum of RSSI smoothing filter
+ *
+ * @author jackie
+ */
+public enum RssiFilterType {
+
+    /**
+     * No smoothing, the smoothed rssi is the latest rssi
+     */
+    NONE,
+    /**
+     * Exponential moving average
+     */
+    EMA,
+    /**
+     * One dimensional Kalman filter with a constant signal model
+     */
+    KALMAN,
+    /**
+     * Median of the latest samples in the window
+     */
+    MEDIAN
+}
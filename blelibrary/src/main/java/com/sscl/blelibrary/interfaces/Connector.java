@@ -14,6 +14,10 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import com.sscl.blelibrary.BleConstants;
+import com.sscl.blelibrary.GattCharacteristicHandle;
+import com.sscl.blelibrary.LargeDataSource;
+import com.sscl.blelibrary.LargeDataStreamSession;
+import com.sscl.blelibrary.enums.CharacteristicCachePolicy;
 import com.sscl.blelibrary.enums.PhyMask;
 import com.sscl.blelibrary.enums.Transport;
 
@@ -36,6 +40,23 @@ public interface Connector {
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
     boolean requestMtu(int mtu);
 
+    /**
+     * request change mtu value.The request is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param mtu      mtu value
+     * @param listener result listener of this request, the result is the new mtu
+     * @return true means request queued successful.
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    boolean requestMtu(int mtu, @Nullable OnGattOperationResultListener<Integer> listener);
+
+    /**
+     * get negotiated ATT MTU of the connection.Large data transfers size their packets by it.
+     *
+     * @return ATT MTU, 23 before any mtu exchange
+     */
+    int getMtu();
+
     /**
      * 发起绑定
      *
@@ -359,6 +380,19 @@ public interface Connector {
      */
     void writeLargeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull byte[] largeData, @IntRange(from = 0) int packageDelayTime, @IntRange(from = 0) int maxTryCount, @Nullable OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener, boolean autoFormat);
 
+    /**
+     * Send large amounts of data to remote devices.Packets are read from the source as they are sent.
+     *
+     * @param serviceUuid                         Service UUID
+     * @param characteristicUuid                  characteristic UUID
+     * @param largeDataSource                     source of the large data, closed when the transfer ends
+     * @param packageDelayTime                    Time interval between each packet of data
+     * @param maxTryCount                         Maximum number of retransmissions per packet of data
+     * @param onLargeDataSendStateChangedListener Callback during large data transmission
+     * @param autoFormat                          whether to format the packet
+     */
+    void writeLargeData(@NonNull String serviceUuid, @NonNull String characteristicUuid, @NonNull LargeDataSource largeDataSource, @IntRange(from = 0) int packageDelayTime, @IntRange(from = 0) int maxTryCount, @Nullable OnLargeDataSendStateChangedListener onLargeDataSendStateChangedListener, boolean autoFormat);
+
     /**
      * closeGatt GATT connection
      *
@@ -376,6 +410,17 @@ public interface Connector {
      */
     boolean writeData(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] data);
 
+    /**
+     * write data to remote device.The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param data               data
+     * @param listener           result listener of this write, the result is the written value
+     * @return true means request queued successful
+     */
+    boolean writeData(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] data, @Nullable OnGattOperationResultListener<byte[]> listener);
+
     /**
      * read data from remote device.Result for request will be trigger callback {@link OnBleConnectStateChangedListener#readCharacteristicData(BluetoothGattCharacteristic, byte[])}
      *
@@ -385,6 +430,16 @@ public interface Connector {
      */
     boolean readData(@NonNull String serviceUUID, @NonNull String characteristicUUID);
 
+    /**
+     * read data from remote device.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param listener           result listener of this read, the result is the read value
+     * @return true means request queued successful
+     */
+    boolean readData(@NonNull String serviceUUID, @NonNull String characteristicUUID, @Nullable OnGattOperationResultListener<byte[]> listener);
+
     /**
      * enable or disable notification
      *
@@ -395,6 +450,71 @@ public interface Connector {
      */
     boolean enableNotification(@NonNull String serviceUUID, @NonNull String characteristicUUID, boolean enable);
 
+    /**
+     * enable or disable notification.The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @param enable             true means enable notification,false means disable notification
+     * @param listener           result listener of the descriptor write
+     * @return true means successful
+     */
+    boolean enableNotification(@NonNull String serviceUUID, @NonNull String characteristicUUID, boolean enable, @Nullable OnGattOperationResultListener<byte[]> listener);
+
+    /**
+     * Resolve a characteristic once, requests through the returned handle skip looking it up again.
+     * The handle becomes invalid when the connection is lost or the services are discovered again.
+     *
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @return resolved characteristic, null means the characteristic is not found
+     */
+    @Nullable
+    GattCharacteristicHandle resolveCharacteristic(@NonNull String serviceUUID, @NonNull String characteristicUUID);
+
+    /**
+     * write data to remote device through a resolved characteristic.The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param data                     data
+     * @param listener                 result listener of this write, the result is the written value
+     * @return true means request queued successful, false means the handle is invalid
+     */
+    boolean writeData(@NonNull GattCharacteristicHandle gattCharacteristicHandle, @NonNull byte[] data, @Nullable OnGattOperationResultListener<byte[]> listener);
+
+    /**
+     * read data from remote device through a resolved characteristic.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param listener                 result listener of this read, the result is the read value
+     * @return true means request queued successful, false means the handle is invalid
+     */
+    boolean readData(@NonNull GattCharacteristicHandle gattCharacteristicHandle, @Nullable OnGattOperationResultListener<byte[]> listener);
+
+    /**
+     * enable or disable notification of a resolved characteristic.The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param enable                   true means enable notification,false means disable notification
+     * @param listener                 result listener of the descriptor write
+     * @return true means successful, false means the handle is invalid
+     */
+    boolean enableNotification(@NonNull GattCharacteristicHandle gattCharacteristicHandle, boolean enable, @Nullable OnGattOperationResultListener<byte[]> listener);
+
+    /**
+     * set how values read from a characteristic are cached.Reads with a result listener made while a read of the
+     * characteristic is outstanding always share its result, reads without one always send a request and report it to
+     * the connect state listener. Cached values are dropped when the characteristic is written, when the
+     * connection is lost and when the services are discovered again.
+     * Reads answered from the cache or by an outstanding read trigger only their own result listener.
+     *
+     * @param characteristicUUID characteristic UUID
+     * @param policy             cache policy
+     * @param ttl                time to live of a value for {@link CharacteristicCachePolicy#TTL}(unit:ms), ignored by the other policies
+     * @return true means successful
+     */
+    boolean setCharacteristicCachePolicy(@NonNull String characteristicUUID, @NonNull CharacteristicCachePolicy policy, @IntRange(from = 0) long ttl);
+
     /**
      * get remote device RSSI.Result for request will be trigger callback {@link OnBleConnectStateChangedListener#readRemoteRssi(int)}
      *
@@ -402,6 +522,14 @@ public interface Connector {
      */
     boolean getRssi();
 
+    /**
+     * get remote device RSSI.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param listener result listener of this read, the result is the rssi
+     * @return true means request queued successful
+     */
+    boolean getRssi(@Nullable OnGattOperationResultListener<Integer> listener);
+
     /**
      * refresh GATT cache.
      * Notice:Some Custom system return true but not take effect.There is no solution so far.
@@ -558,6 +686,138 @@ public interface Connector {
                                            @Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener,
                                            final boolean autoFormat);
 
+    /**
+     * write large data and require remote devices to notify collaboration.Packets are read from the source as they are sent.
+     *
+     * @param writeDataServiceUUID                                     service UUID for writing data
+     * @param writeDataCharacteristicUUID                              characteristic UUID for writing data
+     * @param notificationServiceUUID                                  service UUID for receiving notification data
+     * @param notificationCharacteristicUUID                           characteristic UUID for receiving notification data
+     * @param largeDataSource                                          source of the large data, closed when the transfer ends or can not start
+     * @param packageDelayTime                                         Time interval between each packet of data
+     * @param maxTryCount                                              Maximum number of retries
+     * @param onLargeDataWriteWithNotificationSendStateChangedListener Callback that write large data and require remote devices to notify collaboration
+     * @param autoFormat                                               whether to format the packet
+     * @return true means request successful
+     */
+    boolean writeLargeDataWithNotification(@NonNull final String writeDataServiceUUID, @NonNull final String writeDataCharacteristicUUID,
+                                           @NonNull final String notificationServiceUUID, @NonNull final String notificationCharacteristicUUID,
+                                           @NonNull final LargeDataSource largeDataSource, @IntRange(from = 0) final int packageDelayTime,
+                                           @IntRange(from = 0) final int maxTryCount,
+                                           @Nullable final OnLargeDataWriteWithNotificationSendStateChangedListener onLargeDataWriteWithNotificationSendStateChangedListener,
+                                           final boolean autoFormat);
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * A window of 8 packets is kept in flight and the packets are formatted automatically.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeData                             large data
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] largeData,
+                                 @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * A packet is confirmed when its write completed locally.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeData                             large data
+     * @param windowSize                            maximum count of packets queued at once
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] largeData,
+                                 @IntRange(from = 1) int windowSize, boolean autoFormat,
+                                 @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * The remote device notifies the count of packets it received on the acknowledge characteristic,
+     * see {@link OnLargeDataStreamStateChangedListener#onReceiveAcknowledge(byte[])}.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges
+     * @param largeData                             large data
+     * @param windowSize                            maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                 @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                 @NonNull byte[] largeData, @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount,
+                                 boolean autoFormat, @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * A packet is confirmed when its write completed locally.Packets are read from the source as they are sent.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets queued at once
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull LargeDataSource largeDataSource,
+                                 @IntRange(from = 1) int windowSize, boolean autoFormat,
+                                 @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * The remote device notifies the count of packets it received on the acknowledge characteristic,
+     * see {@link OnLargeDataStreamStateChangedListener#onReceiveAcknowledge(byte[])}.Packets are read from the source as they are sent.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                 @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                 @NonNull LargeDataSource largeDataSource, @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount,
+                                 boolean autoFormat, @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
+
+    /**
+     * Stream large data to remote device with writes without response and resume it after an interruption.
+     * The offset the remote device acknowledged is saved under the transfer ID while the stream runs and when it stops.
+     * A later stream with the same transfer ID and data length asks the listener to confirm the offset with the remote device,
+     * see {@link OnResumableLargeDataStreamStateChangedListener#onResumeRequested(int, int, LargeDataResumeCallback)}.
+     *
+     * @param writeDataServiceUUID                           service UUID for writing data
+     * @param writeDataCharacteristicUUID                    characteristic UUID for writing data
+     * @param ackServiceUUID                                 service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                          characteristic UUID for receiving acknowledges
+     * @param transferId                                     transfer ID, identifies the data across connections and app restarts
+     * @param largeDataSource                                source of the large data, closed when the stream ends or can not start
+     * @param windowSize                                     maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                                    Maximum number of retries without progress
+     * @param autoFormat                                     whether to format the packet
+     * @param onResumableLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeResumableLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                          @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                          @NonNull String transferId, @NonNull LargeDataSource largeDataSource,
+                                          @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount, boolean autoFormat,
+                                          @NonNull OnResumableLargeDataStreamStateChangedListener onResumableLargeDataStreamStateChangedListener);
+
     /**
      * Check for support notifications
      *
@@ -712,4 +972,28 @@ public interface Connector {
      */
 
     boolean executeReliableWrite();
+
+    /**
+     * Open a large data stream that runs side by side with the other streams of the connection.
+     * Unlike writeLargeDataStream no running stream is cancelled, the packets of all open streams are interleaved
+     * and each stream gets a share of the written bytes proportional to its priority.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges, null means packets are confirmed by their write result
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges, null means packets are confirmed by their write result
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets written but not yet confirmed
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param priority                              share of the connection relative to the other streams
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return session to follow, re-prioritize or cancel the stream, null means request failed
+     */
+    @Nullable
+    LargeDataStreamSession openLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                               @Nullable String ackServiceUUID, @Nullable String ackCharacteristicUUID,
+                                               @NonNull LargeDataSource largeDataSource, @IntRange(from = 1) int windowSize,
+                                               @IntRange(from = 0) int maxTryCount, boolean autoFormat, @IntRange(from = 1) int priority,
+                                               @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
 }
@@ -0,0 +1,18 @@
+package com.sscl.blelibrary.interfaces;
+
+import androidx.annotation.IntRange;
+
+/**
+ * Answer of a resume request of a resumable large data stream
+ *
+ * @author jackie
+ */
+public interface LargeDataResumeCallback {
+
+    /**
+     * Start the stream at the offset the remote device confirmed.Can be called on any thread.
+     *
+     * @param offset confirmed offset in the data, 0 sends the data from the beginning
+     */
+    void resume(@IntRange(from = 0) int offset);
+}
@@ -8,11 +8,16 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 import android.os.Build;
 
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import com.sscl.blelibrary.BaseBleConnectCallback;
+import com.sscl.blelibrary.GattCharacteristicHandle;
+import com.sscl.blelibrary.LargeDataSource;
+import com.sscl.blelibrary.LargeDataStreamSession;
+import com.sscl.blelibrary.enums.CharacteristicCachePolicy;
 import com.sscl.blelibrary.enums.PhyMask;
 import com.sscl.blelibrary.enums.Transport;
 
@@ -35,6 +40,13 @@ public interface MultiConnector {
     @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
     boolean requestMtu(int mtu);
 
+    /**
+     * get negotiated ATT MTU of the connection
+     *
+     * @return ATT MTU, 23 before any mtu exchange
+     */
+    int getMtu();
+
     /**
      * Disconnect remote device
      *
@@ -314,6 +326,60 @@ public interface MultiConnector {
      */
     boolean enableNotification(@NonNull String serviceUUID, @NonNull String characteristicUUID, boolean enable);
 
+    /**
+     * Resolve a characteristic once, requests through the returned handle skip looking it up again.
+     * The handle becomes invalid when the connection is lost or the services are discovered again.
+     *
+     * @param serviceUUID        service UUID
+     * @param characteristicUUID characteristic UUID
+     * @return resolved characteristic, null means the characteristic is not found
+     */
+    @Nullable
+    GattCharacteristicHandle resolveCharacteristic(@NonNull String serviceUUID, @NonNull String characteristicUUID);
+
+    /**
+     * write data to remote device through a resolved characteristic.The write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param data                     data
+     * @param listener                 result listener of this write, the result is the written value
+     * @return true means request queued successful, false means the handle is invalid
+     */
+    boolean writeData(@NonNull GattCharacteristicHandle gattCharacteristicHandle, @NonNull byte[] data, @Nullable OnGattOperationResultListener<byte[]> listener);
+
+    /**
+     * read data from remote device through a resolved characteristic.The read is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param listener                 result listener of this read, the result is the read value
+     * @return true means request queued successful, false means the handle is invalid
+     */
+    boolean readData(@NonNull GattCharacteristicHandle gattCharacteristicHandle, @Nullable OnGattOperationResultListener<byte[]> listener);
+
+    /**
+     * enable or disable notification of a resolved characteristic.The descriptor write is queued behind the outstanding GATT operations of the connection.
+     *
+     * @param gattCharacteristicHandle resolved characteristic
+     * @param enable                   true means enable notification,false means disable notification
+     * @param listener                 result listener of the descriptor write
+     * @return true means successful, false means the handle is invalid
+     */
+    boolean enableNotification(@NonNull GattCharacteristicHandle gattCharacteristicHandle, boolean enable, @Nullable OnGattOperationResultListener<byte[]> listener);
+
+    /**
+     * set how values read from a characteristic are cached.Reads with a result listener made while a read of the
+     * characteristic is outstanding always share its result, reads without one always send a request and report it to
+     * the connect callback. Cached values are dropped when the characteristic is written, when the
+     * connection is lost and when the services are discovered again.
+     * Reads answered from the cache or by an outstanding read trigger only their own result listener.
+     *
+     * @param characteristicUUID characteristic UUID
+     * @param policy             cache policy
+     * @param ttl                time to live of a value for {@link CharacteristicCachePolicy#TTL}(unit:ms), ignored by the other policies
+     * @return true means successful
+     */
+    boolean setCharacteristicCachePolicy(@NonNull String characteristicUUID, @NonNull CharacteristicCachePolicy policy, @IntRange(from = 0) long ttl);
+
     /**
      * get remote device RSSI.Result for request will be trigger callback {@link OnBleConnectStateChangedListener#readRemoteRssi(int)}
      *
@@ -501,4 +567,139 @@ public interface MultiConnector {
      */
 
     boolean executeReliableWrite();
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * A window of 8 packets is kept in flight and the packets are formatted automatically.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeData                             large data
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] largeData,
+                                 @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * A packet is confirmed when its write completed locally.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeData                             large data
+     * @param windowSize                            maximum count of packets queued at once
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull byte[] largeData,
+                                 @IntRange(from = 1) int windowSize, boolean autoFormat,
+                                 @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * The remote device notifies the count of packets it received on the acknowledge characteristic,
+     * see {@link OnLargeDataStreamStateChangedListener#onReceiveAcknowledge(byte[])}.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges
+     * @param largeData                             large data
+     * @param windowSize                            maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                 @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                 @NonNull byte[] largeData, @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount,
+                                 boolean autoFormat, @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * A packet is confirmed when its write completed locally.Packets are read from the source as they are sent.
+     *
+     * @param serviceUUID                           service UUID
+     * @param characteristicUUID                    characteristic UUID
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets queued at once
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeLargeDataStream(@NonNull String serviceUUID, @NonNull String characteristicUUID, @NonNull LargeDataSource largeDataSource,
+                                 @IntRange(from = 1) int windowSize, boolean autoFormat,
+                                 @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
+
+    /**
+     * Stream large data to remote device with writes without response.
+     * The remote device notifies the count of packets it received on the acknowledge characteristic,
+     * see {@link OnLargeDataStreamStateChangedListener#onReceiveAcknowledge(byte[])}.Packets are read from the source as they are sent.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                 @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                 @NonNull LargeDataSource largeDataSource, @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount,
+                                 boolean autoFormat, @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
+
+    /**
+     * Stream large data to remote device with writes without response and resume it after an interruption.
+     * The offset the remote device acknowledged is saved under the transfer ID while the stream runs and when it stops.
+     * A later stream with the same transfer ID and data length asks the listener to confirm the offset with the remote device,
+     * see {@link OnResumableLargeDataStreamStateChangedListener#onResumeRequested(int, int, LargeDataResumeCallback)}.
+     *
+     * @param writeDataServiceUUID                           service UUID for writing data
+     * @param writeDataCharacteristicUUID                    characteristic UUID for writing data
+     * @param ackServiceUUID                                 service UUID for receiving acknowledges
+     * @param ackCharacteristicUUID                          characteristic UUID for receiving acknowledges
+     * @param transferId                                     transfer ID, identifies the data across connections and app restarts
+     * @param largeDataSource                                source of the large data, closed when the stream ends or can not start
+     * @param windowSize                                     maximum count of packets written but not yet acknowledged
+     * @param maxTryCount                                    Maximum number of retries without progress
+     * @param autoFormat                                     whether to format the packet
+     * @param onResumableLargeDataStreamStateChangedListener Callback of the stream
+     * @return true means request successful
+     */
+    boolean writeResumableLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                          @NonNull String ackServiceUUID, @NonNull String ackCharacteristicUUID,
+                                          @NonNull String transferId, @NonNull LargeDataSource largeDataSource,
+                                          @IntRange(from = 1) int windowSize, @IntRange(from = 0) int maxTryCount, boolean autoFormat,
+                                          @NonNull OnResumableLargeDataStreamStateChangedListener onResumableLargeDataStreamStateChangedListener);
+
+    /**
+     * Open a large data stream that runs side by side with the other streams of the connection.
+     * Unlike writeLargeDataStream no running stream is cancelled, the packets of all open streams are interleaved
+     * and each stream gets a share of the written bytes proportional to its priority.
+     *
+     * @param writeDataServiceUUID                  service UUID for writing data
+     * @param writeDataCharacteristicUUID           characteristic UUID for writing data
+     * @param ackServiceUUID                        service UUID for receiving acknowledges, null means packets are confirmed by their write result
+     * @param ackCharacteristicUUID                 characteristic UUID for receiving acknowledges, null means packets are confirmed by their write result
+     * @param largeDataSource                       source of the large data, closed when the stream ends or can not start
+     * @param windowSize                            maximum count of packets written but not yet confirmed
+     * @param maxTryCount                           Maximum number of retries without progress
+     * @param autoFormat                            whether to format the packet
+     * @param priority                              share of the connection relative to the other streams
+     * @param onLargeDataStreamStateChangedListener Callback of the stream
+     * @return session to follow, re-prioritize or cancel the stream, null means request failed
+     */
+    @Nullable
+    LargeDataStreamSession openLargeDataStream(@NonNull String writeDataServiceUUID, @NonNull String writeDataCharacteristicUUID,
+                                               @Nullable String ackServiceUUID, @Nullable String ackCharacteristicUUID,
+                                               @NonNull LargeDataSource largeDataSource, @IntRange(from = 1) int windowSize,
+                                               @IntRange(from = 0) int maxTryCount, boolean autoFormat, @IntRange(from = 1) int priority,
+                                               @NonNull OnLargeDataStreamStateChangedListener onLargeDataStreamStateChangedListener);
 }
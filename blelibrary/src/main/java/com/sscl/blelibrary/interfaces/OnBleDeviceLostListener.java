@@ -0,0 +1,26 @@
+package com.sscl.blelibrary.interfaces;
+
+import androidx.annotation.NonNull;
+
+import com.sscl.blelibrary.BleDevice;
+
+import java.util.ArrayList;
+
+/**
+ * Listener of devices removed from the scan results of a scanner,
+ * because they were not seen within the time to live or the scan results were full.
+ *
+ * @author jackie
+ */
+public interface OnBleDeviceLostListener {
+
+    /**
+     * callback triggered when a device is removed from the scan results.
+     * Changes are delivered once per delivery tick, so several devices lost in one tick all report indexes of the same previous list.
+     *
+     * @param index      The index the device had in the previously delivered list of scanned devices.
+     * @param bleDevice  BLE device
+     * @param bleDevices the list of scanned devices
+     */
+    void onDeviceLost(int index, @NonNull BleDevice bleDevice, @NonNull ArrayList<BleDevice> bleDevices);
+}
@@ -0,0 +1,30 @@
+package com.sscl.blelibrary.interfaces;
+
+import androidx.annotation.NonNull;
+
+import com.sscl.blelibrary.BleDevice;
+
+/**
+ * BLE device presence changed listener.
+ * It works like {@link android.bluetooth.le.ScanSettings#CALLBACK_TYPE_FIRST_MATCH} and
+ * {@link android.bluetooth.le.ScanSettings#CALLBACK_TYPE_MATCH_LOST}, but is computed by the scanner itself,
+ * so it also works without hardware offload and on API 18.
+ *
+ * @author jackie
+ */
+public interface OnBlePresenceChangedListener {
+
+    /**
+     * callback triggered when a device becomes present
+     *
+     * @param bleDevice BLE device
+     */
+    void onDevicePresent(@NonNull BleDevice bleDevice);
+
+    /**
+     * callback triggered when a present device was not seen within the lost timeout
+     *
+     * @param bleDevice the last seen BLE device
+     */
+    void onDeviceAbsent(@NonNull BleDevice bleDevice);
+}
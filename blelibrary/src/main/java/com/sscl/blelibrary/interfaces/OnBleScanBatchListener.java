@@ -0,0 +1,24 @@
+package com.sscl.blelibrary.interfaces;
+
+import androidx.annotation.NonNull;
+
+import com.sscl.blelibrary.BleDevice;
+
+import java.util.ArrayList;
+
+/**
+ * BLE scan batch listener.
+ * Advertisements received within one batch interval are coalesced and delivered together.
+ *
+ * @author jackie
+ */
+public interface OnBleScanBatchListener {
+
+    /**
+     * callback triggered once per batch interval when at least one device was found.
+     * Each device appears at most once, with its latest advertisement.
+     *
+     * @param bleDevices devices found in this batch interval
+     */
+    void onScanFindDevices(@NonNull ArrayList<BleDevice> bleDevices);
+}
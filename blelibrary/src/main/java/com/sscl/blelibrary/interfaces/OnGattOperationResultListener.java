@@ -0,0 +1,30 @@
+package com.sscl.blelibrary.interfaces;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Completion callback of a queued GATT operation.It is triggered on the main thread.
+ *
+ * @param <T> result type: the value (byte[]) of characteristic and descriptor operations,
+ *            the mtu or the rssi (Integer) of mtu requests and rssi reads
+ * @author jackie
+ */
+public interface OnGattOperationResultListener<T> {
+
+    /**
+     * callback triggered when the operation completed successfully
+     *
+     * @param result operation result
+     */
+    void onGattOperationSucceed(@Nullable T result);
+
+    /**
+     * callback triggered when the operation failed
+     *
+     * @param status GATT status of the failed operation, or one of
+     *               {@link com.sscl.blelibrary.BleConstants#GATT_OPERATION_TIMEOUT},
+     *               {@link com.sscl.blelibrary.BleConstants#GATT_OPERATION_REQUEST_FAILED} and
+     *               {@link com.sscl.blelibrary.BleConstants#GATT_OPERATION_CANCELLED}
+     */
+    void onGattOperationFailed(int status);
+}
@@ -0,0 +1,63 @@
+package com.sscl.blelibrary.interfaces;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Callback of a pipelined large data stream.All methods are called on the main thread.
+ *
+ * @author jackie
+ */
+public interface OnLargeDataStreamStateChangedListener {
+
+    /**
+     * Transmission start
+     *
+     * @param pageCount Total number of packages
+     */
+    void onStreamStarted(int pageCount);
+
+    /**
+     * The remote device notified on the acknowledge characteristic.Only called when the stream was started with one.
+     *
+     * @param values notification data
+     * @return cumulative number of packages the remote device received in order, negative means the notification is not an acknowledge
+     */
+    int onReceiveAcknowledge(@Nullable byte[] values);
+
+    /**
+     * Send progress changed
+     *
+     * @param confirmedCount The number of packages confirmed so far
+     * @param pageCount      Total number of packages
+     */
+    void onStreamProgressChanged(int confirmedCount, int pageCount);
+
+    /**
+     * The stream made no progress in time or a write failed, sending is resumed from the first unconfirmed package
+     *
+     * @param tryCount         Try count
+     * @param fromPackageIndex The number of packages confirmed, sending resumes with the next one
+     * @param pageCount        Total number of packages
+     */
+    void onStreamRetry(int tryCount, int fromPackageIndex, int pageCount);
+
+    /**
+     * Transmission finished, every package is confirmed
+     */
+    void onStreamFinished();
+
+    /**
+     * Transmission failed.If this method is triggered, it proves that this transmission has been terminated.
+     *
+     * @param status         GATT status of the failed write, {@link com.sscl.blelibrary.BleConstants#GATT_OPERATION_TIMEOUT}
+     *                       or {@link com.sscl.blelibrary.BleConstants#LARGE_DATA_SOURCE_READ_FAILED}
+     * @param confirmedCount The number of packages confirmed
+     * @param pageCount      Total number of packages
+     */
+    void onStreamFailed(int status, int confirmedCount, int pageCount);
+
+    /**
+     * start failed
+     */
+    void onStartFailed();
+}
@@ -0,0 +1,32 @@
+package com.sscl.blelibrary.interfaces;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Callback of a notification reassembler.All methods are called on the main thread.
+ *
+ * @author jackie
+ */
+public interface OnNotificationFrameReceivedListener {
+
+    /**
+     * A frame was reassembled from notifications
+     *
+     * @param gattCharacteristic BluetoothGattCharacteristic
+     * @param frame              frame buffer, reused for the next frame, copy the bytes to keep them
+     * @param length             frame length, the frame is frame[0, length)
+     */
+    void onFrameReceived(@NonNull BluetoothGattCharacteristic gattCharacteristic, @NonNull byte[] frame, int length);
+
+    /**
+     * A frame was dropped
+     *
+     * @param gattCharacteristic BluetoothGattCharacteristic
+     * @param reason             {@link com.sscl.blelibrary.BleConstants#NOTIFICATION_FRAME_GAP},
+     *                           {@link com.sscl.blelibrary.BleConstants#NOTIFICATION_FRAME_OVERSIZED}
+     *                           or {@link com.sscl.blelibrary.BleConstants#NOTIFICATION_FRAME_MALFORMED}
+     */
+    void onFrameDropped(@NonNull BluetoothGattCharacteristic gattCharacteristic, int reason);
+}
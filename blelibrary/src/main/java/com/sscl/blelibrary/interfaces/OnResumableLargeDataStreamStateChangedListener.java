@@ -0,0 +1,25 @@
+package com.sscl.blelibrary.interfaces;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Callback of a resumable large data stream.All methods are called on the main thread.
+ * <p>
+ * After a resume, package counts and indexes of the callbacks and the packet headers cover the data
+ * from the resume offset on.
+ *
+ * @author jackie
+ */
+public interface OnResumableLargeDataStreamStateChangedListener extends OnLargeDataStreamStateChangedListener {
+
+    /**
+     * A checkpoint of this transfer was found.Confirm the offset with the remote device,
+     * then call {@link LargeDataResumeCallback#resume(int)} with the offset it accepted.
+     * The start fails when the offset is not confirmed within the timeout of the stream.
+     *
+     * @param checkpointOffset count of bytes the remote device acknowledged before
+     * @param length           total length of the data
+     * @param callback         answer of the request
+     */
+    void onResumeRequested(int checkpointOffset, int length, @NonNull LargeDataResumeCallback callback);
+}
@@ -0,0 +1,448 @@
+package com.sscl.blelibrary.systems;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A reusable view over the raw bytes of a scan record.
+ * <p>
+ * {@link #wrap(byte[])} walks the record once and only records where each AD structure starts,
+ * the fields are decoded when they are accessed.Service UUIDs are returned as their two
+ * {@code long} halves and data fields as offset/length slices of {@link #getBytes()},
+ * so wrapping a packet does not allocate once the internal index arrays have grown to fit.
+ * <p>
+ * A view is not thread safe and is only valid until the next call of {@link #wrap(byte[])}.
+ * Use {@link #toBleScanRecord()} to keep a record.
+ *
+ * @author jackie
+ */
+public final class BleScanRecordView {
+
+    /*-----------------------------------static constant-----------------------------------*/
+
+    // The following data type values are assigned by Bluetooth SIG.
+    // For more details refer to Bluetooth 4.1 specification, Volume 3, Part C, Section 18.
+    private static final int DATA_TYPE_FLAGS = 0x01;
+    private static final int DATA_TYPE_SERVICE_UUIDS_16_BIT_PARTIAL = 0x02;
+    private static final int DATA_TYPE_SERVICE_UUIDS_16_BIT_COMPLETE = 0x03;
+    private static final int DATA_TYPE_SERVICE_UUIDS_32_BIT_PARTIAL = 0x04;
+    private static final int DATA_TYPE_SERVICE_UUIDS_32_BIT_COMPLETE = 0x05;
+    private static final int DATA_TYPE_SERVICE_UUIDS_128_BIT_PARTIAL = 0x06;
+    private static final int DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE = 0x07;
+    private static final int DATA_TYPE_LOCAL_NAME_SHORT = 0x08;
+    private static final int DATA_TYPE_LOCAL_NAME_COMPLETE = 0x09;
+    private static final int DATA_TYPE_TX_POWER_LEVEL = 0x0A;
+    private static final int DATA_TYPE_SERVICE_DATA_16_BIT = 0x16;
+    private static final int DATA_TYPE_SERVICE_DATA_32_BIT = 0x20;
+    private static final int DATA_TYPE_SERVICE_DATA_128_BIT = 0x21;
+    private static final int DATA_TYPE_MANUFACTURER_SPECIFIC_DATA = 0xFF;
+
+    /**
+     * Bluetooth base uuid 00000000-0000-1000-8000-00805F9B34FB
+     */
+    private static final long BASE_UUID_MOST_SIG_BITS = 0x0000000000001000L;
+    private static final long BASE_UUID_LEAST_SIG_BITS = 0x800000805F9B34FBL;
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /*-----------------------------------field variables-----------------------------------*/
+
+    /**
+     * Raw bytes of scan record
+     */
+    private byte[] bytes;
+
+    /**
+     * Whether the record was well formed
+     */
+    private boolean valid;
+
+    /**
+     * AD structure count
+     */
+    private int adCount;
+    /**
+     * AD type of each structure
+     */
+    private int[] adTypes = new int[DEFAULT_CAPACITY];
+    /**
+     * data offset of each structure
+     */
+    private int[] adDataOffsets = new int[DEFAULT_CAPACITY];
+    /**
+     * data length of each structure
+     */
+    private int[] adDataLengths = new int[DEFAULT_CAPACITY];
+
+    /**
+     * service uuid count
+     */
+    private int uuidCount;
+    /**
+     * offset of each service uuid
+     */
+    private int[] uuidOffsets = new int[DEFAULT_CAPACITY];
+    /**
+     * byte width of each service uuid(2, 4 or 16)
+     */
+    private int[] uuidWidths = new int[DEFAULT_CAPACITY];
+
+    /**
+     * index of the AD structures that hold flags, tx power level and local name.-1 means absent.
+     */
+    private int flagsIndex;
+    private int txPowerLevelIndex;
+    private int localNameIndex;
+
+    /*-----------------------------------public method-----------------------------------*/
+
+    /**
+     * Index a scan record.The previous record of this view is discarded.
+     * <p>
+     * The format is defined in Bluetooth 4.1 specification, Volume 3, Part C, Section 11 and 18.
+     *
+     * @param scanRecord The scan record of Bluetooth LE advertisement and/or scan response.
+     * @return this view
+     */
+    @NonNull
+    public BleScanRecordView wrap(@NonNull byte[] scanRecord) {
+        bytes = scanRecord;
+        adCount = 0;
+        uuidCount = 0;
+        flagsIndex = -1;
+        txPowerLevelIndex = -1;
+        localNameIndex = -1;
+        valid = true;
+
+        int currentPos = 0;
+        while (currentPos < scanRecord.length) {
+            // length is unsigned int.
+            int length = scanRecord[currentPos++] & 0xFF;
+            if (length == 0) {
+                break;
+            }
+            // Note the length includes the length of the field type itself.
+            int dataLength = length - 1;
+            int dataOffset = currentPos + 1;
+            if (dataOffset + dataLength > scanRecord.length) {
+                // As the record is invalid, ignore all the parsed results for this packet
+                invalidate();
+                return this;
+            }
+            // fieldType is unsigned int.
+            int fieldType = scanRecord[currentPos] & 0xFF;
+            int index = addAdStructure(fieldType, dataOffset, dataLength);
+            switch (fieldType) {
+                case DATA_TYPE_FLAGS:
+                    flagsIndex = index;
+                    break;
+                case DATA_TYPE_SERVICE_UUIDS_16_BIT_PARTIAL:
+                case DATA_TYPE_SERVICE_UUIDS_16_BIT_COMPLETE:
+                    addServiceUuids(dataOffset, dataLength, BleBluetoothUuid.UUID_BYTES_16_BIT);
+                    break;
+                case DATA_TYPE_SERVICE_UUIDS_32_BIT_PARTIAL:
+                case DATA_TYPE_SERVICE_UUIDS_32_BIT_COMPLETE:
+                    addServiceUuids(dataOffset, dataLength, BleBluetoothUuid.UUID_BYTES_32_BIT);
+                    break;
+                case DATA_TYPE_SERVICE_UUIDS_128_BIT_PARTIAL:
+                case DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE:
+                    addServiceUuids(dataOffset, dataLength, BleBluetoothUuid.UUID_BYTES_128_BIT);
+                    break;
+                case DATA_TYPE_LOCAL_NAME_SHORT:
+                case DATA_TYPE_LOCAL_NAME_COMPLETE:
+                    localNameIndex = index;
+                    break;
+                case DATA_TYPE_TX_POWER_LEVEL:
+                    txPowerLevelIndex = index;
+                    break;
+                default:
+                    break;
+            }
+            currentPos = dataOffset + dataLength;
+        }
+        return this;
+    }
+
+    /**
+     * Returns raw bytes of scan record.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns false if the record was malformed.A malformed record has no AD structures.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Returns the advertising flags indicating the discoverable mode and capability of the device.
+     * Returns -1 if the flag field is not set.
+     */
+    public int getAdvertiseFlags() {
+        if (flagsIndex < 0 || adDataLengths[flagsIndex] < 1) {
+            return -1;
+        }
+        return bytes[adDataOffsets[flagsIndex]] & 0xFF;
+    }
+
+    /**
+     * Returns the transmission power level of the packet in dBm. Returns {@link Integer#MIN_VALUE}
+     * if the field is not set.
+     */
+    public int getTxPowerLevel() {
+        if (txPowerLevelIndex < 0 || adDataLengths[txPowerLevelIndex] < 1) {
+            return Integer.MIN_VALUE;
+        }
+        return bytes[adDataOffsets[txPowerLevelIndex]];
+    }
+
+    /**
+     * Returns true if the record contains a local name.
+     */
+    public boolean hasDeviceName() {
+        return localNameIndex >= 0;
+    }
+
+    /**
+     * Returns the local name of the BLE device.A new String is created on every call.
+     */
+    @Nullable
+    public String getDeviceName() {
+        if (localNameIndex < 0) {
+            return null;
+        }
+        return new String(bytes, adDataOffsets[localNameIndex], adDataLengths[localNameIndex]);
+    }
+
+    /**
+     * Returns the count of AD structures in the record.
+     */
+    public int getAdStructureCount() {
+        return adCount;
+    }
+
+    /**
+     * Returns the AD type of the AD structure at {@code index}.
+     */
+    public int getAdType(int index) {
+        checkIndex(index, adCount);
+        return adTypes[index];
+    }
+
+    /**
+     * Returns the offset in {@link #getBytes()} of the data of the AD structure at {@code index}.
+     */
+    public int getAdDataOffset(int index) {
+        checkIndex(index, adCount);
+        return adDataOffsets[index];
+    }
+
+    /**
+     * Returns the data length of the AD structure at {@code index}.
+     */
+    public int getAdDataLength(int index) {
+        checkIndex(index, adCount);
+        return adDataLengths[index];
+    }
+
+    /**
+     * Returns the index of the first AD structure with the AD type, or -1 if not found.
+     */
+    public int findAdStructure(int adType) {
+        for (int i = 0; i < adCount; i++) {
+            if (adTypes[i] == (adType & 0xFF)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the manufacturer specific data AD structure with the manufacturer identifier,
+     * or -1 if not found.The data slice of the structure starts with the 2 bytes identifier.
+     */
+    public int findManufacturerData(int manufacturerId) {
+        for (int i = 0; i < adCount; i++) {
+            if (adTypes[i] == DATA_TYPE_MANUFACTURER_SPECIFIC_DATA && getManufacturerId(i) == manufacturerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the manufacturer identifier of the manufacturer specific data AD structure at {@code index},
+     * or -1 if the structure is too short.
+     */
+    public int getManufacturerId(int index) {
+        checkIndex(index, adCount);
+        if (adDataLengths[index] < 2) {
+            return -1;
+        }
+        int offset = adDataOffsets[index];
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+    }
+
+    /**
+     * Returns the index of the service data AD structure of the service uuid, or -1 if not found.
+     * The data slice of the structure starts with the service uuid.
+     */
+    public int findServiceData(long mostSigBits, long leastSigBits) {
+        for (int i = 0; i < adCount; i++) {
+            int width = getServiceDataUuidWidth(adTypes[i]);
+            if (width == 0 || adDataLengths[i] < width) {
+                continue;
+            }
+            int offset = adDataOffsets[i];
+            if (decodeMostSigBits(offset, width) == mostSigBits && decodeLeastSigBits(offset, width) == leastSigBits) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the count of service UUIDs within the advertisement.
+     */
+    public int getServiceUuidCount() {
+        return uuidCount;
+    }
+
+    /**
+     * Returns the most significant 64 bits of the service uuid at {@code index}.
+     * 16 bit and 32 bit uuids are expanded with the Bluetooth base uuid.
+     */
+    public long getServiceUuidMostSigBits(int index) {
+        checkIndex(index, uuidCount);
+        return decodeMostSigBits(uuidOffsets[index], uuidWidths[index]);
+    }
+
+    /**
+     * Returns the least significant 64 bits of the service uuid at {@code index}.
+     * 16 bit and 32 bit uuids are expanded with the Bluetooth base uuid.
+     */
+    public long getServiceUuidLeastSigBits(int index) {
+        checkIndex(index, uuidCount);
+        return decodeLeastSigBits(uuidOffsets[index], uuidWidths[index]);
+    }
+
+    /**
+     * Returns true if the advertisement contains the service uuid.
+     */
+    public boolean containsServiceUuid(long mostSigBits, long leastSigBits) {
+        for (int i = 0; i < uuidCount; i++) {
+            if (decodeMostSigBits(uuidOffsets[i], uuidWidths[i]) == mostSigBits
+                    && decodeLeastSigBits(uuidOffsets[i], uuidWidths[i]) == leastSigBits) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse the whole record into a {@link BleScanRecord} that can be kept.
+     */
+    @NonNull
+    public BleScanRecord toBleScanRecord() {
+        return BleScanRecord.parseFromBytes(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "BleScanRecordView [valid=" + valid + ", adCount=" + adCount + ", uuidCount=" + uuidCount
+                + ", bytes=" + Arrays.toString(bytes) + "]";
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    private int addAdStructure(int type, int dataOffset, int dataLength) {
+        if (adCount == adTypes.length) {
+            int capacity = adCount * 2;
+            adTypes = Arrays.copyOf(adTypes, capacity);
+            adDataOffsets = Arrays.copyOf(adDataOffsets, capacity);
+            adDataLengths = Arrays.copyOf(adDataLengths, capacity);
+        }
+        adTypes[adCount] = type;
+        adDataOffsets[adCount] = dataOffset;
+        adDataLengths[adCount] = dataLength;
+        return adCount++;
+    }
+
+    private void addServiceUuids(int dataOffset, int dataLength, int width) {
+        while (dataLength >= width) {
+            if (uuidCount == uuidOffsets.length) {
+                int capacity = uuidCount * 2;
+                uuidOffsets = Arrays.copyOf(uuidOffsets, capacity);
+                uuidWidths = Arrays.copyOf(uuidWidths, capacity);
+            }
+            uuidOffsets[uuidCount] = dataOffset;
+            uuidWidths[uuidCount] = width;
+            uuidCount++;
+            dataOffset += width;
+            dataLength -= width;
+        }
+    }
+
+    private void invalidate() {
+        valid = false;
+        adCount = 0;
+        uuidCount = 0;
+        flagsIndex = -1;
+        txPowerLevelIndex = -1;
+        localNameIndex = -1;
+    }
+
+    private static int getServiceDataUuidWidth(int adType) {
+        switch (adType) {
+            case DATA_TYPE_SERVICE_DATA_16_BIT:
+                return BleBluetoothUuid.UUID_BYTES_16_BIT;
+            case DATA_TYPE_SERVICE_DATA_32_BIT:
+                return BleBluetoothUuid.UUID_BYTES_32_BIT;
+            case DATA_TYPE_SERVICE_DATA_128_BIT:
+                return BleBluetoothUuid.UUID_BYTES_128_BIT;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Decode the most significant bits of a little endian uuid.
+     * For 16 bit and 32 bit UUID : 128_bit_value = uuid * 2^96 + BASE_UUID
+     */
+    private long decodeMostSigBits(int offset, int width) {
+        if (width == BleBluetoothUuid.UUID_BYTES_128_BIT) {
+            return readLongLittleEndian(offset + 8);
+        }
+        long shortUuid = (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+        if (width == BleBluetoothUuid.UUID_BYTES_32_BIT) {
+            shortUuid |= ((long) (bytes[offset + 2] & 0xFF) << 16) | ((long) (bytes[offset + 3] & 0xFF) << 24);
+        }
+        return BASE_UUID_MOST_SIG_BITS + (shortUuid << 32);
+    }
+
+    private long decodeLeastSigBits(int offset, int width) {
+        if (width == BleBluetoothUuid.UUID_BYTES_128_BIT) {
+            return readLongLittleEndian(offset);
+        }
+        return BASE_UUID_LEAST_SIG_BITS;
+    }
+
+    private long readLongLittleEndian(int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void checkIndex(int index, int count) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index = " + index + ", count = " + count);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Dispatch, completion and timeout of {@link GattOperationQueue}
+ *
+ * @author jackie
+ */
+public class GattOperationQueueTest {
+
+    private BluetoothGatt bluetoothGatt;
+
+    private BluetoothGattCharacteristic firstCharacteristic;
+
+    private BluetoothGattCharacteristic secondCharacteristic;
+
+    private GattOperationQueue gattOperationQueue;
+
+    @Before
+    public void setUp() {
+        bluetoothGatt = mock(BluetoothGatt.class);
+        when(bluetoothGatt.readCharacteristic(any(BluetoothGattCharacteristic.class))).thenReturn(true);
+        firstCharacteristic = mock(BluetoothGattCharacteristic.class);
+        secondCharacteristic = mock(BluetoothGattCharacteristic.class);
+        gattOperationQueue = new GattOperationQueue();
+        // timeouts are triggered by the tests, the timer wheel does not advance without SystemClock
+        gattOperationQueue.setOperationTimeout(0);
+        gattOperationQueue.setBluetoothGatt(bluetoothGatt);
+    }
+
+    @Test
+    public void enqueueWithoutGattFails() {
+        GattOperationQueue gattOperationQueue = new GattOperationQueue();
+        assertFalse(gattOperationQueue.enqueue(read(firstCharacteristic)));
+    }
+
+    @Test
+    public void onlyOneOperationIsOutstanding() {
+        assertTrue(gattOperationQueue.enqueue(read(firstCharacteristic)));
+        assertTrue(gattOperationQueue.enqueue(read(secondCharacteristic)));
+        verify(bluetoothGatt).readCharacteristic(firstCharacteristic);
+        verify(bluetoothGatt, never()).readCharacteristic(secondCharacteristic);
+    }
+
+    @Test
+    public void completionDispatchesTheNextOperation() {
+        gattOperationQueue.enqueue(read(firstCharacteristic));
+        gattOperationQueue.enqueue(read(secondCharacteristic));
+        complete(firstCharacteristic);
+        verify(bluetoothGatt).readCharacteristic(secondCharacteristic);
+    }
+
+    @Test
+    public void completionOfAnotherTargetIsIgnored() {
+        gattOperationQueue.enqueue(read(firstCharacteristic));
+        gattOperationQueue.enqueue(read(secondCharacteristic));
+        complete(secondCharacteristic);
+        gattOperationQueue.onOperationComplete(GattOperationQueue.TYPE_WRITE_CHARACTERISTIC, firstCharacteristic, BluetoothGatt.GATT_SUCCESS, null, 0);
+        verify(bluetoothGatt, never()).readCharacteristic(secondCharacteristic);
+    }
+
+    @Test
+    public void failedRequestDispatchesTheNextOperation() {
+        when(bluetoothGatt.readCharacteristic(firstCharacteristic)).thenReturn(false);
+        gattOperationQueue.enqueue(read(firstCharacteristic));
+        gattOperationQueue.enqueue(read(secondCharacteristic));
+        verify(bluetoothGatt).readCharacteristic(secondCharacteristic);
+    }
+
+    @Test
+    public void timeoutDispatchesTheNextOperation() {
+        GattOperationQueue.GattOperation firstRead = read(firstCharacteristic);
+        gattOperationQueue.enqueue(firstRead);
+        gattOperationQueue.enqueue(read(secondCharacteristic));
+        gattOperationQueue.onTimeout(firstRead);
+        verify(bluetoothGatt).readCharacteristic(secondCharacteristic);
+    }
+
+    @Test
+    public void timeoutOfAnOperationNoLongerOutstandingIsIgnored() {
+        GattOperationQueue.GattOperation firstRead = read(firstCharacteristic);
+        gattOperationQueue.enqueue(firstRead);
+        gattOperationQueue.enqueue(read(secondCharacteristic));
+        gattOperationQueue.enqueue(read(firstCharacteristic));
+        complete(firstCharacteristic);
+        gattOperationQueue.onTimeout(firstRead);
+        verify(bluetoothGatt).readCharacteristic(firstCharacteristic);
+    }
+
+    @Test
+    public void lateCompletionOfATimedOutOperationIsIgnored() {
+        BluetoothGattCharacteristic thirdCharacteristic = mock(BluetoothGattCharacteristic.class);
+        GattOperationQueue.GattOperation firstRead = read(firstCharacteristic);
+        gattOperationQueue.enqueue(firstRead);
+        gattOperationQueue.enqueue(read(firstCharacteristic));
+        gattOperationQueue.enqueue(read(thirdCharacteristic));
+        gattOperationQueue.onTimeout(firstRead);
+        verify(bluetoothGatt, times(2)).readCharacteristic(firstCharacteristic);
+
+        // the late result of the first read must not complete the second read of the same characteristic
+        complete(firstCharacteristic);
+        verify(bluetoothGatt, never()).readCharacteristic(thirdCharacteristic);
+
+        complete(firstCharacteristic);
+        verify(bluetoothGatt).readCharacteristic(thirdCharacteristic);
+    }
+
+    @Test
+    public void cancelAllDropsQueuedOperations() {
+        gattOperationQueue.enqueue(read(firstCharacteristic));
+        gattOperationQueue.enqueue(read(secondCharacteristic));
+        gattOperationQueue.cancelAll();
+        complete(firstCharacteristic);
+        verify(bluetoothGatt, never()).readCharacteristic(secondCharacteristic);
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Create a characteristic read without a listener
+     *
+     * @param characteristic characteristic
+     * @return operation
+     */
+    private static GattOperationQueue.GattOperation read(BluetoothGattCharacteristic characteristic) {
+        return GattOperationQueue.GattOperation.readCharacteristic(characteristic, null);
+    }
+
+    /**
+     * Report a successful read of a characteristic
+     *
+     * @param characteristic characteristic
+     */
+    private void complete(BluetoothGattCharacteristic characteristic) {
+        gattOperationQueue.onOperationComplete(GattOperationQueue.TYPE_READ_CHARACTERISTIC, characteristic, BluetoothGatt.GATT_SUCCESS, new byte[]{1}, 0);
+    }
+}
@@ -0,0 +1,173 @@
+package com.sscl.blelibrary;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Round trips of {@link LargeDataPacketizer}: the packets are parsed with the header layouts and joined again.
+ *
+ * @author jackie
+ */
+public class LargeDataPacketizerTest {
+
+    @Test
+    public void smallDataUsesVersion1Header() throws IOException {
+        byte[] data = randomData(1000);
+        byte[][] packets = packetize(new LargeDataPacketizer(LargeDataSource.fromBytes(data), true, BleConstants.DEFAULT_ATT_MTU));
+        assertNotEquals(LargeDataPacketizer.HEADER_V2_MARKER, packets[0][0]);
+        assertArrayEquals(data, join(packets));
+    }
+
+    @Test
+    public void moreThan255PacketsUseVersion2Header() throws IOException {
+        byte[] data = randomData(20 * 300);
+        byte[][] packets = packetize(new LargeDataPacketizer(LargeDataSource.fromBytes(data), true, BleConstants.DEFAULT_ATT_MTU));
+        assertEquals(LargeDataPacketizer.HEADER_V2_MARKER, packets[0][0]);
+        assertEquals(LargeDataPacketizer.HEADER_VERSION_2, packets[0][1]);
+        assertArrayEquals(data, join(packets));
+    }
+
+    @Test
+    public void moreThan65535PacketsUseVersion3Header() throws IOException {
+        byte[] data = randomData(800 * 1024);
+        LargeDataPacketizer largeDataPacketizer = new LargeDataPacketizer(LargeDataSource.fromBytes(data), true, BleConstants.DEFAULT_ATT_MTU);
+        byte[][] packets = packetize(largeDataPacketizer);
+        assertEquals(LargeDataPacketizer.HEADER_V2_MARKER, packets[0][0]);
+        assertEquals(LargeDataPacketizer.HEADER_VERSION_3, packets[0][1]);
+        assertEquals(largeDataPacketizer.getPageCount(), packets.length);
+        assertArrayEquals(data, join(packets));
+    }
+
+    @Test
+    public void largerMtuFillsThePackets() throws IOException {
+        byte[] data = randomData(5000);
+        int mtu = 185;
+        byte[][] packets = packetize(new LargeDataPacketizer(LargeDataSource.fromBytes(data), true, mtu));
+        assertEquals(mtu - 3, packets[0].length);
+        assertArrayEquals(data, join(packets));
+    }
+
+    @Test
+    public void withoutAutoFormatPacketsAreRawSlices() throws IOException {
+        byte[] data = randomData(1001);
+        LargeDataPacketizer largeDataPacketizer = new LargeDataPacketizer(LargeDataSource.fromBytes(data), false, BleConstants.DEFAULT_ATT_MTU);
+        assertEquals(51, largeDataPacketizer.getPageCount());
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        for (byte[] packet : packetize(largeDataPacketizer)) {
+            byteArrayOutputStream.write(packet);
+        }
+        assertArrayEquals(data, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    public void resumedTransferStartsAtTheOffset() throws IOException {
+        byte[] data = randomData(3000);
+        int startOffset = 1234;
+        LargeDataPacketizer largeDataPacketizer = new LargeDataPacketizer(LargeDataSource.fromBytes(data), startOffset, true, BleConstants.DEFAULT_ATT_MTU);
+        byte[] expected = new byte[data.length - startOffset];
+        System.arraycopy(data, startOffset, expected, 0, expected.length);
+        assertArrayEquals(expected, join(packetize(largeDataPacketizer)));
+        assertEquals(startOffset, largeDataPacketizer.getSourceOffset(0));
+        assertEquals(data.length, largeDataPacketizer.getSourceOffset(largeDataPacketizer.getPageCount()));
+    }
+
+    @Test
+    public void emptyDataHasNoPackets() {
+        LargeDataPacketizer largeDataPacketizer = new LargeDataPacketizer(LargeDataSource.fromBytes(new byte[0]), true, BleConstants.DEFAULT_ATT_MTU);
+        assertEquals(0, largeDataPacketizer.getPageCount());
+    }
+
+    /*-----------------------------------package private static method-----------------------------------*/
+
+    /**
+     * Create reproducible test data
+     *
+     * @param length data length
+     * @return data
+     */
+    static byte[] randomData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Read all packets of a packetizer
+     *
+     * @param largeDataPacketizer packetizer
+     * @return packets
+     * @throws IOException the source could not be read
+     */
+    static byte[][] packetize(LargeDataPacketizer largeDataPacketizer) throws IOException {
+        byte[][] packets = new byte[largeDataPacketizer.getPageCount()][];
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = new byte[largeDataPacketizer.getPackageLength(i)];
+            largeDataPacketizer.readPackage(i, packets[i]);
+        }
+        return packets;
+    }
+
+    /*-----------------------------------private static method-----------------------------------*/
+
+    /**
+     * Check the header of every packet and join the payloads
+     *
+     * @param packets packets with the autoFormat header
+     * @return joined payloads
+     */
+    private static byte[] join(byte[][] packets) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        for (int i = 0; i < packets.length; i++) {
+            byte[] packet = packets[i];
+            int headerLength;
+            int count;
+            int index;
+            int length;
+            if (packet[0] != LargeDataPacketizer.HEADER_V2_MARKER) {
+                headerLength = LargeDataPacketizer.HEADER_LENGTH_V1;
+                count = packet[0] & 0xFF;
+                index = packet[1] & 0xFF;
+                length = packet[2] & 0xFF;
+            } else if (packet[1] == LargeDataPacketizer.HEADER_VERSION_2) {
+                headerLength = LargeDataPacketizer.HEADER_LENGTH_V2;
+                count = getValue(packet, 2, 2);
+                index = getValue(packet, 4, 2);
+                length = getValue(packet, 6, 2);
+            } else {
+                assertEquals(LargeDataPacketizer.HEADER_VERSION_3, packet[1]);
+                headerLength = LargeDataPacketizer.HEADER_LENGTH_V3;
+                count = getValue(packet, 2, 4);
+                index = getValue(packet, 6, 4);
+                length = getValue(packet, 10, 2);
+            }
+            assertEquals(packets.length, count);
+            assertEquals(i + 1, index);
+            assertEquals(packet.length - headerLength, length);
+            byteArrayOutputStream.write(packet, headerLength, length);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Read a big endian value
+     *
+     * @param data   buffer
+     * @param offset offset in the buffer
+     * @param length byte count
+     * @return value
+     */
+    private static int getValue(byte[] data, int offset, int length) {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,225 @@
+package com.sscl.blelibrary;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+
+import com.sscl.blelibrary.interfaces.OnNotificationFrameReceivedListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reassembly of paged and length-prefixed frames by {@link NotificationReassembler}
+ *
+ * @author jackie
+ */
+public class NotificationReassemblerTest {
+
+    private static final String CHARACTERISTIC_UUID = "0000fff1-0000-1000-8000-00805f9b34fb";
+
+    private static final String OTHER_CHARACTERISTIC_UUID = "0000fff2-0000-1000-8000-00805f9b34fb";
+
+    private BluetoothGattCharacteristic characteristic;
+
+    private RecordingListener recordingListener;
+
+    @Before
+    public void setUp() {
+        characteristic = mockCharacteristic(CHARACTERISTIC_UUID);
+        recordingListener = new RecordingListener();
+    }
+
+    @Test
+    public void pagedFramesOfAllHeaderVersionsAreReassembled() throws IOException {
+        NotificationReassembler notificationReassembler = NotificationReassembler.forPagedFrames(CHARACTERISTIC_UUID, 1024 * 1024, recordingListener);
+        byte[][] frames = {
+                LargeDataPacketizerTest.randomData(1000),
+                LargeDataPacketizerTest.randomData(20 * 300),
+                LargeDataPacketizerTest.randomData(800 * 1024)
+        };
+        for (byte[] frame : frames) {
+            send(notificationReassembler, pagedPackets(frame));
+        }
+        assertEquals(frames.length, recordingListener.frames.size());
+        for (int i = 0; i < frames.length; i++) {
+            assertArrayEquals(frames[i], recordingListener.frames.get(i));
+        }
+        assertEquals(0, recordingListener.dropReasons.size());
+    }
+
+    @Test
+    public void repeatedPacketIsIgnored() throws IOException {
+        NotificationReassembler notificationReassembler = NotificationReassembler.forPagedFrames(CHARACTERISTIC_UUID, 1024, recordingListener);
+        byte[] frame = LargeDataPacketizerTest.randomData(100);
+        byte[][] packets = pagedPackets(frame);
+        for (int i = 0; i < packets.length; i++) {
+            notificationReassembler.onBleReceiveNotification(characteristic, packets[i]);
+            notificationReassembler.onBleReceiveNotification(characteristic, packets[i]);
+        }
+        assertEquals(1, recordingListener.frames.size());
+        assertArrayEquals(frame, recordingListener.frames.get(0));
+        assertEquals(0, recordingListener.dropReasons.size());
+    }
+
+    @Test
+    public void lostPacketDropsTheFrameAndTheNextFrameIsReassembled() throws IOException {
+        NotificationReassembler notificationReassembler = NotificationReassembler.forPagedFrames(CHARACTERISTIC_UUID, 1024, recordingListener);
+        byte[][] packets = pagedPackets(LargeDataPacketizerTest.randomData(100));
+        for (int i = 0; i < packets.length; i++) {
+            if (i != 2) {
+                notificationReassembler.onBleReceiveNotification(characteristic, packets[i]);
+            }
+        }
+        assertEquals(0, recordingListener.frames.size());
+        assertEquals(Arrays.asList(BleConstants.NOTIFICATION_FRAME_GAP), recordingListener.dropReasons);
+
+        byte[] frame = LargeDataPacketizerTest.randomData(60);
+        send(notificationReassembler, pagedPackets(frame));
+        assertEquals(1, recordingListener.frames.size());
+        assertArrayEquals(frame, recordingListener.frames.get(0));
+    }
+
+    @Test
+    public void oversizedPagedFrameIsDropped() throws IOException {
+        NotificationReassembler notificationReassembler = NotificationReassembler.forPagedFrames(CHARACTERISTIC_UUID, 50, recordingListener);
+        send(notificationReassembler, pagedPackets(LargeDataPacketizerTest.randomData(100)));
+        assertEquals(0, recordingListener.frames.size());
+        assertEquals(Arrays.asList(BleConstants.NOTIFICATION_FRAME_OVERSIZED), recordingListener.dropReasons);
+    }
+
+    @Test
+    public void malformedPacketIsDropped() {
+        NotificationReassembler notificationReassembler = NotificationReassembler.forPagedFrames(CHARACTERISTIC_UUID, 1024, recordingListener);
+        notificationReassembler.onBleReceiveNotification(characteristic, new byte[]{2, 3, 1, 0});
+        assertEquals(Arrays.asList(BleConstants.NOTIFICATION_FRAME_MALFORMED), recordingListener.dropReasons);
+    }
+
+    @Test
+    public void notificationsOfOtherCharacteristicsAreIgnored() throws IOException {
+        NotificationReassembler notificationReassembler = NotificationReassembler.forPagedFrames(CHARACTERISTIC_UUID, 1024, recordingListener);
+        BluetoothGattCharacteristic otherCharacteristic = mockCharacteristic(OTHER_CHARACTERISTIC_UUID);
+        for (byte[] packet : pagedPackets(LargeDataPacketizerTest.randomData(100))) {
+            notificationReassembler.onBleReceiveNotification(otherCharacteristic, packet);
+        }
+        assertEquals(0, recordingListener.frames.size());
+        assertEquals(0, recordingListener.dropReasons.size());
+    }
+
+    @Test
+    public void lengthPrefixedFramesSpanAndShareNotifications() {
+        NotificationReassembler notificationReassembler = NotificationReassembler.forLengthPrefixedFrames(CHARACTERISTIC_UUID, 2,
+                ByteOrder.BIG_ENDIAN, 1024, recordingListener);
+        byte[] first = LargeDataPacketizerTest.randomData(5);
+        byte[] second = LargeDataPacketizerTest.randomData(300);
+        byte[] stream = new byte[2 + first.length + 2 + second.length];
+        stream[0] = 0;
+        stream[1] = (byte) first.length;
+        System.arraycopy(first, 0, stream, 2, first.length);
+        stream[2 + first.length] = (byte) (second.length >> 8);
+        stream[3 + first.length] = (byte) second.length;
+        System.arraycopy(second, 0, stream, 4 + first.length, second.length);
+        for (int offset = 0; offset < stream.length; offset += 20) {
+            notificationReassembler.onBleReceiveNotification(characteristic, Arrays.copyOfRange(stream, offset, Math.min(offset + 20, stream.length)));
+        }
+        assertEquals(2, recordingListener.frames.size());
+        assertArrayEquals(first, recordingListener.frames.get(0));
+        assertArrayEquals(second, recordingListener.frames.get(1));
+    }
+
+    @Test
+    public void littleEndianLengthPrefix() {
+        NotificationReassembler notificationReassembler = NotificationReassembler.forLengthPrefixedFrames(CHARACTERISTIC_UUID, 2,
+                ByteOrder.LITTLE_ENDIAN, 1024, recordingListener);
+        byte[] frame = LargeDataPacketizerTest.randomData(258);
+        byte[] stream = new byte[2 + frame.length];
+        stream[0] = (byte) frame.length;
+        stream[1] = (byte) (frame.length >> 8);
+        System.arraycopy(frame, 0, stream, 2, frame.length);
+        notificationReassembler.onBleReceiveNotification(characteristic, stream);
+        assertEquals(1, recordingListener.frames.size());
+        assertArrayEquals(frame, recordingListener.frames.get(0));
+    }
+
+    @Test
+    public void oversizedLengthPrefixIsDropped() {
+        NotificationReassembler notificationReassembler = NotificationReassembler.forLengthPrefixedFrames(CHARACTERISTIC_UUID, 1,
+                ByteOrder.BIG_ENDIAN, 10, recordingListener);
+        notificationReassembler.onBleReceiveNotification(characteristic, new byte[]{20, 1, 2, 3});
+        assertEquals(Arrays.asList(BleConstants.NOTIFICATION_FRAME_OVERSIZED), recordingListener.dropReasons);
+
+        notificationReassembler.onBleReceiveNotification(characteristic, new byte[]{2, 7, 8});
+        assertEquals(1, recordingListener.frames.size());
+        assertArrayEquals(new byte[]{7, 8}, recordingListener.frames.get(0));
+    }
+
+    /*-----------------------------------private method-----------------------------------*/
+
+    /**
+     * Send notifications in order
+     *
+     * @param notificationReassembler reassembler
+     * @param packets                 notification data
+     */
+    private void send(NotificationReassembler notificationReassembler, byte[][] packets) {
+        for (byte[] packet : packets) {
+            notificationReassembler.onBleReceiveNotification(characteristic, packet);
+        }
+    }
+
+    /**
+     * Split a frame with the autoFormat header at the default MTU
+     *
+     * @param frame frame
+     * @return packets
+     * @throws IOException the source could not be read
+     */
+    private static byte[][] pagedPackets(byte[] frame) throws IOException {
+        return LargeDataPacketizerTest.packetize(new LargeDataPacketizer(LargeDataSource.fromBytes(frame), true, BleConstants.DEFAULT_ATT_MTU));
+    }
+
+    /**
+     * Create a characteristic with a UUID
+     *
+     * @param uuid characteristic UUID
+     * @return characteristic
+     */
+    private static BluetoothGattCharacteristic mockCharacteristic(String uuid) {
+        BluetoothGattCharacteristic characteristic = mock(BluetoothGattCharacteristic.class);
+        when(characteristic.getUuid()).thenReturn(UUID.fromString(uuid));
+        return characteristic;
+    }
+
+    /*-----------------------------------inner class-----------------------------------*/
+
+    /**
+     * Keeps a copy of every frame and the reason of every drop
+     */
+    private static final class RecordingListener implements OnNotificationFrameReceivedListener {
+
+        private final ArrayList<byte[]> frames = new ArrayList<>();
+
+        private final ArrayList<Integer> dropReasons = new ArrayList<>();
+
+        @Override
+        public void onFrameReceived(@NonNull BluetoothGattCharacteristic gattCharacteristic, @NonNull byte[] frame, int length) {
+            frames.add(Arrays.copyOf(frame, length));
+        }
+
+        @Override
+        public void onFrameDropped(@NonNull BluetoothGattCharacteristic gattCharacteristic, int reason) {
+            dropReasons.add(reason);
+        }
+    }
+}